@@ -77,6 +77,13 @@ public class SchemaRegistryImpl implements DebugDumpable, SchemaRegistry {
      */
     private String catalogResourceName = DEFAULT_RUNTIME_CATALOG_RESOURCE;
 
+    /**
+     * File with serialized prism schemas, used to skip parsing of the XSD files during initialization.
+     * It is created (or replaced) when the schemas are parsed. Null means that no snapshot is used.
+     * See {@link SchemaSnapshot}.
+     */
+    private File schemaSnapshotFile;
+
     /**
      * Schema that is used for "native" validation of XML files.
      * It is set up during initialization. So any schemas added after that will not be reflected here.
@@ -263,6 +270,14 @@ public class SchemaRegistryImpl implements DebugDumpable, SchemaRegistry {
         this.catalogResourceName = catalogResourceName;
     }
 
+    public File getSchemaSnapshotFile() {
+        return schemaSnapshotFile;
+    }
+
+    public void setSchemaSnapshotFile(File schemaSnapshotFile) {
+        this.schemaSnapshotFile = schemaSnapshotFile;
+    }
+
     @Override
     public String getDefaultNamespace() {
         return defaultNamespace;
@@ -456,7 +471,14 @@ public class SchemaRegistryImpl implements DebugDumpable, SchemaRegistry {
             long resolverDone = System.currentTimeMillis();
             LOGGER.trace("initResolver() done in {} ms", resolverDone - start);
 
-            parsePrismSchemas();
+            String snapshotHash = schemaSnapshotFile != null && !initialized ?
+                    SchemaSnapshot.computeHash(schemaDescriptions) : null;
+            if (snapshotHash == null || !loadPrismSchemasFromSnapshot(snapshotHash)) {
+                parsePrismSchemas();
+                if (snapshotHash != null) {
+                    SchemaSnapshot.create(schemaDescriptions).store(schemaSnapshotFile, snapshotHash);
+                }
+            }
             long prismSchemasDone = System.currentTimeMillis();
             LOGGER.trace("parsePrismSchemas() done in {} ms", prismSchemasDone - resolverDone);
 
@@ -524,6 +546,38 @@ public class SchemaRegistryImpl implements DebugDumpable, SchemaRegistry {
         }
     }
 
+    /**
+     * Creates prism schemas from the snapshot. Only definitions are stored there, so they have to be revived
+     * and put into (new) schema objects.
+     *
+     * @return false if there is no usable snapshot
+     */
+    private boolean loadPrismSchemasFromSnapshot(String hash) {
+        SchemaSnapshot snapshot = SchemaSnapshot.load(schemaSnapshotFile, hash);
+        if (snapshot == null) {
+            return false;
+        }
+        if (snapshot.size() != schemaDescriptions.size()) {
+            LOGGER.warn("Schema snapshot {} does not match registered schemas ({} vs {} schemas), it will not be used",
+                    schemaSnapshotFile, snapshot.size(), schemaDescriptions.size());
+            return false;
+        }
+        for (int i = 0; i < schemaDescriptions.size(); i++) {
+            SchemaDescriptionImpl description = schemaDescriptions.get(i);
+            List<Definition> definitions = snapshot.getDefinitions(i);
+            if (definitions != null) {
+                PrismSchemaImpl schema = new PrismSchemaImpl(snapshot.getNamespace(i), prismContext);
+                for (Definition definition : definitions) {
+                    definition.revive(prismContext);
+                    schema.add(definition);
+                }
+                description.setSchema(schema);
+            }
+        }
+        LOGGER.debug("Prism schemas were loaded from snapshot {}", schemaSnapshotFile);
+        return true;
+    }
+
     private void fillInSubtypes(PrismSchemaImpl schema) {
         for (TypeDefinition typeDefinition : schema.getDefinitions(TypeDefinition.class)) {
             if (typeDefinition.getSuperType() == null) {
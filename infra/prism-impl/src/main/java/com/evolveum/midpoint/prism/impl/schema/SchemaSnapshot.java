@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.prism.impl.schema;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.Definition;
+import com.evolveum.midpoint.prism.schema.PrismSchema;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Serialized prism schemas (i.e. definitions created from XSD files), used to avoid parsing of the XSD files
+ * when the registry is initialized. See {@link SchemaRegistryImpl#setSchemaSnapshotFile(File)}.
+ *
+ * The snapshot is keyed by a hash of all registered schema descriptions (including extension schemas)
+ * and of the code that creates and serializes the definitions (checksums of the respective jars, see
+ * {@link #BUILD_IDENTIFYING_CLASSES}). If anything of that changes, the snapshot is ignored, and it is replaced
+ * after the schemas are parsed. The version alone is not enough, as SNAPSHOT builds keep it unchanged.
+ * If the code cannot be identified, no snapshot is used at all.
+ *
+ * Only classes that can be present in the definitions are accepted when the snapshot is read,
+ * see {@link #DESERIALIZATION_FILTER}.
+ */
+class SchemaSnapshot {
+
+    private static final Trace LOGGER = TraceManager.getTrace(SchemaSnapshot.class);
+
+    /**
+     * Classes whose code sources (jars or class directories) create the definitions or are serialized in them.
+     * Compile-time classes are not here: when they change, the schemas change as well.
+     */
+    private static final List<Class<?>> BUILD_IDENTIFYING_CLASSES =
+            List.of(SchemaSnapshot.class, Definition.class, DOMUtil.class);
+
+    private static final ObjectInputFilter DESERIALIZATION_FILTER = ObjectInputFilter.Config.createFilter(
+            "java.lang.*;java.util.*;java.math.*;javax.xml.**;com.evolveum.**;!*");
+
+    /**
+     * Content of schemas, in the order of schema descriptions. Null for descriptions without prism schema.
+     */
+    @NotNull private final List<SchemaContent> schemas;
+
+    private static class SchemaContent implements Serializable {
+        private final String namespace;
+        private final ArrayList<Definition> definitions;
+
+        private SchemaContent(PrismSchema schema) {
+            this.namespace = schema.getNamespace();
+            this.definitions = new ArrayList<>(schema.getDefinitions());
+        }
+    }
+
+    private SchemaSnapshot(@NotNull List<SchemaContent> schemas) {
+        this.schemas = schemas;
+    }
+
+    static SchemaSnapshot create(List<SchemaDescriptionImpl> descriptions) {
+        List<SchemaContent> schemas = new ArrayList<>();
+        for (SchemaDescriptionImpl description : descriptions) {
+            PrismSchema schema = description.getSchema();
+            schemas.add(schema != null ? new SchemaContent(schema) : null);
+        }
+        return new SchemaSnapshot(schemas);
+    }
+
+    int size() {
+        return schemas.size();
+    }
+
+    /**
+     * Returns namespace of i-th schema; or null if the respective description has no prism schema.
+     */
+    String getNamespace(int i) {
+        SchemaContent content = schemas.get(i);
+        return content != null ? content.namespace : null;
+    }
+
+    List<Definition> getDefinitions(int i) {
+        SchemaContent content = schemas.get(i);
+        return content != null ? content.definitions : null;
+    }
+
+    /**
+     * Returns null if the hash cannot be computed, i.e. the snapshot must not be used.
+     */
+    @Nullable
+    static String computeHash(List<SchemaDescriptionImpl> descriptions) {
+        MessageDigest digest = createDigest();
+        for (Class<?> clazz : BUILD_IDENTIFYING_CLASSES) {
+            String buildIdentifier = computeBuildIdentifier(clazz);
+            if (buildIdentifier == null) {
+                return null;
+            }
+            update(digest, buildIdentifier);
+        }
+        for (SchemaDescriptionImpl description : descriptions) {
+            update(digest, description.getPath());
+            update(digest, description.getNamespace());
+            update(digest, String.valueOf(description.isPrismSchema()));
+            Package compileTimeClassesPackage = description.getCompileTimeClassesPackage();
+            update(digest, compileTimeClassesPackage != null ? compileTimeClassesPackage.getName() : null);
+            update(digest, DOMUtil.serializeDOMToString(description.getDomElement()));
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * Checksum of the jar the class was loaded from; or the list of files (with their timestamps) if it was
+     * loaded from a directory, e.g. when running from the IDE. Null if the class location is unknown.
+     */
+    @Nullable
+    static String computeBuildIdentifier(Class<?> clazz) {
+        CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+        URL location = codeSource != null ? codeSource.getLocation() : null;
+        if (location == null) {
+            LOGGER.info("Location of {} is not known, schema snapshot will not be used", clazz.getName());
+            return null;
+        }
+        MessageDigest digest = createDigest();
+        try {
+            if ("file".equals(location.getProtocol()) && Files.isDirectory(Path.of(location.toURI()))) {
+                Path root = Path.of(location.toURI());
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(root)) {
+                    files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    update(digest, root.relativize(file).toString());
+                    update(digest, String.valueOf(Files.getLastModifiedTime(file).toMillis()));
+                }
+            } else {
+                // Jar nested in another archive (e.g. Spring Boot) has location like jar:file:/a.war!/lib/b.jar!/
+                String externalForm = location.toExternalForm();
+                URL jar = externalForm.endsWith("!/") ?
+                        new URL(externalForm.substring(0, externalForm.length() - 2)) : location;
+                try (InputStream in = new DigestInputStream(new BufferedInputStream(jar.openStream()), digest)) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                }
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            LOGGER.info("Couldn't compute checksum of {}, schema snapshot will not be used: {}",
+                    location, e.getMessage(), e);
+            return null;
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new SystemException("Couldn't compute schema hash: " + e.getMessage(), e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Reads the snapshot from given file. Returns null if the file does not exist, was created for different
+     * schemas, or cannot be read.
+     */
+    @Nullable
+    static SchemaSnapshot load(@NotNull File file, @NotNull String hash) {
+        if (!file.exists()) {
+            LOGGER.debug("Schema snapshot {} does not exist", file);
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            in.setObjectInputFilter(DESERIALIZATION_FILTER);
+            String snapshotHash = (String) in.readObject();
+            if (!hash.equals(snapshotHash)) {
+                LOGGER.info("Schema snapshot {} was created for different schemas, it will not be used", file);
+                return null;
+            }
+            //noinspection unchecked
+            return new SchemaSnapshot((List<SchemaContent>) in.readObject());
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            LOGGER.warn("Couldn't read schema snapshot {}, it will not be used: {}", file, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot to given file. The file is replaced atomically, so nodes sharing the same file
+     * never read partially written snapshot. Failures are only logged.
+     */
+    void store(@NotNull File file, @NotNull String hash) {
+        Path tempFile = null;
+        try {
+            Path target = file.getAbsoluteFile().toPath();
+            tempFile = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeObject(hash);
+                out.writeObject(new ArrayList<>(schemas));
+            }
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Schema snapshot was written to {}", file);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Couldn't write schema snapshot {}: {}", file, e.getMessage(), e);
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e1) {
+                    LOGGER.warn("Couldn't delete temporary file {}: {}", tempFile, e1.getMessage(), e1);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.prism.impl.schema;
+
+import static org.testng.AssertJUnit.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+
+/**
+ * Tests identification and reading of {@link SchemaSnapshot} files. Loading of real schemas is tested
+ * in TestSchemaRegistry (schema module).
+ */
+public class TestSchemaSnapshot extends AbstractUnitTest {
+
+    private static final File SNAPSHOT_FILE = new File("target/test-schema-snapshot.bin");
+
+    @Test
+    public void test100HashIncludesBuildIdentifier() {
+        when();
+        String buildIdentifier = SchemaSnapshot.computeBuildIdentifier(SchemaSnapshot.class);
+        String hash = SchemaSnapshot.computeHash(List.of());
+
+        then();
+        assertNotNull("No build identifier", buildIdentifier);
+        assertNotNull("No hash", hash);
+        assertEquals("Hash is not stable", hash, SchemaSnapshot.computeHash(List.of()));
+    }
+
+    @Test
+    public void test110AllowedContentIsRead() throws Exception {
+        given("snapshot with no schemas");
+        String hash = SchemaSnapshot.computeHash(List.of());
+        write(hash, new ArrayList<>());
+
+        expect();
+        SchemaSnapshot snapshot = SchemaSnapshot.load(SNAPSHOT_FILE, hash);
+        assertNotNull("Snapshot was not read", snapshot);
+        assertEquals("Wrong # of schemas", 0, snapshot.size());
+    }
+
+    @Test
+    public void test120SnapshotForDifferentSchemasIsIgnored() throws Exception {
+        given();
+        write("other-hash", new ArrayList<>());
+
+        expect();
+        assertNull("Snapshot was read", SchemaSnapshot.load(SNAPSHOT_FILE, SchemaSnapshot.computeHash(List.of())));
+    }
+
+    @Test
+    public void test130UnexpectedClassIsRejected() throws Exception {
+        given("snapshot with matching hash but content that cannot be in definitions");
+        String hash = SchemaSnapshot.computeHash(List.of());
+        ArrayList<Object> content = new ArrayList<>();
+        content.add(new File("x"));
+        write(hash, content);
+
+        expect();
+        assertNull("Snapshot was read", SchemaSnapshot.load(SNAPSHOT_FILE, hash));
+    }
+
+    private void write(String hash, Object content) throws IOException {
+        Files.deleteIfExists(SNAPSHOT_FILE.toPath());
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(SNAPSHOT_FILE))) {
+            out.writeObject(hash);
+            out.writeObject(content);
+        }
+    }
+}
@@ -106,9 +106,18 @@ public class MidPointPrismContextFactory implements PrismContextFactory {
         registerExtensionSchemas(schemaRegistry);
         registerAxiomSchemas(schemaRegistry);
         schemaRegistry.setValueMetadataTypeName(ValueMetadataType.COMPLEX_TYPE);
+        schemaRegistry.setSchemaSnapshotFile(getSchemaSnapshotFile());
         return schemaRegistry;
     }
 
+    /**
+     * File where parsed schemas are stored so they can be loaded on the next start without parsing the XSD files.
+     * Null means that no snapshot is used.
+     */
+    protected File getSchemaSnapshotFile() {
+        return null;
+    }
+
     private void registerAxiomSchemas(SchemaRegistryImpl schemaRegistry) {
         if (schemaRegistry instanceof AxiomEnabledSchemaRegistry) {
             AxiomEnabledSchemaRegistry axiomRegistry = (AxiomEnabledSchemaRegistry) schemaRegistry;
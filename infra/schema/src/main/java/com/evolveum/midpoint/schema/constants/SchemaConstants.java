@@ -302,6 +302,8 @@ public abstract class SchemaConstants {
     public static final ItemName MODEL_EXTENSION_LIVE_SYNC_ERROR_HANDLING_STRATEGY = new ItemName(NS_MODEL_EXTENSION, "liveSyncErrorHandlingStrategy");
     public static final ItemName MODEL_EXTENSION_UPDATE_LIVE_SYNC_TOKEN_IN_DRY_RUN = new ItemName(NS_MODEL_EXTENSION, "updateLiveSyncTokenInDryRun");
     public static final ItemName MODEL_EXTENSION_LIVE_SYNC_BATCH_SIZE = new ItemName(NS_MODEL_EXTENSION, "liveSyncBatchSize");
+    public static final ItemName MODEL_EXTENSION_INDEX_ENTITLEMENT_MEMBERSHIP = new ItemName(NS_MODEL_EXTENSION, "indexEntitlementMembership");
+    public static final ItemName MODEL_EXTENSION_SHADOW_LOOKUP_BATCH_SIZE = new ItemName(NS_MODEL_EXTENSION, "shadowLookupBatchSize");
     public static final ItemName MODEL_EXTENSION_FINISH_OPERATIONS_ONLY = new ItemName(NS_MODEL_EXTENSION, "finishOperationsOnly");
     public static final ItemName MODEL_EXTENSION_KIND = new ItemName(NS_MODEL_EXTENSION, "kind");
     public static final ItemName MODEL_EXTENSION_INTENT = new ItemName(NS_MODEL_EXTENSION, "intent");
@@ -382,6 +384,8 @@ public abstract class SchemaConstants {
     public static final ItemName MODEL_EXTENSION_OBJECT_DELTA = new ItemName(NS_MODEL_EXTENSION, "objectDelta");
     public static final ItemName MODEL_EXTENSION_OBJECT_DELTAS = new ItemName(NS_MODEL_EXTENSION, "objectDeltas");
     public static final ItemName MODEL_EXTENSION_WORKER_THREADS = new ItemName(NS_MODEL_EXTENSION, "workerThreads");
+    public static final ItemName MODEL_EXTENSION_SHARED_WORKER_EXECUTOR = new ItemName(NS_MODEL_EXTENSION, "sharedWorkerExecutor");
+    public static final ItemName MODEL_EXTENSION_MAX_CONCURRENT_ITEMS_PER_RESOURCE = new ItemName(NS_MODEL_EXTENSION, "maxConcurrentItemsPerResource");
     public static final ItemName MODEL_EXTENSION_OPTION_RAW = new ItemName(NS_MODEL_EXTENSION, "optionRaw");
     public static final ItemName MODEL_EXTENSION_EXECUTE_OPTIONS = new ItemName(NS_MODEL_EXTENSION, "executeOptions");
     public static final ItemName MODEL_EXTENSION_MODEL_EXECUTE_OPTIONS = new ItemName(NS_MODEL_EXTENSION, "modelExecuteOptions");
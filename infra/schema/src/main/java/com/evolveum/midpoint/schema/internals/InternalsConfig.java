@@ -56,6 +56,12 @@ public class InternalsConfig {
 
     private static boolean detailedAuthorizationLog = false;
 
+    /**
+     * Compile scripts found in object templates and resources at system startup,
+     * so the first evaluation of each script does not pay for its compilation.
+     */
+    private static boolean precompileScripts = false;
+
     public static boolean isPrismMonitoring() {
         return prismMonitoring;
     }
@@ -136,6 +142,14 @@ public class InternalsConfig {
         InternalsConfig.allowClearDataLogging = allowClearDataLogging;
     }
 
+    public static boolean isPrecompileScripts() {
+        return precompileScripts;
+    }
+
+    public static void setPrecompileScripts(boolean precompileScripts) {
+        InternalsConfig.precompileScripts = precompileScripts;
+    }
+
     public static void resetTestingPaths() {
         testingPaths = null;
     }
@@ -160,6 +174,7 @@ public class InternalsConfig {
         modelProfiling = internalsConfig.getBoolean("modelProfiling", modelProfiling);
         // TODO: testingPaths
         detailedAuthorizationLog = internalsConfig.getBoolean("detailedAuhotizationLog", detailedAuthorizationLog);
+        precompileScripts = internalsConfig.getBoolean("precompileScripts", precompileScripts);
 
     }
 
@@ -174,6 +189,7 @@ public class InternalsConfig {
         modelProfiling = false;
         testingPaths = null;
         detailedAuthorizationLog = false;
+        precompileScripts = false;
     }
 
     public static void setDevelopmentMode() {
@@ -13,6 +13,8 @@ import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
 
 import static com.evolveum.midpoint.xml.ns._public.common.common_3.OperationResultImportanceType.*;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.util.Objects;
@@ -29,6 +31,8 @@ import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import com.evolveum.midpoint.prism.Freezable;
+import com.evolveum.midpoint.prism.Objectable;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.Visitable;
 import com.evolveum.midpoint.prism.Visitor;
@@ -121,6 +125,20 @@ public class OperationResult
     private Map<String, Collection<String>> params;
     private Map<String, Collection<String>> context;
     private Map<String, Collection<String>> returns;
+
+    /**
+     * Parameters, context and returns that were not converted to strings yet (see lazyParameterRendering
+     * in the handling strategy). They are rendered on the first access to the respective map, or before
+     * the serialization. A key is never present in both rendered and unrendered map.
+     *
+     * Only values that cannot change in the meanwhile (see {@link #isImmutable(Object)}) are kept here;
+     * other ones are rendered immediately, so the result shows the value as it was when it was added.
+     */
+    private transient Map<String, Object> unrenderedParams;
+    private transient Map<String, Object> unrenderedContext;
+    private transient Map<String, Object> unrenderedReturns;
+    private final boolean lazyRendering = isLazyParameterRendering();
+
     private final List<String> qualifiers = new ArrayList<>();
 
     private long token;
@@ -131,6 +149,19 @@ public class OperationResult
     private int count = 1;
     private int hiddenRecordsCount;
     private List<OperationResult> subresults;
+
+    /**
+     * Subresults that are to be aggregated (see aggregateBelow in the handling strategy) but were not finished yet.
+     * They are not part of the subresults list until they are finished. Then, if successful, they are only counted in
+     * the respective subresult from {@link #aggregatedSubresults}; otherwise they are added to the list as usual.
+     */
+    private transient List<OperationResult> pendingAggregatedSubresults;
+
+    /**
+     * Subresults (present in the subresults list) that represent aggregated subresults with given operation and status.
+     */
+    private transient Map<OperationStatusKey, OperationResult> aggregatedSubresults;
+
     private List<String> details;
     private boolean summarizeErrors;
     private boolean summarizePartialErrors;
@@ -252,7 +283,7 @@ public class OperationResult
         recordStart(operation, createArguments());
         building = false;
         if (futureParent != null) {
-            futureParent.addSubresult(this);
+            futureParent.addOrAggregateSubresult(this);
             recordCallerReason(futureParent);
         }
         return this;
@@ -298,6 +329,15 @@ public class OperationResult
     }
 
     private Object[] createArguments() {
+        if (lazyRendering) {
+            // Arguments are used only if profiling logger is at TRACE level.
+            return new Object[] { DebugUtil.lazy(() -> Arrays.toString(createArgumentsEagerly())) };
+        } else {
+            return createArgumentsEagerly();
+        }
+    }
+
+    private Object[] createArgumentsEagerly() {
         List<String> arguments = new ArrayList<>();
         getParams().forEach((key, value) -> arguments.add(key + " => " + value));       // todo what with large values?
         getContext().forEach((key, value) -> arguments.add("c:" + key + " => " + value));
@@ -315,18 +355,85 @@ public class OperationResult
     private OperationResult createSubresult(String operation, boolean minor, Object[] arguments) {
         OperationResult subresult = new OperationResult(operation);
         subresult.recordCallerReason(this);
-        addSubresult(subresult);
-        subresult.recordStart(operation, arguments);
         subresult.importance = minor ? MINOR : NORMAL;
+        addOrAggregateSubresult(subresult);
+        subresult.recordStart(operation, arguments);
         return subresult;
     }
 
+    private void addOrAggregateSubresult(OperationResult subresult) {
+        processPendingAggregatedSubresults(false);
+        if (tracingProfile == null && subresult.tracingProfile == null && isLesserThan(subresult.importance, getAggregateBelow())) {
+            if (pendingAggregatedSubresults == null) {
+                pendingAggregatedSubresults = new ArrayList<>();
+            }
+            pendingAggregatedSubresults.add(subresult);
+        } else {
+            addSubresult(subresult);
+        }
+    }
+
+    /**
+     * Puts finished pending subresults into the tree: successful ones are counted in the respective aggregated
+     * subresult, others are added as they are.
+     *
+     * @param all If true, also unfinished subresults are added (used when this result is being closed).
+     */
+    private void processPendingAggregatedSubresults(boolean all) {
+        if (pendingAggregatedSubresults == null || pendingAggregatedSubresults.isEmpty()) {
+            return;
+        }
+        Iterator<OperationResult> iterator = pendingAggregatedSubresults.iterator();
+        while (iterator.hasNext()) {
+            OperationResult pending = iterator.next();
+            OperationResultStatus pendingStatus = pending.status;
+            if (pendingStatus == OperationResultStatus.SUCCESS || pendingStatus == OperationResultStatus.NOT_APPLICABLE) {
+                iterator.remove();
+                aggregate(pending);
+            } else if (pendingStatus != OperationResultStatus.UNKNOWN || all) {
+                iterator.remove();
+                addSubresult(pending);
+            }
+        }
+    }
+
+    private void aggregate(OperationResult finished) {
+        if (aggregatedSubresults == null) {
+            aggregatedSubresults = new HashMap<>();
+        }
+        OperationStatusKey key = new OperationStatusKey(finished.operation, finished.status);
+        OperationResult aggregated = aggregatedSubresults.get(key);
+        // The aggregated subresult could be removed e.g. by cleanup or summarization. The one that is present
+        // is moved to the end, so it is found quickly and getLastSubresult() keeps returning the latest operation.
+        if (aggregated != null && removeSubresultByIdentity(aggregated)) {
+            aggregated.count += finished.count;
+        } else {
+            aggregated = new OperationResult(finished.operation, finished.status, (String) null);
+            aggregated.importance = finished.importance;
+            aggregated.count = finished.count;
+            aggregatedSubresults.put(key, aggregated);
+        }
+        getSubresultsList().add(aggregated);
+    }
+
+    private boolean removeSubresultByIdentity(OperationResult subresult) {
+        List<OperationResult> list = getSubresultsList();
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (list.get(i) == subresult) {
+                list.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
     // todo determine appropriate places where recordEnd() should be called
     public void recordEnd() {
+        processPendingAggregatedSubresults(true);
         if (invocationRecord != null) {
             // This is not quite clean. We should report the exception via processException method - but that does not allow
             // showing return values that can be present in operation result. So this is a hack until InvocationRecord is fixed.
-            invocationRecord.processReturnValue(getReturns(), cause);
+            invocationRecord.processReturnValue(this::getReturns, cause);
             invocationRecord.afterCall();
             microseconds = invocationRecord.getElapsedTimeMicros();
             cpuMicroseconds = invocationRecord.getCpuTimeMicros();
@@ -463,6 +570,13 @@ public class OperationResult
      */
     @NotNull
     public List<OperationResult> getSubresults() {
+        processPendingAggregatedSubresults(false);
+        return getSubresultsList();
+    }
+
+    // Does not process pending aggregated subresults.
+    @NotNull
+    private List<OperationResult> getSubresultsList() {
         if (subresults == null) {
             subresults = new ArrayList<>();
         }
@@ -473,6 +587,7 @@ public class OperationResult
      * @return last subresult, or null if there are no subresults.
      */
     public OperationResult getLastSubresult() {
+        processPendingAggregatedSubresults(false);
         if (subresults == null || subresults.isEmpty()) {
             return null;
         } else {
@@ -495,7 +610,7 @@ public class OperationResult
     }
 
     public void addSubresult(OperationResult subresult) {
-        getSubresults().add(subresult);
+        getSubresultsList().add(subresult);
         if (subresult.tracingProfile == null) {
             subresult.tracingProfile = tracingProfile;
         }
@@ -1030,6 +1145,10 @@ public class OperationResult
         if (params == null) {
             params = new HashMap<>();
         }
+        if (unrenderedParams != null) {
+            render(unrenderedParams, params);
+            unrenderedParams = null;
+        }
         return params;
     }
 
@@ -1059,37 +1178,37 @@ public class OperationResult
 
     @Override
     public OperationResult addParam(String name, String value) {
-        getParams().put(name, collectionize(value));
+        putParam(name, collectionize(value));
         return this;
     }
 
     @Override
     public OperationResult addParam(String name, PrismObject<? extends ObjectType> value) {
-        getParams().put(name, collectionize(stringify(value)));
+        putParamLazily(name, value);
         return this;
     }
 
     @Override
     public OperationResult addParam(String name, ObjectType value) {
-        getParams().put(name, collectionize(stringify(value)));
+        putParamLazily(name, value);
         return this;
     }
 
     @Override
     public OperationResult addParam(String name, boolean value) {
-        getParams().put(name, collectionize(stringify(value)));
+        putParam(name, collectionize(stringify(value)));
         return this;
     }
 
     @Override
     public OperationResult addParam(String name, long value) {
-        getParams().put(name, collectionize(stringify(value)));
+        putParam(name, collectionize(stringify(value)));
         return this;
     }
 
     @Override
     public OperationResult addParam(String name, int value) {
-        getParams().put(name, collectionize(stringify(value)));
+        putParam(name, collectionize(stringify(value)));
         return this;
     }
 
@@ -1097,52 +1216,52 @@ public class OperationResult
     @SuppressWarnings("unchecked")
     public OperationResult addParam(String name, Class<?> value) {
         if (value != null && ObjectType.class.isAssignableFrom(value)) {
-            getParams().put(name, collectionize(ObjectTypes.getObjectType((Class<? extends ObjectType>) value).getObjectTypeUri()));
+            putParam(name, collectionize(ObjectTypes.getObjectType((Class<? extends ObjectType>) value).getObjectTypeUri()));
         } else {
-            getParams().put(name, collectionize(stringify(value)));
+            putParam(name, collectionize(stringify(value)));
         }
         return this;
     }
 
     @Override
     public OperationResult addParam(String name, QName value) {
-        getParams().put(name, collectionize(value == null ? null : QNameUtil.qNameToUri(value)));
+        putParam(name, collectionize(value == null ? null : QNameUtil.qNameToUri(value)));
         return this;
     }
 
     @Override
     public OperationResult addParam(String name, PolyString value) {
-        getParams().put(name, collectionize(value == null ? null : value.getOrig()));
+        putParam(name, collectionize(value == null ? null : value.getOrig()));
         return this;
     }
 
     @Override
     public OperationResult addParam(String name, ObjectQuery value) {
-        getParams().put(name, collectionize(stringify(value)));
+        putParamLazily(name, value);
         return this;
     }
 
     @Override
     public OperationResult addParam(String name, ObjectDelta<?> value) {
-        getParams().put(name, collectionize(stringify(value)));
+        putParamLazily(name, value);
         return this;
     }
 
     @Override
     public OperationResult addParam(String name, String... values) {
-        getParams().put(name, collectionize(values));
+        putParam(name, collectionize(values));
         return this;
     }
 
     @Override
     public OperationResult addArbitraryObjectAsParam(String paramName, Object paramValue) {
-        getParams().put(paramName, collectionize(stringify(paramValue)));
+        putParamLazily(paramName, paramValue);
         return this;
     }
 
     @Override
     public OperationResult addArbitraryObjectCollectionAsParam(String name, Collection<?> value) {
-        getParams().put(name, stringifyCol(value));
+        putParamLazily(name, new UnrenderedCollection(value));
         return this;
     }
 
@@ -1150,42 +1269,46 @@ public class OperationResult
         if (context == null) {
             context = new HashMap<>();
         }
+        if (unrenderedContext != null) {
+            render(unrenderedContext, context);
+            unrenderedContext = null;
+        }
         return context;
     }
 
     @Override
     public OperationResult addContext(String name, String value) {
-        getContext().put(name, collectionize(value));
+        putContext(name, collectionize(value));
         return this;
     }
 
     @Override
     public OperationResult addContext(String name, PrismObject<? extends ObjectType> value) {
-        getContext().put(name, collectionize(stringify(value)));
+        putContextLazily(name, value);
         return this;
     }
 
     @Override
     public OperationResult addContext(String name, ObjectType value) {
-        getContext().put(name, collectionize(stringify(value)));
+        putContextLazily(name, value);
         return this;
     }
 
     @Override
     public OperationResult addContext(String name, boolean value) {
-        getContext().put(name, collectionize(stringify(value)));
+        putContext(name, collectionize(stringify(value)));
         return this;
     }
 
     @Override
     public OperationResult addContext(String name, long value) {
-        getContext().put(name, collectionize(stringify(value)));
+        putContext(name, collectionize(stringify(value)));
         return this;
     }
 
     @Override
     public OperationResult addContext(String name, int value) {
-        getContext().put(name, collectionize(stringify(value)));
+        putContext(name, collectionize(stringify(value)));
         return this;
     }
 
@@ -1193,52 +1316,52 @@ public class OperationResult
     @SuppressWarnings("unchecked")
     public OperationResult addContext(String name, Class<?> value) {
         if (value != null && ObjectType.class.isAssignableFrom(value)) {
-            getContext().put(name, collectionize(ObjectTypes.getObjectType((Class<? extends ObjectType>) value).getObjectTypeUri()));
+            putContext(name, collectionize(ObjectTypes.getObjectType((Class<? extends ObjectType>) value).getObjectTypeUri()));
         } else {
-            getContext().put(name, collectionize(stringify(value)));
+            putContext(name, collectionize(stringify(value)));
         }
         return this;
     }
 
     @Override
     public OperationResult addContext(String name, QName value) {
-        getContext().put(name, collectionize(value == null ? null : QNameUtil.qNameToUri(value)));
+        putContext(name, collectionize(value == null ? null : QNameUtil.qNameToUri(value)));
         return this;
     }
 
     @Override
     public OperationResult addContext(String name, PolyString value) {
-        getContext().put(name, collectionize(value == null ? null : value.getOrig()));
+        putContext(name, collectionize(value == null ? null : value.getOrig()));
         return this;
     }
 
     @Override
     public OperationResult addContext(String name, ObjectQuery value) {
-        getContext().put(name, collectionize(stringify(value)));
+        putContextLazily(name, value);
         return this;
     }
 
     @Override
     public OperationResult addContext(String name, ObjectDelta<?> value) {
-        getContext().put(name, collectionize(stringify(value)));
+        putContextLazily(name, value);
         return this;
     }
 
     @Override
     public OperationResult addContext(String name, String... values) {
-        getContext().put(name, collectionize(values));
+        putContext(name, collectionize(values));
         return this;
     }
 
     @Override
     public OperationResult addArbitraryObjectAsContext(String name, Object value) {
-        getContext().put(name, collectionize(stringify(value)));
+        putContextLazily(name, value);
         return this;
     }
 
     @Override
     public OperationResult addArbitraryObjectCollectionAsContext(String paramName, Collection<?> paramValue) {
-        getContext().put(paramName, stringifyCol(paramValue));
+        putContextLazily(paramName, new UnrenderedCollection(paramValue));
         return this;
     }
 
@@ -1247,6 +1370,10 @@ public class OperationResult
         if (returns == null) {
             returns = new HashMap<>();
         }
+        if (unrenderedReturns != null) {
+            render(unrenderedReturns, returns);
+            unrenderedReturns = null;
+        }
         return returns;
     }
 
@@ -1269,67 +1396,181 @@ public class OperationResult
     }
 
     public void addReturn(String name, String value) {
-        getReturns().put(name, collectionize(value));
+        putReturn(name, collectionize(value));
     }
 
     public void addReturn(String name, PrismObject<? extends ObjectType> value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturnLazily(name, value);
     }
 
     public void addReturn(String name, ObjectType value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturnLazily(name, value);
     }
 
     public void addReturn(String name, boolean value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturn(name, collectionize(stringify(value)));
     }
 
     public void addReturn(String name, long value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturn(name, collectionize(stringify(value)));
     }
 
     public void addReturn(String name, int value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturn(name, collectionize(stringify(value)));
     }
 
     @SuppressWarnings("unchecked")
     public void addReturn(String name, Class<?> value) {
         if (value != null && ObjectType.class.isAssignableFrom(value)) {
-            getReturns().put(name, collectionize(ObjectTypes.getObjectType((Class<? extends ObjectType>) value).getObjectTypeUri()));
+            putReturn(name, collectionize(ObjectTypes.getObjectType((Class<? extends ObjectType>) value).getObjectTypeUri()));
         } else {
-            getReturns().put(name, collectionize(stringify(value)));
+            putReturn(name, collectionize(stringify(value)));
         }
     }
 
     public void addReturn(String name, QName value) {
-        getReturns().put(name, collectionize(value == null ? null : QNameUtil.qNameToUri(value)));
+        putReturn(name, collectionize(value == null ? null : QNameUtil.qNameToUri(value)));
     }
 
     public void addReturn(String name, PolyString value) {
-        getReturns().put(name, collectionize(value == null ? null : value.getOrig()));
+        putReturn(name, collectionize(value == null ? null : value.getOrig()));
     }
 
     public void addReturn(String name, ObjectQuery value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturnLazily(name, value);
     }
 
     public void addReturn(String name, ObjectDelta<?> value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturnLazily(name, value);
     }
 
     public void addReturn(String name, String... values) {
-        getReturns().put(name, collectionize(values));
+        putReturn(name, collectionize(values));
     }
 
     public void addArbitraryObjectAsReturn(String name, Object value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturnLazily(name, value);
     }
 
     public void addArbitraryObjectCollectionAsReturn(String paramName, Collection<?> paramValue) {
-        getReturns().put(paramName, stringifyCol(paramValue));
+        putReturnLazily(paramName, new UnrenderedCollection(paramValue));
+    }
+
+    private void putParam(String name, Collection<String> values) {
+        removeValue(unrenderedParams, name);
+        params = putValue(params, name, values);
+    }
+
+    private void putParamLazily(String name, Object value) {
+        if (lazyRendering && isImmutable(value)) {
+            removeValue(params, name);
+            unrenderedParams = putValue(unrenderedParams, name, value);
+        } else {
+            putParam(name, render(value));
+        }
+    }
+
+    private void putContext(String name, Collection<String> values) {
+        removeValue(unrenderedContext, name);
+        context = putValue(context, name, values);
+    }
+
+    private void putContextLazily(String name, Object value) {
+        if (lazyRendering && isImmutable(value)) {
+            removeValue(context, name);
+            unrenderedContext = putValue(unrenderedContext, name, value);
+        } else {
+            putContext(name, render(value));
+        }
+    }
+
+    private void putReturn(String name, Collection<String> values) {
+        removeValue(unrenderedReturns, name);
+        returns = putValue(returns, name, values);
+    }
+
+    private void putReturnLazily(String name, Object value) {
+        if (lazyRendering && isImmutable(value)) {
+            removeValue(returns, name);
+            unrenderedReturns = putValue(unrenderedReturns, name, value);
+        } else {
+            putReturn(name, render(value));
+        }
+    }
+
+    private static <V> Map<String, V> putValue(Map<String, V> map, String name, V value) {
+        Map<String, V> target = map != null ? map : new HashMap<>();
+        target.put(name, value);
+        return target;
+    }
+
+    private static void removeValue(Map<String, ?> map, String name) {
+        if (map != null) {
+            map.remove(name);
+        }
+    }
+
+    private static void render(Map<String, Object> unrendered, Map<String, Collection<String>> target) {
+        unrendered.forEach((name, value) -> target.put(name, render(value)));
     }
 
-    private String stringify(Object value) {
+    private static Collection<String> render(Object value) {
+        if (value instanceof UnrenderedCollection) {
+            return stringifyCol(((UnrenderedCollection) value).values);
+        } else {
+            return collectionize(stringify(value));
+        }
+    }
+
+    /**
+     * Can the value be safely rendered later? Callers often modify objects after putting them into the result,
+     * so only values that are frozen (or immutable by nature) qualify.
+     */
+    private static boolean isImmutable(Object value) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Enum || value instanceof QName) {
+            return true;
+        } else if (value instanceof UnrenderedCollection) {
+            Collection<?> values = ((UnrenderedCollection) value).values;
+            return values == null || values.stream().allMatch(OperationResult::isImmutable);
+        } else if (value instanceof Objectable) {
+            return ((Objectable) value).asPrismObject().isImmutable();
+        } else {
+            return value instanceof Freezable && ((Freezable) value).isImmutable();
+        }
+    }
+
+    private void renderAll() {
+        if (unrenderedParams != null) {
+            getParams();
+        }
+        if (unrenderedContext != null) {
+            getContext();
+        }
+        if (unrenderedReturns != null) {
+            getReturns();
+        }
+    }
+
+    /**
+     * Collection of values that is to be rendered as a multi-valued parameter (as opposed to single value that
+     * happens to be a collection).
+     */
+    private static class UnrenderedCollection {
+        private final Collection<?> values;
+
+        private UnrenderedCollection(Collection<?> values) {
+            this.values = values != null ? new ArrayList<>(values) : null;
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        renderAll();
+        processPendingAggregatedSubresults(true);
+        out.defaultWriteObject();
+    }
+
+    private static String stringify(Object value) {
         if (value == null) {
             return null;
         } else {
@@ -1337,17 +1578,17 @@ public class OperationResult
         }
     }
 
-    private Collection<String> collectionize(String value) {
+    private static Collection<String> collectionize(String value) {
         Collection<String> out = new ArrayList<>(1);
         out.add(value);
         return out;
     }
 
-    private Collection<String> collectionize(String... values) {
+    private static Collection<String> collectionize(String... values) {
         return Arrays.asList(values);
     }
 
-    private Collection<String> stringifyCol(Collection<?> values) {
+    private static Collection<String> stringifyCol(Collection<?> values) {
         if (values == null) {
             return null;
         }
@@ -1889,6 +2130,7 @@ public class OperationResult
         }
 
         OperationResultImportanceType preserveDuringCleanup = getPreserveDuringCleanup();
+        processPendingAggregatedSubresults(false);
 
         if (status == OperationResultStatus.UNKNOWN) {
             IllegalStateException illegalStateException = new IllegalStateException("Attempt to cleanup result of operation " + operation + " that is still UNKNOWN");
@@ -2178,6 +2420,8 @@ public class OperationResult
     }
 
     public OperationResult clone(Integer maxDepth, boolean full) {
+        renderAll();
+        processPendingAggregatedSubresults(false);
         OperationResult clone = new OperationResult(operation);
 
         clone.operationKind = operationKind;
@@ -2252,6 +2496,18 @@ public class OperationResult
         return defaultIfNull(getCurrentHandlingStrategy().getPreserveDuringCleanup(), NORMAL);
     }
 
+    /**
+     * Subresults with importance lower than this one are aggregated. MINOR (the default) means none.
+     */
+    @NotNull
+    private static OperationResultImportanceType getAggregateBelow() {
+        return defaultIfNull(getCurrentHandlingStrategy().getAggregateBelow(), MINOR);
+    }
+
+    private static boolean isLazyParameterRendering() {
+        return Boolean.TRUE.equals(getCurrentHandlingStrategy().isLazyParameterRendering());
+    }
+
     public static void applyOperationResultHandlingStrategy(
             @NotNull List<OperationResultHandlingStrategyType> configuredStrategies, Integer stripThresholdDeprecated) {
         if (!configuredStrategies.isEmpty()) {
@@ -2305,6 +2561,10 @@ public class OperationResult
         LOCAL_HANDLING_STRATEGY.set(selected);
     }
 
+    public static void unsetThreadLocalHandlingStrategy() {
+        LOCAL_HANDLING_STRATEGY.remove();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -2314,6 +2574,8 @@ public class OperationResult
             return false;
         }
         OperationResult result = (OperationResult) o;
+        renderAll();
+        result.renderAll();
         return token == result.token &&
                 count == result.count &&
                 hiddenRecordsCount == result.hiddenRecordsCount &&
@@ -2346,6 +2608,7 @@ public class OperationResult
 
     @Override
     public int hashCode() {
+        renderAll();
         return Objects.hash(
                 operation, qualifiers, status, params, context, returns, token, messageCode,
                 message, userFriendlyMessage, cause, count, hiddenRecordsCount, subresults, details,
@@ -10,12 +10,16 @@ import static org.testng.AssertJUnit.assertEquals;
 
 import static com.evolveum.midpoint.prism.util.PrismTestUtil.getPrismContext;
 import static com.evolveum.midpoint.xml.ns._public.common.common_3.OperationResultImportanceType.MAJOR;
+import static com.evolveum.midpoint.xml.ns._public.common.common_3.OperationResultImportanceType.NORMAL;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.testng.annotations.Test;
 
+import com.evolveum.midpoint.prism.Freezable;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
@@ -23,10 +27,13 @@ import com.evolveum.midpoint.schema.result.OperationResultStatus;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.OperationResultHandlingStrategyType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.OperationResultType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
 
 public class TestOperationResult extends AbstractSchemaTest {
 
     private static final String LOCAL_1 = "local1";
+    private static final String LIGHTWEIGHT = "lightweight";
 
     @Test
     public void testCleanup() throws Exception {
@@ -208,6 +215,117 @@ public class TestOperationResult extends AbstractSchemaTest {
         checkResultConversion(root, true);
     }
 
+    @Test
+    public void testLightweightMode() throws Exception {
+        given("strategy with lazy rendering and aggregation of minor results");
+        OperationResult.applyOperationResultHandlingStrategy(
+                Arrays.asList(
+                        new OperationResultHandlingStrategyType(getPrismContext())
+                                .global(true),
+                        new OperationResultHandlingStrategyType(getPrismContext())
+                                .name(LIGHTWEIGHT)
+                                .lazyParameterRendering(true)
+                                .aggregateBelow(NORMAL)
+                ), null);
+        OperationResult.setThreadLocalHandlingStrategy(LIGHTWEIGHT);
+        try {
+            AtomicInteger renderings = new AtomicInteger();
+            Object value = new Freezable() {
+                @Override
+                public boolean isImmutable() {
+                    return true;
+                }
+
+                @Override
+                public void freeze() {
+                }
+
+                @Override
+                public String toString() {
+                    renderings.incrementAndGet();
+                    return "value";
+                }
+            };
+
+            when("minor and normal subresults are created");
+            OperationResult root = new OperationResult("dummy");
+            for (int i = 0; i < 100; i++) {
+                OperationResult minor = root.createMinorSubresult("minor");
+                minor.addArbitraryObjectAsParam("value", value);
+                minor.recordSuccess();
+            }
+            OperationResult failedMinor = root.createMinorSubresult("minor");
+            failedMinor.recordFatalError("Fatal");
+            OperationResult normal = root.createSubresult("normal");
+            normal.addArbitraryObjectAsParam("value", value);
+            normal.recordSuccess();
+            root.computeStatus();
+
+            then("nothing is rendered and successful minor results are aggregated");
+            System.out.println("Lightweight result:\n" + root.debugDump());
+            assertEquals("Wrong overall status", OperationResultStatus.FATAL_ERROR, root.getStatus());
+            assertEquals("Wrong # of subresults", 3, root.getSubresults().size());
+            OperationResult aggregated = root.getSubresults().get(0);
+            assertEquals("Wrong operation in aggregated result", "minor", aggregated.getOperation());
+            assertEquals("Wrong status in aggregated result", OperationResultStatus.SUCCESS, aggregated.getStatus());
+            assertEquals("Wrong count in aggregated result", 100, aggregated.getCount());
+            assertEquals("Wrong # of renderings", 1, renderings.get()); // by debugDump of the normal subresult
+
+            and("parameters are rendered when asked for");
+            assertEquals("Wrong parameter value", "value", normal.getParamSingle("value"));
+            checkResultConversion(root, true);
+            assertEquals("Wrong # of renderings", 1, renderings.get());
+        } finally {
+            OperationResult.setThreadLocalHandlingStrategy(null);
+        }
+    }
+
+    @Test
+    public void testLazyRenderingOfMutableValues() throws Exception {
+        given("strategy with lazy rendering");
+        OperationResult.applyOperationResultHandlingStrategy(
+                Arrays.asList(
+                        new OperationResultHandlingStrategyType(getPrismContext())
+                                .global(true),
+                        new OperationResultHandlingStrategyType(getPrismContext())
+                                .name(LIGHTWEIGHT)
+                                .lazyParameterRendering(true)
+                ), null);
+        OperationResult.setThreadLocalHandlingStrategy(LIGHTWEIGHT);
+        try {
+            UserType mutable = new UserType(getPrismContext())
+                    .oid("c5a4fa5e-0a2f-4d8b-9e64-2b1c0b0f7a01")
+                    .name("jack");
+            UserType frozen = new UserType(getPrismContext())
+                    .oid("c5a4fa5e-0a2f-4d8b-9e64-2b1c0b0f7a02")
+                    .name("will");
+            frozen.asPrismObject().freeze();
+            String mutableAsAdded = mutable.asPrismObject().toString();
+            String frozenAsAdded = frozen.asPrismObject().toString();
+
+            when("objects are added to the result and the mutable one is changed afterwards");
+            OperationResult result = new OperationResult("dummy");
+            result.addParam("mutable", mutable);
+            result.addContext("mutable", mutable.asPrismObject());
+            result.addReturn("mutable", mutable);
+            result.addArbitraryObjectCollectionAsParam("mutables", List.of(mutable));
+            result.addParam("frozen", frozen);
+            mutable.setName(PolyStringType.fromOrig("elaine"));
+            result.recordSuccess();
+
+            then("the result shows the objects as they were when added");
+            assertEquals("Wrong mutable param", mutableAsAdded, result.getParamSingle("mutable"));
+            assertEquals("Wrong mutable context", List.of(mutableAsAdded),
+                    new ArrayList<>(result.getContext().get("mutable")));
+            assertEquals("Wrong mutable return", mutableAsAdded, result.getReturnSingle("mutable"));
+            assertEquals("Wrong mutable collection param", List.of(mutableAsAdded),
+                    new ArrayList<>(result.getParams().get("mutables")));
+            assertEquals("Wrong frozen param", frozenAsAdded, result.getParamSingle("frozen"));
+        } finally {
+            OperationResult.setThreadLocalHandlingStrategy(null);
+        }
+    }
+
     private void checkResultConversion(OperationResult result, boolean assertEquals) throws SchemaException {
         when();
         OperationResultType resultType = result.createOperationResultType();
@@ -8,7 +8,9 @@ package com.evolveum.midpoint.schema;
 
 import static org.testng.AssertJUnit.*;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.List;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
@@ -276,6 +278,49 @@ public class TestSchemaRegistry extends AbstractUnitTest {
         assertNotNull("No timestamp documentation", timestampDef.getDocumentation());
     }
 
+    /**
+     * Schemas loaded from the snapshot should be the same as the parsed ones.
+     */
+    @Test
+    public void testSchemaSnapshot() throws Exception {
+        given("no schema snapshot");
+        File snapshotFile = new File("target/schema-snapshot.bin");
+        Files.deleteIfExists(snapshotFile.toPath());
+        MidPointPrismContextFactory factory = new MidPointPrismContextFactory() {
+            @Override
+            protected File getSchemaSnapshotFile() {
+                return snapshotFile;
+            }
+        };
+
+        when("schemas are parsed");
+        PrismContext parsedContext = factory.createInitializedPrismContext();
+
+        then("snapshot is created");
+        assertTrue("No schema snapshot", snapshotFile.exists());
+        assertTrue(snapshotFile.setLastModified(0)); // to check it is not re-created
+
+        when("schemas are loaded from the snapshot");
+        PrismContext loadedContext = factory.createInitializedPrismContext();
+
+        then("definitions are the same");
+        assertEquals("Schema snapshot was re-created", 0, snapshotFile.lastModified());
+        PrismObjectDefinition<UserType> parsedUserDef =
+                parsedContext.getSchemaRegistry().findObjectDefinitionByCompileTimeClass(UserType.class);
+        PrismObjectDefinition<UserType> loadedUserDef =
+                loadedContext.getSchemaRegistry().findObjectDefinitionByCompileTimeClass(UserType.class);
+        assertNotNull("No user definition", loadedUserDef);
+        assertNotSame("User definition is shared", parsedUserDef, loadedUserDef);
+        assertNotNull("No prism context in user definition", loadedUserDef.getPrismContext());
+        assertEquals("Different user definitions", parsedUserDef.debugDump(), loadedUserDef.debugDump());
+        assertEquals("Different number of schemas", parsedContext.getSchemaRegistry().getSchemas().size(),
+                loadedContext.getSchemaRegistry().getSchemas().size());
+
+        and("objects can be parsed using loaded definitions");
+        PrismObject<UserType> user = loadedContext.parseObject(new File("src/test/resources/common/user-jack.xml"));
+        assertEquals("Wrong user name", "jack", user.asObjectable().getName().getOrig());
+    }
+
     private MidPointPrismContextFactory getContextFactory() {
         return new MidPointPrismContextFactory();
     }
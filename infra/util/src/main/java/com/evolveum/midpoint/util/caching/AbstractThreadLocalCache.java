@@ -11,101 +11,119 @@ import com.evolveum.midpoint.util.exception.SystemException;
 import com.evolveum.midpoint.util.logging.Trace;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * Common supertype for various thread-local caches (parts of RepositoryCache but also others).
+ *
+ * Despite the name, the instances are not bound to threads directly: they are held by a {@link CacheScope}
+ * that is bound to the current thread and that can be carried along with the operation to other threads.
+ * Because of this, the statistics (and the content) must be thread-safe.
  */
 public abstract class AbstractThreadLocalCache {
 
-    private int entryCount = 0;
+    private final AtomicInteger entryCount = new AtomicInteger();
 
-    private int hits = 0;
-    private int misses = 0;
-    private int passes = 0;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger passes = new AtomicInteger();
 
     private CacheConfiguration configuration;
 
-    public static <T extends AbstractThreadLocalCache> T enter(ConcurrentHashMap<Thread, T> cacheThreadMap, Class<T> cacheClass,
-            CacheConfiguration configuration, Trace logger) {
-        Thread currentThread = Thread.currentThread();
-        T inst = cacheThreadMap.get(currentThread);
-        logger.trace("Cache: ENTER for thread {}, {} ({})", currentThread.getName(), inst, cacheClass.getSimpleName());
+    public static <T extends AbstractThreadLocalCache> T enter(Class<T> cacheClass, CacheConfiguration configuration,
+            Trace logger) {
+        CacheScope scope = CacheScope.getOrCreateCurrent();
+        T inst = scope.get(cacheClass);
+        logger.trace("Cache: ENTER for {}, {} ({})", scope, inst, cacheClass.getSimpleName());
         if (inst == null) {
-            logger.trace("Cache: creating for thread {}", currentThread.getName());
+            logger.trace("Cache: creating for {}", scope);
             try {
                 inst = cacheClass.getDeclaredConstructor().newInstance();
             } catch (InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
                 throw new SystemException("Couldn't instantiate cache: " + e.getMessage(), e);
             }
             inst.setConfiguration(configuration);
-            cacheThreadMap.put(currentThread, inst);
+            scope.put(cacheClass, inst);
         }
         inst.incrementEntryCount();
         return inst;
     }
 
-    public static <T extends AbstractThreadLocalCache> T exit(ConcurrentHashMap<Thread, T> cacheThreadMap, Trace logger) {
-        Thread currentThread = Thread.currentThread();
-        T inst = cacheThreadMap.get(currentThread);
-        logger.trace("Cache: EXIT for thread {}, {}", Thread.currentThread().getName(), inst);
+    public static <T extends AbstractThreadLocalCache> T exit(Class<T> cacheClass, Trace logger) {
+        CacheScope scope = CacheScope.current();
+        T inst = scope != null ? scope.get(cacheClass) : null;
+        logger.trace("Cache: EXIT for {}, {} ({})", scope, inst, cacheClass.getSimpleName());
         if (inst == null || inst.getEntryCount() == 0) {
             logger.error("Cache: Attempt to exit cache that does not exist or has entry count 0: {}", inst);
-            cacheThreadMap.remove(currentThread);
+            if (scope != null) {
+                scope.remove(cacheClass);
+            }
         } else {
-            inst.decrementEntryCount();
-            if (inst.getEntryCount() <= 0) {
-                destroy(cacheThreadMap, logger);
+            if (inst.decrementEntryCount() <= 0) {
+                destroy(cacheClass, logger);
             }
         }
         return inst;
     }
 
-    public static <T extends AbstractThreadLocalCache> void destroy(ConcurrentHashMap<Thread, T> cacheThreadMap, Trace logger) {
-        Thread currentThread = Thread.currentThread();
-        T inst = cacheThreadMap.get(currentThread);
+    public static <T extends AbstractThreadLocalCache> void destroy(Class<T> cacheClass, Trace logger) {
+        CacheScope scope = CacheScope.current();
+        T inst = scope != null ? scope.get(cacheClass) : null;
         if (inst != null) {
-            logger.trace("Cache: DESTROY for thread {}: {}", Thread.currentThread().getName(), inst.getCacheStatisticsString());
+            logger.trace("Cache: DESTROY for {}: {}", scope, inst.getCacheStatisticsString());
             //CachePerformanceCollector.INSTANCE.onCacheDestroy(inst);
-            cacheThreadMap.remove(currentThread);
+            scope.remove(cacheClass);
         }
     }
 
+    /**
+     * Returns the cache instance for the current scope (or null if the cache was not entered).
+     */
+    public static <T extends AbstractThreadLocalCache> T getCurrent(Class<T> cacheClass) {
+        CacheScope scope = CacheScope.current();
+        return scope != null ? scope.get(cacheClass) : null;
+    }
+
     String getCacheStatisticsString() {
+        int hits = getHits();
+        int misses = getMisses();
+        int passes = getPasses();
         return "hits: " + hits + ", misses: " + misses + ", passes: " + passes +
                 (hits+misses+passes != 0 ? ", % of hits: " + (100.0f * hits / (hits + misses + passes)) : "");
     }
 
     int getHits() {
-        return hits;
+        return hits.get();
     }
 
     int getMisses() {
-        return misses;
+        return misses.get();
     }
 
     int getPasses() {
-        return passes;
+        return passes.get();
     }
 
     void incrementEntryCount() {
-        entryCount++;
+        entryCount.incrementAndGet();
     }
 
-    void decrementEntryCount() {
-        entryCount--;
+    int decrementEntryCount() {
+        return entryCount.decrementAndGet();
     }
 
     public int getEntryCount() {
-        return entryCount;
+        return entryCount.get();
     }
 
-    public static boolean exists(ConcurrentHashMap<Thread, ? extends AbstractThreadLocalCache> instances) {
-        return instances.get(Thread.currentThread()) != null;
+    public static boolean exists(Class<? extends AbstractThreadLocalCache> cacheClass) {
+        return getCurrent(cacheClass) != null;
     }
 
-    public static <T extends AbstractThreadLocalCache> String debugDump(ConcurrentHashMap<Thread, T> instances) {
-        T inst = instances.get(Thread.currentThread());
+    public static <T extends AbstractThreadLocalCache> String debugDump(Class<T> cacheClass) {
+        T inst = getCurrent(cacheClass);
         StringBuilder sb = new StringBuilder("Cache ");
         if (inst != null) {
             sb.append("exists (").append(inst.getCacheStatisticsString()).append("), entry count ");
@@ -121,15 +139,15 @@ public abstract class AbstractThreadLocalCache {
     abstract public String description();
 
     public void registerHit() {
-        hits++;
+        hits.incrementAndGet();
     }
 
     public void registerMiss() {
-        misses++;
+        misses.incrementAndGet();
     }
 
     public void registerPass() {
-        passes++;
+        passes.incrementAndGet();
     }
 
     public boolean supportsObjectType(Class<?> type) {
@@ -159,9 +177,18 @@ public abstract class AbstractThreadLocalCache {
                 '}';
     }
 
-    public static <T extends AbstractThreadLocalCache> int getTotalSize(ConcurrentHashMap<Thread, T> cacheInstances) {
+    /**
+     * Returns instances of given cache in all scopes (i.e. all running operations).
+     */
+    public static <T extends AbstractThreadLocalCache> Collection<T> getAllInstances(Class<T> cacheClass) {
+        return CacheScope.getAllCaches(cacheClass).stream()
+                .map(scopedCache -> scopedCache.cache)
+                .collect(Collectors.toList());
+    }
+
+    public static <T extends AbstractThreadLocalCache> int getTotalSize(Class<T> cacheClass) {
         int rv = 0;
-        for (T cacheInstance : cacheInstances.values()) {
+        for (T cacheInstance : getAllInstances(cacheClass)) {
             rv += cacheInstance.getSize();
         }
         return rv;
@@ -169,9 +196,12 @@ public abstract class AbstractThreadLocalCache {
 
     protected abstract int getSize();
 
-    public static <T extends AbstractThreadLocalCache> void dumpContent(ConcurrentHashMap<Thread, T> cacheInstances) {
-        cacheInstances.forEach((thread, cache) -> cache.dumpContent(thread.getName()));
+    public static <T extends AbstractThreadLocalCache> void dumpContent(Class<T> cacheClass) {
+        CacheScope.getAllCaches(cacheClass).forEach(scopedCache -> scopedCache.cache.dumpContent(scopedCache.scope.getName()));
     }
 
+    /**
+     * @param threadName Name of the scope, i.e. of the thread that created it.
+     */
     protected abstract void dumpContent(String threadName);
 }
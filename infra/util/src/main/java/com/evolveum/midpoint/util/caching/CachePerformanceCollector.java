@@ -148,14 +148,8 @@ public class CachePerformanceCollector implements DebugDumpable {
 
     private CacheData getOrCreate(Map<String, CacheData> performanceMap, String key) {
         if (performanceMap != null) {
-            CacheData existingData = performanceMap.get(key);
-            if (existingData != null) {
-                return existingData;
-            } else {
-                CacheData newData = new CacheData();
-                performanceMap.put(key, newData);
-                return newData;
-            }
+            // The map can be shared by more threads (see CacheScope), so we must not lose the data.
+            return performanceMap.computeIfAbsent(key, k -> new CacheData());
         } else {
             return null;
         }
@@ -186,6 +180,18 @@ public class CachePerformanceCollector implements DebugDumpable {
         return threadLocalPerformanceMap.get();
     }
 
+    /**
+     * Sets thread-local performance map (obtained in a different thread), or removes it if null is provided.
+     * Used to continue with the statistics collection when an operation moves to a different thread.
+     */
+    public void setThreadLocalPerformanceMap(Map<String, CacheData> map) {
+        if (map != null) {
+            threadLocalPerformanceMap.set(map);
+        } else {
+            threadLocalPerformanceMap.remove();
+        }
+    }
+
     /**
      * Starts gathering thread-local performance information, clearing existing (if any).
      */
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.util.caching;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Operation-scoped set of "thread-local" caches (see {@link AbstractThreadLocalCache}).
+ *
+ * The scope is created when the first cache is entered in the current thread and is discarded when the last cache
+ * in it is exited. Cache instances are held by the scope and not by a global map keyed by thread. So the scope
+ * (and the cache content, including hit/miss statistics) can be carried along with the operation to a different
+ * thread, e.g. to a worker of a pooled executor or a virtual thread:
+ *
+ * ----
+ * CacheScope scope = CacheScope.capture();
+ * executor.submit(() -> {
+ *     try (CacheScope.Binding ignored = CacheScope.attach(scope)) {
+ *         ...
+ *     }
+ * });
+ * ----
+ *
+ * The thread-local cache performance statistics of the capturing thread (usually the ones of a task, see
+ * {@link CachePerformanceCollector#startThreadLocalPerformanceInformationCollection()}) are carried as well.
+ *
+ * Caches in a scope may be used by more threads at once, so their content must be thread-safe.
+ */
+public final class CacheScope {
+
+    private static final ThreadLocal<CacheScope> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Scopes that currently contain at least one cache. Used for state information and content dumping.
+     */
+    private static final Set<CacheScope> LIVE_SCOPES = ConcurrentHashMap.newKeySet();
+
+    @NotNull private final String name;
+
+    @NotNull private final Map<Class<? extends AbstractThreadLocalCache>, AbstractThreadLocalCache> caches =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Thread-local cache performance map of the thread that uses the scope. Null if there is none.
+     */
+    private volatile Map<String, CachePerformanceCollector.CacheData> performanceMap;
+
+    private CacheScope(@NotNull String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the scope bound to the current thread (or null if there is none).
+     */
+    public static CacheScope current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Returns the scope bound to the current thread, so it can be attached to a different one.
+     * Null if there is no scope (i.e. no cache was entered in the current thread).
+     */
+    public static CacheScope capture() {
+        CacheScope scope = CURRENT.get();
+        if (scope != null) {
+            scope.performanceMap = CachePerformanceCollector.INSTANCE.getThreadLocalPerformanceMap();
+        }
+        return scope;
+    }
+
+    /**
+     * Binds given scope (captured in another thread) to the current thread. Closing the binding restores
+     * the original state. Null scope means no caches.
+     */
+    @NotNull
+    public static Binding attach(CacheScope scope) {
+        CacheScope previousScope = CURRENT.get();
+        Map<String, CachePerformanceCollector.CacheData> previousPerformanceMap =
+                CachePerformanceCollector.INSTANCE.getThreadLocalPerformanceMap();
+        set(scope);
+        if (scope != null && scope.performanceMap != null) {
+            CachePerformanceCollector.INSTANCE.setThreadLocalPerformanceMap(scope.performanceMap);
+        }
+        return new Binding(previousScope, previousPerformanceMap);
+    }
+
+    @NotNull
+    static CacheScope getOrCreateCurrent() {
+        CacheScope scope = CURRENT.get();
+        if (scope == null) {
+            scope = new CacheScope(Thread.currentThread().getName());
+            CURRENT.set(scope);
+        }
+        return scope;
+    }
+
+    private static void set(CacheScope scope) {
+        if (scope != null) {
+            CURRENT.set(scope);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    <T extends AbstractThreadLocalCache> T get(Class<T> cacheClass) {
+        //noinspection unchecked
+        return (T) caches.get(cacheClass);
+    }
+
+    <T extends AbstractThreadLocalCache> void put(Class<T> cacheClass, T cache) {
+        caches.put(cacheClass, cache);
+        LIVE_SCOPES.add(this);
+    }
+
+    void remove(Class<? extends AbstractThreadLocalCache> cacheClass) {
+        caches.remove(cacheClass);
+        if (caches.isEmpty()) {
+            LIVE_SCOPES.remove(this);
+            if (CURRENT.get() == this) {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns caches of given class in all live scopes.
+     */
+    static <T extends AbstractThreadLocalCache> Collection<ScopedCache<T>> getAllCaches(Class<T> cacheClass) {
+        if (LIVE_SCOPES.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Collection<ScopedCache<T>> rv = new ArrayList<>();
+        for (CacheScope scope : LIVE_SCOPES) {
+            T cache = scope.get(cacheClass);
+            if (cache != null) {
+                rv.add(new ScopedCache<>(scope, cache));
+            }
+        }
+        return rv;
+    }
+
+    static class ScopedCache<T extends AbstractThreadLocalCache> {
+        final CacheScope scope;
+        final T cache;
+
+        private ScopedCache(CacheScope scope, T cache) {
+            this.scope = scope;
+            this.cache = cache;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CacheScope{" + name + ": " + caches.size() + " cache(s)}";
+    }
+
+    /**
+     * Binding of a scope to a thread. See {@link #attach(CacheScope)}.
+     */
+    public static final class Binding implements AutoCloseable {
+
+        private final CacheScope previousScope;
+        private final Map<String, CachePerformanceCollector.CacheData> previousPerformanceMap;
+
+        private Binding(CacheScope previousScope, Map<String, CachePerformanceCollector.CacheData> previousPerformanceMap) {
+            this.previousScope = previousScope;
+            this.previousPerformanceMap = previousPerformanceMap;
+        }
+
+        @Override
+        public void close() {
+            set(previousScope);
+            CachePerformanceCollector.INSTANCE.setThreadLocalPerformanceMap(previousPerformanceMap);
+        }
+    }
+}
@@ -20,6 +20,7 @@ import java.lang.management.ThreadMXBean;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * This class provides basically the functionality of MidpointInterceptor. However it was refactored to be callable also
@@ -197,6 +198,15 @@ public final class OperationInvocationRecord implements Serializable {
         }
     }
 
+    /**
+     * As {@link #processReturnValue(Map, Throwable)} but obtains the returns only if they are really needed.
+     */
+    public void processReturnValue(Supplier<Map<String, Collection<String>>> returnsSupplier, Throwable cause) {
+        if (traceEnabled) {
+            processReturnValue(returnsSupplier.get(), cause);
+        }
+    }
+
     public <T extends Throwable> T processException(T e) {
         exceptionName = e.getClass().getName();
         gotException = true;
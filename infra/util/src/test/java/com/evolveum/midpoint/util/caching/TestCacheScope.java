@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.util.caching;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Tests carrying thread-local caches (and their statistics) to other threads via {@link CacheScope}.
+ */
+public class TestCacheScope extends AbstractUnitTest {
+
+    private static final Trace LOGGER = TraceManager.getTrace(TestCacheScope.class);
+
+    public static class TestCache extends AbstractThreadLocalCache {
+
+        @Override
+        public String description() {
+            return "test cache";
+        }
+
+        @Override
+        protected int getSize() {
+            return 0;
+        }
+
+        @Override
+        protected void dumpContent(String threadName) {
+        }
+    }
+
+    @Test
+    public void test100EnterAndExit() {
+        TestCache cache = AbstractThreadLocalCache.enter(TestCache.class, null, LOGGER);
+        AbstractThreadLocalCache.enter(TestCache.class, null, LOGGER);
+        assertThat(AbstractThreadLocalCache.getCurrent(TestCache.class)).isSameAs(cache);
+        assertThat(cache.getEntryCount()).isEqualTo(2);
+        assertThat(CacheScope.current()).isNotNull();
+
+        AbstractThreadLocalCache.exit(TestCache.class, LOGGER);
+        assertThat(AbstractThreadLocalCache.exists(TestCache.class)).isTrue();
+
+        AbstractThreadLocalCache.exit(TestCache.class, LOGGER);
+        assertThat(AbstractThreadLocalCache.exists(TestCache.class)).isFalse();
+        assertThat(CacheScope.current()).as("scope after last exit").isNull();
+    }
+
+    @Test
+    public void test200UseInOtherThread() throws Exception {
+        CachePerformanceCollector.INSTANCE.startThreadLocalPerformanceInformationCollection();
+        TestCache cache = AbstractThreadLocalCache.enter(TestCache.class, null, LOGGER);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CacheScope scope = CacheScope.capture();
+            executor.submit(() -> {
+                try (CacheScope.Binding ignored = CacheScope.attach(scope)) {
+                    TestCache workerCache = AbstractThreadLocalCache.getCurrent(TestCache.class);
+                    workerCache.registerHit();
+                    CachePerformanceCollector.INSTANCE.registerHit(TestCache.class, null, null);
+                }
+                // The binding is closed, so the worker thread does not see the cache anymore.
+                assertThat(AbstractThreadLocalCache.getCurrent(TestCache.class)).isNull();
+            }).get();
+
+            assertThat(cache.getHits()).as("hits registered by the worker").isEqualTo(1);
+            Map<String, CachePerformanceCollector.CacheData> performanceMap =
+                    CachePerformanceCollector.INSTANCE.getThreadLocalPerformanceMap();
+            assertThat(performanceMap.get(TestCache.class.getName()).hits.get())
+                    .as("hits in thread-local statistics").isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+            AbstractThreadLocalCache.exit(TestCache.class, LOGGER);
+            CachePerformanceCollector.INSTANCE.stopThreadLocalPerformanceInformationCollection();
+        }
+        assertThat(AbstractThreadLocalCache.getAllInstances(TestCache.class)).isEmpty();
+    }
+}
@@ -85,6 +85,7 @@ public class AccCertOpenerHelper {
     @Autowired private Clock clock;
     @Autowired private AccCertResponseComputationHelper computationHelper;
     @Autowired private AccCertUpdateHelper updateHelper;
+    @Autowired private AccessCertificationCaseCreationTaskHandler caseCreationTaskHandler;
     @Autowired
     @Qualifier("cacheRepositoryService")
     private RepositoryService repositoryService;
@@ -170,6 +171,7 @@ public class AccCertOpenerHelper {
 
         scope.setObjectType(ObjectTypes.getObjectType(objectClass).getTypeQName());
         scope.setSearchFilter(getQueryConverter().createSearchFilterType(objectFilter));
+        scope.setCaseCreation(null);            // there is only a single object, no need for a background task
         return campaign;
     }
 
@@ -218,6 +220,11 @@ public class AccCertOpenerHelper {
 
     void openNextStage(AccessCertificationCampaignType campaign, CertificationHandler handler, Task task,
             OperationResult result) throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
+        AccessCertificationCaseCreationType caseCreation = getCaseCreation(campaign);
+        if (caseCreation != null && isFirstStageOpening(campaign)) {
+            openFirstStageInBackground(campaign, caseCreation, task, result);
+            return;
+        }
         boolean skipEmptyStages = norm(campaign.getIteration()) > 1;        // TODO make configurable
         int requestedStageNumber = campaign.getStageNumber() + 1;
         for (;;) {
@@ -250,7 +257,7 @@ public class AccCertOpenerHelper {
                 ObjectTypeUtil.toShortStringLazy(campaign), stageNumber, newStageNumber, norm(campaign.getIteration()));
 
         ModificationsToExecute rv = new ModificationsToExecute();
-        if (stageNumber == 0 && norm(campaign.getIteration()) == 1) {
+        if (isFirstStageOpening(campaign)) {
             getDeltasToCreateCases(campaign, stage, handler, rv, openingContext, task, result);
         } else {
             getDeltasToUpdateCases(campaign, stage, rv, openingContext, task, result);
@@ -311,28 +318,7 @@ public class AccCertOpenerHelper {
         assert norm(campaign.getIteration()) == 1;
 
         for (AccessCertificationCaseType acase : caseList) {
-            ContainerDelta<AccessCertificationCaseType> caseDelta = prismContext.deltaFactory().container().createDelta(F_CASE,
-                    AccessCertificationCampaignType.class);
-            acase.setIteration(1);
-            acase.setStageNumber(1);
-            acase.setCurrentStageCreateTimestamp(stage.getStartTimestamp());
-            acase.setCurrentStageDeadline(stage.getDeadline());
-
-            List<ObjectReferenceType> reviewers = reviewersHelper.getReviewersForCase(acase, campaign, reviewerSpec, task, result);
-            acase.getWorkItem().addAll(createWorkItems(reviewers, 1, 1, acase));
-
-            openingContext.workItemsCreated += acase.getWorkItem().size();
-            openingContext.casesEnteringStage++;
-
-            AccessCertificationResponseType currentStageOutcome = computationHelper.computeOutcomeForStage(acase, campaign, 1);
-            acase.setCurrentStageOutcome(toUri(currentStageOutcome));
-            acase.setOutcome(toUri(computationHelper.computeOverallOutcome(acase, campaign, 1, currentStageOutcome)));
-
-            @SuppressWarnings({ "raw", "unchecked" })
-            PrismContainerValue<AccessCertificationCaseType> caseCVal = acase.asPrismContainerValue();
-            caseDelta.addValueToAdd(caseCVal);
-            LOGGER.trace("Adding certification case:\n{}", caseCVal.debugDumpLazily());
-            modifications.add(caseDelta);
+            modifications.add(createCaseAddDelta(acase, campaign, stage, reviewerSpec, openingContext, task, result));
         }
 
         LOGGER.trace("Created {} deltas (in {} batches) to create {} cases ({} work items) for campaign {}",
@@ -340,6 +326,37 @@ public class AccCertOpenerHelper {
                 openingContext.workItemsCreated, campaignShortName);
     }
 
+    /**
+     * Fills-in stage-related information, work items and outcomes into a new case and creates a delta to add it.
+     */
+    private ContainerDelta<AccessCertificationCaseType> createCaseAddDelta(AccessCertificationCaseType acase,
+            AccessCertificationCampaignType campaign, AccessCertificationStageType stage,
+            AccessCertificationReviewerSpecificationType reviewerSpec, OpeningContext openingContext, Task task,
+            OperationResult result) throws SchemaException, ObjectNotFoundException {
+        ContainerDelta<AccessCertificationCaseType> caseDelta = prismContext.deltaFactory().container().createDelta(F_CASE,
+                AccessCertificationCampaignType.class);
+        acase.setIteration(1);
+        acase.setStageNumber(1);
+        acase.setCurrentStageCreateTimestamp(stage.getStartTimestamp());
+        acase.setCurrentStageDeadline(stage.getDeadline());
+
+        List<ObjectReferenceType> reviewers = reviewersHelper.getReviewersForCase(acase, campaign, reviewerSpec, task, result);
+        acase.getWorkItem().addAll(createWorkItems(reviewers, 1, 1, acase));
+
+        openingContext.workItemsCreated += acase.getWorkItem().size();
+        openingContext.casesEnteringStage++;
+
+        AccessCertificationResponseType currentStageOutcome = computationHelper.computeOutcomeForStage(acase, campaign, 1);
+        acase.setCurrentStageOutcome(toUri(currentStageOutcome));
+        acase.setOutcome(toUri(computationHelper.computeOverallOutcome(acase, campaign, 1, currentStageOutcome)));
+
+        @SuppressWarnings({ "raw", "unchecked" })
+        PrismContainerValue<AccessCertificationCaseType> caseCVal = acase.asPrismContainerValue();
+        caseDelta.addValueToAdd(caseCVal);
+        LOGGER.trace("Adding certification case:\n{}", caseCVal.debugDumpLazily());
+        return caseDelta;
+    }
+
     // create a query to find target objects from which certification cases will be created
     @NotNull
     private <F extends FocusType> TypedObjectQuery<F> prepareObjectQuery(AccessCertificationObjectBasedScopeType objectBasedScope,
@@ -583,6 +600,124 @@ public class AccCertOpenerHelper {
 
     //endregion
 
+    //region ================================ First stage open in background ================================
+
+    /**
+     * Data needed to create cases for individual objects, shared by all threads of the case creation task.
+     */
+    static class CaseCreationContext {
+        @NotNull final AccessCertificationCampaignType campaign;
+        @NotNull final CertificationHandler handler;
+        @NotNull final AccessCertificationStageType stage;
+        @NotNull final TypedObjectQuery<? extends FocusType> objectQuery;
+        final AccessCertificationReviewerSpecificationType reviewerSpec;
+
+        private CaseCreationContext(@NotNull AccessCertificationCampaignType campaign, @NotNull CertificationHandler handler,
+                @NotNull AccessCertificationStageType stage, @NotNull TypedObjectQuery<? extends FocusType> objectQuery,
+                AccessCertificationReviewerSpecificationType reviewerSpec) {
+            this.campaign = campaign;
+            this.handler = handler;
+            this.stage = stage;
+            this.objectQuery = objectQuery;
+            this.reviewerSpec = reviewerSpec;
+        }
+    }
+
+    private boolean isFirstStageOpening(AccessCertificationCampaignType campaign) {
+        return campaign.getStageNumber() == 0 && norm(campaign.getIteration()) == 1;
+    }
+
+    private AccessCertificationCaseCreationType getCaseCreation(AccessCertificationCampaignType campaign) {
+        AccessCertificationScopeType scope = campaign.getScopeDefinition();
+        return scope instanceof AccessCertificationObjectBasedScopeType
+                ? ((AccessCertificationObjectBasedScopeType) scope).getCaseCreation()
+                : null;
+    }
+
+    /**
+     * Records the first stage (so all the cases get the same stage timestamps and deadline) and starts the task
+     * that creates the cases. The stage is opened by the task when all cases are created; see {@link #finishFirstStageOpen}.
+     */
+    private void openFirstStageInBackground(AccessCertificationCampaignType campaign,
+            AccessCertificationCaseCreationType caseCreation, Task task, OperationResult result)
+            throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
+        assertNoExistingCases(campaign, result);
+        AccessCertificationStageType stage;
+        if (campaign.getStage().isEmpty()) {
+            stage = createStage(campaign, 1);
+            ModificationsToExecute modifications = new ModificationsToExecute();
+            modifications.add(createStageAddDelta(stage));
+            updateHelper.modifyCampaignPreAuthorized(campaign.getOid(), modifications, task, result);
+        } else {
+            stage = CertCampaignTypeUtil.findStage(campaign, 1);        // case creation was already started before
+        }
+        LOGGER.debug("Creating cases for {} in background; stage {} starts at {}, deadline is {}",
+                toShortStringLazy(campaign), stage.getNumber(), stage.getStartTimestamp(), stage.getDeadline());
+        caseCreationTaskHandler.launch(campaign, caseCreation, result);
+    }
+
+    CaseCreationContext createCaseCreationContext(AccessCertificationCampaignType campaign, CertificationHandler handler)
+            throws SchemaException {
+        if (!isFirstStageOpening(campaign) || campaign.getState() != CREATED) {
+            throw new IllegalStateException("Cases can be created only for a campaign that was not started yet: "
+                    + toShortString(campaign) + " is in stage " + campaign.getStageNumber() + " (" + campaign.getState() + ")");
+        }
+        AccessCertificationObjectBasedScopeType scope = (AccessCertificationObjectBasedScopeType) campaign.getScopeDefinition();
+        return new CaseCreationContext(campaign, handler, CertCampaignTypeUtil.findStage(campaign, 1),
+                prepareObjectQuery(scope, handler, toShortString(campaign)),
+                reviewersHelper.findReviewersSpecification(campaign, 1));
+    }
+
+    /**
+     * Creates cases for given object and stores them into the campaign. Objects that already have cases (because
+     * the bucket was interrupted and is now processed again) are skipped.
+     *
+     * Can be called from multiple threads at once.
+     */
+    <F extends FocusType> void createCasesForObject(PrismObject<F> object, CaseCreationContext ctx, Task task,
+            OperationResult result) throws CommonException {
+        AccessCertificationCampaignType campaign = ctx.campaign;
+        ObjectQuery existingCasesQuery = prismContext.queryFor(AccessCertificationCaseType.class)
+                .item(AccessCertificationCaseType.F_OBJECT_REF).ref(object.getOid())
+                .build();
+        if (!queryHelper.searchCases(campaign.getOid(), existingCasesQuery, null, result).isEmpty()) {
+            LOGGER.trace("Cases for {} already exist in {}, skipping the object", object, toShortStringLazy(campaign));
+            return;
+        }
+
+        OpeningContext openingContext = new OpeningContext();
+        ModificationsToExecute modifications = new ModificationsToExecute();
+        for (AccessCertificationCaseType acase : ctx.handler.createCasesForObject(object, campaign, task, result)) {
+            modifications.add(createCaseAddDelta(acase, campaign, ctx.stage, ctx.reviewerSpec, openingContext, task, result));
+        }
+        LOGGER.trace("Adding {} cases ({} work items) for {} to {}", openingContext.casesEnteringStage,
+                openingContext.workItemsCreated, object, toShortStringLazy(campaign));
+        updateHelper.modifyCampaignPreAuthorized(campaign.getOid(), modifications, task, result);
+    }
+
+    /**
+     * Opens the first stage after all cases were created by the background task: records the stage open, creates
+     * triggers, sends notifications.
+     */
+    void finishFirstStageOpen(String campaignOid, Task task, OperationResult result)
+            throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
+        AccessCertificationCampaignType campaign = generalHelper.getCampaign(campaignOid, null, task, result);
+        if (!isFirstStageOpening(campaign) || campaign.getState() != CREATED) {
+            LOGGER.debug("The first stage of {} is already open, nothing to do", toShortStringLazy(campaign));
+            return;
+        }
+        AccessCertificationStageType stage = CertCampaignTypeUtil.findStage(campaign, 1);
+        ModificationsToExecute modifications = new ModificationsToExecute();
+        modifications.add(createDeltasToRecordStageOpen(campaign, stage));
+        modifications.add(updateHelper.getDeltasToCreateTriggersForTimedActions(campaign.getOid(), 0,
+                XmlTypeConverter.toDate(stage.getStartTimestamp()), XmlTypeConverter.toDate(stage.getDeadline()),
+                CertCampaignTypeUtil.findStageDefinition(campaign, stage.getNumber()).getTimedActions()));
+        updateHelper.modifyCampaignPreAuthorized(campaign.getOid(), modifications, task, result);
+        afterStageOpen(campaign.getOid(), stage, task, result);
+    }
+
+    //endregion
+
     //region ================================ Campaign reiteration ================================
 
     void reiterateCampaign(AccessCertificationCampaignType campaign, Task task, OperationResult result)
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.certification.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.certification.impl.AccCertOpenerHelper.CaseCreationContext;
+import com.evolveum.midpoint.model.impl.util.AbstractSearchIterativeModelTaskHandler;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.repo.common.task.AbstractSearchIterativeResultHandler;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.result.OperationResultStatus;
+import com.evolveum.midpoint.schema.util.ObjectTypeUtil;
+import com.evolveum.midpoint.task.api.*;
+import com.evolveum.midpoint.task.api.TaskRunResult.TaskRunResultStatus;
+import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+import static com.evolveum.midpoint.schema.util.ObjectTypeUtil.toShortString;
+
+/**
+ * Creates certification cases for a campaign whose scope asks for it (see caseCreation in the object-based scope).
+ *
+ * Objects in the scope are processed in work buckets, possibly by multiple worker threads. Cases for each object
+ * are written to the campaign right after they are created, so they are not collected in memory, and a suspended
+ * or failed task can continue with the bucket it was processing. When there are no more buckets, the first stage
+ * of the campaign is opened.
+ */
+@Component
+public class AccessCertificationCaseCreationTaskHandler
+        extends AbstractSearchIterativeModelTaskHandler<FocusType, AccessCertificationCaseCreationTaskHandler.CaseCreationResultHandler> {
+
+    private static final String HANDLER_URI = AccessCertificationConstants.NS_CERTIFICATION_TASK_PREFIX + "/case-creation/handler-3";
+    private static final String CLASS_DOT = AccessCertificationCaseCreationTaskHandler.class.getName() + ".";
+
+    private static final Trace LOGGER = TraceManager.getTrace(AccessCertificationCaseCreationTaskHandler.class);
+
+    @Autowired private AccCertOpenerHelper openerHelper;
+    @Autowired private AccCertGeneralHelper generalHelper;
+    @Autowired private CertificationManagerImpl certificationManager;
+
+    /**
+     * Contexts of running tasks, keyed by task OID. See the note on task-specific data in the superclass.
+     */
+    private final Map<String, CaseCreationContext> contexts = new ConcurrentHashMap<>();
+
+    static class CaseCreationResultHandler extends AbstractSearchIterativeResultHandler<FocusType> {
+
+        private final AccCertOpenerHelper openerHelper;
+        private final CaseCreationContext context;
+
+        private CaseCreationResultHandler(RunningTask coordinatorTask, TaskPartitionDefinitionType partition,
+                TaskManager taskManager, AccCertOpenerHelper openerHelper, CaseCreationContext context) {
+            super(coordinatorTask, AccessCertificationCaseCreationTaskHandler.class.getName(), "create cases",
+                    "certification case creation", partition, taskManager);
+            this.openerHelper = openerHelper;
+            this.context = context;
+        }
+
+        @Override
+        protected boolean handleObject(PrismObject<FocusType> object, RunningTask workerTask, OperationResult result)
+                throws CommonException {
+            openerHelper.createCasesForObject(object, context, workerTask, result);
+            return true;
+        }
+    }
+
+    public AccessCertificationCaseCreationTaskHandler() {
+        super("Certification case creation", CLASS_DOT + "run");
+        setLogFinishInfo(true);
+    }
+
+    @PostConstruct
+    private void initialize() {
+        taskManager.registerHandler(HANDLER_URI, this);
+    }
+
+    @Override
+    protected CaseCreationResultHandler createHandler(TaskPartitionDefinitionType partition, TaskRunResult runResult,
+            RunningTask coordinatorTask, OperationResult opResult) throws SchemaException, ObjectNotFoundException {
+        String campaignOid = coordinatorTask.getObjectOid();
+        if (campaignOid == null) {
+            throw new IllegalStateException("No campaign OID specified in the task " + coordinatorTask);
+        }
+        AccessCertificationCampaignType campaign = generalHelper.getCampaign(campaignOid, null, coordinatorTask, opResult);
+        CaseCreationContext context = openerHelper.createCaseCreationContext(campaign,
+                certificationManager.findCertificationHandler(campaign));
+        contexts.put(coordinatorTask.getOid(), context);
+        return new CaseCreationResultHandler(coordinatorTask, partition, taskManager, openerHelper, context);
+    }
+
+    @Override
+    protected Class<? extends ObjectType> getType(Task task) {
+        CaseCreationContext context = contexts.get(task.getOid());
+        if (context == null) {
+            throw new IllegalStateException("No case creation context for " + task);
+        }
+        return context.objectQuery.getObjectClass();
+    }
+
+    @Override
+    protected ObjectQuery createQuery(CaseCreationResultHandler handler, TaskRunResult runResult, Task coordinatorTask,
+            OperationResult opResult) {
+        return handler.context.objectQuery.getObjectQuery().clone();
+    }
+
+    // Cases were always created from objects fetched from the repository (without authorizations applied).
+    @Override
+    protected boolean requiresDirectRepositoryAccess(CaseCreationResultHandler resultHandler, TaskRunResult runResult,
+            Task coordinatorTask, OperationResult opResult) {
+        return true;
+    }
+
+    @Override
+    public TaskWorkBucketProcessingResult onNoMoreBuckets(Task task, TaskWorkBucketProcessingResult previousRunResult) {
+        contexts.remove(task.getOid());
+
+        OperationResult result = new OperationResult(CLASS_DOT + "onNoMoreBuckets");
+        try {
+            LOGGER.info("All certification cases were created, opening the first stage of campaign {}", task.getObjectOid());
+            openerHelper.finishFirstStageOpen(task.getObjectOid(), task, result);
+            result.computeStatus();
+            return previousRunResult;
+        } catch (CommonException | RuntimeException e) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't open the first stage of campaign {}", e, task.getObjectOid());
+            result.recordFatalError("Couldn't open the first stage of the campaign: " + e.getMessage(), e);
+            TaskWorkBucketProcessingResult runResult = new TaskWorkBucketProcessingResult();
+            if (previousRunResult != null) {
+                runResult.setProgress(previousRunResult.getProgress());
+            }
+            runResult.setOperationResult(result);
+            runResult.setRunResultStatus(TaskRunResultStatus.PERMANENT_ERROR);
+            return runResult;
+        }
+    }
+
+    /**
+     * Starts the background task that creates cases for the campaign and then opens its first stage.
+     */
+    void launch(AccessCertificationCampaignType campaign, AccessCertificationCaseCreationType caseCreation,
+            OperationResult parentResult) throws SchemaException, ObjectAlreadyExistsException {
+
+        LOGGER.debug("Launching case creation task for campaign {}", toShortString(campaign));
+
+        OperationResult result = parentResult.createSubresult(CLASS_DOT + "launch");
+        result.addParam("campaignOid", campaign.getOid());
+        try {
+            String archetypeOid = SystemObjectsType.ARCHETYPE_CERTIFICATION_TASK.value();
+            TaskType task = new TaskType(prismContext)
+                    .name("Creating cases for " + campaign.getName().getOrig())
+                    .handlerUri(HANDLER_URI)
+                    .objectRef(ObjectTypeUtil.createObjectRef(campaign, prismContext))
+                    .ownerRef(SystemObjectsType.USER_ADMINISTRATOR.value(), UserType.COMPLEX_TYPE)
+                    .executionStatus(TaskExecutionStatusType.RUNNABLE)
+                    .recurrence(TaskRecurrenceType.SINGLE)
+                    .binding(TaskBindingType.LOOSE)
+                    .category(TaskCategory.ACCESS_CERTIFICATION)
+                    .archetypeRef(archetypeOid, ArchetypeType.COMPLEX_TYPE)
+                    .roleMembershipRef(archetypeOid, ArchetypeType.COMPLEX_TYPE)
+                    .beginAssignment()
+                        .targetRef(archetypeOid, ArchetypeType.COMPLEX_TYPE)
+                    .<TaskType>end();
+            if (caseCreation.getBuckets() != null) {
+                task.setWorkManagement(new TaskWorkManagementType(prismContext)
+                        .taskKind(TaskKindType.STANDALONE)
+                        .buckets(caseCreation.getBuckets().clone()));
+            }
+            if (caseCreation.getWorkerThreads() != null) {
+                ObjectTypeUtil.setExtensionPropertyRealValues(prismContext, task.asPrismContainerValue(),
+                        SchemaConstants.MODEL_EXTENSION_WORKER_THREADS, caseCreation.getWorkerThreads());
+            }
+            String taskOid = taskManager.addTask(task.asPrismObject(), result);
+            result.setBackgroundTaskOid(taskOid);
+            result.recordStatus(OperationResultStatus.IN_PROGRESS, "Case creation task " + taskOid
+                    + " was successfully started, please use Server Tasks to see its status.");
+            LOGGER.trace("Case creation task for {} was started: {}", toShortString(campaign), taskOid);
+        } catch (SchemaException | ObjectAlreadyExistsException | RuntimeException e) {
+            result.recordFatalError("Couldn't start case creation task: " + e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public String getCategoryName(Task task) {
+        return TaskCategory.ACCESS_CERTIFICATION;
+    }
+
+    @Override
+    public String getArchetypeOid() {
+        return SystemObjectsType.ARCHETYPE_CERTIFICATION_TASK.value();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.certification.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.test.util.TestUtil;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests creation of certification cases by a bucketed, multi-threaded background task.
+ * Cases are the same as in the first stage of {@link TestCriticalRolesCertification}.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-certification-test-main.xml" })
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class TestCaseCreationInBackground extends AbstractCertificationTest {
+
+    private static final File CERT_DEF_FILE = new File(COMMON_DIR, "certification-of-critical-roles-in-background.xml");
+
+    private static final int TASK_WAIT_TIMEOUT = 60000;
+
+    private AccessCertificationDefinitionType certificationDefinition;
+
+    private String campaignOid;
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+        assignRole(USER_JACK_OID, ROLE_CTO_OID);
+        userJack = getObjectViaRepo(UserType.class, USER_JACK_OID).asObjectable();
+    }
+
+    @Test
+    public void test010CreateCampaign() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        certificationDefinition = repoAddObjectFromFile(CERT_DEF_FILE,
+                AccessCertificationDefinitionType.class, result).asObjectable();
+
+        when();
+        AccessCertificationCampaignType campaign =
+                certificationManager.createCampaign(certificationDefinition.getOid(), task, result);
+
+        then();
+        result.computeStatus();
+        TestUtil.assertSuccess(result);
+
+        assertNotNull("Created campaign is null", campaign);
+        campaignOid = campaign.getOid();
+
+        campaign = getCampaignWithCases(campaignOid);
+        display("campaign", campaign);
+        assertSanityAfterCampaignCreate(campaign, certificationDefinition);
+    }
+
+    @Test
+    public void test020OpenFirstStage() throws Exception {
+        given();
+        Task task = getTestTask();
+        task.setOwner(userAdministrator.asPrismObject());
+        OperationResult result = task.getResult();
+        dummyTransport.clearMessages();
+        Date start = new Date();
+
+        when();
+        certificationManager.openNextStage(campaignOid, task, result);
+
+        then();
+        result.computeStatus();
+        TestUtil.assertInProgressOrSuccess(result);
+
+        and("the first stage is open after the task finishes");
+        waitForCampaignTasks(campaignOid, TASK_WAIT_TIMEOUT, result);
+
+        AccessCertificationCampaignType campaign = getCampaignWithCases(campaignOid);
+        display("campaign in stage 1", campaign);
+        assertSanityAfterCampaignStart(campaign, certificationDefinition, 6, 1, 1, start);
+
+        List<AccessCertificationCaseType> caseList = queryHelper.searchCases(campaignOid, null, null, result);
+        assertEquals("unexpected # of cases", 6, caseList.size());
+        assertNotNull(findCase(caseList, USER_ELAINE_OID, ROLE_CEO_OID));
+        assertNotNull(findCase(caseList, USER_GUYBRUSH_OID, ROLE_COO_OID));
+        assertNotNull(findCase(caseList, USER_ADMINISTRATOR_OID, ROLE_COO_OID));
+        assertNotNull(findCase(caseList, USER_ADMINISTRATOR_OID, ROLE_CEO_OID));
+        assertNotNull(findCase(caseList, USER_JACK_OID, ROLE_CEO_OID));
+        assertNotNull(findCase(caseList, USER_JACK_OID, ROLE_CTO_OID));
+
+        displayDumpable("dummy transport", dummyTransport);
+    }
+}
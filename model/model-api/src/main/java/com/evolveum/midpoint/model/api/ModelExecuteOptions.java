@@ -368,6 +368,44 @@ public class ModelExecuteOptions extends AbstractOptions implements Serializable
         return options.getFocusConflictResolution();
     }
 
+    public Integer getProjectionLoadParallelism() {
+        return content.getProjectionLoadParallelism();
+    }
+
+    public ModelExecuteOptions projectionLoadParallelism(Integer projectionLoadParallelism) {
+        content.setProjectionLoadParallelism(projectionLoadParallelism);
+        return this;
+    }
+
+    public static Integer getProjectionLoadParallelism(ModelExecuteOptions options) {
+        if (options == null) {
+            return null;
+        }
+        return options.getProjectionLoadParallelism();
+    }
+
+    public Integer getProjectionExecutionParallelism() {
+        return content.getProjectionExecutionParallelism();
+    }
+
+    /**
+     * Projection deltas of an execution wave are executed concurrently only if all of them are independent
+     * and on distinct resources; otherwise they are all executed sequentially. Concurrently executed deltas are all
+     * executed even if some of them fail fatally (e.g. on a resource with high criticality of errors); the failure
+     * is reported after all of their shadows are linked.
+     */
+    public ModelExecuteOptions projectionExecutionParallelism(Integer projectionExecutionParallelism) {
+        content.setProjectionExecutionParallelism(projectionExecutionParallelism);
+        return this;
+    }
+
+    public static Integer getProjectionExecutionParallelism(ModelExecuteOptions options) {
+        if (options == null) {
+            return null;
+        }
+        return options.getProjectionExecutionParallelism();
+    }
+
     @SuppressWarnings("WeakerAccess")
     public ModelExecuteOptions evaluateAllAssignmentRelationsOnRecompute(Boolean evaluateAllAssignmentRelationsOnRecompute) {
         this.evaluateAllAssignmentRelationsOnRecompute = evaluateAllAssignmentRelationsOnRecompute;
@@ -476,6 +514,8 @@ public class ModelExecuteOptions extends AbstractOptions implements Serializable
         appendVal(sb, "partialProcessing", format(content.getPartialProcessing()));
         appendVal(sb, "initialPartialProcessing", format(content.getInitialPartialProcessing()));
         appendVal(sb, "focusConflictResolution", content.getFocusConflictResolution());
+        appendVal(sb, "projectionLoadParallelism", content.getProjectionLoadParallelism());
+        appendVal(sb, "projectionExecutionParallelism", content.getProjectionExecutionParallelism());
         appendVal(sb, "tracingProfile", tracingProfile);
         removeLastComma(sb);
         sb.append(")");
@@ -27,7 +27,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Search expression evaluator dealing with shadows - requires specific invalidation strategies.
@@ -42,18 +41,16 @@ public class AssociationSearchExpressionEvaluatorCache
 
     private static final Trace LOGGER = TraceManager.getTrace(AssociationSearchExpressionEvaluatorCache.class);
 
-    private static ConcurrentHashMap<Thread, AssociationSearchExpressionEvaluatorCache> cacheInstances = new ConcurrentHashMap<>();
-
     public static AbstractSearchExpressionEvaluatorCache getCache() {
-        return cacheInstances.get(Thread.currentThread());
+        return getCurrent(AssociationSearchExpressionEvaluatorCache.class);
     }
 
     public static AssociationSearchExpressionEvaluatorCache enterCache(CacheConfiguration configuration) {
-        return enter(cacheInstances, AssociationSearchExpressionEvaluatorCache.class, configuration, LOGGER);
+        return enter(AssociationSearchExpressionEvaluatorCache.class, configuration, LOGGER);
     }
 
     public static AssociationSearchExpressionEvaluatorCache exitCache() {
-        return exit(cacheInstances, LOGGER);
+        return exit(AssociationSearchExpressionEvaluatorCache.class, LOGGER);
     }
 
     @Override
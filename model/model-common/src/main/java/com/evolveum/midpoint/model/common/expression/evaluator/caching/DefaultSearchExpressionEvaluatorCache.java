@@ -20,7 +20,6 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectSearchStrategy
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Default search expression evaluator cache.
@@ -39,18 +38,16 @@ public class DefaultSearchExpressionEvaluatorCache
 
     private static final Trace LOGGER = TraceManager.getTrace(DefaultSearchExpressionEvaluatorCache.class);
 
-    private static ConcurrentHashMap<Thread, DefaultSearchExpressionEvaluatorCache> cacheInstances = new ConcurrentHashMap<>();
-
     public static AbstractSearchExpressionEvaluatorCache getCache() {
-        return cacheInstances.get(Thread.currentThread());
+        return getCurrent(DefaultSearchExpressionEvaluatorCache.class);
     }
 
     public static void enterCache(CacheConfiguration configuration) {
-        enter(cacheInstances, DefaultSearchExpressionEvaluatorCache.class, configuration, LOGGER);
+        enter(DefaultSearchExpressionEvaluatorCache.class, configuration, LOGGER);
     }
 
     public static void exitCache() {
-        exit(cacheInstances, LOGGER);
+        exit(DefaultSearchExpressionEvaluatorCache.class, LOGGER);
     }
 
     @Override
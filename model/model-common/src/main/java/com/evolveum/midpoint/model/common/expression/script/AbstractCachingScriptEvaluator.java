@@ -50,14 +50,28 @@ public abstract class AbstractCachingScriptEvaluator<I,C> extends AbstractScript
     private final ScriptCache<I,C> scriptCache;
 
     public AbstractCachingScriptEvaluator(PrismContext prismContext, Protector protector, LocalizationService localizationService) {
+        this(prismContext, protector, localizationService, ScriptCache.DEFAULT_MAX_SIZE);
+    }
+
+    public AbstractCachingScriptEvaluator(PrismContext prismContext, Protector protector, LocalizationService localizationService,
+            int scriptCacheMaxSize) {
         super(prismContext, protector, localizationService);
-        this.scriptCache = new ScriptCache<>();
+        this.scriptCache = new ScriptCache<>(scriptCacheMaxSize);
     }
 
-    protected ScriptCache<I,C> getScriptCache() {
+    public ScriptCache<I,C> getScriptCache() {
         return scriptCache;
     }
 
+    @Override
+    public void precompile(ScriptExpressionEvaluationContext context) throws ExpressionEvaluationException, SecurityViolationException {
+        checkRestrictions(context);
+        String codeString = context.getExpressionType().getCode();
+        if (codeString != null) {
+            getCompiledScript(codeString, context);
+        }
+    }
+
     @NotNull
     @Override
     public <T, V extends PrismValue> List<V> evaluate(ScriptExpressionEvaluationContext context) throws ExpressionEvaluationException,
@@ -6,59 +6,138 @@
  */
 package com.evolveum.midpoint.model.common.expression.script;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
 
 import com.evolveum.midpoint.schema.expression.ExpressionProfile;
+import com.evolveum.midpoint.util.caching.CacheConfiguration;
+import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
 
 /**
  * Cache for compiled scripts and interpreters, aware of expression profiles.
  *
+ * Compiled code is kept in a separate size-bounded (LRU-like) cache for each expression profile.
+ * All operations are non-blocking for readers, so the cache can be safely shared by many worker threads.
+ *
  * @param <C> compiled code
  * @author Radovan Semancik
  */
 public class ScriptCache<I,C> {
 
-    private final Map<String, I> interpreterCache = new HashMap<>();
-    private final Map<String, Map<String, C>> codeCache = new HashMap<>();
+    /**
+     * Default maximum number of compiled scripts kept for a single expression profile.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    /**
+     * Concurrent maps do not allow null keys; this is the key for the (default) null expression profile.
+     */
+    private static final String NULL_PROFILE_KEY = "";
+
+    private final int maxSize;
 
-    public synchronized I getInterpreter(ExpressionProfile profile) {
+    private final Map<String, I> interpreterCache = new ConcurrentHashMap<>();
+    private final Map<String, Cache<String, C>> codeCache = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ScriptCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ScriptCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public I getInterpreter(ExpressionProfile profile) {
         return interpreterCache.get(getProfileKey(profile));
     }
 
-    public synchronized void putInterpreter(ExpressionProfile profile, I interpreter) {
+    public void putInterpreter(ExpressionProfile profile, I interpreter) {
         interpreterCache.put(getProfileKey(profile), interpreter);
     }
 
-    public synchronized C getCode(ExpressionProfile profile, String sourceCodeKey) {
-        String profileKey = getProfileKey(profile);
-        Map<String, C> profileCache = codeCache.get(profileKey);
-        if (profileCache == null) {
-            return null;
+    public C getCode(ExpressionProfile profile, String sourceCodeKey) {
+        Cache<String, C> profileCache = codeCache.get(getProfileKey(profile));
+        C code = profileCache != null ? profileCache.getIfPresent(sourceCodeKey) : null;
+        if (code != null) {
+            hits.incrementAndGet();
+            CachePerformanceCollector.INSTANCE.registerHit(ScriptCache.class, null, CacheConfiguration.StatisticsLevel.PER_CACHE);
+        } else {
+            misses.incrementAndGet();
+            CachePerformanceCollector.INSTANCE.registerMiss(ScriptCache.class, null, CacheConfiguration.StatisticsLevel.PER_CACHE);
         }
-        return profileCache.get(sourceCodeKey);
+        return code;
     }
 
-    public synchronized void putCode(ExpressionProfile profile, String sourceCodeKey, C compiledCode) {
-        String profileKey = getProfileKey(profile);
-        Map<String, C> profileCache = codeCache.get(profileKey);
-        if (profileCache == null) {
-            profileCache = new HashMap<>();
-            codeCache.put(profileKey, profileCache);
-        }
-        profileCache.put(sourceCodeKey, compiledCode);
+    public void putCode(ExpressionProfile profile, String sourceCodeKey, C compiledCode) {
+        codeCache.computeIfAbsent(getProfileKey(profile), k -> createProfileCache())
+                .put(sourceCodeKey, compiledCode);
+    }
+
+    private Cache<String, C> createProfileCache() {
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .<String, C>removalListener(notification -> {
+                    if (notification.getCause() == RemovalCause.SIZE) {
+                        evictions.incrementAndGet();
+                    }
+                })
+                .build();
     }
 
     private String getProfileKey(ExpressionProfile profile) {
         if (profile == null) {
-            return null;
+            return NULL_PROFILE_KEY;
         } else {
             return profile.getIdentifier();
         }
     }
 
-    public synchronized void clear() {
+    public void clear() {
         codeCache.clear();
     }
 
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Number of compiled scripts in the cache (for all profiles).
+     */
+    public long size() {
+        return codeCache.values().stream()
+                .mapToLong(Cache::size)
+                .sum();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ScriptCache{" +
+                "size=" + size() +
+                ", maxSize=" + maxSize +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
 }
@@ -28,6 +28,14 @@ public interface ScriptEvaluator {
             throws ExpressionEvaluationException, ObjectNotFoundException, ExpressionSyntaxException, CommunicationException,
             ConfigurationException, SecurityViolationException;
 
+    /**
+     * Compiles the script in advance, so the compiled form is available in the cache when the script is evaluated for
+     * the first time. Evaluators that do not compile (or cache) scripts do nothing here.
+     */
+    default void precompile(ScriptExpressionEvaluationContext context)
+            throws ExpressionEvaluationException, SecurityViolationException {
+    }
+
     /**
      * Returns human readable name of the language that this evaluator supports
      */
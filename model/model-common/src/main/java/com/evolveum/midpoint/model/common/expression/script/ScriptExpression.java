@@ -182,6 +182,19 @@ public class ScriptExpression {
         }
     }
 
+    /**
+     * Compiles the script (without evaluating it), so that the compiled form gets into evaluator's cache.
+     */
+    public void precompile(String contextDescription) throws ExpressionEvaluationException, SecurityViolationException {
+        ScriptExpressionEvaluationContext context = new ScriptExpressionEvaluationContext();
+        context.setExpressionType(scriptType);
+        context.setExpressionProfile(expressionProfile);
+        context.setScriptExpressionProfile(scriptExpressionProfile);
+        context.setOutputDefinition(outputDefinition);
+        context.setContextDescription(contextDescription);
+        evaluator.precompile(context);
+    }
+
     private void traceExpressionSuccess(ScriptExpressionEvaluationContext context, Object returnValue) {
         if (!isTrace()) {
             return;
@@ -11,6 +11,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.xml.bind.JAXBElement;
 
 import org.jetbrains.annotations.NotNull;
 
@@ -19,6 +20,9 @@ import com.evolveum.midpoint.model.common.expression.functions.CustomFunctions;
 import com.evolveum.midpoint.model.common.expression.functions.FunctionLibrary;
 import com.evolveum.midpoint.prism.ItemDefinition;
 import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.PrismPropertyValue;
+import com.evolveum.midpoint.prism.Visitor;
 import com.evolveum.midpoint.repo.api.Cache;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.api.CacheRegistry;
@@ -35,10 +39,12 @@ import com.evolveum.midpoint.schema.expression.ExpressionProfile;
 import com.evolveum.midpoint.schema.expression.ScriptExpressionProfile;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.MiscSchemaUtil;
+import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.exception.SecurityViolationException;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ExpressionType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.FunctionLibraryType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ScriptExpressionEvaluatorType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
@@ -138,6 +144,46 @@ public class ScriptExpressionFactory implements Cache {
         return expression;
     }
 
+    /**
+     * Compiles all script expressions found in given object (e.g. object template or resource), so that the compiled
+     * code is cached before the scripts are evaluated for the first time. This is a best-effort operation: scripts
+     * that cannot be compiled are skipped; the error will be reported when (if) they are evaluated.
+     *
+     * @return Number of scripts precompiled.
+     */
+    public int precompileScripts(PrismObject<?> object, ExpressionProfile expressionProfile, ExpressionFactory expressionFactory,
+            OperationResult result) {
+        List<ScriptExpressionEvaluatorType> scripts = new ArrayList<>();
+        Visitor visitor = visitable -> {
+            if (visitable instanceof PrismPropertyValue<?>) {
+                Object realValue = ((PrismPropertyValue<?>) visitable).getRealValue();
+                if (realValue instanceof ExpressionType) {
+                    for (JAXBElement<?> evaluator : ((ExpressionType) realValue).getExpressionEvaluator()) {
+                        if (evaluator.getValue() instanceof ScriptExpressionEvaluatorType) {
+                            scripts.add((ScriptExpressionEvaluatorType) evaluator.getValue());
+                        }
+                    }
+                }
+            }
+        };
+        //noinspection unchecked
+        object.accept(visitor);
+
+        int precompiled = 0;
+        String shortDesc = "precompilation of scripts in " + object;
+        for (ScriptExpressionEvaluatorType script : scripts) {
+            try {
+                createScriptExpression(script, null, expressionProfile, expressionFactory, shortDesc, result)
+                        .precompile(shortDesc);
+                precompiled++;
+            } catch (ExpressionSyntaxException | ExpressionEvaluationException | SecurityViolationException | RuntimeException e) {
+                LOGGER.debug("Couldn't precompile script in {}: {}", object, e.getMessage(), e);
+            }
+        }
+        LOGGER.trace("Precompiled {} of {} scripts in {}", precompiled, scripts.size(), object);
+        return precompiled;
+    }
+
     private ScriptExpressionProfile processScriptExpressionProfile(ExpressionProfile expressionProfile, String language, String shortDesc) throws SecurityViolationException {
         if (expressionProfile == null) {
             return null;
@@ -235,9 +281,17 @@ public class ScriptExpressionFactory implements Cache {
     @NotNull
     @Override
     public Collection<SingleCacheStateInformationType> getStateInformation() {
-        return Collections.singleton(new SingleCacheStateInformationType(prismContext)
+        SingleCacheStateInformationType info = new SingleCacheStateInformationType(prismContext)
                 .name(ScriptExpressionFactory.class.getName())
-                .size(customFunctionLibraryCache.size()));
+                .size(customFunctionLibraryCache.size());
+        evaluatorMap.forEach((language, evaluator) -> {
+            if (evaluator instanceof AbstractCachingScriptEvaluator) {
+                info.beginComponent()
+                        .name(evaluator.getLanguageName())
+                        .size((int) ((AbstractCachingScriptEvaluator<?, ?>) evaluator).getScriptCache().size());
+            }
+        });
+        return Collections.singleton(info);
     }
 
     @Override
@@ -248,6 +302,12 @@ public class ScriptExpressionFactory implements Cache {
             } else {
                 LOGGER_CONTENT.info("Custom function library cache is not yet initialized");
             }
+            evaluatorMap.forEach((language, evaluator) -> {
+                if (evaluator instanceof AbstractCachingScriptEvaluator) {
+                    LOGGER_CONTENT.info("Script cache for {}: {}", language,
+                            ((AbstractCachingScriptEvaluator<?, ?>) evaluator).getScriptCache());
+                }
+            });
         }
     }
 }
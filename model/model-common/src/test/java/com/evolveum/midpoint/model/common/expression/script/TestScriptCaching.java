@@ -122,6 +122,42 @@ public class TestScriptCaching extends AbstractUnitTest
         assertTrue("Even Horatio was wrong! " + horatio1Time + " -> " + horatio2Time, horatio2Time <= horatio1Time);
     }
 
+    @Test
+    public void testPrecompileScript() throws Exception {
+        // GIVEN
+        InternalMonitor.reset();
+        ScriptExpressionEvaluatorType scriptType = parseScriptType("expression-simple.xml");
+        ScriptExpression scriptExpression = createScriptExpression(scriptType, null);
+
+        // WHEN
+        scriptExpression.precompile("precompile");
+
+        // THEN
+        assertScriptMonitor(1, 0, "precompile");
+
+        executeScript("expression-simple.xml", "foobar", "after precompile");
+        assertScriptMonitor(1, 1, "after precompile");
+    }
+
+    @Test
+    public void testCacheLimits() {
+        // GIVEN
+        ScriptCache<Object, String> cache = new ScriptCache<>(2);
+
+        // WHEN
+        for (int i = 0; i < 10; i++) {
+            cache.putCode(null, "code" + i, "compiled" + i);
+        }
+
+        // THEN
+        assertEquals("Wrong cache size", 2, cache.size());
+        assertEquals("Wrong number of evictions", 8, cache.getEvictions());
+        assertEquals("Wrong cached code", "compiled9", cache.getCode(null, "code9"));
+        AssertJUnit.assertNull("Evicted code is still cached", cache.getCode(null, "code0"));
+        assertEquals("Wrong number of hits", 1, cache.getHits());
+        assertEquals("Wrong number of misses", 1, cache.getMisses());
+    }
+
     private void assertScriptMonitor(int expCompilations, int expExecutions, String desc) {
         assertEquals("Unexpected number of script compilations after " + desc, expCompilations, InternalMonitor.getCount(InternalCounters.SCRIPT_COMPILE_COUNT));
         assertEquals("Unexpected number of script executions after " + desc, expExecutions, InternalMonitor.getCount(InternalCounters.SCRIPT_EXECUTION_COUNT));
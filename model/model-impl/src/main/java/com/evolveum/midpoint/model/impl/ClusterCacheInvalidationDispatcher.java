@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.Response;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.schema.constants.ObjectTypes;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.ClusterExecutionHelper;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventListType;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Sends cluster-wide cache invalidations to other nodes asynchronously.
+ *
+ * Invalidations are collected for a short time window ({@link #COALESCING_WINDOW}) and then sent as a single
+ * batch to each of the other nodes. While waiting, they are coalesced: repeated invalidations of the same object
+ * are sent only once, invalidation of the whole type absorbs invalidations of individual objects of that type,
+ * and global invalidation absorbs everything. If there are too many objects of the same type waiting,
+ * the whole type is invalidated instead.
+ *
+ * The consequence is that remote nodes invalidate their caches a little bit later than before, i.e. after
+ * the repository change was committed and the call returned to the client. This was never guaranteed anyway,
+ * because nodes not checking in were skipped; and cache entries expire eventually.
+ *
+ * Sending to a node is retried at most {@link #MAX_ATTEMPTS} times. After that the batch is dropped for that node,
+ * a warning is logged and the node is marked for full (global) invalidation. Global invalidation is then sent
+ * to the node with the next batch or after {@link #FULL_INVALIDATION_RETRY_DELAY}, whichever comes first,
+ * until it succeeds. Marks of nodes that are no longer checking in are forgotten, as such nodes are skipped
+ * by regular invalidation anyway.
+ */
+@Component
+public class ClusterCacheInvalidationDispatcher {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ClusterCacheInvalidationDispatcher.class);
+
+    private static final String OP_SEND_INVALIDATIONS = ClusterCacheInvalidationDispatcher.class.getName() + ".sendInvalidations";
+
+    private static final long COALESCING_WINDOW = 50L;
+    private static final int MAX_OIDS_PER_TYPE = 500;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY = 200L;
+    private static final long FULL_INVALIDATION_RETRY_DELAY = 10_000L;
+
+    @Autowired private TaskManager taskManager;
+    @Autowired private ClusterExecutionHelper clusterExecutionHelper;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "midpoint-cluster-cache-invalidation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Invalidations waiting to be sent. Guarded by "this".
+     */
+    private Pending pending = new Pending();
+
+    /**
+     * Is the sending of pending invalidations already scheduled? Guarded by "this".
+     */
+    private boolean flushScheduled;
+
+    /**
+     * Is the sending of full invalidation to marked nodes scheduled? Guarded by "this".
+     */
+    private boolean fullInvalidationRetryScheduled;
+
+    /**
+     * Identifiers of nodes that missed some invalidations, so they need full invalidation.
+     */
+    private final Set<String> nodesNeedingFullInvalidation = ConcurrentHashMap.newKeySet();
+
+    @VisibleForTesting
+    static class Pending {
+        private boolean global;
+        private final Set<Class<? extends ObjectType>> wholeTypes = new HashSet<>();
+        private final Map<Class<? extends ObjectType>, Set<String>> objects = new HashMap<>();
+
+        void add(Class<? extends ObjectType> type, String oid) {
+            if (global) {
+                return;
+            }
+            if (type == null) {
+                if (oid != null) {
+                    LOGGER.warn("Cannot invalidate object type null with specific OID. Converting to global invalidation (type=null, oid=null).");
+                }
+                global = true;
+                wholeTypes.clear();
+                objects.clear();
+            } else if (oid == null || objects.containsKey(type) && objects.get(type).size() >= MAX_OIDS_PER_TYPE) {
+                wholeTypes.add(type);
+                objects.remove(type);
+            } else if (!wholeTypes.contains(type)) {
+                objects.computeIfAbsent(type, k -> new HashSet<>()).add(oid);
+            }
+        }
+
+        boolean isEmpty() {
+            return !global && wholeTypes.isEmpty() && objects.isEmpty();
+        }
+
+        CacheInvalidationEventListType toEventList() {
+            CacheInvalidationEventListType list = new CacheInvalidationEventListType();
+            if (global) {
+                list.getEvent().add(new CacheInvalidationEventType());
+                return list;
+            }
+            for (Class<? extends ObjectType> type : wholeTypes) {
+                list.getEvent().add(createEvent(type, null));
+            }
+            for (Map.Entry<Class<? extends ObjectType>, Set<String>> entry : objects.entrySet()) {
+                for (String oid : entry.getValue()) {
+                    list.getEvent().add(createEvent(entry.getKey(), oid));
+                }
+            }
+            return list;
+        }
+
+        private CacheInvalidationEventType createEvent(Class<? extends ObjectType> type, String oid) {
+            CacheInvalidationEventType event = new CacheInvalidationEventType();
+            event.setType(ObjectTypes.getRestTypeFromClass(type));
+            event.setOid(oid);
+            return event;
+        }
+    }
+
+    /**
+     * Registers the invalidation to be sent to other nodes. Returns immediately.
+     */
+    public synchronized void dispatch(Class<? extends ObjectType> type, String oid) {
+        pending.add(type, oid);
+        if (!flushScheduled) {
+            try {
+                executor.schedule(this::flush, COALESCING_WINDOW, TimeUnit.MILLISECONDS);
+                flushScheduled = true;
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("Not sending cache invalidation for {}:{} because the node is shutting down", type, oid);
+            }
+        }
+    }
+
+    private void flush() {
+        Pending toSend;
+        synchronized (this) {
+            toSend = pending;
+            pending = new Pending();
+            flushScheduled = false;
+        }
+        if (toSend.isEmpty() && nodesNeedingFullInvalidation.isEmpty()) {
+            return;
+        }
+        try {
+            send(toSend.toEventList());
+        } catch (Throwable t) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't send cache invalidations to other cluster nodes", t);
+        }
+        scheduleFullInvalidationRetryIfNeeded();
+    }
+
+    private void flushFullInvalidations() {
+        synchronized (this) {
+            fullInvalidationRetryScheduled = false;
+        }
+        flush();
+    }
+
+    private synchronized void scheduleFullInvalidationRetryIfNeeded() {
+        if (!nodesNeedingFullInvalidation.isEmpty() && !fullInvalidationRetryScheduled) {
+            try {
+                executor.schedule(this::flushFullInvalidations, FULL_INVALIDATION_RETRY_DELAY, TimeUnit.MILLISECONDS);
+                fullInvalidationRetryScheduled = true;
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("Not retrying full cache invalidation of {} because the node is shutting down",
+                        nodesNeedingFullInvalidation);
+            }
+        }
+    }
+
+    private void send(CacheInvalidationEventListType events) {
+        Task task = taskManager.createTaskInstance(OP_SEND_INVALIDATIONS);
+        OperationResult result = task.getResult();
+
+        LOGGER.trace("Sending {} cache invalidation event(s) to other cluster nodes", events.getEvent().size());
+
+        Set<String> nodesVisited = ConcurrentHashMap.newKeySet();
+        // Regular cache invalidation can be skipped for nodes not checking in. Cache entries will expire on such nodes
+        // eventually. (We can revisit this design decision if needed.)
+        clusterExecutionHelper.execute((client, node, result1) -> {
+            String nodeIdentifier = node.getNodeIdentifier();
+            nodesVisited.add(nodeIdentifier);
+            CacheInvalidationEventListType nodeEvents = getEventsForNode(nodeIdentifier, events);
+            if (nodeEvents.getEvent().isEmpty()) {
+                return;
+            }
+            client.path(ClusterServiceConsts.EVENT_INVALIDATION);
+            for (int attempt = 1; ; attempt++) {
+                Response.StatusType statusInfo;
+                try {
+                    Response response = client.post(nodeEvents);
+                    statusInfo = response.getStatusInfo();
+                    response.close();
+                } catch (ProcessingException e) {
+                    if (attempt >= MAX_ATTEMPTS) {
+                        markForFullInvalidation(nodeIdentifier, e.getMessage(), result1);
+                        return;
+                    }
+                    LOGGER.debug("Cluster-wide cache clearance failed on {} (attempt {}), will retry: {}",
+                            node.getNodeIdentifier(), attempt, e.getMessage());
+                    sleepBeforeRetry(attempt);
+                    continue;
+                }
+                if (statusInfo.getFamily() == Response.Status.Family.SUCCESSFUL) {
+                    LOGGER.debug("Cluster-wide cache clearance finished on {} with status {}, {}", node.getNodeIdentifier(),
+                            statusInfo.getStatusCode(), statusInfo.getReasonPhrase());
+                    sentSuccessfully(nodeIdentifier, nodeEvents);
+                    return;
+                } else if (statusInfo.getFamily() != Response.Status.Family.SERVER_ERROR || attempt >= MAX_ATTEMPTS) {
+                    markForFullInvalidation(nodeIdentifier,
+                            "status " + statusInfo.getStatusCode() + ", " + statusInfo.getReasonPhrase(), result1);
+                    return;
+                }
+                LOGGER.debug("Cluster-wide cache clearance finished on {} with status {}, {} (attempt {}), will retry",
+                        node.getNodeIdentifier(), statusInfo.getStatusCode(), statusInfo.getReasonPhrase(), attempt);
+                sleepBeforeRetry(attempt);
+            }
+        }, null, "cache invalidation", result);
+
+        forgetNodesNotVisited(nodesVisited);
+    }
+
+    /**
+     * Returns events to be sent to given node: global invalidation if the node missed some invalidations before.
+     */
+    @VisibleForTesting
+    CacheInvalidationEventListType getEventsForNode(String nodeIdentifier, CacheInvalidationEventListType events) {
+        if (nodesNeedingFullInvalidation.contains(nodeIdentifier)) {
+            CacheInvalidationEventListType global = new CacheInvalidationEventListType();
+            global.getEvent().add(new CacheInvalidationEventType());
+            return global;
+        } else {
+            return events;
+        }
+    }
+
+    @VisibleForTesting
+    void sentSuccessfully(String nodeIdentifier, CacheInvalidationEventListType nodeEvents) {
+        if (isGlobal(nodeEvents) && nodesNeedingFullInvalidation.remove(nodeIdentifier)) {
+            LOGGER.info("Full cache invalidation was sent to node {} that missed some invalidations before",
+                    nodeIdentifier);
+        }
+    }
+
+    private boolean isGlobal(CacheInvalidationEventListType events) {
+        return events.getEvent().stream()
+                .anyMatch(event -> event.getType() == null && event.getOid() == null);
+    }
+
+    @VisibleForTesting
+    void markForFullInvalidation(String nodeIdentifier, String reason, OperationResult result) {
+        nodesNeedingFullInvalidation.add(nodeIdentifier);
+        LOGGER.warn("Couldn't send cache invalidations to node {} ({}), dropping them; the node is marked for full "
+                + "cache invalidation that will be retried", nodeIdentifier, reason);
+        result.recordWarning("Couldn't send cache invalidations to node " + nodeIdentifier + ": " + reason);
+    }
+
+    @VisibleForTesting
+    void forgetNodesNotVisited(Set<String> nodesVisited) {
+        for (Iterator<String> iterator = nodesNeedingFullInvalidation.iterator(); iterator.hasNext(); ) {
+            String nodeIdentifier = iterator.next();
+            if (!nodesVisited.contains(nodeIdentifier)) {
+                LOGGER.debug("Node {} is not checking in, not sending full cache invalidation to it", nodeIdentifier);
+                iterator.remove();
+            }
+        }
+    }
+
+    @VisibleForTesting
+    boolean isMarkedForFullInvalidation(String nodeIdentifier) {
+        return nodesNeedingFullInvalidation.contains(nodeIdentifier);
+    }
+
+    private void sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(RETRY_DELAY * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry cache invalidation", e);
+        }
+    }
+
+    /**
+     * Sends what is pending (best effort) and stops the sending thread.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        flush();
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.controller;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.xml.datatype.Duration;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.common.Clock;
+import com.evolveum.midpoint.model.api.CollectionStats;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.repo.api.Cache;
+import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.CollectionRefSpecificationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
+
+/**
+ * Materialized object counts for collection-based dashboard widgets (see maxStaleness in DashboardWidgetDataType).
+ *
+ * Counts are stored per collection specification and principal, as the principal's authorizations affect the counts.
+ * They are never used when older than the widget's maxStaleness. Within that period they are recomputed early
+ * if an object of the counted type is changed. Changes are learned from cache invalidation events, so they cover
+ * changes done on other cluster nodes as well. (Invalidation events are not guaranteed to arrive, e.g. when a node
+ * is unreachable; the maxStaleness bound holds regardless.)
+ *
+ * To keep the processing of (frequent) invalidation events cheap, the entries are not touched by them. Instead,
+ * each event increments change counters for the type of the changed object:
+ *
+ * - "subtree" counter is incremented for the type and all its supertypes,
+ * - "exact" counter is incremented only for the type itself.
+ *
+ * An entry counting objects of type T is then up to date if the subtree counter of T (changes of T and its subtypes)
+ * and the exact counters of supertypes of T (changes reported for a supertype, possibly related to T) did not change
+ * since the stats were computed. This is checked by comparing a single "signature" value.
+ */
+@Component
+public class CollectionStatsCache implements Cache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(CollectionStatsCache.class);
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(CollectionStatsCache.class.getName() + ".content");
+
+    private static final int MAX_SIZE = 1000;
+
+    @Autowired private PrismContext prismContext;
+    @Autowired private CacheRegistry cacheRegistry;
+    @Autowired private Clock clock;
+
+    public CollectionStatsCache() {
+    }
+
+    @VisibleForTesting
+    CollectionStatsCache(Clock clock) {
+        this.clock = clock;
+    }
+
+    private final Map<Key, Entry> cache = new ConcurrentHashMap<>();
+
+    private final AtomicLong globalChangeCounter = new AtomicLong();
+    private final Map<Class<?>, AtomicLong> subtreeChangeCounters = new ConcurrentHashMap<>();
+    private final Map<Class<?>, AtomicLong> exactChangeCounters = new ConcurrentHashMap<>();
+
+    private static class Key {
+        private final String principalOid;
+        @NotNull private final CollectionRefSpecificationType collectionSpec;
+
+        private Key(String principalOid, @NotNull CollectionRefSpecificationType collectionSpec) {
+            this.principalOid = principalOid;
+            this.collectionSpec = collectionSpec;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(principalOid, key.principalOid)
+                    && collectionSpec.equals(key.collectionSpec);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(principalOid, collectionSpec);
+        }
+    }
+
+    private static class Entry {
+        private final Integer objectCount;
+        private final Integer domainCount;
+        private final Class<?> countedType;
+        private final long signature;
+        private final long computedAt;
+
+        private Entry(CollectionStats stats, Class<?> countedType, long signature, long computedAt) {
+            this.objectCount = stats.getObjectCount();
+            this.domainCount = stats.getDomainCount();
+            this.countedType = countedType;
+            this.signature = signature;
+            this.computedAt = computedAt;
+        }
+
+        private CollectionStats toStats() {
+            CollectionStats stats = new CollectionStats();
+            stats.setObjectCount(objectCount);
+            stats.setDomainCount(domainCount);
+            return stats;
+        }
+    }
+
+    @FunctionalInterface
+    public interface StatsSupplier {
+        CollectionStats get() throws SchemaException, ObjectNotFoundException, SecurityViolationException,
+                ConfigurationException, CommunicationException, ExpressionEvaluationException;
+    }
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCache(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCache(this);
+    }
+
+    /**
+     * Returns materialized stats for given collection, computing them by the supplier if there are none,
+     * they are older than maxStaleness, or objects of the counted type were changed since they were computed.
+     *
+     * @param countedType Type of objects in the collection. Null means any object type.
+     */
+    public CollectionStats getStats(@NotNull CollectionRefSpecificationType collectionSpec,
+            String principalOid, Class<? extends ObjectType> countedType, @NotNull Duration maxStaleness,
+            @NotNull StatsSupplier supplier) throws SchemaException, ObjectNotFoundException, SecurityViolationException,
+            ConfigurationException, CommunicationException, ExpressionEvaluationException {
+        Class<?> type = countedType != null ? countedType : ObjectType.class;
+        Key key = new Key(principalOid, collectionSpec);
+        long now = clock.currentTimeMillis();
+
+        Entry entry = cache.get(key);
+        if (entry != null && entry.countedType == type) {
+            if (now - entry.computedAt > maxStaleness.getTimeInMillis(new Date(entry.computedAt))) {
+                LOGGER.trace("Collection stats for {} are too old (computed at {})", collectionSpec, entry.computedAt);
+            } else if (entry.signature != computeSignature(type)) {
+                LOGGER.trace("Collection stats for {} are outdated by a change of counted objects", collectionSpec);
+            } else {
+                LOGGER.trace("Using collection stats for {} (computed at {})", collectionSpec, entry.computedAt);
+                return entry.toStats();
+            }
+        }
+
+        long signatureBefore = computeSignature(type);
+        CollectionStats stats = supplier.get();
+        if (cache.size() >= MAX_SIZE) {
+            LOGGER.debug("Collection stats cache reached its maximum size of {}, clearing it", MAX_SIZE);
+            cache.clear();
+        }
+        // If something changed while counting, the entry is stored as not up to date; that is correct.
+        cache.put(new Key(principalOid, collectionSpec.clone()), new Entry(stats, type, signatureBefore, now));
+        return stats;
+    }
+
+    private long computeSignature(Class<?> type) {
+        long signature = globalChangeCounter.get() + getCounter(subtreeChangeCounters, type);
+        for (Class<?> superType = type.getSuperclass(); isObjectType(superType); superType = superType.getSuperclass()) {
+            signature += getCounter(exactChangeCounters, superType);
+        }
+        return signature;
+    }
+
+    private long getCounter(Map<Class<?>, AtomicLong> counters, Class<?> type) {
+        AtomicLong counter = counters.get(type);
+        return counter != null ? counter.get() : 0;
+    }
+
+    private boolean isObjectType(Class<?> type) {
+        return type != null && ObjectType.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (type == null || !isObjectType(type)) {
+            // Either a global invalidation, or something we do not count (e.g. an audit event).
+            if (type == null || type.isAssignableFrom(ObjectType.class)) {
+                globalChangeCounter.incrementAndGet();
+            }
+            return;
+        }
+        exactChangeCounters.computeIfAbsent(type, k -> new AtomicLong()).incrementAndGet();
+        for (Class<?> t = type; isObjectType(t); t = t.getSuperclass()) {
+            subtreeChangeCounters.computeIfAbsent(t, k -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    @Override
+    public @NotNull Collection<SingleCacheStateInformationType> getStateInformation() {
+        return Collections.singleton(new SingleCacheStateInformationType(prismContext)
+                .name(CollectionStatsCache.class.getName())
+                .size(cache.size()));
+    }
+
+    @Override
+    public void dumpContent() {
+        if (LOGGER_CONTENT.isInfoEnabled()) {
+            cache.forEach((k, v) -> LOGGER_CONTENT.info("Cached collection stats: {} for {} (principal {}, computed at {})",
+                    v.toStats(), k.collectionSpec, k.principalOid, new Date(v.computedAt)));
+        }
+    }
+}
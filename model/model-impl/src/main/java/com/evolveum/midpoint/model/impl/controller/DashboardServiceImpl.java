@@ -49,6 +49,7 @@ import com.evolveum.midpoint.repo.common.expression.ExpressionVariables;
 import com.evolveum.midpoint.schema.constants.ExpressionConstants;
 import com.evolveum.midpoint.schema.expression.VariablesMap;
 import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.security.api.SecurityContextManager;
 import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.task.api.TaskManager;
 import com.evolveum.midpoint.util.exception.*;
@@ -57,6 +58,7 @@ import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 import com.evolveum.prism.xml.ns._public.query_3.SearchFilterType;
 
+import javax.xml.datatype.Duration;
 import javax.xml.namespace.QName;
 
 /**
@@ -80,6 +82,8 @@ public class DashboardServiceImpl implements DashboardService {
     @Autowired private ModelObjectResolver objectResolver;
     @Autowired private CollectionProcessor collectionProcessor;
     @Autowired private SchemaHelper schemaHelper;
+    @Autowired private SecurityContextManager securityContextManager;
+    @Autowired private CollectionStatsCache collectionStatsCache;
 
     @Override
     public DashboardWidget createWidgetData(DashboardWidgetType widget, Task task, OperationResult result)
@@ -371,7 +375,15 @@ public class DashboardServiceImpl implements DashboardService {
 
             CompiledObjectCollectionView compiledCollection = modelInteractionService.compileObjectCollectionView(
                     collectionSpec, null, task, task.getResult());
-            CollectionStats collStats = modelInteractionService.determineCollectionStats(compiledCollection, task, result);
+            CollectionStats collStats;
+            Duration maxStaleness = widget.getData().getMaxStaleness();
+            if (maxStaleness != null) {
+                collStats = collectionStatsCache.getStats(collectionSpec, securityContextManager.getPrincipalOid(),
+                        compiledCollection.getTargetClass(), maxStaleness,
+                        () -> modelInteractionService.determineCollectionStats(compiledCollection, task, result));
+            } else {
+                collStats = modelInteractionService.determineCollectionStats(compiledCollection, task, result);
+            }
 
             Integer value = collStats.getObjectCount();//getObjectCount(valueCollection, true, task, result);
             Integer domainValue = collStats.getDomainCount();
@@ -584,10 +596,7 @@ public class DashboardServiceImpl implements DashboardService {
             long count = auditService.countObjects(query, options, result);
             task.setExpectedTotal(count);
         }
-        @NotNull SearchResultList<AuditEventRecordType> auditRecords = auditService.searchObjects(query, options, result);
-        auditRecords.forEach(audit -> {
-            handler.handle(audit);
-        });
+        auditService.searchObjectsIterative(query, handler, options, result);
     }
 
     @Override
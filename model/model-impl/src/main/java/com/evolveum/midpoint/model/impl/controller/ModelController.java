@@ -33,6 +33,7 @@ import com.evolveum.midpoint.model.api.hooks.HookRegistry;
 import com.evolveum.midpoint.model.api.hooks.ReadHook;
 import com.evolveum.midpoint.model.common.SystemObjectCache;
 import com.evolveum.midpoint.model.impl.ModelObjectResolver;
+import com.evolveum.midpoint.model.impl.expr.ScriptPrecompiler;
 import com.evolveum.midpoint.model.impl.importer.ImportAccountsFromResourceTaskHandler;
 import com.evolveum.midpoint.model.impl.importer.ObjectImporter;
 import com.evolveum.midpoint.model.impl.lens.*;
@@ -143,6 +144,7 @@ public class ModelController implements ModelService, TaskService, WorkflowServi
     @Autowired private SystemObjectCache systemObjectCache;
     @Autowired private ClockworkMedic clockworkMedic;
     @Autowired private ChangeNotificationDispatcher dispatcher;
+    @Autowired private ScriptPrecompiler scriptPrecompiler;
     @Autowired
     @Qualifier("cacheRepositoryService")
     private RepositoryService cacheRepositoryService;
@@ -1576,6 +1578,10 @@ public class ModelController implements ModelService, TaskService, WorkflowServi
         // Initialize provisioning
         provisioning.postInit(result);
 
+        if (InternalsConfig.isPrecompileScripts()) {
+            scriptPrecompiler.precompileScripts(result);
+        }
+
         if (result.isUnknown()) {
             result.computeStatus();
         }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.expr;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.model.common.expression.script.ScriptExpressionFactory;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.repo.common.expression.ExpressionFactory;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.ResultHandler;
+import com.evolveum.midpoint.schema.SelectorOptions;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.MiscSchemaUtil;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectTemplateType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
+
+/**
+ * Compiles scripts found in object templates and resources (e.g. schema handling mappings) in advance,
+ * so that the first operations after system start do not pay for script compilation.
+ *
+ * Enabled by "precompileScripts" property in "internals" section of the configuration.
+ */
+@Component
+public class ScriptPrecompiler {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ScriptPrecompiler.class);
+
+    private static final String OP_PRECOMPILE_SCRIPTS = ScriptPrecompiler.class.getName() + ".precompileScripts";
+
+    @Autowired private ScriptExpressionFactory scriptExpressionFactory;
+    @Autowired private ExpressionFactory expressionFactory;
+    @Autowired @Qualifier("cacheRepositoryService") private RepositoryService repositoryService;
+
+    public void precompileScripts(OperationResult parentResult) {
+        OperationResult result = parentResult.createMinorSubresult(OP_PRECOMPILE_SCRIPTS);
+        try {
+            long start = System.currentTimeMillis();
+            int templateScripts = precompileScripts(ObjectTemplateType.class, result);
+            int resourceScripts = precompileScripts(ResourceType.class, result);
+            LOGGER.info("Precompiled {} script(s) from object templates and {} script(s) from resources in {} ms",
+                    templateScripts, resourceScripts, System.currentTimeMillis() - start);
+            result.addReturn("templateScripts", templateScripts);
+            result.addReturn("resourceScripts", resourceScripts);
+            result.recordSuccess();
+        } catch (Throwable t) {
+            // Precompilation is only an optimization, so we do not want to stop the system start because of it.
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't precompile scripts", t);
+            result.recordPartialError("Couldn't precompile scripts", t);
+        }
+    }
+
+    private <O extends ObjectType> int precompileScripts(Class<O> type, OperationResult result) throws SchemaException {
+        AtomicInteger count = new AtomicInteger();
+        ResultHandler<O> handler = (object, lResult) -> {
+            count.addAndGet(
+                    scriptExpressionFactory.precompileScripts(object, MiscSchemaUtil.getExpressionProfile(), expressionFactory, lResult));
+            return true;
+        };
+        repositoryService.searchObjectsIterative(type, null, handler,
+                SelectorOptions.createCollection(GetOperationOptions.createReadOnly()), true, result);
+        return count.get();
+    }
+}
@@ -25,6 +25,7 @@ import com.evolveum.midpoint.model.impl.lens.assignments.AssignmentSpec;
 import com.evolveum.midpoint.wf.api.WorkflowManager;
 
 import org.apache.commons.lang.BooleanUtils;
+import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
@@ -113,6 +114,7 @@ public class ChangeExecutor {
     @Autowired private OperationalDataManager metadataManager;
     @Autowired private CredentialsProcessor credentialsProcessor;
     @Autowired private ClockworkConflictResolver clockworkConflictResolver;
+    @Autowired private ConcurrentProjectionExecutor concurrentProjectionExecutor;
 
     private PrismObjectDefinition<UserType> userDefinition;
 
@@ -237,6 +239,10 @@ public class ChangeExecutor {
 
         boolean restartRequested = false;
 
+        // Outcomes are removed when processed, so the ones left are known if the processing stops on a fatal error.
+        Map<LensProjectionContext, ConcurrentProjectionExecutor.Outcome> concurrentlyExecuted =
+                new IdentityHashMap<>(executeIndependentProjectionDeltas(context, task));
+
         for (LensProjectionContext projCtx : context.getProjectionContexts()) {
             if (projCtx.getWave() != context.getExecutionWave()) {
                 LOGGER.trace("Skipping projection context {} because its wave ({}) is different from execution wave ({})",
@@ -265,6 +271,11 @@ public class ChangeExecutor {
                     .addArbitraryObjectAsContext("discriminator", projCtx.getResourceShadowDiscriminator())
                     .build();
 
+            // Outcome of the delta execution, if the delta was already executed concurrently with other projections.
+            // Such projections are neither broken nor reconciled, and they have non-empty delta, so the execution
+            // below goes directly to obtaining the outcome.
+            ConcurrentProjectionExecutor.Outcome executionOutcome = concurrentlyExecuted.remove(projCtx);
+
             boolean completed = true;
             PrismObject<ShadowType> shadowAfterModification = null;
             try {
@@ -272,19 +283,19 @@ public class ChangeExecutor {
 
                 context.checkAbortRequested();
 
-                context.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
-                        projCtx.getResourceShadowDiscriminator(), ENTERING));
+                if (executionOutcome == null) {
+                    // For concurrently executed projections this was reported before the execution.
+                    context.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
+                            projCtx.getResourceShadowDiscriminator(), ENTERING));
+                }
 
                 executeReconciliationScript(projCtx, context, BeforeAfterType.BEFORE, task, subResult);
 
-                ObjectDelta<ShadowType> projDelta = projCtx.getExecutableDelta();
-
-                if (shouldBeDeleted(projDelta, projCtx)) {
-                    projDelta = prismContext.deltaFactory().object()
-                            .createDeleteDelta(projCtx.getObjectTypeClass(), projCtx.getOid());
-                }
+                ObjectDelta<ShadowType> projDelta = executionOutcome != null ?
+                        executionOutcome.getDelta() : getProjectionDeltaToExecute(projCtx);
 
-                if (projCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
+                if (executionOutcome == null
+                        && projCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
                     if (context.getFocusContext() != null
                             && context.getFocusContext().isDelete()
                             && context.getOptions() != null
@@ -331,7 +342,11 @@ public class ChangeExecutor {
                         }
                     }
 
-                    shadowAfterModification = executeDelta(projDelta, projCtx, context, null, null, projCtx.getResource(), task, subResult);
+                    if (executionOutcome != null) {
+                        shadowAfterModification = executionOutcome.get(subResult);
+                    } else {
+                        shadowAfterModification = executeDelta(projDelta, projCtx, context, null, null, projCtx.getResource(), task, subResult);
+                    }
 
                     if (projCtx.isAdd() && shadowAfterModification != null) {
                         projCtx.setExists(true);
@@ -360,7 +375,14 @@ public class ChangeExecutor {
                     updateLinks(context, focusContext, projCtx, shadowAfterModification, task, subResult);
                 }
 
-                ModelImplUtils.handleConnectorErrorCriticality(projCtx.getResource(), e, subResult);
+                try {
+                    ModelImplUtils.handleConnectorErrorCriticality(projCtx.getResource(), e, subResult);
+                } catch (Throwable t) {
+                    // The deltas of projections executed concurrently with this one were already executed,
+                    // so their outcomes have to be processed even if the processing of projections stops here.
+                    processRemainingConcurrentOutcomes(context, concurrentlyExecuted, task, result);
+                    throw t;
+                }
 
             } catch (ObjectAlreadyExistsException e) {
 
@@ -415,6 +437,135 @@ public class ChangeExecutor {
         return restartRequested;
     }
 
+    private ObjectDelta<ShadowType> getProjectionDeltaToExecute(LensProjectionContext projCtx) throws SchemaException {
+        ObjectDelta<ShadowType> projDelta = projCtx.getExecutableDelta();
+        if (shouldBeDeleted(projDelta, projCtx)) {
+            projDelta = prismContext.deltaFactory().object()
+                    .createDeleteDelta(projCtx.getObjectTypeClass(), projCtx.getOid());
+        }
+        return projDelta;
+    }
+
+    /**
+     * If requested by the options, executes deltas of projections in the current wave concurrently. The outcomes are then
+     * processed in {@link #executeProjectionsChanges(LensContext, Task, OperationResult)} in the usual order, as if the deltas
+     * were executed there.
+     *
+     * This is done only if all projections that are to be executed in the current wave are independent of each other.
+     * Otherwise, a fatal error of a projection executed sequentially would not stop the execution of projections
+     * that come after it.
+     */
+    @NotNull
+    private <O extends ObjectType> Map<LensProjectionContext, ConcurrentProjectionExecutor.Outcome> executeIndependentProjectionDeltas(
+            LensContext<O> context, Task task) throws SchemaException {
+        Integer parallelism = ModelExecuteOptions.getProjectionExecutionParallelism(context.getOptions());
+        if (parallelism == null || parallelism < 2) {
+            return Collections.emptyMap();
+        }
+
+        List<ConcurrentProjectionExecutor.Request> requests = new ArrayList<>();
+        Set<String> resourceOids = new HashSet<>();
+        for (LensProjectionContext projCtx : context.getProjectionContexts()) {
+            if (!isExecutedInCurrentWave(context, projCtx)) {
+                continue;
+            }
+            // Broken and reconciled projections can do something on the resource even if there is no delta.
+            boolean mayExecuteWithoutDelta = projCtx.isDoReconciliation()
+                    || projCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN;
+            ObjectDelta<ShadowType> projDelta = mayExecuteWithoutDelta ? null : getProjectionDeltaToExecute(projCtx);
+            if (!mayExecuteWithoutDelta && (projDelta == null || projDelta.isEmpty())) {
+                // Nothing is executed on the resource for this one, only the links are updated.
+                continue;
+            }
+            // Projections on the same resource are not executed concurrently, as they may influence each other.
+            if (mayExecuteWithoutDelta || !isIndependentProjection(context, projCtx)
+                    || !resourceOids.add(projCtx.getResourceOid())) {
+                LOGGER.trace("Projection context {} cannot be executed concurrently with others, executing all projections"
+                        + " in this wave sequentially", projCtx.toHumanReadableString());
+                return Collections.emptyMap();
+            }
+            requests.add(new ConcurrentProjectionExecutor.Request(projCtx, projDelta));
+        }
+        if (requests.size() < 2) {
+            return Collections.emptyMap();
+        }
+
+        for (ConcurrentProjectionExecutor.Request request : requests) {
+            context.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
+                    request.getProjectionContext().getResourceShadowDiscriminator(), ENTERING));
+        }
+        // The requestee is stored in the (shared) task, so it is set here for all the executions.
+        ModelImplUtils.setRequestee(task, context);
+        try {
+            return concurrentProjectionExecutor.execute(requests, parallelism,
+                    (projCtx, projDelta, result) ->
+                            executeDelta(projDelta, projCtx, context, null, null, projCtx.getResource(), task, result),
+                    task);
+        } finally {
+            ModelImplUtils.clearRequestee(task);
+        }
+    }
+
+    /**
+     * Is this projection processed by {@link #executeProjectionsChanges(LensContext, Task, OperationResult)}
+     * in the current wave?
+     */
+    private <O extends ObjectType> boolean isExecutedInCurrentWave(LensContext<O> context, LensProjectionContext projCtx) {
+        return projCtx.getWave() == context.getExecutionWave()
+                && !projCtx.isCompleted()
+                && projCtx.isCanProject()
+                && projCtx.getSynchronizationPolicyDecision() != SynchronizationPolicyDecision.IGNORE;
+    }
+
+    /**
+     * Can be the delta of this projection executed concurrently with other projections? The projection must have
+     * no dependencies on other projections, nor other projections on it. Higher-order projections are executed
+     * sequentially.
+     */
+    private <O extends ObjectType> boolean isIndependentProjection(LensContext<O> context, LensProjectionContext projCtx) {
+        if (projCtx.getResourceOid() == null) {
+            return false;
+        }
+        ResourceShadowDiscriminator discriminator = projCtx.getResourceShadowDiscriminator();
+        if (discriminator != null && discriminator.getOrder() > 0) {
+            return false;
+        }
+        return projCtx.getDependencies().isEmpty() && !LensUtil.hasDependentContext(context, projCtx);
+    }
+
+    /**
+     * Processes outcomes of concurrently executed projection deltas when the processing of projections is stopped
+     * by a fatal error: the changes were done on the resources, so they are recorded in the result and the shadows
+     * are linked, as usual. Errors are only recorded, as the processing fails anyway.
+     */
+    private <O extends ObjectType> void processRemainingConcurrentOutcomes(LensContext<O> context,
+            Map<LensProjectionContext, ConcurrentProjectionExecutor.Outcome> remainingOutcomes, Task task, OperationResult result) {
+        for (LensProjectionContext projCtx : context.getProjectionContexts()) {
+            ConcurrentProjectionExecutor.Outcome executionOutcome = remainingOutcomes.remove(projCtx);
+            if (executionOutcome == null) {
+                continue;
+            }
+            OperationResult subResult = result.subresult(OPERATION_EXECUTE_PROJECTION + "." + projCtx.getObjectTypeClass().getSimpleName())
+                    .addParam("resource", projCtx.getResource())
+                    .addArbitraryObjectAsContext("discriminator", projCtx.getResourceShadowDiscriminator())
+                    .build();
+            try {
+                PrismObject<ShadowType> shadowAfterModification = executionOutcome.get(subResult);
+                if (projCtx.isAdd() && shadowAfterModification != null) {
+                    projCtx.setExists(true);
+                }
+                updateLinks(context, context.getFocusContext(), projCtx, shadowAfterModification, task, subResult);
+                subResult.computeStatus();
+                projCtx.setCompleted(true);
+            } catch (Throwable t) {
+                recordProjectionExecutionException(t, projCtx, subResult, SynchronizationPolicyDecision.BROKEN);
+            } finally {
+                context.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
+                        projCtx.getResourceShadowDiscriminator(), subResult));
+            }
+        }
+    }
+
     private <O extends ObjectType> void applyPendingObjectPolicyStateModifications(LensFocusContext<O> focusContext) throws SchemaException {
         focusContext.swallowToSecondaryDelta(focusContext.getPendingObjectPolicyStateModifications());
         focusContext.clearPendingObjectPolicyStateModifications();
@@ -1562,9 +1713,9 @@ public class ChangeExecutor {
             scripts = prepareScripts(object, context, objectContext, ProvisioningOperationTypeType.ADD,
                     resource, task, result);
         }
-        ModelImplUtils.setRequestee(task, context);
+        setRequestee(task, context);
         String oid = provisioning.addObject(object, scripts, options, task, result);
-        ModelImplUtils.clearRequestee(task);
+        clearRequestee(task);
         return oid;
     }
 
@@ -1591,9 +1742,9 @@ public class ChangeExecutor {
             scripts = prepareScripts(shadowToModify, context, objectContext,
                     ProvisioningOperationTypeType.DELETE, resource, task, result);
         }
-        ModelImplUtils.setRequestee(task, context);
+        setRequestee(task, context);
         PrismObject<T> objectAfterModification = provisioning.deleteObject(objectTypeClass, oid, options, scripts, task, result);
-        ModelImplUtils.clearRequestee(task);
+        clearRequestee(task);
         return objectAfterModification;
     }
 
@@ -1625,13 +1776,29 @@ public class ChangeExecutor {
             scripts = prepareScripts(shadowToModify, context, objectContext,
                     ProvisioningOperationTypeType.MODIFY, resource, task, result);
         }
-        ModelImplUtils.setRequestee(task, context);
+        setRequestee(task, context);
         String changedOid = provisioning.modifyObject(objectTypeClass, oid, modifications, scripts, options,
                 task, result);
-        ModelImplUtils.clearRequestee(task);
+        clearRequestee(task);
         return changedOid;
     }
 
+    /**
+     * Requestee is not touched when executing concurrently with other projections, as the task is shared.
+     * It is managed by {@link #executeIndependentProjectionDeltas(LensContext, Task)} then.
+     */
+    private void setRequestee(Task task, LensContext<?> context) {
+        if (!ConcurrentProjectionExecutor.isInWorkerThread()) {
+            ModelImplUtils.setRequestee(task, context);
+        }
+    }
+
+    private void clearRequestee(Task task) {
+        if (!ConcurrentProjectionExecutor.isInWorkerThread()) {
+            ModelImplUtils.clearRequestee(task);
+        }
+    }
+
     private <F extends ObjectType, T extends ObjectType> OperationProvisioningScriptsType prepareScripts(
             PrismObject<T> changedObject, LensContext<F> context, LensElementContext<T> objectContext,
             ProvisioningOperationTypeType operation, ResourceType resource, Task task, OperationResult result)
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens;
+
+import java.util.*;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
+import com.evolveum.midpoint.repo.api.PreconditionViolationException;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Executes deltas of independent projections concurrently (using {@link ProjectionWorkers}). See
+ * {@link com.evolveum.midpoint.model.api.ModelExecuteOptions#getProjectionExecutionParallelism()}.
+ *
+ * Only the execution of the deltas themselves is done here. The outcomes (objects after modification or exceptions)
+ * are then processed by {@link ChangeExecutor} in the usual order and in the usual way, including the links,
+ * operation results and error criticality handling.
+ *
+ * Each execution has its own operation result (attached to the caller's result when the outcome is used).
+ */
+@Component
+class ConcurrentProjectionExecutor {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ConcurrentProjectionExecutor.class);
+
+    private static final String OP_EXECUTE_PROJECTION_DELTA = ConcurrentProjectionExecutor.class.getName() + ".executeProjectionDelta";
+
+    /**
+     * Set in threads that execute projection deltas. Used to avoid changing state of the shared task
+     * (e.g. the requestee) that is managed by the caller.
+     */
+    private static final ThreadLocal<Boolean> IN_WORKER_THREAD = ThreadLocal.withInitial(() -> false);
+
+    @Autowired private ProjectionWorkers projectionWorkers;
+
+    /**
+     * Executes the delta of given projection. Provided by {@link ChangeExecutor}.
+     */
+    @FunctionalInterface
+    interface DeltaExecution {
+        PrismObject<ShadowType> execute(LensProjectionContext projectionContext, ObjectDelta<ShadowType> delta,
+                OperationResult result) throws CommonException, PreconditionViolationException;
+    }
+
+    /**
+     * Request to execute a projection delta.
+     */
+    static class Request {
+        @NotNull private final LensProjectionContext projectionContext;
+        @NotNull private final ObjectDelta<ShadowType> delta;
+
+        Request(@NotNull LensProjectionContext projectionContext, @NotNull ObjectDelta<ShadowType> delta) {
+            this.projectionContext = projectionContext;
+            this.delta = delta;
+        }
+
+        @NotNull LensProjectionContext getProjectionContext() {
+            return projectionContext;
+        }
+    }
+
+    /**
+     * Outcome of an execution: either the object after modification or the exception.
+     */
+    static class Outcome {
+        @NotNull private final ObjectDelta<ShadowType> delta;
+        private final PrismObject<ShadowType> object;
+        private final Throwable exception;
+        @NotNull private final OperationResult result;
+
+        private Outcome(@NotNull ObjectDelta<ShadowType> delta, PrismObject<ShadowType> object, Throwable exception,
+                @NotNull OperationResult result) {
+            this.delta = delta;
+            this.object = object;
+            this.exception = exception;
+            this.result = result;
+        }
+
+        @NotNull ObjectDelta<ShadowType> getDelta() {
+            return delta;
+        }
+
+        /**
+         * Returns the object after modification or throws the exception, just like the execution of the delta would do.
+         * The result of the execution is added to the parent result.
+         */
+        PrismObject<ShadowType> get(OperationResult parentResult) throws ObjectAlreadyExistsException, ObjectNotFoundException,
+                SchemaException, CommunicationException, ConfigurationException, SecurityViolationException,
+                PolicyViolationException, ExpressionEvaluationException, PreconditionViolationException {
+            parentResult.addSubresult(result);
+            if (exception == null) {
+                return object;
+            } else if (exception instanceof ObjectAlreadyExistsException) {
+                throw (ObjectAlreadyExistsException) exception;
+            } else if (exception instanceof ObjectNotFoundException) {
+                throw (ObjectNotFoundException) exception;
+            } else if (exception instanceof SchemaException) {
+                throw (SchemaException) exception;
+            } else if (exception instanceof CommunicationException) {
+                throw (CommunicationException) exception;
+            } else if (exception instanceof ConfigurationException) {
+                throw (ConfigurationException) exception;
+            } else if (exception instanceof SecurityViolationException) {
+                throw (SecurityViolationException) exception;
+            } else if (exception instanceof PolicyViolationException) {
+                throw (PolicyViolationException) exception;
+            } else if (exception instanceof ExpressionEvaluationException) {
+                throw (ExpressionEvaluationException) exception;
+            } else if (exception instanceof PreconditionViolationException) {
+                throw (PreconditionViolationException) exception;
+            } else if (exception instanceof RuntimeException) {
+                throw (RuntimeException) exception;
+            } else if (exception instanceof Error) {
+                throw (Error) exception;
+            } else {
+                throw new SystemException(exception.getMessage(), exception);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the current thread executes a projection delta on behalf of {@link ChangeExecutor}.
+     */
+    static boolean isInWorkerThread() {
+        return IN_WORKER_THREAD.get();
+    }
+
+    /**
+     * Executes requested deltas, at most `parallelism` at once. Returns when all the executions are done.
+     */
+    @NotNull
+    Map<LensProjectionContext, Outcome> execute(List<Request> requests, int parallelism, DeltaExecution deltaExecution,
+            Task task) {
+        LOGGER.trace("Executing {} projection delta(s) with parallelism of {}", requests.size(), parallelism);
+        // Deltas that are already being executed cannot be safely abandoned, so we do not interrupt them.
+        List<Outcome> outcomes = projectionWorkers.process(requests, request -> execute(request, deltaExecution),
+                parallelism, task, false);
+        Map<LensProjectionContext, Outcome> outcomesByProjection = new IdentityHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            outcomesByProjection.put(requests.get(i).projectionContext, outcomes.get(i));
+        }
+        return outcomesByProjection;
+    }
+
+    private Outcome execute(Request request, DeltaExecution deltaExecution) {
+        OperationResult result = new OperationResult(OP_EXECUTE_PROJECTION_DELTA);
+        result.addParam("projection", request.projectionContext.getHumanReadableName());
+        IN_WORKER_THREAD.set(true);
+        try {
+            PrismObject<ShadowType> object = deltaExecution.execute(request.projectionContext, request.delta, result);
+            return new Outcome(request.delta, object, null, result);
+        } catch (Throwable t) {
+            LOGGER.trace("Execution of delta for {} failed: {}", request.projectionContext.getHumanReadableName(),
+                    t.getMessage(), t);
+            return new Outcome(request.delta, null, t, result);
+        } finally {
+            result.computeStatusIfUnknown();
+            IN_WORKER_THREAD.remove();
+        }
+    }
+}
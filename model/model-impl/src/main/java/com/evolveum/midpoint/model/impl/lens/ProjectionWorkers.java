@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import javax.annotation.PreDestroy;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.caching.CacheScope;
+import com.evolveum.midpoint.util.exception.SystemException;
+
+/**
+ * Threads working on several projections at once: fetching them (see
+ * {@link com.evolveum.midpoint.model.impl.lens.projector.ProjectionPrefetcher}) and executing their deltas
+ * (see {@link ConcurrentProjectionExecutor}). So the time spent on projections on different resources
+ * is bounded by the slowest resource instead of the sum of all of them.
+ *
+ * The threads are shared by all the operations on this node and their number is bounded; the number of items
+ * of a single operation processed at once is limited by the parallelism requested for the operation.
+ *
+ * Each item is processed with the caller's authentication (in its own security context), cache scope,
+ * and with caching profiles and operation result handling strategy of the task, just like worker threads of tasks are.
+ * All of these are cleared from the thread when the item is done.
+ */
+@Component
+public class ProjectionWorkers {
+
+    private static final int MAX_THREADS = 32;
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 60L;
+
+    @Autowired private CacheConfigurationManager cacheConfigurationManager;
+
+    private final ThreadPoolExecutor executor = createExecutor();
+
+    ProjectionWorkers() {
+    }
+
+    @VisibleForTesting
+    public ProjectionWorkers(CacheConfigurationManager cacheConfigurationManager) {
+        this.cacheConfigurationManager = cacheConfigurationManager;
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "projection-worker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Processes the items, at most `parallelism` at once. Returns the outcomes (in the order of the items)
+     * when all the items are done. The processing should not throw exceptions: failures are to be reported
+     * in the outcomes.
+     *
+     * @param mayInterruptRunning Whether the processing of items already started can be interrupted
+     * if the caller is interrupted while waiting for the outcomes.
+     */
+    @NotNull
+    public <I, O> List<O> process(@NotNull List<I> items, @NotNull Function<I, O> processing, int parallelism,
+            Task task, boolean mayInterruptRunning) {
+        CacheScope cacheScope = CacheScope.capture();
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        Semaphore permits = new Semaphore(parallelism);
+        List<Future<O>> futures = new ArrayList<>(items.size());
+        try {
+            for (I item : items) {
+                permits.acquire();
+                try {
+                    futures.add(executor.submit(() -> {
+                        try {
+                            return processInWorker(item, processing, authentication, cacheScope, task);
+                        } finally {
+                            permits.release();
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+            List<O> outcomes = new ArrayList<>(items.size());
+            for (Future<O> future : futures) {
+                outcomes.add(future.get());
+            }
+            return outcomes;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(mayInterruptRunning));
+            throw new SystemException("Interrupted while processing projections", e);
+        } catch (ExecutionException e) {
+            throw new SystemException("Unexpected exception while processing projections: " + e.getMessage(), e);
+        }
+    }
+
+    private <I, O> O processInWorker(I item, Function<I, O> processing, Authentication authentication,
+            CacheScope cacheScope, Task task) {
+        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        securityContext.setAuthentication(authentication);
+        SecurityContextHolder.setContext(securityContext);
+        try {
+            if (task != null) {
+                cacheConfigurationManager.setThreadLocalProfiles(task.getCachingProfiles());
+                OperationResult.setThreadLocalHandlingStrategy(task.getOperationResultHandlingStrategyName());
+            }
+            try (CacheScope.Binding ignored = CacheScope.attach(cacheScope)) {
+                return processing.apply(item);
+            }
+        } finally {
+            if (task != null) {
+                cacheConfigurationManager.unsetThreadLocalProfiles();
+                OperationResult.unsetThreadLocalHandlingStrategy();
+            }
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
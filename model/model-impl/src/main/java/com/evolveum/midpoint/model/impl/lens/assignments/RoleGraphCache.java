@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens.assignments;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.prism.PrismContainer;
+import com.evolveum.midpoint.prism.PrismContainerDefinition;
+import com.evolveum.midpoint.prism.PrismContainerValue;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.repo.api.Cache;
+import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Node-wide cache of assignment targets (roles, orgs, services, archetypes) used by the assignment evaluation.
+ *
+ * Unlike {@link EvaluatedAssignmentTargetCache} that lives for a single clockwork run, this cache survives across
+ * operations, so recompute or reconciliation of many users does not need to fetch the same role -> inducement
+ * -> metarole chains over and over. The targets are stored as immutable objects (together with their version),
+ * so their inducements, conditions and constructions are kept in already parsed form. What is cached is the graph
+ * itself: conditions and mappings are still evaluated for each focus, as they depend on it.
+ *
+ * The cache is used by {@link com.evolveum.midpoint.model.impl.util.ReferenceResolverImpl} when resolving
+ * a target by OID from the repository with read-only options, i.e. when the caller declares it will not modify
+ * the object. Other resolutions (by filter, from model, or modifiable) do not use it.
+ *
+ * Entries are removed on cache invalidation events, i.e. whenever a role is changed on this node or on any other
+ * node. Abstract role types are therefore always invalidated cluster-wide, see
+ * {@link com.evolveum.midpoint.repo.cache.invalidation.Invalidator}. The size of the cache is limited by {@link #MAX_SIZE}.
+ */
+@Component
+public class RoleGraphCache implements Cache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(RoleGraphCache.class);
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(RoleGraphCache.class.getName() + ".content");
+
+    private static final int MAX_SIZE = 10000;
+
+    @Autowired private PrismContext prismContext;
+    @Autowired private CacheRegistry cacheRegistry;
+    @Autowired @Qualifier("cacheRepositoryService") private RepositoryService cacheRepositoryService;
+
+    private final Map<String, CachedTarget> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on each invalidation. Used to avoid storing objects that were fetched before the invalidation
+     * and put into the cache after it.
+     */
+    private final AtomicLong invalidationCounter = new AtomicLong();
+
+    private static class CachedTarget {
+        @NotNull private final PrismObject<? extends AbstractRoleType> object;
+        private final String version;
+
+        /**
+         * Inducement created from superArchetypeRef (for archetypes only). Null if there's none.
+         */
+        private final AssignmentType superArchetypeInducement;
+
+        private CachedTarget(@NotNull PrismObject<? extends AbstractRoleType> object, AssignmentType superArchetypeInducement) {
+            this.object = object;
+            this.version = object.getVersion();
+            this.superArchetypeInducement = superArchetypeInducement;
+        }
+    }
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCache(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCache(this);
+    }
+
+    public static boolean isCacheable(Class<? extends ObjectType> targetClass) {
+        return AbstractRoleType.class.isAssignableFrom(targetClass);
+    }
+
+    /**
+     * Returns the (immutable) target object, fetching it from the repository if it's not cached.
+     * The object is shared, so it must not be modified (and it cannot be, as it is frozen).
+     */
+    @NotNull
+    public <R extends AbstractRoleType> PrismObject<R> getTarget(Class<R> targetClass, String oid, OperationResult result)
+            throws SchemaException, ObjectNotFoundException {
+        CachedTarget cached = cache.get(oid);
+        if (cached != null && targetClass.isAssignableFrom(cached.object.getCompileTimeClass())) {
+            LOGGER.trace("Cache hit for {}:{} (version {})", targetClass.getSimpleName(), oid, cached.version);
+            //noinspection unchecked
+            return (PrismObject<R>) cached.object;
+        }
+
+        long invalidationCountBefore = invalidationCounter.get();
+        PrismObject<R> object = cacheRepositoryService.getObject(targetClass, oid,
+                GetOperationOptions.createReadOnlyCollection(), result);
+        if (!object.isImmutable()) {
+            object = object.clone();
+            object.freeze();
+        }
+        store(object, invalidationCountBefore);
+        return object;
+    }
+
+    private void store(PrismObject<? extends AbstractRoleType> object, long invalidationCountBefore)
+            throws SchemaException {
+        if (cache.size() >= MAX_SIZE) {
+            LOGGER.debug("Role graph cache reached its maximum size of {}, clearing it", MAX_SIZE);
+            cache.clear();
+        }
+        cache.put(object.getOid(), new CachedTarget(object, createSuperArchetypeInducement(object)));
+        if (invalidationCounter.get() != invalidationCountBefore) {
+            // Invalidation could come after we fetched the object; so we cannot trust it.
+            cache.remove(object.getOid());
+        }
+    }
+
+    /**
+     * Returns inducement pointing to the super-archetype of given archetype (or null if there is none).
+     * For cached archetypes the inducement is created only once.
+     */
+    AssignmentType getSuperArchetypeInducement(@NotNull ArchetypeType archetype) throws SchemaException {
+        CachedTarget cached = cache.get(archetype.getOid());
+        if (cached != null && cached.version != null && cached.version.equals(archetype.getVersion())) {
+            return cached.superArchetypeInducement;
+        } else {
+            return createSuperArchetypeInducement(archetype.asPrismObject());
+        }
+    }
+
+    private static AssignmentType createSuperArchetypeInducement(PrismObject<? extends AbstractRoleType> target)
+            throws SchemaException {
+        if (!(target.asObjectable() instanceof ArchetypeType)) {
+            return null;
+        }
+        ObjectReferenceType superArchetype = ((ArchetypeType) target.asObjectable()).getSuperArchetypeRef();
+        if (superArchetype == null) {
+            return null;
+        }
+
+        PrismContainerDefinition<AssignmentType> def = target.getDefinition().findContainerDefinition(ArchetypeType.F_INDUCEMENT);
+        PrismContainer<AssignmentType> inducement = def.instantiate();
+        PrismContainerValue<AssignmentType> inducementValue = inducement.createNewValue();
+        AssignmentType inducementRealValue = inducementValue.asContainerable();
+        inducementRealValue.setTargetRef(superArchetype.clone());
+        if (target.isImmutable()) {
+            inducement.freeze();
+        }
+        return inducementRealValue;
+    }
+
+    @Override
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (type == null || type.isAssignableFrom(AbstractRoleType.class) || AbstractRoleType.class.isAssignableFrom(type)) {
+            invalidationCounter.incrementAndGet();
+            if (oid != null) {
+                cache.remove(oid);
+            } else {
+                cache.clear();
+            }
+        }
+    }
+
+    @Override
+    public @NotNull Collection<SingleCacheStateInformationType> getStateInformation() {
+        return Collections.singleton(new SingleCacheStateInformationType(prismContext)
+                .name(RoleGraphCache.class.getName())
+                .size(cache.size()));
+    }
+
+    @Override
+    public void dumpContent() {
+        if (LOGGER_CONTENT.isInfoEnabled()) {
+            cache.forEach((k, v) -> LOGGER_CONTENT.info("Cached assignment target: {}: {} (version {})", k, v.object, v.version));
+        }
+    }
+}
@@ -9,9 +9,6 @@ package com.evolveum.midpoint.model.impl.lens.assignments;
 
 import static com.evolveum.midpoint.model.impl.lens.assignments.Util.isNonNegative;
 
-import com.evolveum.midpoint.prism.PrismContainer;
-import com.evolveum.midpoint.prism.PrismContainerDefinition;
-import com.evolveum.midpoint.prism.PrismContainerValue;
 import com.evolveum.midpoint.schema.util.ObjectTypeUtil;
 
 import org.apache.commons.lang.BooleanUtils;
@@ -182,19 +179,14 @@ class TargetEvaluation<AH extends AssignmentHolderType> extends AbstractEvaluati
     }
 
     private void evaluateArchetypeHierarchy() throws CommunicationException, ObjectNotFoundException, ConfigurationException, SchemaException, SecurityViolationException, PolicyViolationException, ExpressionEvaluationException {
-        if (ArchetypeType.class.isAssignableFrom(target.getClass())) {
-            ObjectReferenceType superArchetype = ((ArchetypeType) target).getSuperArchetypeRef();
-            if (superArchetype == null) {
+        if (target instanceof ArchetypeType) {
+            AssignmentType superArchetypeInducement =
+                    ctx.ae.beans.roleGraphCache.getSuperArchetypeInducement((ArchetypeType) target);
+            if (superArchetypeInducement == null) {
                 return;
             }
 
-            PrismContainerDefinition<AssignmentType> def = target.asPrismObject().getDefinition().findContainerDefinition(ArchetypeType.F_INDUCEMENT);
-            PrismContainer<AssignmentType> inducement = def.instantiate();
-            PrismContainerValue<AssignmentType> inducementValue = inducement.createNewValue();
-            AssignmentType inducementRealValue = inducementValue.asContainerable();
-            inducementRealValue.setTargetRef(superArchetype);
-
-            new TargetInducementEvaluation<>(segment, targetOverallConditionState, targetActivation, ctx, result, inducementRealValue, true)
+            new TargetInducementEvaluation<>(segment, targetOverallConditionState, targetActivation, ctx, result, superArchetypeInducement, true)
                     .evaluate();
         }
     }
@@ -30,6 +30,7 @@ import com.evolveum.midpoint.model.impl.util.ModelImplUtils;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.repo.common.expression.ExpressionUtil;
 import com.evolveum.midpoint.repo.common.expression.ExpressionVariables;
+import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.constants.ExpressionConstants;
 import com.evolveum.midpoint.schema.expression.ExpressionProfile;
 import com.evolveum.midpoint.schema.result.OperationResult;
@@ -200,7 +201,9 @@ class TargetsEvaluation<AH extends AssignmentHolderType> extends AbstractEvaluat
             CommunicationException, ConfigurationException, SecurityViolationException {
         ObjectReferenceType targetRef = segment.assignment.getTargetRef();
         ReferenceResolver.FilterEvaluator filterEvaluator = createFilterEvaluator(segment, ctx);
-        return ctx.ae.referenceResolver.resolve(targetRef, null, REPOSITORY, filterEvaluator, ctx.task, result);
+        // Targets are never modified here, so they can be provided by the role graph cache.
+        return ctx.ae.referenceResolver.resolve(targetRef, GetOperationOptions.createReadOnlyCollection(), REPOSITORY,
+                filterEvaluator, ctx.task, result);
     }
 
     @NotNull
@@ -10,9 +10,12 @@ import static com.evolveum.midpoint.model.impl.lens.LensUtil.getExportType;
 import static com.evolveum.midpoint.schema.internals.InternalsConfig.consistencyChecks;
 import static com.evolveum.midpoint.schema.result.OperationResult.DEFAULT;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import com.evolveum.midpoint.model.impl.lens.projector.util.ProcessorExecution;
 import com.evolveum.midpoint.model.impl.lens.projector.util.ProcessorMethod;
@@ -88,6 +91,7 @@ public class ContextLoader implements ProjectorProcessor {
     @Autowired private PrismContext prismContext;
     @Autowired private SecurityHelper securityHelper;
     @Autowired private ClockworkMedic medic;
+    @Autowired private ProjectionPrefetcher projectionPrefetcher;
 
     private static final Trace LOGGER = TraceManager.getTrace(ContextLoader.class);
 
@@ -167,13 +171,17 @@ public class ContextLoader implements ProjectorProcessor {
 
             context.checkConsistenceIfNeeded();
 
+            Map<LensProjectionContext, ProjectionPrefetcher.Outcome> prefetchedProjections =
+                    prefetchProjections(context, task);
+
             for (LensProjectionContext projectionContext: context.getProjectionContexts()) {
                 context.checkAbortRequested();
                 // TODO: not perfect. Practically, we want loadProjection operation to contain all the projection
                 //  results. But for that we would need code restructure.
                 OperationResult projectionResult = result.createMinorSubresult(OPERATION_LOAD_PROJECTION);
                 try {
-                    finishLoadOfProjectionContext(context, projectionContext, task, projectionResult);
+                    finishLoadOfProjectionContext(context, projectionContext,
+                            prefetchedProjections.get(projectionContext), task, projectionResult);
                 } catch (Throwable e) {
                     projectionResult.recordFatalError(e);
                     throw e;
@@ -1162,16 +1170,111 @@ public class ContextLoader implements ProjectorProcessor {
         return projContext;
     }
 
+    /**
+     * If requested by the options, fetches projections that need to be fetched from resources concurrently.
+     * The objects (or exceptions) are then processed in {@link #finishLoadOfProjectionContext(LensContext,
+     * LensProjectionContext, ProjectionPrefetcher.Outcome, Task, OperationResult)} as usual.
+     */
+    @NotNull
+    private <F extends ObjectType> Map<LensProjectionContext, ProjectionPrefetcher.Outcome> prefetchProjections(
+            LensContext<F> context, Task task) {
+        Integer parallelism = ModelExecuteOptions.getProjectionLoadParallelism(context.getOptions());
+        if (parallelism == null || parallelism < 2) {
+            return Collections.emptyMap();
+        }
+        List<ProjectionPrefetcher.Request> requests = new ArrayList<>();
+        for (LensProjectionContext projContext : context.getProjectionContexts()) {
+            if (determineProjectionObjectSource(context, projContext) == ProjectionObjectSource.RESOURCE) {
+                requests.add(new ProjectionPrefetcher.Request(projContext, projContext.getOid(),
+                        createProjectionLoadOptions(context, true)));
+            }
+        }
+        if (requests.size() < 2) {
+            return Collections.emptyMap();
+        }
+        return projectionPrefetcher.fetch(requests, parallelism, task);
+    }
+
+    /**
+     * Where does {@link #finishLoadOfProjectionContext(LensContext, LensProjectionContext, ProjectionPrefetcher.Outcome,
+     * Task, OperationResult)} take the current projection object from.
+     */
+    enum ProjectionObjectSource {
+        /** Nothing is loaded, the context is broken. */
+        NONE,
+        /** The current object in the context is used. */
+        CURRENT,
+        /** The projection is being added, so there's no old object. The new one is used. */
+        NEW,
+        /** No OID is known, so there's nothing to load. */
+        NO_OID,
+        /** The shadow is read from the repository (noFetch). */
+        REPOSITORY,
+        /** The object is fetched from the resource. This is what can be done in advance, see {@link ProjectionPrefetcher}. */
+        RESOURCE
+    }
+
+    /**
+     * Decides where the current projection object is taken from. Used both when loading the projection context
+     * and when deciding what to prefetch. Does not modify the context: the adjustments done when loading it
+     * (reconciliation of volatile objects, wiping of objects that are not full shadows) are taken into account here.
+     */
+    static <F extends ObjectType> ProjectionObjectSource determineProjectionObjectSource(LensContext<F> context,
+            LensProjectionContext projContext) {
+        if (projContext.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
+            return ProjectionObjectSource.NONE;
+        }
+        boolean doReconciliation = projContext.isDoReconciliation() || isVolatile(projContext);
+        boolean currentObjectUsable = projContext.getObjectCurrent() != null
+                && (!doReconciliation || projContext.isFullShadow());
+        if (currentObjectUsable && !needToReload(context, projContext)) {
+            return ProjectionObjectSource.CURRENT;
+        } else if (projContext.isAdd() && !projContext.isCompleted()) {
+            return ProjectionObjectSource.NEW;
+        } else if (projContext.getOid() == null) {
+            return ProjectionObjectSource.NO_OID;
+        } else if (doReconciliation) {
+            return ProjectionObjectSource.RESOURCE;
+        } else {
+            return ProjectionObjectSource.REPOSITORY;
+        }
+    }
+
+    private static boolean isVolatile(LensProjectionContext projContext) {
+        ResourceObjectTypeDefinitionType objectDefinition = projContext.getResourceObjectTypeDefinitionType();
+        return objectDefinition != null && objectDefinition.getVolatility() == ResourceObjectVolatilityType.UNPREDICTABLE;
+    }
+
+    private <F extends ObjectType> Collection<SelectorOptions<GetOperationOptions>> createProjectionLoadOptions(
+            LensContext<F> context, boolean doReconciliation) {
+        GetOperationOptions rootOptions = GetOperationOptions.createPointInTimeType(PointInTimeType.FUTURE);
+        if (doReconciliation) {
+            rootOptions.setForceRefresh(true);
+            if (SchemaConstants.CHANNEL_DISCOVERY_URI.equals(context.getChannel())) {
+                // Avoid discovery loops
+                rootOptions.setDoNotDiscovery(true);
+            }
+        } else {
+            rootOptions.setNoFetch(true);
+        }
+        rootOptions.setAllowNotFound(true);
+        return SelectorOptions.createCollection(rootOptions);
+    }
+
     /**
      * Check reconcile flag in account sync context and set accountOld
      * variable if it's not set (from provisioning), load resource (if not set already), etc.
+     *
+     * @param prefetchedProjection Projection object fetched in advance (if any), see
+     * {@link #prefetchProjections(LensContext, Task)}.
      */
     private <F extends ObjectType> void finishLoadOfProjectionContext(LensContext<F> context,
-            LensProjectionContext projContext, Task task, OperationResult result)
+            LensProjectionContext projContext, ProjectionPrefetcher.Outcome prefetchedProjection, Task task, OperationResult result)
             throws ObjectNotFoundException, CommunicationException, SchemaException, ConfigurationException,
             SecurityViolationException, ExpressionEvaluationException {
 
-        if (projContext.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
+        ProjectionObjectSource objectSource = determineProjectionObjectSource(context, projContext);
+        if (objectSource == ProjectionObjectSource.NONE) {
             LOGGER.trace("Skipping loading of broken context {}", projContext.getHumanReadableName());
             result.recordNotApplicable();
             return;
@@ -1182,8 +1285,7 @@ public class ContextLoader implements ProjectorProcessor {
         // and load also completed projections.
 
         // MID-2436 (volatile objects) - as a quick but effective hack, we set reconciliation:=TRUE for volatile accounts
-        ResourceObjectTypeDefinitionType objectDefinition = projContext.getResourceObjectTypeDefinitionType();
-        if (objectDefinition != null && objectDefinition.getVolatility() == ResourceObjectVolatilityType.UNPREDICTABLE && !projContext.isDoReconciliation()) {
+        if (isVolatile(projContext) && !projContext.isDoReconciliation()) {
             LOGGER.trace("Resource object volatility is UNPREDICTABLE => setting doReconciliation to TRUE for {}", projContext.getResourceShadowDiscriminator());
             projContext.setDoReconciliation(true);
         }
@@ -1198,37 +1300,34 @@ public class ContextLoader implements ProjectorProcessor {
         // Load current object
         boolean tombstone = false;
         PrismObject<ShadowType> projectionObject = projContext.getObjectCurrent();
-        if (projContext.getObjectCurrent() == null || needToReload(context, projContext)) {
-            if (projContext.isAdd() && !projContext.isCompleted()) {
+        if (objectSource != ProjectionObjectSource.CURRENT) {
+            if (objectSource == ProjectionObjectSource.NEW) {
                 // No need to load old object, there is none
                 projContext.setExists(false);
                 projContext.recompute();
                 projectionObject = projContext.getObjectNew();
             } else {
-                if (projectionObjectOid == null) {
+                if (objectSource == ProjectionObjectSource.NO_OID) {
                     projContext.setExists(false);
                     if (projContext.getResourceShadowDiscriminator() == null || projContext.getResourceShadowDiscriminator().getResourceOid() == null) {
                         throw new SystemException(
                                 "Projection "+projContext.getHumanReadableName()+" with null OID, no representation and no resource OID in account sync context "+projContext);
                     }
                 } else {
-                    GetOperationOptions rootOptions = GetOperationOptions.createPointInTimeType(PointInTimeType.FUTURE);
-                    if (projContext.isDoReconciliation()) {
-                        rootOptions.setForceRefresh(true);
-                        if (SchemaConstants.CHANNEL_DISCOVERY_URI.equals(context.getChannel())) {
-                            // Avoid discovery loops
-                            rootOptions.setDoNotDiscovery(true);
-                        }
-                    } else {
-                        rootOptions.setNoFetch(true);
-                    }
-                    rootOptions.setAllowNotFound(true);
-                    Collection<SelectorOptions<GetOperationOptions>> options = SelectorOptions.createCollection(rootOptions);
+                    Collection<SelectorOptions<GetOperationOptions>> options =
+                            createProjectionLoadOptions(context, objectSource == ProjectionObjectSource.RESOURCE);
+                    GetOperationOptions rootOptions = SelectorOptions.findRootOptions(options);
                     LOGGER.trace("Loading shadow {} for projection {}, options={}", projectionObjectOid, projContext.getHumanReadableName(), options);
 
                     try {
-                        PrismObject<ShadowType> objectOld = provisioningService.getObject(
-                                projContext.getObjectTypeClass(), projectionObjectOid, options, task, result);
+                        PrismObject<ShadowType> objectOld;
+                        if (prefetchedProjection != null && projectionObjectOid.equals(prefetchedProjection.getOid())) {
+                            LOGGER.trace("Using prefetched shadow {} for projection {}", projectionObjectOid, projContext.getHumanReadableName());
+                            objectOld = prefetchedProjection.get(result);
+                        } else {
+                            objectOld = provisioningService.getObject(
+                                    projContext.getObjectTypeClass(), projectionObjectOid, options, task, result);
+                        }
                         if (!GetOperationOptions.isNoFetch(rootOptions) && !GetOperationOptions.isRaw(rootOptions)) {
                             LOGGER.trace("Full shadow loaded for {}:\n{}", projContext.getHumanReadableName(), objectOld.debugDumpLazily(1));
                         }
@@ -1377,7 +1476,7 @@ public class ContextLoader implements ProjectorProcessor {
         setPrimaryDeltaOldValue(projContext);
     }
 
-    private <F extends ObjectType> boolean needToReload(LensContext<F> context,
+    private static <F extends ObjectType> boolean needToReload(LensContext<F> context,
             LensProjectionContext projContext) {
         ResourceShadowDiscriminator discr = projContext.getResourceShadowDiscriminator();
         if (discr == null) {
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens.projector;
+
+import java.util.*;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.model.impl.lens.LensProjectionContext;
+import com.evolveum.midpoint.model.impl.lens.ProjectionWorkers;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.provisioning.api.ProvisioningService;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.SelectorOptions;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Fetches shadows of several projections concurrently (using {@link ProjectionWorkers}). See
+ * {@link com.evolveum.midpoint.model.api.ModelExecuteOptions#getProjectionLoadParallelism()}.
+ *
+ * The outcomes (objects or exceptions) are then processed by {@link ContextLoader} in the usual order
+ * and in the usual way, as if the objects were fetched there. Each fetch has its own operation result,
+ * attached to the caller's result when the outcome is used.
+ */
+@Component
+class ProjectionPrefetcher {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ProjectionPrefetcher.class);
+
+    private static final String OP_FETCH_PROJECTION = ProjectionPrefetcher.class.getName() + ".fetchProjection";
+
+    @Autowired private ProvisioningService provisioningService;
+    @Autowired private ProjectionWorkers projectionWorkers;
+
+    ProjectionPrefetcher() {
+    }
+
+    @VisibleForTesting
+    ProjectionPrefetcher(ProvisioningService provisioningService, ProjectionWorkers projectionWorkers) {
+        this.provisioningService = provisioningService;
+        this.projectionWorkers = projectionWorkers;
+    }
+
+    /**
+     * Request to fetch a projection object.
+     */
+    static class Request {
+        @NotNull private final LensProjectionContext projectionContext;
+        @NotNull private final String oid;
+        @NotNull private final Collection<SelectorOptions<GetOperationOptions>> options;
+
+        Request(@NotNull LensProjectionContext projectionContext, @NotNull String oid,
+                @NotNull Collection<SelectorOptions<GetOperationOptions>> options) {
+            this.projectionContext = projectionContext;
+            this.oid = oid;
+            this.options = options;
+        }
+    }
+
+    /**
+     * Outcome of a fetch: either the object or the exception.
+     */
+    static class Outcome {
+        @NotNull private final String oid;
+        private final PrismObject<ShadowType> object;
+        private final Throwable exception;
+        @NotNull private final OperationResult result;
+
+        private Outcome(@NotNull String oid, PrismObject<ShadowType> object, Throwable exception, @NotNull OperationResult result) {
+            this.oid = oid;
+            this.object = object;
+            this.exception = exception;
+            this.result = result;
+        }
+
+        @NotNull String getOid() {
+            return oid;
+        }
+
+        /**
+         * Returns the object or throws the exception, just like provisioning getObject would do.
+         * The result of the fetch is added to the parent result.
+         */
+        PrismObject<ShadowType> get(OperationResult parentResult) throws ObjectNotFoundException, CommunicationException,
+                SchemaException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
+            parentResult.addSubresult(result);
+            if (exception == null) {
+                return object;
+            } else if (exception instanceof ObjectNotFoundException) {
+                throw (ObjectNotFoundException) exception;
+            } else if (exception instanceof CommunicationException) {
+                throw (CommunicationException) exception;
+            } else if (exception instanceof SchemaException) {
+                throw (SchemaException) exception;
+            } else if (exception instanceof ConfigurationException) {
+                throw (ConfigurationException) exception;
+            } else if (exception instanceof SecurityViolationException) {
+                throw (SecurityViolationException) exception;
+            } else if (exception instanceof ExpressionEvaluationException) {
+                throw (ExpressionEvaluationException) exception;
+            } else if (exception instanceof RuntimeException) {
+                throw (RuntimeException) exception;
+            } else if (exception instanceof Error) {
+                throw (Error) exception;
+            } else {
+                throw new SystemException(exception.getMessage(), exception);
+            }
+        }
+    }
+
+    /**
+     * Fetches requested objects, at most `parallelism` at once. Returns when all the fetches are done.
+     */
+    @NotNull
+    Map<LensProjectionContext, Outcome> fetch(List<Request> requests, int parallelism, Task task) {
+        LOGGER.trace("Fetching {} projection(s) with parallelism of {}", requests.size(), parallelism);
+        // Fetches that are already running can be interrupted, as they do not change anything.
+        List<Outcome> outcomes = projectionWorkers.process(requests, request -> fetch(request, task), parallelism, task, true);
+        Map<LensProjectionContext, Outcome> outcomesByProjection = new IdentityHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            outcomesByProjection.put(requests.get(i).projectionContext, outcomes.get(i));
+        }
+        return outcomesByProjection;
+    }
+
+    private Outcome fetch(Request request, Task task) {
+        OperationResult result = new OperationResult(OP_FETCH_PROJECTION);
+        result.addParam("oid", request.oid);
+        try {
+            PrismObject<ShadowType> object =
+                    provisioningService.getObject(ShadowType.class, request.oid, request.options, task, result);
+            return new Outcome(request.oid, object, null, result);
+        } catch (Throwable t) {
+            LOGGER.trace("Fetching projection {} failed: {}", request.oid, t.getMessage(), t);
+            return new Outcome(request.oid, null, t, result);
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+}
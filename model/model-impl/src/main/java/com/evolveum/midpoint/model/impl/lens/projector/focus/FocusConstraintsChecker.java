@@ -44,8 +44,6 @@ import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
  */
 public class FocusConstraintsChecker<AH extends AssignmentHolderType> {
 
-    private static ConcurrentHashMap<Thread, Cache> cacheInstances = new ConcurrentHashMap<>();
-
     private static final Trace LOGGER = TraceManager.getTrace(FocusConstraintsChecker.class);
     private static final Trace PERFORMANCE_ADVISOR = TraceManager.getPerformanceAdvisorTrace();
 
@@ -191,11 +189,11 @@ public class FocusConstraintsChecker<AH extends AssignmentHolderType> {
     }
 
     public static void enterCache(CacheConfiguration configuration) {
-        Cache.enter(cacheInstances, Cache.class, configuration, LOGGER);
+        Cache.enter(Cache.class, configuration, LOGGER);
     }
 
     public static void exitCache() {
-        Cache.exit(cacheInstances, LOGGER);
+        Cache.exit(Cache.class, LOGGER);
     }
 
     public static <T extends ObjectType> void clearCacheFor(PolyStringType name) {
@@ -276,7 +274,7 @@ public class FocusConstraintsChecker<AH extends AssignmentHolderType> {
         }
 
         private static Cache getCache() {
-            return cacheInstances.get(Thread.currentThread());
+            return getCurrent(Cache.class);
         }
 
         public static void remove(PolyStringType name) {
@@ -22,6 +22,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import com.evolveum.midpoint.model.api.ModelService;
+import com.evolveum.midpoint.model.impl.lens.assignments.RoleGraphCache;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.query.ObjectFilter;
@@ -35,6 +36,7 @@ import com.evolveum.midpoint.util.annotation.Experimental;
 import com.evolveum.midpoint.util.exception.*;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AbstractRoleType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 import com.evolveum.prism.xml.ns._public.query_3.SearchFilterType;
@@ -48,6 +50,7 @@ public class ReferenceResolverImpl implements ReferenceResolver {
     @Autowired private PrismContext prismContext;
     @Autowired private ModelService modelService;
     @Autowired @Qualifier("cacheRepositoryService") private RepositoryService repositoryService;
+    @Autowired private RoleGraphCache roleGraphCache;
 
     public List<PrismObject<? extends ObjectType>> resolve(@NotNull ObjectReferenceType reference,
             Collection<SelectorOptions<GetOperationOptions>> options, @NotNull Source source,
@@ -84,7 +87,12 @@ public class ReferenceResolverImpl implements ReferenceResolver {
         LOGGER.trace("Resolving {}:{} from {}", targetClass.getSimpleName(), oid, source);
         switch (source) {
             case REPOSITORY:
-                return repositoryService.getObject(targetClass, oid, options, result);
+                if (isRoleGraphCacheable(targetClass, options)) {
+                    //noinspection unchecked
+                    return roleGraphCache.getTarget((Class<? extends AbstractRoleType>) targetClass, oid, result);
+                } else {
+                    return repositoryService.getObject(targetClass, oid, options, result);
+                }
             case MODEL:
                 return modelService.getObject(targetClass, oid, options, task, result);
             default:
@@ -92,6 +100,16 @@ public class ReferenceResolverImpl implements ReferenceResolver {
         }
     }
 
+    /**
+     * Shared immutable objects from {@link RoleGraphCache} can be returned only if the caller asked for exactly
+     * read-only objects, i.e. it does not intend to modify them.
+     */
+    private boolean isRoleGraphCacheable(Class<? extends ObjectType> targetClass,
+            Collection<SelectorOptions<GetOperationOptions>> options) {
+        return RoleGraphCache.isCacheable(targetClass)
+                && GetOperationOptions.createReadOnlyCollection().equals(options);
+    }
+
     @NotNull
     private List<PrismObject<? extends ObjectType>> resolveFromFilter(Class<? extends ObjectType> targetClass,
             ObjectReferenceType reference, Collection<SelectorOptions<GetOperationOptions>> options, @NotNull Source source,
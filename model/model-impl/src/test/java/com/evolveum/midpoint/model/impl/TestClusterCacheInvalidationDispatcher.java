@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Set;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.impl.ClusterCacheInvalidationDispatcher.Pending;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventListType;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RoleType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Tests coalescing of pending invalidations and marking of nodes that missed some invalidations
+ * in {@link ClusterCacheInvalidationDispatcher}. Sending itself is covered by the cluster tests.
+ */
+public class TestClusterCacheInvalidationDispatcher extends AbstractUnitTest {
+
+    private static final String NODE_1 = "node1";
+    private static final String NODE_2 = "node2";
+
+    private ClusterCacheInvalidationDispatcher dispatcher;
+
+    @BeforeMethod
+    public void createDispatcher() {
+        // Nothing is dispatched, so no sending thread is started.
+        dispatcher = new ClusterCacheInvalidationDispatcher();
+    }
+
+    @Test
+    public void test100RepeatedInvalidationsAreSentOnce() {
+        given();
+        Pending pending = new Pending();
+
+        when();
+        pending.add(UserType.class, "1");
+        pending.add(UserType.class, "1");
+        pending.add(UserType.class, "2");
+        pending.add(RoleType.class, "1");
+
+        then();
+        assertThat(pending.isEmpty()).isFalse();
+        assertThat(pending.toEventList().getEvent())
+                .extracting(e -> e.getType() + ":" + e.getOid())
+                .containsExactlyInAnyOrder("users:1", "users:2", "roles:1");
+    }
+
+    @Test
+    public void test110WholeTypeAbsorbsObjects() {
+        given();
+        Pending pending = new Pending();
+        pending.add(UserType.class, "1");
+
+        when("whole type is invalidated, before and after an object");
+        pending.add(UserType.class, null);
+        pending.add(UserType.class, "2");
+        pending.add(RoleType.class, "1");
+
+        then();
+        assertThat(pending.toEventList().getEvent())
+                .extracting(e -> e.getType() + ":" + e.getOid())
+                .containsExactlyInAnyOrder("users:null", "roles:1");
+    }
+
+    @Test
+    public void test120TooManyObjectsBecomeWholeType() {
+        given();
+        Pending pending = new Pending();
+
+        when();
+        for (int i = 0; i <= 500; i++) {
+            pending.add(UserType.class, String.valueOf(i));
+        }
+
+        then();
+        assertThat(pending.toEventList().getEvent())
+                .extracting(e -> e.getType() + ":" + e.getOid())
+                .containsExactly("users:null");
+    }
+
+    @Test
+    public void test130GlobalAbsorbsEverything() {
+        given();
+        Pending pending = new Pending();
+        pending.add(UserType.class, "1");
+        pending.add(RoleType.class, null);
+
+        when();
+        pending.add(null, null);
+        pending.add(UserType.class, "2");
+
+        then();
+        assertThat(pending.toEventList().getEvent()).hasSize(1);
+        assertGlobal(pending.toEventList());
+    }
+
+    @Test
+    public void test140EmptyPending() {
+        expect();
+        assertThat(new Pending().isEmpty()).isTrue();
+        assertThat(new Pending().toEventList().getEvent()).isEmpty();
+    }
+
+    @Test
+    public void test200NodeMissingInvalidationsGetsFullInvalidation() {
+        given();
+        Pending pending = new Pending();
+        pending.add(UserType.class, "1");
+        CacheInvalidationEventListType events = pending.toEventList();
+
+        when("sending to node 1 failed");
+        OperationResult result = new OperationResult(getTestNameShort());
+        dispatcher.markForFullInvalidation(NODE_1, "connection refused", result);
+
+        then("the failure is visible and node 1 gets global invalidation next time");
+        result.computeStatus();
+        assertThat(result.isWarning()).isTrue();
+        assertThat(dispatcher.isMarkedForFullInvalidation(NODE_1)).isTrue();
+        assertGlobal(dispatcher.getEventsForNode(NODE_1, events));
+        assertThat(dispatcher.getEventsForNode(NODE_2, events)).isSameAs(events);
+
+        when("regular events are sent to node 1");
+        dispatcher.sentSuccessfully(NODE_1, events);
+
+        then("the mark stays");
+        assertThat(dispatcher.isMarkedForFullInvalidation(NODE_1)).isTrue();
+
+        when("global invalidation is sent to node 1");
+        dispatcher.sentSuccessfully(NODE_1, dispatcher.getEventsForNode(NODE_1, events));
+
+        then("the mark is cleared");
+        assertThat(dispatcher.isMarkedForFullInvalidation(NODE_1)).isFalse();
+        assertThat(dispatcher.getEventsForNode(NODE_1, events)).isSameAs(events);
+    }
+
+    @Test
+    public void test210MarksOfNodesNotCheckingInAreForgotten() {
+        given();
+        OperationResult result = new OperationResult(getTestNameShort());
+        dispatcher.markForFullInvalidation(NODE_1, "connection refused", result);
+        dispatcher.markForFullInvalidation(NODE_2, "connection refused", result);
+
+        when("only node 2 was contacted");
+        dispatcher.forgetNodesNotVisited(Set.of(NODE_2));
+
+        then();
+        assertThat(dispatcher.isMarkedForFullInvalidation(NODE_1)).isFalse();
+        assertThat(dispatcher.isMarkedForFullInvalidation(NODE_2)).isTrue();
+    }
+
+    private void assertGlobal(CacheInvalidationEventListType events) {
+        assertThat(events.getEvent()).hasSize(1);
+        CacheInvalidationEventType event = events.getEvent().get(0);
+        assertThat(event.getType()).isNull();
+        assertThat(event.getOid()).isNull();
+    }
+}
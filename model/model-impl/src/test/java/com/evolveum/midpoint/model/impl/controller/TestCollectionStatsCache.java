@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.datatype.Duration;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.common.Clock;
+import com.evolveum.midpoint.model.api.CollectionStats;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests validity of materialized collection stats in {@link CollectionStatsCache}:
+ * maxStaleness is always enforced, changes of counted objects refresh the stats earlier.
+ */
+public class TestCollectionStatsCache extends AbstractUnitTest {
+
+    private static final String COLLECTION_OID = "7a1c0a36-3f0e-4a59-9d2c-0c4b1c3f6a01";
+    private static final String PRINCIPAL_OID = "7a1c0a36-3f0e-4a59-9d2c-0c4b1c3f6a02";
+
+    private static final Duration MAX_STALENESS = XmlTypeConverter.createDuration("PT10M");
+    private static final long MINUTE = 60_000L;
+
+    /** Fixed at the start of each test; tests move it by {@link Clock#overrideOffset(Long)}. */
+    private Clock clock;
+    private CollectionStatsCache cache;
+    private CollectionRefSpecificationType collectionSpec;
+    private final AtomicInteger computations = new AtomicInteger();
+
+    @BeforeClass
+    public void initPrism() throws Exception {
+        PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+    }
+
+    @BeforeMethod
+    public void createCache() {
+        clock = new Clock();
+        clock.override(System.currentTimeMillis());
+        cache = new CollectionStatsCache(clock);
+        collectionSpec = new CollectionRefSpecificationType()
+                .collectionRef(COLLECTION_OID, ObjectCollectionType.COMPLEX_TYPE);
+        computations.set(0);
+    }
+
+    @Test
+    public void test100StatsAreReused() throws Exception {
+        given();
+        getStats(UserType.class);
+
+        when();
+        clock.overrideOffset(9 * MINUTE);
+        CollectionStats stats = getStats(UserType.class);
+
+        then();
+        assertThat(computations.get()).isEqualTo(1);
+        assertThat(stats.getObjectCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void test110StatsOlderThanMaxStalenessAreRecomputed() throws Exception {
+        given();
+        getStats(UserType.class);
+
+        when("no change was seen, but the stats are too old");
+        clock.overrideOffset(11 * MINUTE);
+        CollectionStats stats = getStats(UserType.class);
+
+        then();
+        assertThat(computations.get()).isEqualTo(2);
+        assertThat(stats.getObjectCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void test120ChangeOfCountedTypeRefreshesEarly() throws Exception {
+        given();
+        getStats(UserType.class);
+
+        when();
+        clock.overrideOffset(MINUTE);
+        cache.invalidate(UserType.class, "c0c1d8e2-27d5-4b3c-8f11-8c4ac7f1b001", null);
+        getStats(UserType.class);
+
+        then();
+        assertThat(computations.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void test130ChangeOfSupertypeOrGlobalRefreshesEarly() throws Exception {
+        given();
+        getStats(UserType.class);
+
+        when("change reported for a supertype");
+        cache.invalidate(FocusType.class, null, null);
+        getStats(UserType.class);
+
+        and("global invalidation");
+        cache.invalidate(null, null, null);
+        getStats(UserType.class);
+
+        then();
+        assertThat(computations.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void test140ChangeOfOtherTypeDoesNotRefresh() throws Exception {
+        given();
+        getStats(UserType.class);
+
+        when();
+        cache.invalidate(RoleType.class, "c0c1d8e2-27d5-4b3c-8f11-8c4ac7f1b002", null);
+        getStats(UserType.class);
+
+        then();
+        assertThat(computations.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void test150RecomputedStatsAreBoundedAgain() throws Exception {
+        given("stats recomputed after a change");
+        getStats(UserType.class);
+        clock.overrideOffset(5 * MINUTE);
+        cache.invalidate(UserType.class, null, null);
+        getStats(UserType.class);
+
+        when("max staleness is measured from the recomputation");
+        clock.overrideOffset(14 * MINUTE);
+        getStats(UserType.class);
+        clock.overrideOffset(16 * MINUTE);
+        getStats(UserType.class);
+
+        then();
+        assertThat(computations.get()).isEqualTo(3);
+    }
+
+    private CollectionStats getStats(Class<? extends ObjectType> type) throws Exception {
+        return cache.getStats(collectionSpec, PRINCIPAL_OID, type, MAX_STALENESS, () -> {
+            CollectionStats stats = new CollectionStats();
+            stats.setObjectCount(computations.incrementAndGet());
+            return stats;
+        });
+    }
+}
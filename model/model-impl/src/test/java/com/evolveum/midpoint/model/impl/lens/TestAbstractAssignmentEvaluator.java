@@ -39,6 +39,7 @@ import com.evolveum.midpoint.model.common.mapping.MappingImpl;
 import com.evolveum.midpoint.model.common.mapping.PrismValueDeltaSetTripleProducer;
 import com.evolveum.midpoint.model.impl.lens.assignments.AssignmentEvaluator;
 import com.evolveum.midpoint.model.impl.lens.assignments.EvaluatedAssignmentImpl;
+import com.evolveum.midpoint.model.impl.lens.assignments.EvaluatedAssignmentTargetImpl;
 import com.evolveum.midpoint.model.impl.lens.construction.ResourceObjectConstruction;
 import com.evolveum.midpoint.model.impl.lens.construction.EvaluatedResourceObjectConstructionImpl;
 import com.evolveum.midpoint.model.impl.lens.projector.AssignmentOrigin;
@@ -58,8 +59,10 @@ import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
 import com.evolveum.midpoint.repo.common.ObjectResolver;
 import com.evolveum.midpoint.schema.RelationRegistry;
 import com.evolveum.midpoint.schema.constants.MidPointConstants;
+import com.evolveum.midpoint.schema.constants.ObjectTypes;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ActivationUtil;
+import com.evolveum.midpoint.schema.util.ObjectTypeUtil;
 import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.test.util.TestUtil;
 import com.evolveum.midpoint.util.exception.*;
@@ -452,6 +455,86 @@ public abstract class TestAbstractAssignmentEvaluator extends AbstractLensTest {
         assertEquals("Wrong number of admin GUI configs", 1, evaluatedAssignment.getAdminGuiConfigurations().size());
     }
 
+    /**
+     * Targets of the assignment evaluation are provided by the role graph cache: the same immutable instances
+     * are reused by subsequent evaluations. (Any attempt to modify them would fail the evaluation.)
+     * Callers that do not ask for read-only objects get their own mutable copies.
+     */
+    @Test
+    public void test152RoleEngineerTargetsAreShared() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        when();
+        EvaluatedAssignmentImpl<UserType> evaluatedAssignment1 = evaluateRoleEngineer(task, result);
+        EvaluatedAssignmentImpl<UserType> evaluatedAssignment2 = evaluateRoleEngineer(task, result);
+
+        then();
+        assertSuccess(result);
+        assertEquals("Wrong number of constructions", 4, evaluatedAssignment2.getConstructionTriple().size());
+
+        PrismObject<?> engineer1 = getEvaluatedTarget(evaluatedAssignment1, ROLE_CORP_ENGINEER_OID);
+        PrismObject<?> engineer2 = getEvaluatedTarget(evaluatedAssignment2, ROLE_CORP_ENGINEER_OID);
+        assertSame("Role was not taken from the cache", engineer1, engineer2);
+        for (EvaluatedAssignmentTargetImpl target : evaluatedAssignment2.getRoles().getAllValues()) {
+            assertTrue("Target " + target + " is not immutable", target.getTarget().isImmutable());
+        }
+
+        and("modifiable copy is returned when not asking for read-only object");
+        ObjectReferenceType engineerRef = ObjectTypeUtil.createObjectRef(ROLE_CORP_ENGINEER_OID, ObjectTypes.ROLE);
+        PrismObject<? extends ObjectType> engineer = referenceResolver
+                .resolve(engineerRef, null, ReferenceResolver.Source.REPOSITORY, null, task, result)
+                .get(0);
+        assertNotSame("Cached role returned for modifiable resolution", engineer1, engineer);
+        assertFalse("Modifiable resolution returned immutable object", engineer.isImmutable());
+    }
+
+    /**
+     * Modification of a role must be visible to the following evaluations.
+     */
+    @Test
+    public void test154RoleEngineerModifiedInvalidatesCache() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        PrismObject<?> engineerBefore = getEvaluatedTarget(evaluateRoleEngineer(task, result), ROLE_CORP_ENGINEER_OID);
+
+        when();
+        repositoryService.modifyObject(RoleType.class, ROLE_CORP_ENGINEER_OID,
+                prismContext.deltaFor(RoleType.class)
+                        .item(RoleType.F_DESCRIPTION).replace(getTestNameShort())
+                        .asItemDeltas(),
+                result);
+        PrismObject<?> engineerAfter = getEvaluatedTarget(evaluateRoleEngineer(task, result), ROLE_CORP_ENGINEER_OID);
+
+        then();
+        assertSuccess(result);
+        assertNotSame("Stale role taken from the cache", engineerBefore, engineerAfter);
+        assertFalse("Version was not changed", Objects.equals(engineerBefore.getVersion(), engineerAfter.getVersion()));
+        assertEquals("Wrong description", getTestNameShort(),
+                ((RoleType) engineerAfter.asObjectable()).getDescription());
+    }
+
+    private EvaluatedAssignmentImpl<UserType> evaluateRoleEngineer(Task task, OperationResult result) throws Exception {
+        AssignmentEvaluator<UserType> assignmentEvaluator = createAssignmentEvaluator();
+        ItemDeltaItem<PrismContainerValue<AssignmentType>, PrismContainerDefinition<AssignmentType>> assignmentIdi =
+                createAssignmentIdi(getAssignmentType(ASSIGNMENT_ROLE_ENGINEER_FILE));
+        EvaluatedAssignmentImpl<UserType> evaluatedAssignment = assignmentEvaluator.evaluate(assignmentIdi,
+                PlusMinusZero.ZERO, false, userTypeJack, getTestNameShort(), AssignmentOrigin.createInObject(),
+                task, result);
+        evaluateConstructions(evaluatedAssignment, createUserOdo(userTypeJack.asPrismObject()), task, result);
+        return evaluatedAssignment;
+    }
+
+    private PrismObject<?> getEvaluatedTarget(EvaluatedAssignmentImpl<UserType> evaluatedAssignment, String oid) {
+        return evaluatedAssignment.getRoles().getAllValues().stream()
+                .filter(target -> oid.equals(target.getOid()))
+                .map(EvaluatedAssignmentTargetImpl::getTarget)
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No evaluated target " + oid));
+    }
+
     @Test
     public void test160AddRoleEngineer() throws Exception {
         // GIVEN
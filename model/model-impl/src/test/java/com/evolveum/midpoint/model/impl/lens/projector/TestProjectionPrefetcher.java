@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens.projector;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+import static com.evolveum.midpoint.prism.util.PrismTestUtil.getPrismContext;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.api.context.SynchronizationPolicyDecision;
+import com.evolveum.midpoint.model.impl.lens.LensContext;
+import com.evolveum.midpoint.model.impl.lens.LensProjectionContext;
+import com.evolveum.midpoint.model.impl.lens.ProjectionWorkers;
+import com.evolveum.midpoint.model.impl.lens.projector.ContextLoader.ProjectionObjectSource;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.provisioning.api.ProvisioningService;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.SelectorOptions;
+import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.CommunicationException;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Tests the decision which projections are fetched from resources ({@link ContextLoader#determineProjectionObjectSource(
+ * LensContext, LensProjectionContext)}, used also for prefetching) and concurrent fetching by {@link ProjectionPrefetcher}
+ * (running in {@link ProjectionWorkers}).
+ *
+ * Provisioning service is simulated: it returns a shadow with the requested OID, or throws an exception
+ * for OIDs starting with "not-found" or "unreachable".
+ */
+public class TestProjectionPrefetcher extends AbstractUnitTest {
+
+    private static final Collection<SelectorOptions<GetOperationOptions>> FETCH_OPTIONS =
+            SelectorOptions.createCollection(GetOperationOptions.createForceRefresh());
+
+    private ProjectionWorkers projectionWorkers;
+    private ProjectionPrefetcher prefetcher;
+    private LensContext<UserType> lensContext;
+
+    /** Executed on each getObject call (before returning the shadow). */
+    private Runnable onGetObject;
+
+    /** Authentications seen by the getObject calls, by OID. */
+    private final Map<String, Authentication> authentications = new ConcurrentHashMap<>();
+
+    /** Security contexts seen by the getObject calls, by OID. */
+    private final Map<String, SecurityContext> securityContexts = new ConcurrentHashMap<>();
+
+    @BeforeClass
+    public void initPrism() throws Exception {
+        PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        projectionWorkers = new ProjectionWorkers(new CacheConfigurationManager());
+        prefetcher = new ProjectionPrefetcher(createProvisioningService(), projectionWorkers);
+    }
+
+    @AfterClass
+    public void shutdownWorkers() {
+        projectionWorkers.shutdown();
+    }
+
+    @BeforeMethod
+    public void createLensContext() {
+        lensContext = new LensContext<>(UserType.class, getPrismContext(), null);
+        onGetObject = null;
+        authentications.clear();
+        securityContexts.clear();
+    }
+
+    @Test
+    public void test100ProjectionObjectSource() {
+        given("projections in various states");
+        LensProjectionContext broken = projection("broken");
+        broken.setDoReconciliation(true);
+        broken.setSynchronizationPolicyDecision(SynchronizationPolicyDecision.BROKEN);
+
+        LensProjectionContext notReconciled = projection("not-reconciled");
+
+        LensProjectionContext reconciled = projection("reconciled");
+        reconciled.setDoReconciliation(true);
+
+        LensProjectionContext fullShadow = projection("full-shadow");
+        fullShadow.setDoReconciliation(true);
+        fullShadow.setObjectCurrent(shadow("full-shadow"));
+        fullShadow.setFullShadow(true);
+
+        LensProjectionContext repoShadow = projection("repo-shadow");
+        repoShadow.setDoReconciliation(true);
+        repoShadow.setObjectCurrent(shadow("repo-shadow"));
+
+        LensProjectionContext repoShadowNotReconciled = projection("repo-shadow-not-reconciled");
+        repoShadowNotReconciled.setObjectCurrent(shadow("repo-shadow-not-reconciled"));
+
+        LensProjectionContext noOid = projection(null);
+        noOid.setDoReconciliation(true);
+
+        LensProjectionContext added = projection(null);
+        added.setDoReconciliation(true);
+        added.setSynchronizationPolicyDecision(SynchronizationPolicyDecision.ADD);
+
+        expect("only projections that would be fetched during loading are fetched in advance");
+        assertSource(broken, ProjectionObjectSource.NONE);
+        assertSource(notReconciled, ProjectionObjectSource.REPOSITORY);
+        assertSource(reconciled, ProjectionObjectSource.RESOURCE);
+        assertSource(fullShadow, ProjectionObjectSource.CURRENT);
+        assertSource(repoShadow, ProjectionObjectSource.RESOURCE);
+        assertSource(repoShadowNotReconciled, ProjectionObjectSource.CURRENT);
+        assertSource(noOid, ProjectionObjectSource.NO_OID);
+        assertSource(added, ProjectionObjectSource.NEW);
+    }
+
+    @Test
+    public void test110OutcomesAreProvidedPerProjection() throws Exception {
+        given();
+        LensProjectionContext found = projection("found");
+        LensProjectionContext notFound = projection("not-found");
+        LensProjectionContext unreachable = projection("unreachable");
+
+        when();
+        Map<LensProjectionContext, ProjectionPrefetcher.Outcome> outcomes =
+                prefetcher.fetch(requests(found, notFound, unreachable), 3, null);
+
+        then("objects and exceptions are provided as if they were fetched by the caller");
+        assertThat(outcomes).hasSize(3);
+
+        OperationResult result = new OperationResult("test110");
+        ProjectionPrefetcher.Outcome foundOutcome = outcomes.get(found);
+        assertThat(foundOutcome.getOid()).isEqualTo("found");
+        assertThat(foundOutcome.get(result).getOid()).isEqualTo("found");
+
+        try {
+            outcomes.get(notFound).get(result);
+            fail("Unexpected success");
+        } catch (ObjectNotFoundException e) {
+            displayExpectedException(e);
+        }
+
+        try {
+            outcomes.get(unreachable).get(result);
+            fail("Unexpected success");
+        } catch (CommunicationException e) {
+            displayExpectedException(e);
+        }
+
+        and("the results of the fetches are attached to the caller's result");
+        assertThat(result.getSubresults()).hasSize(3);
+    }
+
+    @Test
+    public void test120FetchesRunConcurrentlyUpToParallelism() {
+        given("each fetch waits until another one runs at the same time");
+        int parallelism = 2;
+        CyclicBarrier barrier = new CyclicBarrier(parallelism);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        onGetObject = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                barrier.await(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new AssertionError("Fetches did not run concurrently", e);
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+        List<LensProjectionContext> projections = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            projections.add(projection("shadow-" + i));
+        }
+
+        when();
+        Map<LensProjectionContext, ProjectionPrefetcher.Outcome> outcomes =
+                prefetcher.fetch(requests(projections.toArray(new LensProjectionContext[0])), parallelism, null);
+
+        then();
+        assertThat(outcomes).hasSize(projections.size());
+        for (LensProjectionContext projection : projections) {
+            try {
+                assertThat(outcomes.get(projection).get(new OperationResult("test120")).getOid())
+                        .isEqualTo(projection.getOid());
+            } catch (Exception e) {
+                throw new AssertionError("Fetching " + projection.getOid() + " failed", e);
+            }
+        }
+        assertThat(maxRunning.get()).as("max concurrent fetches").isEqualTo(parallelism);
+    }
+
+    @Test
+    public void test130SecurityContextIsCarriedOver() {
+        given();
+        Authentication authentication = new TestingAuthenticationToken("administrator", null);
+        SecurityContext callerContext = new SecurityContextImpl(authentication);
+        SecurityContextHolder.setContext(callerContext);
+        try {
+            LensProjectionContext first = projection("first");
+            LensProjectionContext second = projection("second");
+
+            when();
+            prefetcher.fetch(requests(first, second), 2, null);
+
+            then();
+            assertThat(authentications).containsEntry("first", authentication);
+            assertThat(authentications).containsEntry("second", authentication);
+
+            and("each fetch has its own security context, so the caller's one is not shared");
+            assertThat(securityContexts.get("first")).isNotSameAs(callerContext);
+            assertThat(securityContexts.get("second")).isNotSameAs(callerContext);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private void assertSource(LensProjectionContext projection, ProjectionObjectSource expected) {
+        assertThat(ContextLoader.determineProjectionObjectSource(lensContext, projection))
+                .as("object source for " + projection.getOid())
+                .isEqualTo(expected);
+    }
+
+    private LensProjectionContext projection(String oid) {
+        LensProjectionContext projection = lensContext.createProjectionContext();
+        projection.setOid(oid);
+        return projection;
+    }
+
+    private List<ProjectionPrefetcher.Request> requests(LensProjectionContext... projections) {
+        List<ProjectionPrefetcher.Request> requests = new ArrayList<>();
+        for (LensProjectionContext projection : projections) {
+            requests.add(new ProjectionPrefetcher.Request(projection, projection.getOid(), FETCH_OPTIONS));
+        }
+        return requests;
+    }
+
+    private PrismObject<ShadowType> shadow(String oid) {
+        return new ShadowType(getPrismContext()).oid(oid).asPrismObject();
+    }
+
+    private ProvisioningService createProvisioningService() {
+        return (ProvisioningService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { ProvisioningService.class },
+                (proxy, method, args) -> {
+                    if (!"getObject".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    String oid = (String) args[1];
+                    securityContexts.put(oid, SecurityContextHolder.getContext());
+                    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+                    if (authentication != null) {
+                        authentications.put(oid, authentication);
+                    }
+                    if (onGetObject != null) {
+                        onGetObject.run();
+                    }
+                    if (oid.startsWith("not-found")) {
+                        throw new ObjectNotFoundException("Shadow " + oid + " was not found");
+                    } else if (oid.startsWith("unreachable")) {
+                        throw new CommunicationException("Resource is unreachable");
+                    } else {
+                        return shadow(oid);
+                    }
+                });
+    }
+}
@@ -6,10 +6,12 @@
  */
 package com.evolveum.midpoint.model.intest;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.testng.AssertJUnit.assertNotNull;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.LoggerFactory;
 import org.springframework.test.annotation.DirtiesContext;
@@ -18,6 +20,7 @@ import org.springframework.test.context.ContextConfiguration;
 import org.testng.AssertJUnit;
 import org.testng.annotations.Test;
 
+import com.evolveum.midpoint.repo.common.task.SharedWorkerExecutor;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.task.api.RunningTask;
 import com.evolveum.midpoint.task.api.Task;
@@ -40,11 +43,25 @@ public class TestIterativeTasks extends AbstractInitializedModelIntegrationTest
     private static final File TASK_BUCKETS_MULTITHREADED_FILE = new File(TEST_DIR, "task-buckets-multithreaded.xml");
     private static final String TASK_BUCKETS_MULTITHREADED_OID = "4ccd0cde-c506-49eb-9718-f85ba3438515";
 
+    private static final File TASK_BUCKETS_SHARED_EXECUTOR_FILE = new File(TEST_DIR, "task-buckets-shared-executor.xml");
+    private static final String TASK_BUCKETS_SHARED_EXECUTOR_OID = "8c9a4b2e-5a6d-4f0e-b1b6-2e0a7d1c9f33";
+
+    private static final File TASK_BUCKETS_SHARED_EXECUTOR_RESOURCE_LIMIT_FILE =
+            new File(TEST_DIR, "task-buckets-shared-executor-resource-limit.xml");
+    private static final String TASK_BUCKETS_SHARED_EXECUTOR_RESOURCE_LIMIT_OID = "8c9a4b2e-5a6d-4f0e-b1b6-2e0a7d1c9f34";
+    private static final int MAX_CONCURRENT_ITEMS_PER_RESOURCE = 2;
+
     private static final int BUCKETS = 10;              // must be <= 100   (if > 10, adapt buckets specification in task)
     private static final int USERS_PER_BUCKET = 3;      // must be <= 10
 
     private static final int EXPECTED_SUBTASKS = 4;
 
+    private static final long ITEM_PROCESSING_TIME = 200;
+
+    // Objects being processed at once by processConcurrently() and the maximum of that
+    private static final AtomicInteger itemsInProgress = new AtomicInteger();
+    private static final AtomicInteger maxItemsInProgress = new AtomicInteger();
+
     private static TestIterativeTasks instance;         // brutal hack
 
     @Override
@@ -85,6 +102,67 @@ public class TestIterativeTasks extends AbstractInitializedModelIntegrationTest
         waitForTaskFinish(TASK_BUCKETS_MULTITHREADED_OID, false);
     }
 
+    /**
+     * The same as test100 but objects are processed by the shared worker executor.
+     * The number of objects processed at once must not exceed the number of worker threads.
+     */
+    @Test
+    public void test110RunBucketsWithSharedExecutor() throws Exception {
+        // GIVEN
+        maxItemsInProgress.set(0);
+
+        // WHEN
+        when();
+        addTask(TASK_BUCKETS_SHARED_EXECUTOR_FILE);
+
+        // THEN
+        then();
+        waitForTaskFinish(TASK_BUCKETS_SHARED_EXECUTOR_OID, false);
+        assertThat(maxItemsInProgress.get())
+                .as("max objects processed concurrently")
+                .isGreaterThan(0)
+                .isLessThanOrEqualTo(EXPECTED_SUBTASKS);
+        assertThat(itemsInProgress.get()).as("objects in progress after the task finished").isEqualTo(0);
+    }
+
+    /**
+     * The same as test110 but with the limit of objects related to a resource processed concurrently.
+     * The limit is lower than the number of worker threads.
+     */
+    @Test
+    public void test120RunBucketsWithSharedExecutorAndResourceLimit() throws Exception {
+        // GIVEN
+        maxItemsInProgress.set(0);
+
+        // WHEN
+        when();
+        addTask(TASK_BUCKETS_SHARED_EXECUTOR_RESOURCE_LIMIT_FILE);
+
+        // THEN
+        then();
+        waitForTaskFinish(TASK_BUCKETS_SHARED_EXECUTOR_RESOURCE_LIMIT_OID, false);
+        assertThat(maxItemsInProgress.get())
+                .as("max objects processed concurrently")
+                .isGreaterThan(0)
+                .isLessThanOrEqualTo(MAX_CONCURRENT_ITEMS_PER_RESOURCE);
+        assertThat(SharedWorkerExecutor.getResourceLimit(RESOURCE_DUMMY_OID))
+                .as("resource limiter after the task finished")
+                .isNull();
+    }
+
+    /**
+     * Simulates processing of an object, tracking the number of objects being processed at once.
+     */
+    @SuppressWarnings("unused") // called from Groovy code
+    public static void processConcurrently() throws InterruptedException {
+        maxItemsInProgress.accumulateAndGet(itemsInProgress.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(ITEM_PROCESSING_TIME);
+        } finally {
+            itemsInProgress.decrementAndGet();
+        }
+    }
+
     @SuppressWarnings("unused") // called from Groovy code
     public static void checkLightweightSubtasks(TaskType subtask) {
         RunningTask parent = instance.taskManager.getLocallyRunningTaskByIdentifier(subtask.getParent());
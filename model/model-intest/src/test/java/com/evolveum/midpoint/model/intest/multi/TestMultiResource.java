@@ -30,12 +30,16 @@ import com.evolveum.midpoint.schema.ObjectDeltaOperation;
 import com.evolveum.midpoint.schema.constants.MidPointConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.result.OperationResultStatus;
+import com.evolveum.midpoint.schema.statistics.ConnectorOperationalStatus;
 import com.evolveum.midpoint.schema.util.MiscSchemaUtil;
 import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.test.DummyResourceContoller;
+import com.evolveum.midpoint.test.IntegrationTestTools;
 import com.evolveum.midpoint.test.asserter.UserAsserter;
 import com.evolveum.midpoint.test.util.TestUtil;
+import com.evolveum.midpoint.util.Holder;
 import com.evolveum.midpoint.util.MiscUtil;
+import com.evolveum.midpoint.util.exception.CommonException;
 import com.evolveum.midpoint.util.exception.CommunicationException;
 import com.evolveum.midpoint.util.exception.ConfigurationException;
 import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
@@ -111,6 +115,15 @@ public class TestMultiResource extends AbstractInitializedModelIntegrationTest {
     protected static final String RESOURCE_DUMMY_GOLIATH_NAME = "goliath";
     protected static final String RESOURCE_DUMMY_GOLIATH_NAMESPACE = MidPointConstants.NS_RI;
 
+    // CORAL and TEAL dummy resources have no dependencies; they are used to test concurrent execution of projections
+    protected static final File RESOURCE_DUMMY_CORAL_FILE = new File(TEST_DIR, "resource-dummy-coral.xml");
+    protected static final String RESOURCE_DUMMY_CORAL_OID = "914c8a51-a06c-4320-b526-a0dd74278ebc";
+    protected static final String RESOURCE_DUMMY_CORAL_NAME = "coral";
+
+    protected static final File RESOURCE_DUMMY_TEAL_FILE = new File(TEST_DIR, "resource-dummy-teal.xml");
+    protected static final String RESOURCE_DUMMY_TEAL_OID = "190e8a7d-2799-4494-bd0f-df783d80d07b";
+    protected static final String RESOURCE_DUMMY_TEAL_NAME = "teal";
+
     // Assigns default dummy resource and red dummy resource
     protected static final File ROLE_DUMMIES_FILE = new File(TEST_DIR, "role-dummies.xml");
     protected static final String ROLE_DUMMIES_OID = "12345678-d34d-b33f-f00d-55555555dddd";
@@ -127,11 +140,22 @@ public class TestMultiResource extends AbstractInitializedModelIntegrationTest {
     protected static final File ROLE_DARK_YELLOW_PERU_FILE = new File(TEST_DIR, "role-dark-yellow-peru.xml");
     protected static final String ROLE_DARK_YELLOW_PERU_OID = "95213bbc-3357-11e8-aeb8-439c6ddc0fa0";
 
+    protected static final File ROLE_CORAL_TEAL_FILE = new File(TEST_DIR, "role-coral-teal.xml");
+    protected static final String ROLE_CORAL_TEAL_OID = "c6572e8e-b313-4a07-8ea0-1237afd0f9f3";
+
     protected static final String USER_WORLD_NAME = "world";
     protected static final String USER_WORLD_FULL_NAME = "The World";
 
     private static final String USER_FIELD_NAME = "field";
 
+    private static final String USER_CORAL_NAME = "coral";
+    private static final String USER_CORAL_FULL_NAME = "Coral Reef";
+    private static final String USER_TEAL_NAME = "teal";
+    private static final String USER_TEAL_FULL_NAME = "Teal Duck";
+
+    private static final String OP_CONCURRENT_PROJECTION_EXECUTION =
+            "com.evolveum.midpoint.model.impl.lens.ConcurrentProjectionExecutor.executeProjectionDelta";
+
     private static final String USER_PASSWORD_A_CLEAR = "A"; // too short
 
     private String deadShadowOid;
@@ -164,11 +188,18 @@ public class TestMultiResource extends AbstractInitializedModelIntegrationTest {
         initDummyResourcePirate(RESOURCE_DUMMY_GOLIATH_NAME,
                 RESOURCE_DUMMY_GOLIATH_FILE, RESOURCE_DUMMY_GOLIATH_OID, initTask, initResult);
 
+        initDummyResource(RESOURCE_DUMMY_CORAL_NAME,
+                RESOURCE_DUMMY_CORAL_FILE, RESOURCE_DUMMY_CORAL_OID, initTask, initResult);
+
+        initDummyResource(RESOURCE_DUMMY_TEAL_NAME,
+                RESOURCE_DUMMY_TEAL_FILE, RESOURCE_DUMMY_TEAL_OID, initTask, initResult);
+
         repoAddObjectFromFile(ROLE_DUMMIES_FILE, initResult);
         repoAddObjectFromFile(ROLE_DUMMIES_IVORY_FILE, initResult);
         repoAddObjectFromFile(ROLE_DUMMIES_BEIGE_FILE, initResult);
         repoAddObjectFromFile(ROLE_FIGHT_FILE, initResult);
         repoAddObjectFromFile(ROLE_DARK_YELLOW_PERU_FILE, initResult);
+        repoAddObjectFromFile(ROLE_CORAL_TEAL_FILE, initResult);
 
         getDummyResource().resetBreakMode();
     }
@@ -2807,4 +2838,155 @@ public class TestMultiResource extends AbstractInitializedModelIntegrationTest {
         assertDummyAccount(RESOURCE_DUMMY_DARK_YELLOW_NAME, ACCOUNT_JACK_DUMMY_USERNAME, ACCOUNT_JACK_DUMMY_FULLNAME, false);
         assertDummyAccount(RESOURCE_DUMMY_DARK_PERU_NAME, ACCOUNT_JACK_DUMMY_USERNAME, ACCOUNT_JACK_DUMMY_FULLNAME, false);
     }
+
+    /**
+     * Dark peru has a dependency on dark yellow, so the projections must not be executed concurrently
+     * even if requested. The result should be the same as in test520.
+     */
+    @Test
+    public void test530JackAssignRoleDarkYellowPeruConcurrently() throws Exception {
+        // GIVEN
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        assumeAssignmentPolicy(AssignmentPolicyEnforcementType.RELATIVE);
+
+        PrismObject<UserType> userBefore = getUser(USER_JACK_OID);
+        display("User before", userBefore);
+        assertAssignments(userBefore, 0);
+
+        ModelExecuteOptions options = new ModelExecuteOptions(prismContext)
+                .projectionExecutionParallelism(4);
+
+        // WHEN
+        when();
+        assignRole(USER_JACK_OID, ROLE_DARK_YELLOW_PERU_OID, options, task, result);
+
+        // THEN
+        then();
+        assertSuccess(result);
+
+        PrismObject<UserType> userAfter = getUser(USER_JACK_OID);
+        display("User after", userAfter);
+        assertAssignments(userAfter, 1);
+        assertLinks(userAfter, 2);
+
+        assertDummyAccount(RESOURCE_DUMMY_DARK_YELLOW_NAME, ACCOUNT_JACK_DUMMY_USERNAME, ACCOUNT_JACK_DUMMY_FULLNAME, true);
+        assertDummyAccount(RESOURCE_DUMMY_DARK_PERU_NAME, ACCOUNT_JACK_DUMMY_USERNAME, ACCOUNT_JACK_DUMMY_FULLNAME, true);
+    }
+
+    /**
+     * Coral and teal resources are independent of each other, so their accounts are created concurrently.
+     * Both resources block their operations until both accounts are being created at the same time.
+     */
+    @Test
+    public void test540AssignRoleCoralTealConcurrently() throws Exception {
+        // GIVEN
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        String userOid = addObject(createUser(USER_CORAL_NAME, USER_CORAL_FULL_NAME, true), task, result);
+
+        ModelExecuteOptions options = new ModelExecuteOptions(prismContext)
+                .projectionExecutionParallelism(2);
+
+        getDummyResource(RESOURCE_DUMMY_CORAL_NAME).setBlockOperations(true);
+        getDummyResource(RESOURCE_DUMMY_TEAL_NAME).setBlockOperations(true);
+        Holder<Throwable> failureHolder = new Holder<>();
+
+        // WHEN
+        when();
+        Thread thread = new Thread(() -> {
+            try {
+                login(userAdministrator);
+                assignRole(userOid, ROLE_CORAL_TEAL_OID, options, task, result);
+            } catch (Throwable t) {
+                logger.error("Error while assigning the role: {}", t.getMessage(), t);
+                failureHolder.setValue(t);
+            }
+        });
+        thread.setName("assign-coral-teal");
+        thread.start();
+        try {
+            IntegrationTestTools.waitFor("Waiting for the accounts being created on both resources at once",
+                    () -> getActiveConnectorInstances(RESOURCE_DUMMY_CORAL_OID) == 1
+                            && getActiveConnectorInstances(RESOURCE_DUMMY_TEAL_OID) == 1,
+                    30000);
+        } finally {
+            getDummyResource(RESOURCE_DUMMY_CORAL_NAME).unblockAll();
+            getDummyResource(RESOURCE_DUMMY_TEAL_NAME).unblockAll();
+            thread.join();
+        }
+
+        // THEN
+        then();
+        AssertJUnit.assertNull("Unexpected failure: " + failureHolder.getValue(), failureHolder.getValue());
+        assertSuccess(result);
+        AssertJUnit.assertEquals("Wrong number of concurrently executed projection deltas", 2, countConcurrentExecutions(result));
+
+        assertUserAfter(userOid)
+                .assertAssignments(1)
+                .links()
+                    .assertLinks(2)
+                    .projectionOnResource(RESOURCE_DUMMY_CORAL_OID).end()
+                    .projectionOnResource(RESOURCE_DUMMY_TEAL_OID).end();
+
+        assertDummyAccountByUsername(RESOURCE_DUMMY_CORAL_NAME, USER_CORAL_NAME)
+                .assertFullName(USER_CORAL_FULL_NAME);
+        assertDummyAccountByUsername(RESOURCE_DUMMY_TEAL_NAME, USER_CORAL_NAME)
+                .assertFullName(USER_CORAL_FULL_NAME);
+    }
+
+    /**
+     * The teal account already exists. Its concurrent creation fails, the account is discovered and linked
+     * and the projector is restarted. The coral account is created just as if the projections were executed
+     * sequentially.
+     */
+    @Test
+    public void test545AssignRoleCoralTealConcurrentlyConflict() throws Exception {
+        // GIVEN
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        String userOid = addObject(createUser(USER_TEAL_NAME, USER_TEAL_FULL_NAME, true), task, result);
+
+        getDummyResourceController(RESOURCE_DUMMY_TEAL_NAME).addAccount(USER_TEAL_NAME, "Existing Teal");
+
+        ModelExecuteOptions options = new ModelExecuteOptions(prismContext)
+                .projectionExecutionParallelism(2);
+
+        // WHEN
+        when();
+        assignRole(userOid, ROLE_CORAL_TEAL_OID, options, task, result);
+
+        // THEN
+        then();
+        result.computeStatus();
+        AssertJUnit.assertFalse("Unexpected error: " + result.getMessage(), result.isError());
+        AssertJUnit.assertTrue("Projection deltas were not executed concurrently", countConcurrentExecutions(result) >= 2);
+
+        assertUserAfter(userOid)
+                .assertAssignments(1)
+                .links()
+                    .assertLinks(2)
+                    .projectionOnResource(RESOURCE_DUMMY_CORAL_OID).end()
+                    .projectionOnResource(RESOURCE_DUMMY_TEAL_OID).end();
+
+        assertDummyAccountByUsername(RESOURCE_DUMMY_CORAL_NAME, USER_TEAL_NAME)
+                .assertFullName(USER_TEAL_FULL_NAME);
+        // the existing account is linked, not re-created (full name is a weak mapping)
+        assertDummyAccountByUsername(RESOURCE_DUMMY_TEAL_NAME, USER_TEAL_NAME)
+                .assertFullName("Existing Teal");
+    }
+
+    private int getActiveConnectorInstances(String resourceOid) throws CommonException {
+        Task task = taskManager.createTaskInstance(TestMultiResource.class.getName() + ".getActiveConnectorInstances");
+        List<ConnectorOperationalStatus> statuses =
+                modelInteractionService.getConnectorOperationalStatus(resourceOid, task, task.getResult());
+        Integer active = statuses.get(0).getPoolStatusNumActive();
+        return active != null ? active : 0;
+    }
+
+    private long countConcurrentExecutions(OperationResult result) {
+        return result.getResultStream()
+                .filter(subresult -> OP_CONCURRENT_PROJECTION_EXECUTION.equals(subresult.getOperation()))
+                .count();
+    }
 }
@@ -20,7 +20,9 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 
 import org.apache.commons.io.FileUtils;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.OutputStream;
 import java.util.List;
 
 /**
@@ -41,7 +43,9 @@ public class CollectionEngineController extends EngineController {
             ObjectCollectionReportEngineConfigurationType collectionConfig = parentReport.getObjectCollection();
 
             String reportFilePath = getDestinationFileName(parentReport, fileFormatController);
-            FileUtils.writeByteArrayToFile(new File(reportFilePath), fileFormatController.processCollection(parentReport.getName().getOrig(), collectionConfig, task, result));
+            try (OutputStream output = new BufferedOutputStream(FileUtils.openOutputStream(new File(reportFilePath)))) {
+                fileFormatController.processCollection(parentReport.getName().getOrig(), collectionConfig, output, task, result);
+            }
             return reportFilePath;
         } else {
             LOGGER.error("CollectionRefSpecification is null");
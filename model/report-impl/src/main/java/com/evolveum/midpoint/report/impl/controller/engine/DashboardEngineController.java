@@ -19,7 +19,9 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 
 import org.apache.commons.io.FileUtils;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.OutputStream;
 import java.util.List;
 
 /**
@@ -40,7 +42,9 @@ public class DashboardEngineController extends EngineController {
             DashboardReportEngineConfigurationType dashboardConfig = parentReport.getDashboard();
 
             String reportFilePath = getDestinationFileName(parentReport, fileFormatController);
-            FileUtils.writeByteArrayToFile(new File(reportFilePath), fileFormatController.processDashboard(dashboardConfig, task, result));
+            try (OutputStream output = new BufferedOutputStream(FileUtils.openOutputStream(new File(reportFilePath)))) {
+                fileFormatController.processDashboard(dashboardConfig, output, task, result);
+            }
             return reportFilePath;
         } else {
             LOGGER.error("Dashboard or DashboardRef is null");
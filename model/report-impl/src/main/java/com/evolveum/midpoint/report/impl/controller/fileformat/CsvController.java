@@ -58,44 +58,41 @@ public class CsvController extends FileFormatController {
     }
 
     @Override
-    public byte[] processDashboard(DashboardReportEngineConfigurationType dashboardConfig, Task task, OperationResult result) throws Exception {
+    public void processDashboard(DashboardReportEngineConfigurationType dashboardConfig, OutputStream output,
+            Task task, OperationResult result) throws Exception {
         ObjectReferenceType ref = dashboardConfig.getDashboardRef();
         Class<ObjectType> type = getReportService().getPrismContext().getSchemaRegistry().determineClassForType(ref.getType());
         DashboardType dashboard = (DashboardType) getReportService().getModelService()
                 .getObject(type, ref.getOid(), null, task, result)
                 .asObjectable();
 
+        CSVPrinter printer = createCsvPrinter(output, new ArrayList<>(getHeadsOfWidget()));
+
+        long i = 1;
+        task.setExpectedTotal((long) dashboard.getWidget().size());
+
+        for (DashboardWidgetType widget : dashboard.getWidget()) {
+            recordProgress(task, i, result, LOGGER);
+            DashboardWidget widgetData = getReportService().getDashboardService().createWidgetData(widget, task, result);
+            printer.printRecord(createTableRow(widgetData));
+        }
+
+        printer.flush();
+    }
+
+    /**
+     * Creates printer writing directly to the output. The printer is not closed by the caller;
+     * it is sufficient to flush it, the output is closed by the engine controller.
+     */
+    private CSVPrinter createCsvPrinter(OutputStream output, List<String> headers) throws IOException {
         CSVFormat csvFormat = createCsvFormat();
         if (Boolean.TRUE.equals(isHeader())) {
-            String[] arrayHeader = new String[getHeadsOfWidget().size()];
-            arrayHeader = getHeadsOfWidget().toArray(arrayHeader);
-            csvFormat = csvFormat.withHeader(arrayHeader)
+            csvFormat = csvFormat.withHeader(headers.toArray(new String[0]))
                     .withSkipHeaderRecord(false);
         } else {
             csvFormat = csvFormat.withSkipHeaderRecord(true);
         }
-
-        try {
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
-            CSVPrinter printer = new CSVPrinter(new OutputStreamWriter(output, getEncoding()), csvFormat);
-
-            long i = 1;
-            task.setExpectedTotal((long) dashboard.getWidget().size());
-
-            for (DashboardWidgetType widget : dashboard.getWidget()) {
-                recordProgress(task, i, result, LOGGER);
-                DashboardWidget widgetData = getReportService().getDashboardService().createWidgetData(widget, task, result);
-                printer.printRecord(createTableRow(widgetData));
-            }
-
-            printer.flush();
-
-            return output.toByteArray();
-        } catch (IOException e) {
-            LOGGER.error("Couldn't create CSVPrinter", e);
-        }
-
-        return null;
+        return new CSVPrinter(new BufferedWriter(new OutputStreamWriter(output, getEncoding())), csvFormat);
     }
 
     private Object[] createTableRow(DashboardWidget data) {
@@ -120,7 +117,8 @@ public class CsvController extends FileFormatController {
     }
 
     @Override
-    public byte[] processCollection(String nameOfReport, ObjectCollectionReportEngineConfigurationType collectionConfig, Task task, OperationResult result) throws Exception {
+    public void processCollection(String nameOfReport, ObjectCollectionReportEngineConfigurationType collectionConfig,
+            OutputStream output, Task task, OperationResult result) throws Exception {
         CollectionRefSpecificationType collectionRefSpecification = collectionConfig.getCollection();
         ObjectReferenceType ref = collectionRefSpecification.getCollectionRef();
         ObjectCollectionType collection = null;
@@ -133,16 +131,13 @@ public class CsvController extends FileFormatController {
 
         CompiledObjectCollectionView compiledCollection = createCompiledView(collectionConfig, collection);
 
-        byte[] csvFile;
         if (!isAuditCollection(collectionRefSpecification, task, result)) {
-            csvFile = createTableBoxForObjectView(collectionRefSpecification, compiledCollection,
-                    collectionConfig.getCondition(), task, result);
+            createTableBoxForObjectView(collectionRefSpecification, compiledCollection,
+                    collectionConfig.getCondition(), output, task, result);
         } else {
-            csvFile = createTableForAuditView(collectionRefSpecification, compiledCollection, collectionConfig.getCondition(), task, result);
+            createTableForAuditView(collectionRefSpecification, compiledCollection, collectionConfig.getCondition(),
+                    output, task, result);
         }
-
-
-        return csvFile;
     }
 
     private CompiledObjectCollectionView createCompiledView(ObjectCollectionReportEngineConfigurationType collectionConfig, boolean useDefaultView, Task task, OperationResult result)
@@ -191,12 +186,12 @@ public class CsvController extends FileFormatController {
         return compiledCollection;
     }
 
-    private byte[] createTableForAuditView(CollectionRefSpecificationType collectionRef, CompiledObjectCollectionView compiledCollection,
-            ExpressionType condition, Task task, OperationResult result) throws CommunicationException, ObjectNotFoundException, SchemaException,
-            SecurityViolationException, ConfigurationException, ExpressionEvaluationException {
+    private void createTableForAuditView(CollectionRefSpecificationType collectionRef, CompiledObjectCollectionView compiledCollection,
+            ExpressionType condition, OutputStream output, Task task, OperationResult result) throws CommunicationException,
+            ObjectNotFoundException, SchemaException, SecurityViolationException, ConfigurationException,
+            ExpressionEvaluationException, IOException {
 
         List<String> headers = new ArrayList<>();
-        List<List<String>> records = new ArrayList<>();
 
         List<GuiObjectColumnType> columns;
         if (compiledCollection.getColumns().isEmpty()) {
@@ -213,84 +208,46 @@ public class CsvController extends FileFormatController {
 
         });
 
-        AuditResultHandler handler = new AuditResultHandler() {
-
-            public int i = 1;
+        CSVPrinter printer = createCsvPrinter(output, headers);
+        try (OrderedRowProcessor rowProcessor = createRowProcessor(task, row -> printer.printRecord(row))) {
+            AuditResultHandler handler = new AuditResultHandler() {
 
-            @Override
-            public boolean handle(AuditEventRecordType auditRecord) {
-                recordProgress(task, i, result, LOGGER);
-                i++;
-                boolean writeRecord = true;
-                if (condition != null) {
-                    try {
-                        writeRecord = evaluateCondition(condition, auditRecord, task, result);
-                    } catch (Exception e) {
-                        LOGGER.error("Couldn't evaluate condition for report record.");
-                        return false;
-                    }
-                }
+                public int i = 1;
 
-                if (writeRecord) {
-                    List<String> items = new ArrayList<>();
-                    columns.forEach(column -> {
-                        ExpressionType expression = column.getExport() != null ? column.getExport().getExpression() : null;
-                        ItemPath path = column.getPath() == null ? null : column.getPath().getItemPath();
-                        try {
-                            items.add(getRealValueAsString(column, getAuditRecordAsContainer(auditRecord), path, expression, task, result)
-                            );
-                        } catch (SchemaException e) {
-                            LOGGER.error("Couldn't create singleValueContainer for audit record " + auditRecord);
+                @Override
+                public boolean handle(AuditEventRecordType auditRecord) {
+                    recordProgress(task, i, result, LOGGER);
+                    i++;
+                    return rowProcessor.process((rowTask, rowResult) -> {
+                        if (condition != null && !evaluateCondition(condition, auditRecord, rowTask, rowResult)) {
+                            return null;
                         }
-                    });
-                    records.add(items);
+                        return getAuditRecordValues(columns, auditRecord, rowTask, rowResult);
+                    }, result);
                 }
-                return true;
-            }
-
-            @Override
-            public int getProgress() {
-                return i;
-            }
-        };
-
-        getReportService().getDashboardService().searchObjectFromCollection(collectionRef, handler, null, task, result, true);
 
-        CSVFormat csvFormat = createCsvFormat();
-        if (Boolean.TRUE.equals(isHeader())) {
-            String[] arrayHeader = new String[headers.size()];
-            arrayHeader = headers.toArray(arrayHeader);
-            csvFormat = csvFormat.withHeader(arrayHeader)
-                    .withSkipHeaderRecord(false);
-        } else {
-            csvFormat = csvFormat.withSkipHeaderRecord(true);
-        }
-        try {
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
-            CSVPrinter printer = new CSVPrinter(new OutputStreamWriter(output, getEncoding()), csvFormat);
-            for (List<String> record : records) {
-                printer.printRecord(record.toArray());
-            }
-            printer.flush();
+                @Override
+                public int getProgress() {
+                    return i;
+                }
+            };
 
-            return output.toByteArray();
-        } catch (IOException e) {
-            LOGGER.error("Couldn't create CSVPrinter", e);
+            getReportService().getDashboardService().searchObjectFromCollection(collectionRef, handler, null, task, result, true);
+            rowProcessor.finish();
         }
-        return null;
+        printer.flush();
     }
 
-    private byte[] createTableBoxForObjectView(CollectionRefSpecificationType collection, CompiledObjectCollectionView compiledCollection, ExpressionType condition, Task task, OperationResult result)
-            throws CommunicationException, ObjectNotFoundException, SchemaException, SecurityViolationException, ConfigurationException, ExpressionEvaluationException {
+    private void createTableBoxForObjectView(CollectionRefSpecificationType collection, CompiledObjectCollectionView compiledCollection,
+            ExpressionType condition, OutputStream output, Task task, OperationResult result) throws CommunicationException,
+            ObjectNotFoundException, SchemaException, SecurityViolationException, ConfigurationException,
+            ExpressionEvaluationException, IOException {
 
         Class<ObjectType> type = resolveType(collection, compiledCollection);
         Collection<SelectorOptions<GetOperationOptions>> options = DefaultColumnUtils.createOption(type, getReportService().getSchemaHelper());
         PrismObjectDefinition<ObjectType> def = getReportService().getPrismContext().getSchemaRegistry().findItemDefinitionByCompileTimeClass(type, PrismObjectDefinition.class);
 
-        CompiledObjectCollectionView columnsCompiledView;
-
         List<String> headers = new ArrayList<>();
-        List<List<String>> records = new ArrayList<>();
 
         List<GuiObjectColumnType> columns;
         if (compiledCollection.getColumns().isEmpty()) {
@@ -305,56 +262,29 @@ public class CsvController extends FileFormatController {
             headers.add(label);
         });
 
-        AtomicInteger index = new AtomicInteger(1);
-        ResultHandler<ObjectType> handler = (value, prentResult) -> {
-            recordProgress(task, index.get(), result, LOGGER);
-            index.getAndIncrement();
-            boolean writeRecord = true;
-            if (condition != null) {
-                try {
-                    writeRecord = evaluateCondition(condition, value, task, result);
-                } catch (Exception e) {
-                    LOGGER.error("Couldn't evaluate condition for report record.");
-                    return false;
-                }
-            }
-
-            if (writeRecord) {
-                List<String> items = new ArrayList<>();
-                columns.forEach(column -> {
-                    ItemPath path = column.getPath() == null ? null : column.getPath().getItemPath();
-                    ExpressionType expression = column.getExport() != null ? column.getExport().getExpression() : null;
-                    items.add(getRealValueAsString(column, value, path, expression, task, result));
-                });
-                records.add(items);
-            }
-            return true;
-        };
-        getReportService().getDashboardService().searchObjectFromCollection(collection, compiledCollection.getContainerType(), handler, options, task, result, true);
-
-        CSVFormat csvFormat = createCsvFormat();
-        if (Boolean.TRUE.equals(isHeader())) {
-            String[] arrayHeader = new String[headers.size()];
-            arrayHeader = headers.toArray(arrayHeader);
-            csvFormat = csvFormat.withHeader(arrayHeader)
-                            .withSkipHeaderRecord(false);
-        } else {
-            csvFormat = csvFormat.withSkipHeaderRecord(true);
-        }
-
-        try {
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
-            CSVPrinter printer = new CSVPrinter(new OutputStreamWriter(output, getEncoding()), csvFormat);
-            for (List<String> record : records) {
-                printer.printRecord(record.toArray());
-            }
-            printer.flush();
-
-            return output.toByteArray();
-        } catch (IOException e) {
-            LOGGER.error("Couldn't create CSVPrinter", e);
+        CSVPrinter printer = createCsvPrinter(output, headers);
+        try (OrderedRowProcessor rowProcessor = createRowProcessor(task, row -> printer.printRecord(row))) {
+            AtomicInteger index = new AtomicInteger(1);
+            ResultHandler<ObjectType> handler = (value, prentResult) -> {
+                recordProgress(task, index.get(), result, LOGGER);
+                index.getAndIncrement();
+                return rowProcessor.process((rowTask, rowResult) -> {
+                    if (condition != null && !evaluateCondition(condition, value, rowTask, rowResult)) {
+                        return null;
+                    }
+                    List<String> items = new ArrayList<>();
+                    columns.forEach(column -> {
+                        ItemPath path = column.getPath() == null ? null : column.getPath().getItemPath();
+                        ExpressionType expression = column.getExport() != null ? column.getExport().getExpression() : null;
+                        items.add(getRealValueAsString(column, value, path, expression, rowTask, rowResult));
+                    });
+                    return items;
+                }, result);
+            };
+            getReportService().getDashboardService().searchObjectFromCollection(collection, compiledCollection.getContainerType(), handler, options, task, result, true);
+            rowProcessor.finish();
         }
-        return null;
+        printer.flush();
     }
 
     @Override
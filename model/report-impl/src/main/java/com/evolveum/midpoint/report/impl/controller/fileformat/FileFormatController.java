@@ -7,6 +7,7 @@
 package com.evolveum.midpoint.report.impl.controller.fileformat;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.namespace.QName;
@@ -48,6 +49,8 @@ public abstract class FileFormatController {
 
     private static final Trace LOGGER = TraceManager.getTrace(FileFormatController.class);
 
+    private static final String OP_EVALUATE_ROWS = FileFormatController.class.getName() + ".evaluateRows";
+
     protected static final String LABEL_COLUMN = "label";
     protected static final String NUMBER_COLUMN = "number";
     protected static final String STATUS_COLUMN = "status";
@@ -77,9 +80,18 @@ public abstract class FileFormatController {
         return HEADS_OF_WIDGET;
     }
 
-    public abstract byte[] processDashboard(DashboardReportEngineConfigurationType dashboardConfig, Task task, OperationResult result) throws Exception;
+    /**
+     * Writes the report to the output. The output is not closed, it is the responsibility of the caller.
+     */
+    public abstract void processDashboard(DashboardReportEngineConfigurationType dashboardConfig, OutputStream output,
+            Task task, OperationResult result) throws Exception;
 
-    public abstract byte[] processCollection(String nameOfReport, ObjectCollectionReportEngineConfigurationType collectionConfig, Task task, OperationResult result) throws Exception;
+    /**
+     * Writes the report to the output as the records are found, so the whole report is never held in memory.
+     * The output is not closed, it is the responsibility of the caller.
+     */
+    public abstract void processCollection(String nameOfReport, ObjectCollectionReportEngineConfigurationType collectionConfig,
+            OutputStream output, Task task, OperationResult result) throws Exception;
 
     protected void recordProgress(Task task, long progress, OperationResult opResult, Trace logger) {
         try {
@@ -375,6 +387,41 @@ public abstract class FileFormatController {
         return prismValue.asSingleValuedContainer(AuditEventRecordType.COMPLEX_TYPE);
     }
 
+    /**
+     * Returns values of the columns for given audit record. A cell that cannot be evaluated is left empty,
+     * the rest of the row (and of the report) is still created.
+     */
+    protected List<String> getAuditRecordValues(List<GuiObjectColumnType> columns, AuditEventRecordType record,
+            Task task, OperationResult result) {
+        List<String> values = new ArrayList<>();
+        for (GuiObjectColumnType column : columns) {
+            ExpressionType expression = column.getExport() != null ? column.getExport().getExpression() : null;
+            ItemPath path = column.getPath() == null ? null : column.getPath().getItemPath();
+            try {
+                values.add(getRealValueAsString(column, getAuditRecordAsContainer(record), path, expression, task, result));
+            } catch (SchemaException e) {
+                LOGGER.error("Couldn't create singleValueContainer for audit record " + record, e);
+                values.add("");
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Creates processor of rows that evaluates them using worker threads, if configured in the report task.
+     * Each worker thread gets its own task with the owner and channel of the report task.
+     */
+    protected OrderedRowProcessor createRowProcessor(Task task, OrderedRowProcessor.RowWriter writer) {
+        PrismObject<? extends FocusType> owner = task.getOwner();
+        String channel = task.getChannel();
+        return new OrderedRowProcessor(task, () -> {
+            Task workerTask = getReportService().getTaskManager().createTaskInstance(OP_EVALUATE_ROWS);
+            workerTask.setOwner(owner != null ? owner.clone() : null);
+            workerTask.setChannel(channel);
+            return workerTask;
+        }, writer);
+    }
+
     public abstract void importCollectionReport(ReportType report, VariablesMap listOfVariables, RunningTask task, OperationResult result);
 
     public abstract List<VariablesMap> createVariablesFromFile(ReportType report, ReportDataType reportData, boolean useImportScript, Task task, OperationResult result) throws IOException;
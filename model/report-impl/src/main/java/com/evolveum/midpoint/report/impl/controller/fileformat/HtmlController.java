@@ -6,8 +6,7 @@
  */
 package com.evolveum.midpoint.report.impl.controller.fileformat;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
 import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -25,6 +24,7 @@ import com.evolveum.midpoint.xml.ns._public.common.audit_3.AuditEventRecordType;
 import j2html.TagCreator;
 import j2html.tags.ContainerTag;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.jetbrains.annotations.NotNull;
@@ -61,12 +61,15 @@ public class HtmlController extends FileFormatController {
     private static final String REPORT_GENERATED_ON = "Widget.generatedOn";
     private static final String NUMBER_OF_RECORDS = "Widget.numberOfRecords";
 
+    private static final String NEW_LINE = "<br>";
+
     public HtmlController(FileFormatConfigurationType fileFormatConfiguration, ReportType report, ReportServiceImpl reportService) {
         super(fileFormatConfiguration, report, reportService);
     }
 
     @Override
-    public byte[] processDashboard(DashboardReportEngineConfigurationType dashboardConfig, Task task, OperationResult result) throws Exception {
+    public void processDashboard(DashboardReportEngineConfigurationType dashboardConfig, OutputStream output,
+            Task task, OperationResult result) throws Exception {
         ObjectReferenceType ref = dashboardConfig.getDashboardRef();
         Class<ObjectType> type = getReportService().getPrismContext().getSchemaRegistry().determineClassForType(ref.getType());
         DashboardType dashboard = (DashboardType) getReportService().getModelService()
@@ -81,14 +84,14 @@ public class HtmlController extends FileFormatController {
         byte[] data = IOUtils.toByteArray(in);
         String cssStyle = new String(data, Charset.defaultCharset());
 
-        StringBuilder body = new StringBuilder();
-        body.append("<div> <style> ").append(cssStyle).append(" </style>");
+        Writer writer = createWriter(output);
+        writer.write("<div> <style> " + cssStyle + " </style>");
 
         ContainerTag widgetTable = createTable();
         widgetTable.with(createTHead("Widget.", getHeadsOfWidget()));
 
         ContainerTag widgetTBody = TagCreator.tbody();
-        List<ContainerTag> tableboxesFromWidgets = new ArrayList<>();
+        Map<DashboardWidgetType, DashboardWidget> widgetsData = new LinkedHashMap<>();
         long startMillis = getReportService().getClock().currentTimeMillis();
         long i = 1;
         task.setExpectedTotal((long) dashboard.getWidget().size());
@@ -100,6 +103,18 @@ public class HtmlController extends FileFormatController {
             }
             DashboardWidget widgetData = getReportService().getDashboardService().createWidgetData(widget, task, result);
             widgetTBody.with(createTBodyRow(widgetData));
+            widgetsData.put(widget, widgetData);
+        }
+        widgetTable.with(widgetTBody);
+
+        writer.write(createTableBox(widgetTable, "Widgets", dashboard.getWidget().size(),
+                convertMillisToString(startMillis), null).render());
+        writer.write(NEW_LINE);
+
+        // Tables of the widgets are written one by one, so only one of them is held in memory.
+        for (Map.Entry<DashboardWidgetType, DashboardWidget> entry : widgetsData.entrySet()) {
+            DashboardWidgetType widget = entry.getKey();
+            DashboardWidget widgetData = entry.getValue();
             if (!Boolean.TRUE.equals(dashboardConfig.isShowOnlyWidgetsTable())) {
                 DashboardWidgetPresentationType presentation = widget.getPresentation();
                 if (!DashboardUtils.isDataFieldsOfPresentationNullOrEmpty(presentation)) {
@@ -143,23 +158,22 @@ public class HtmlController extends FileFormatController {
                             break;
                     }
                     if (tableBox != null) {
-                        tableboxesFromWidgets.add(tableBox);
+                        writer.write(tableBox.render());
+                        writer.write(NEW_LINE);
                     }
                 }
             }
         }
-        widgetTable.with(widgetTBody);
-
-        body.append(createTableBox(widgetTable, "Widgets", dashboard.getWidget().size(),
-                convertMillisToString(startMillis), null).render());
-        appendNewLine(body);
-        tableboxesFromWidgets.forEach(table -> {
-            body.append(table.render());
-            appendNewLine(body);
-        });
-        body.append("</div>");
+        writer.write("</div>");
+        writer.flush();
+    }
 
-        return body.toString().getBytes();
+    /**
+     * Creates writer writing directly to the output. The writer is not closed by the caller;
+     * it is sufficient to flush it, the output is closed by the engine controller.
+     */
+    private Writer createWriter(OutputStream output) {
+        return new BufferedWriter(new OutputStreamWriter(output, Charset.defaultCharset()));
     }
 
     private GuiObjectListViewType getReportViewByType(DashboardReportEngineConfigurationType dashboardConfig, QName type) {
@@ -172,7 +186,8 @@ public class HtmlController extends FileFormatController {
     }
 
     @Override
-    public byte[] processCollection(String nameOfReport, ObjectCollectionReportEngineConfigurationType collectionConfig, Task task, OperationResult result) throws Exception {
+    public void processCollection(String nameOfReport, ObjectCollectionReportEngineConfigurationType collectionConfig,
+            OutputStream output, Task task, OperationResult result) throws Exception {
         CollectionRefSpecificationType collectionRefSpecification = collectionConfig.getCollection();
         ObjectReferenceType ref = collectionRefSpecification.getCollectionRef();
         ObjectCollectionType collection = null;
@@ -191,8 +206,8 @@ public class HtmlController extends FileFormatController {
         byte[] data = IOUtils.toByteArray(in);
         String cssStyle = new String(data, Charset.defaultCharset());
 
-        StringBuilder body = new StringBuilder();
-        body.append("<div> <style> ").append(cssStyle).append(" </style>");
+        Writer writer = createWriter(output);
+        writer.write("<div> <style> " + cssStyle + " </style>");
 
         CompiledObjectCollectionView compiledCollection = new CompiledObjectCollectionView();
         String defaultName = nameOfReport;
@@ -222,20 +237,173 @@ public class HtmlController extends FileFormatController {
             label = defaultName;
         }
 
-        ContainerTag tableBox;
         if (!isAuditCollection(collectionRefSpecification, task, result)) {
-            tableBox = createTableBoxForObjectView(label, collectionRefSpecification, compiledCollection,
-                    collectionConfig.getCondition(), task, result, true);
+            writeTableBoxForObjectView(label, collectionRefSpecification, compiledCollection,
+                    collectionConfig.getCondition(), writer, task, result);
+        } else {
+            writeTableBoxForAuditView(label, collectionRefSpecification, compiledCollection,
+                    collectionConfig.getCondition(), writer, task, result);
+        }
+
+        writer.write("</div>");
+        writer.flush();
+    }
+
+    /**
+     * Streaming variant of {@link #createTableBoxForObjectView}: rows are written to the output as they are evaluated.
+     * As the number of records is not known in advance, it is written after the table.
+     */
+    private void writeTableBoxForObjectView(String tableLabel, CollectionRefSpecificationType collection,
+            @NotNull CompiledObjectCollectionView compiledCollection, ExpressionType condition, Writer writer,
+            Task task, OperationResult result) throws ObjectNotFoundException, SchemaException, CommunicationException,
+            ConfigurationException, SecurityViolationException, ExpressionEvaluationException, IOException {
+        long startMillis = getReportService().getClock().currentTimeMillis();
+        Class<ObjectType> type = resolveType(collection, compiledCollection);
+        Collection<SelectorOptions<GetOperationOptions>> options = DefaultColumnUtils.createOption(type, getReportService().getSchemaHelper());
+        PrismObjectDefinition<ObjectType> def = getReportService().getPrismContext().getSchemaRegistry().findItemDefinitionByCompileTimeClass(type, PrismObjectDefinition.class);
+
+        List<GuiObjectColumnType> columns;
+        if (compiledCollection.getColumns().isEmpty()) {
+            columns = MiscSchemaUtil.orderCustomColumns(DefaultColumnUtils.getDefaultView(type).getColumn());
         } else {
-            tableBox = createTableBoxForAuditView(label, collectionRefSpecification, compiledCollection,
-                    collectionConfig.getCondition(), task, result, true);
+            columns = MiscSchemaUtil.orderCustomColumns(compiledCollection.getColumns());
         }
 
-        body.append(tableBox.render());
+        writeTableBoxStart(writer, tableLabel, convertMillisToString(startMillis), compiledCollection.getDisplay(),
+                createTHead(columns, def));
 
-        body.append("</div>");
+        AtomicInteger index = new AtomicInteger(1);
+        try (OrderedRowProcessor rowProcessor = createRowProcessor(task, row -> writer.write(createTr(row).render()))) {
+            ResultHandler<ObjectType> handler = (value, prentResult) -> {
+                recordProgress(task, index.get(), result, LOGGER);
+                index.getAndIncrement();
+                return rowProcessor.process((rowTask, rowResult) -> {
+                    if (condition != null && !evaluateCondition(condition, value, rowTask, rowResult)) {
+                        return null;
+                    }
+                    List<String> items = new ArrayList<>();
+                    columns.forEach(column -> {
+                        ItemPath path = column.getPath() == null ? null : column.getPath().getItemPath();
+                        ExpressionType expression = column.getExport() != null ? column.getExport().getExpression() : null;
+                        items.add(getRealValueAsString(column, value, path, expression, rowTask, rowResult));
+                    });
+                    return items;
+                }, result);
+            };
+            getReportService().getDashboardService()
+                    .searchObjectFromCollection(collection, compiledCollection.getContainerType(), handler, options, task, result, true);
+            rowProcessor.finish();
+        }
+
+        writeTableBoxEnd(writer, index.get() - 1);
+    }
+
+    /**
+     * Streaming variant of {@link #createTableBoxForAuditView}, see {@link #writeTableBoxForObjectView}.
+     */
+    private void writeTableBoxForAuditView(String tableLabel, CollectionRefSpecificationType collection,
+            @NotNull CompiledObjectCollectionView compiledCollection, ExpressionType condition, Writer writer,
+            Task task, OperationResult result) throws CommunicationException, ObjectNotFoundException,
+            SchemaException, SecurityViolationException, ConfigurationException, ExpressionEvaluationException, IOException {
+        long startMillis = getReportService().getClock().currentTimeMillis();
+
+        List<GuiObjectColumnType> columns;
+        if (compiledCollection.getColumns().isEmpty()) {
+            columns = MiscSchemaUtil.orderCustomColumns(DefaultColumnUtils.getDefaultAuditEventsView().getColumn());
+        } else {
+            columns = MiscSchemaUtil.orderCustomColumns(compiledCollection.getColumns());
+        }
+        PrismContainerDefinition<AuditEventRecordType> def = getReportService().getPrismContext().getSchemaRegistry()
+                .findItemDefinitionByCompileTimeClass(AuditEventRecordType.class, PrismContainerDefinition.class);
+
+        writeTableBoxStart(writer, tableLabel, convertMillisToString(startMillis), compiledCollection.getDisplay(),
+                createTHead(columns, def));
+
+        AtomicInteger index = new AtomicInteger(1);
+        try (OrderedRowProcessor rowProcessor = createRowProcessor(task, row -> writer.write(createTr(row).render()))) {
+            AuditResultHandler handler = new AuditResultHandler() {
+
+                @Override
+                public boolean handle(AuditEventRecordType auditRecord) {
+                    recordProgress(task, index.get(), result, LOGGER);
+                    index.getAndIncrement();
+                    return rowProcessor.process((rowTask, rowResult) -> {
+                        if (condition != null && !evaluateCondition(condition, auditRecord, rowTask, rowResult)) {
+                            return null;
+                        }
+                        return getAuditRecordValues(columns, auditRecord, rowTask, rowResult);
+                    }, result);
+                }
+
+                @Override
+                public int getProgress() {
+                    return index.get();
+                }
+            };
+            getReportService().getDashboardService().searchObjectFromCollection(collection, handler, null, task, result, true);
+            rowProcessor.finish();
+        }
+
+        writeTableBoxEnd(writer, index.get() - 1);
+    }
+
+    /**
+     * Writes the same structure as {@link #createTableBox} up to the start of table body.
+     */
+    private void writeTableBoxStart(Writer writer, String nameOfTable, String createdTime, DisplayType display,
+            ContainerTag tHead) throws IOException {
+        String style = "";
+        String classes = "";
+        if (display != null) {
+            if (display.getCssStyle() != null) {
+                style = display.getCssStyle();
+            }
+            if (display.getCssClass() != null) {
+                classes = display.getCssClass();
+            }
+        }
+        writer.write("<div class=\"" + StringEscapeUtils.escapeHtml4(StringUtils.trim("box boxed-table " + classes))
+                + "\" style=\"" + StringEscapeUtils.escapeHtml4(style) + "\">");
+        writer.write("<div class=\"box-body no-padding\">");
+        writer.write(TagCreator.h1(nameOfTable).render());
+        writer.write(TagCreator.p(getMessage(REPORT_GENERATED_ON, createdTime)).render());
+        writer.write("<table class=\"table table-striped table-hover table-bordered\">");
+        writer.write(tHead.render());
+        writer.write("<tbody>");
+    }
+
+    private void writeTableBoxEnd(Writer writer, int countOfTableRecords) throws IOException {
+        writer.write("</tbody></table>");
+        writer.write(TagCreator.p(getMessage(NUMBER_OF_RECORDS, countOfTableRecords)).render());
+        writer.write("</div></div>");
+    }
+
+    private ContainerTag createTHead(List<GuiObjectColumnType> columns, PrismContainerDefinition<?> def) {
+        ContainerTag trForHead = TagCreator.tr().withStyle("width: 100%;");
+        columns.forEach(column -> {
+            Validate.notNull(column.getName(), "Name of column is null");
+
+            String label = getColumnLabel(column, def);
+            DisplayType columnDisplay = column.getDisplay();
+            ContainerTag th = TagCreator.th(TagCreator.div(TagCreator.span(label).withClass("sortableLabel")));
+            if (columnDisplay != null) {
+                if (StringUtils.isNotBlank(columnDisplay.getCssClass())) {
+                    th.withClass(columnDisplay.getCssClass());
+                }
+                if (StringUtils.isNotBlank(columnDisplay.getCssStyle())) {
+                    th.withStyle(columnDisplay.getCssStyle());
+                }
+            }
+            trForHead.with(th);
+        });
+        return TagCreator.thead().with(trForHead);
+    }
 
-        return body.toString().getBytes();
+    private ContainerTag createTr(List<String> values) {
+        ContainerTag tr = TagCreator.tr();
+        values.forEach(value -> tr.with(TagCreator
+                .th(TagCreator.div(value).withStyle("white-space: pre-wrap"))));
+        return tr;
     }
 
     private ContainerTag createTable() {
@@ -529,7 +697,7 @@ public class HtmlController extends FileFormatController {
     }
 
     private void appendNewLine(StringBuilder body) {
-        body.append("<br>");
+        body.append(NEW_LINE);
     }
 
     protected void appendMultivalueDelimiter(StringBuilder body) {
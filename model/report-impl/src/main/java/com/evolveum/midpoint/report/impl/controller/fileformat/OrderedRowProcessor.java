@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.report.impl.controller.fileformat;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.evolveum.midpoint.prism.PrismProperty;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Evaluates rows of exported report and passes them to the writer in the order in which the records
+ * were delivered by the (iterative) search. Nothing is collected in memory: rows go to the output as soon as
+ * they are evaluated.
+ *
+ * By default, rows are evaluated and written in the thread that executes the search. If the report task has
+ * worker threads set, rows are evaluated in parallel by that number of threads. At most
+ * {@link #IN_FLIGHT_ROWS_PER_THREAD} rows per thread are being evaluated or waiting to be written, so the memory
+ * used does not depend on the size of the report either.
+ *
+ * Rows are evaluated in parallel threads under the security context of the caller, but with their own
+ * operation results and tasks: the caller's task is not thread-safe, so each worker thread gets its own task
+ * from the provided factory.
+ *
+ * If a row evaluation fails, no further rows are written and {@link #finish()} throws the exception.
+ */
+class OrderedRowProcessor implements AutoCloseable {
+
+    private static final Trace LOGGER = TraceManager.getTrace(OrderedRowProcessor.class);
+
+    private static final String OP_EVALUATE_ROW = OrderedRowProcessor.class.getName() + ".evaluateRow";
+
+    private static final int IN_FLIGHT_ROWS_PER_THREAD = 10;
+
+    /**
+     * Computes values of a single row. Returns null if the row should be skipped (e.g. because of report condition).
+     */
+    @FunctionalInterface
+    interface RowEvaluation {
+        List<String> evaluate(Task task, OperationResult result) throws Exception;
+    }
+
+    @FunctionalInterface
+    interface RowWriter {
+        void write(List<String> row) throws IOException;
+    }
+
+    private final Task task;
+    private final RowWriter writer;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Deque<Future<List<String>>> inFlight = new ArrayDeque<>();
+    private final SecurityContext securityContext;
+    private final ThreadLocal<Task> workerTask;
+
+    private int rowsWritten;
+
+    /**
+     * The first failure of row evaluation. Rows after it are not written.
+     */
+    private Throwable failure;
+
+    /**
+     * @param workerTaskFactory Creates tasks for worker threads (called once per thread).
+     */
+    OrderedRowProcessor(Task task, Supplier<Task> workerTaskFactory, RowWriter writer) {
+        this(task, getWorkerThreads(task), workerTaskFactory, writer);
+    }
+
+    @VisibleForTesting
+    OrderedRowProcessor(Task task, int threads, Supplier<Task> workerTaskFactory, RowWriter writer) {
+        this.task = task;
+        this.writer = writer;
+        if (threads > 0) {
+            LOGGER.debug("Evaluating report rows using {} worker threads", threads);
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "midpoint-report-row-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            maxInFlight = threads * IN_FLIGHT_ROWS_PER_THREAD;
+            securityContext = SecurityContextHolder.getContext();
+            workerTask = ThreadLocal.withInitial(workerTaskFactory);
+        } else {
+            executor = null;
+            maxInFlight = 0;
+            securityContext = null;
+            workerTask = null;
+        }
+    }
+
+    private static int getWorkerThreads(Task task) {
+        PrismProperty<Integer> workerThreadsProperty = task.getExtensionPropertyOrClone(SchemaConstants.MODEL_EXTENSION_WORKER_THREADS);
+        if (workerThreadsProperty != null && workerThreadsProperty.getRealValue() != null) {
+            return workerThreadsProperty.getRealValue();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Evaluates the row (or submits it for evaluation) and writes all the rows that are ready.
+     *
+     * @return false if an evaluation failed and the processing should stop
+     */
+    boolean process(RowEvaluation evaluation, OperationResult result) {
+        if (failure != null) {
+            return false;
+        }
+        if (executor == null) {
+            List<String> row;
+            try {
+                row = evaluation.evaluate(task, result);
+            } catch (Exception e) {
+                LoggingUtils.logUnexpectedException(LOGGER, "Couldn't evaluate report row", e);
+                failure = e;
+                return false;
+            }
+            write(row);
+            return true;
+        }
+
+        inFlight.addLast(executor.submit(() -> evaluateInWorker(evaluation)));
+        while (inFlight.size() >= maxInFlight || !inFlight.isEmpty() && inFlight.peekFirst().isDone()) {
+            if (!writeFirst()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<String> evaluateInWorker(RowEvaluation evaluation) throws Exception {
+        SecurityContextHolder.setContext(securityContext);
+        try {
+            OperationResult result = new OperationResult(OP_EVALUATE_ROW);
+            return evaluation.evaluate(workerTask.get(), result);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private boolean writeFirst() {
+        Future<List<String>> first = inFlight.removeFirst();
+        List<String> row;
+        try {
+            row = first.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while waiting for report row evaluation");
+            failure = e;
+            return false;
+        } catch (ExecutionException e) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't evaluate report row", e.getCause());
+            failure = e.getCause();
+            return false;
+        }
+        write(row);
+        return true;
+    }
+
+    private void write(List<String> row) {
+        if (row != null) {
+            try {
+                writer.write(row);
+            } catch (IOException e) {
+                throw new SystemException("Couldn't write report row: " + e.getMessage(), e);
+            }
+            rowsWritten++;
+        }
+    }
+
+    /**
+     * Waits for the rows being evaluated and writes them.
+     *
+     * @throws SystemException If evaluation of any row failed. (Rows after the failed one are not written.)
+     */
+    void finish() {
+        while (failure == null && !inFlight.isEmpty()) {
+            writeFirst();
+        }
+        if (failure != null) {
+            throw new SystemException("Couldn't evaluate report row: " + failure.getMessage(), failure);
+        }
+    }
+
+    int getRowsWritten() {
+        return rowsWritten;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            inFlight.forEach(future -> future.cancel(true));
+            inFlight.clear();
+            executor.shutdownNow();
+        }
+    }
+}
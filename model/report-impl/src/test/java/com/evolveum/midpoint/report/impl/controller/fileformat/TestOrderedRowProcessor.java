@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.report.impl.controller.fileformat;
+
+import static org.testng.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.SystemException;
+
+/**
+ * Tests ordering, task handling and error propagation of {@link OrderedRowProcessor}.
+ */
+public class TestOrderedRowProcessor extends AbstractUnitTest {
+
+    private static final int ROWS = 200;
+    private static final int THREADS = 4;
+
+    private final Task callerTask = createTask("caller");
+
+    @AfterMethod
+    public void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void test100SequentialRowsUseCallerTask() {
+        given();
+        List<String> written = new ArrayList<>();
+        OperationResult result = new OperationResult(getTestNameShort());
+
+        when();
+        try (OrderedRowProcessor processor = new OrderedRowProcessor(callerTask, 0,
+                () -> {
+                    throw new AssertionError("No worker task expected");
+                }, row -> written.add(row.get(0)))) {
+            for (int i = 0; i < ROWS; i++) {
+                int number = i;
+                assertTrue(processor.process((task, rowResult) -> {
+                    assertSame(task, callerTask);
+                    return createRow(number);
+                }, result));
+            }
+            processor.finish();
+
+            then();
+            assertEquals(processor.getRowsWritten(), ROWS / 2);
+        }
+        assertEquals(written, expectedRows(ROWS));
+    }
+
+    @Test
+    public void test110ParallelRowsAreWrittenInOrder() {
+        given();
+        List<String> written = new ArrayList<>();
+        OperationResult result = new OperationResult(getTestNameShort());
+        AtomicInteger workerTasksCreated = new AtomicInteger();
+        Map<Thread, Task> tasksUsed = new ConcurrentHashMap<>();
+        Authentication authentication = new TestingAuthenticationToken("administrator", "secret");
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        when("later rows are evaluated faster than earlier ones");
+        try (OrderedRowProcessor processor = new OrderedRowProcessor(callerTask, THREADS,
+                () -> createTask("worker-" + workerTasksCreated.incrementAndGet()),
+                row -> written.add(row.get(0)))) {
+            for (int i = 0; i < ROWS; i++) {
+                int number = i;
+                assertTrue(processor.process((task, rowResult) -> {
+                    assertNotSame(task, callerTask, "Caller task used in worker thread");
+                    Task previous = tasksUsed.putIfAbsent(Thread.currentThread(), task);
+                    assertTrue(previous == null || previous == task, "Worker thread changed its task");
+                    assertSame(SecurityContextHolder.getContext().getAuthentication(), authentication);
+                    Thread.sleep((ROWS - number) % 7);
+                    return createRow(number);
+                }, result));
+            }
+            processor.finish();
+        }
+
+        then("rows are written in the order of processing");
+        assertEquals(written, expectedRows(ROWS));
+        assertTrue(workerTasksCreated.get() <= THREADS, "Too many worker tasks: " + workerTasksCreated.get());
+        assertEquals(new HashSet<>(tasksUsed.values()).size(), workerTasksCreated.get());
+    }
+
+    @Test
+    public void test120SequentialFailureIsPropagated() {
+        given();
+        List<String> written = new ArrayList<>();
+        OperationResult result = new OperationResult(getTestNameShort());
+
+        when();
+        try (OrderedRowProcessor processor = new OrderedRowProcessor(callerTask, 0, () -> null,
+                row -> written.add(row.get(0)))) {
+            boolean lastContinued = true;
+            for (int i = 0; i < ROWS && lastContinued; i++) {
+                lastContinued = processor.process(failingAt(i, 50), result);
+            }
+
+            then("processing is stopped and the failure is reported by finish");
+            assertFalse(lastContinued);
+            assertFailure(processor);
+        }
+        assertEquals(written, expectedRows(50));
+    }
+
+    @Test
+    public void test130ParallelFailureIsPropagated() {
+        given();
+        List<String> written = new ArrayList<>();
+        OperationResult result = new OperationResult(getTestNameShort());
+
+        when();
+        try (OrderedRowProcessor processor = new OrderedRowProcessor(callerTask, THREADS,
+                () -> createTask("worker"), row -> written.add(row.get(0)))) {
+            for (int i = 0; i < ROWS; i++) {
+                if (!processor.process(failingAt(i, 50), result)) {
+                    break;
+                }
+            }
+
+            then("rows before the failed one are written, no rows after it");
+            assertFailure(processor);
+        }
+        assertEquals(written, expectedRows(50));
+    }
+
+    private void assertFailure(OrderedRowProcessor processor) {
+        try {
+            processor.finish();
+            fail("Unexpected success");
+        } catch (SystemException e) {
+            displayExpectedException(e);
+            assertTrue(e.getCause() instanceof IllegalStateException, "Wrong cause: " + e.getCause());
+        }
+    }
+
+    private OrderedRowProcessor.RowEvaluation failingAt(int number, int failing) {
+        return (task, rowResult) -> {
+            if (number == failing) {
+                throw new IllegalStateException("Row " + number + " failed");
+            }
+            return createRow(number);
+        };
+    }
+
+    /** Odd rows are skipped, like rows not matching report condition. */
+    private List<String> createRow(int number) {
+        return number % 2 == 0 ? List.of(String.valueOf(number)) : null;
+    }
+
+    private List<String> expectedRows(int count) {
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < count; i += 2) {
+            rows.add(String.valueOf(i));
+        }
+        return rows;
+    }
+
+    /** Only the identity of the task matters here. */
+    private static Task createTask(String name) {
+        return (Task) Proxy.newProxyInstance(Task.class.getClassLoader(), new Class<?>[] { Task.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "toString":
+                            return name;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -8,9 +8,21 @@ package com.evolveum.midpoint.rest.impl;
 
 import static org.springframework.http.ResponseEntity.status;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletResponse;
 import javax.xml.namespace.QName;
 
 import org.apache.commons.collections.CollectionUtils;
@@ -20,6 +32,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
@@ -27,16 +42,20 @@ import com.evolveum.midpoint.model.api.*;
 import com.evolveum.midpoint.model.impl.ModelCrudService;
 import com.evolveum.midpoint.model.impl.scripting.PipelineData;
 import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.SerializationOptions;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.path.ItemPathCollectionsUtil;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.schema.DefinitionProcessingOption;
 import com.evolveum.midpoint.schema.DeltaConvertor;
 import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.ObjectDeltaOperation;
 import com.evolveum.midpoint.schema.SelectorOptions;
 import com.evolveum.midpoint.schema.constants.MidPointConstants;
 import com.evolveum.midpoint.schema.constants.ObjectTypes;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.expression.VariablesMap;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.security.api.SecurityUtil;
@@ -48,6 +67,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 import com.evolveum.midpoint.xml.ns._public.model.scripting_3.ExecuteScriptOutputType;
 import com.evolveum.midpoint.xml.ns._public.model.scripting_3.ExecuteScriptType;
 import com.evolveum.prism.xml.ns._public.query_3.QueryType;
+import com.evolveum.prism.xml.ns._public.types_3.ObjectDeltaType;
 
 @RestController
 @RequestMapping({ "/ws/rest", "/rest/model", "/api/model" })
@@ -55,9 +75,18 @@ public class ModelRestController extends AbstractRestController {
 
     public static final String GET_OBJECT_PATH = "/{type}/{id}";
 
+    public static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+
     private static final String CURRENT = "current";
     private static final long WAIT_FOR_TASK_STOP = 2000L;
 
+    private static final String OP_EXECUTE_BULK_DELTA = ModelRestController.class.getName() + ".executeBulkDelta";
+    private static final int DEFAULT_BULK_CONCURRENCY = 4;
+    private static final int MAX_BULK_CONCURRENCY = 16;
+    private static final long BULK_THREAD_KEEP_ALIVE_SECONDS = 60L;
+
+    private static final Pattern LINE_BREAKS_WITH_INDENTATION = Pattern.compile("\\R\\s*");
+
     @Autowired private ModelCrudService model;
     @Autowired private ModelDiagnosticService modelDiagnosticService;
     @Autowired private ModelInteractionService modelInteraction;
@@ -65,6 +94,12 @@ public class ModelRestController extends AbstractRestController {
     @Autowired private ScriptingService scriptingService;
     @Autowired private TaskService taskService;
 
+    /**
+     * Executes deltas of all bulk requests. It is shared, so the number of threads is bounded regardless of the number
+     * of concurrent requests; the concurrency of a single request is limited separately. Idle threads are stopped.
+     */
+    private final ThreadPoolExecutor bulkExecutor = createBulkExecutor();
+
     @PostMapping("/{type}/{oid}/generate")
     public ResponseEntity<?> generateValue(
             @PathVariable("type") String type,
@@ -609,6 +644,242 @@ public class ModelRestController extends AbstractRestController {
         return response;
     }
 
+    /**
+     * Streaming variant of {@link #searchObjects}, used when the client accepts {@link #MEDIA_TYPE_NDJSON}.
+     * Objects are written as newline-delimited JSON (one object per line) as they are found by iterative search,
+     * so the result is never held in memory, neither on the server nor (necessarily) on the client.
+     *
+     * Errors detected before the first object is written are reported as usual (HTTP status and operation result).
+     * After that the status cannot be changed; if the search fails or ends with other than success result,
+     * the operation result is written as the last line.
+     */
+    @PostMapping(value = "/{type}/search", produces = MEDIA_TYPE_NDJSON)
+    public ResponseEntity<?> searchObjectsStreaming(
+            @PathVariable("type") String type,
+            @RequestParam(value = "options", required = false) List<String> options,
+            @RequestParam(value = "include", required = false) List<String> include,
+            @RequestParam(value = "exclude", required = false) List<String> exclude,
+            @RequestParam(value = "resolveNames", required = false) List<String> resolveNames,
+            @RequestBody QueryType queryType,
+            HttpServletResponse httpResponse) {
+
+        Task task = initRequest();
+        OperationResult result = task.getResult().createSubresult("searchObjectsStreaming");
+
+        Class<? extends ObjectType> clazz = ObjectTypes.getClassFromRestType(type);
+        NdjsonWriter writer = new NdjsonWriter(httpResponse);
+        ResponseEntity<?> response = null;
+        try {
+            ObjectQuery query = prismContext.getQueryConverter().createObjectQuery(clazz, queryType);
+            Collection<SelectorOptions<GetOperationOptions>> searchOptions = GetOperationOptions.fromRestOptions(options, include,
+                    exclude, resolveNames, DefinitionProcessingOption.ONLY_IF_EXISTS, prismContext);
+            modelService.searchObjectsIterative(clazz, query, (object, objectResult) -> {
+                try {
+                    removeExcludes(object, exclude);        // temporary measure until fixed in repo
+                    writer.write(object);
+                    return true;
+                } catch (SchemaException | IOException e) {
+                    throw new SystemException("Couldn't write object " + object + ": " + e.getMessage(), e);
+                }
+            }, searchOptions, task, result);
+            result.computeStatus();
+            if (writer.isStarted()) {
+                if (!result.isSuccess()) {
+                    writer.writeResult(result);
+                }
+            } else {
+                // nothing was found, we send the empty response in the standard way
+                response = createResponse(HttpStatus.OK, result);
+            }
+        } catch (Exception ex) {
+            result.recordFatalError(ex);
+            if (writer.isStarted()) {
+                LoggingUtils.logUnexpectedException(logger, "Streaming search failed after objects were sent", ex);
+                writer.writeResultSafely(result);
+            } else {
+                response = handleException(result, ex);
+            }
+        } finally {
+            writer.flushSafely();
+        }
+
+        result.computeStatus();
+        finishRequest(task, result);
+        // null means the response was already written
+        return response;
+    }
+
+    /**
+     * Writes objects (and the result, if needed) as newline-delimited JSON directly to the HTTP response.
+     */
+    private class NdjsonWriter {
+
+        private final HttpServletResponse httpResponse;
+        private Writer writer;
+
+        private NdjsonWriter(HttpServletResponse httpResponse) {
+            this.httpResponse = httpResponse;
+        }
+
+        private boolean isStarted() {
+            return writer != null;
+        }
+
+        private void write(PrismObject<?> object) throws SchemaException, IOException {
+            writeLine(prismContext.jsonSerializer()
+                    .options(SerializationOptions.createSerializeReferenceNames())
+                    .serialize(object));
+        }
+
+        private void writeResult(OperationResult result) throws SchemaException, IOException {
+            writeLine(prismContext.jsonSerializer()
+                    .serializeAnyData(result.createOperationResultType(), SchemaConstants.C_RESULT));
+        }
+
+        private void writeResultSafely(OperationResult result) {
+            try {
+                writeResult(result);
+            } catch (SchemaException | IOException | RuntimeException e) {
+                LoggingUtils.logUnexpectedException(logger, "Couldn't write operation result to the response", e);
+            }
+        }
+
+        private void writeLine(String json) throws IOException {
+            if (writer == null) {
+                httpResponse.setStatus(HttpStatus.OK.value());
+                httpResponse.setContentType(MEDIA_TYPE_NDJSON);
+                httpResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
+                writer = new BufferedWriter(new OutputStreamWriter(httpResponse.getOutputStream(), StandardCharsets.UTF_8));
+            }
+            // JSON serializer pretty-prints; line breaks can occur only between tokens, so they can be removed safely
+            writer.write(LINE_BREAKS_WITH_INDENTATION.matcher(json).replaceAll(""));
+            writer.write('\n');
+        }
+
+        private void flushSafely() {
+            if (writer != null) {
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    logger.debug("Couldn't flush the streamed response: {}", e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes a list of deltas, each one separately, with at most {@code concurrency} of them executed at once.
+     * Returns the deltas along with their execution results, in the same order as in the request.
+     * The deltas are independent: failure of one does not stop the others.
+     */
+    @PostMapping("/rpc/bulk")
+    public ResponseEntity<?> executeBulk(
+            @RequestParam(value = "options", required = false) List<String> options,
+            @RequestParam(value = "concurrency", required = false) Integer concurrency,
+            @RequestBody ObjectDeltaListType deltaList) {
+
+        Task task = initRequest();
+        OperationResult result = task.getResult().createSubresult("executeBulk");
+
+        ResponseEntity<?> response;
+        List<Future<ObjectDeltaOperationType>> futures = new ArrayList<>();
+        try {
+            ModelExecuteOptions modelExecuteOptions = ModelExecuteOptions.fromRestOptions(options, prismContext);
+            int threads = Math.max(1, Math.min(
+                    concurrency != null ? concurrency : DEFAULT_BULK_CONCURRENCY, MAX_BULK_CONCURRENCY));
+            Semaphore permits = new Semaphore(threads);
+            // Each worker gets its own security context: the one of this thread is cleared by finishRequest,
+            // possibly while deltas abandoned because of an error are still being executed.
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+            for (ObjectDeltaType deltaBean : deltaList.getDelta()) {
+                permits.acquire();
+                try {
+                    futures.add(bulkExecutor.submit(() -> {
+                        try {
+                            return executeBulkDelta(deltaBean, modelExecuteOptions, authentication);
+                        } finally {
+                            permits.release();
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+
+            ObjectDeltaOperationListType responseList = new ObjectDeltaOperationListType();
+            for (Future<ObjectDeltaOperationType> future : futures) {
+                ObjectDeltaOperationType deltaOperation = future.get();
+                result.addSubresult(OperationResult.createOperationResult(deltaOperation.getExecutionResult()));
+                responseList.getDeltaOperation().add(deltaOperation);
+            }
+            result.computeStatus();
+            // results of individual deltas are in the response body, so partial errors are not reported by status
+            response = status(HttpStatus.OK).body(responseList);
+        } catch (Exception ex) {
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // Deltas that are already being executed cannot be safely abandoned, so we do not interrupt them.
+            futures.forEach(future -> future.cancel(false));
+            result.recordFatalError("Could not execute bulk operation. " + ex.getMessage(), ex);
+            response = handleException(result, ex);
+        }
+
+        result.computeStatus();
+        finishRequest(task, result);
+        return response;
+    }
+
+    private static ThreadPoolExecutor createBulkExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_BULK_CONCURRENCY, MAX_BULK_CONCURRENCY,
+                BULK_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "midpoint-rest-bulk-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdownBulkExecutor() {
+        bulkExecutor.shutdownNow();
+    }
+
+    private ObjectDeltaOperationType executeBulkDelta(ObjectDeltaType deltaBean,
+            ModelExecuteOptions options, Authentication authentication) {
+        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        securityContext.setAuthentication(authentication);
+        SecurityContextHolder.setContext(securityContext);
+        try {
+            Task task = initRequest();
+            OperationResult result = new OperationResult(OP_EXECUTE_BULK_DELTA);
+            ObjectDeltaOperationType deltaOperation = new ObjectDeltaOperationType();
+            deltaOperation.setObjectDelta(deltaBean);
+            try {
+                ObjectDelta<? extends ObjectType> delta = DeltaConvertor.createObjectDelta(deltaBean, prismContext);
+                result.addParam("delta", delta.toString());
+                Collection<ObjectDeltaOperation<? extends ObjectType>> executed =
+                        modelService.executeChanges(Collections.singleton(delta), options, task, result);
+                if (deltaBean.getOid() == null) {
+                    ObjectDeltaType deltaWithOid = deltaBean.clone();
+                    deltaWithOid.setOid(ObjectDeltaOperation.findFocusDeltaOidInCollection(executed));
+                    deltaOperation.setObjectDelta(deltaWithOid);
+                }
+            } catch (Exception ex) {
+                result.recordFatalError("Could not execute delta. " + ex.getMessage(), ex);
+            }
+            result.computeStatusIfUnknown();
+            deltaOperation.setExecutionResult(result.createOperationResultType());
+            return deltaOperation;
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
     private void removeExcludes(PrismObject<? extends ObjectType> object, List<String> exclude)
             throws SchemaException {
         object.getValue().removePaths(
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.provisioning.ucf.api.ShadowResultHandler;
+import com.evolveum.midpoint.util.exception.CommonException;
+import com.evolveum.midpoint.util.exception.TunnelException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Collects objects returned by the connector into batches. Each batch is pre-processed as a whole
+ * (e.g. repository shadows for all its objects are fetched at once) and then the objects are passed
+ * to the delegate handler, one by one, in the original order.
+ *
+ * The last (incomplete) batch has to be processed by calling {@link #flush()} after the search is over.
+ *
+ * Not thread safe: the connector is expected to call the handler from a single thread.
+ */
+class BatchingShadowResultHandler implements ShadowResultHandler {
+
+    /**
+     * Pre-processes a batch of resource objects before they are passed to the delegate handler.
+     */
+    @FunctionalInterface
+    interface BatchPreprocessor {
+        void preprocess(List<PrismObject<ShadowType>> batch) throws CommonException;
+    }
+
+    @NotNull private final ShadowResultHandler delegate;
+    @NotNull private final BatchPreprocessor preprocessor;
+    private final int batchSize;
+
+    @NotNull private final List<PrismObject<ShadowType>> batch = new ArrayList<>();
+
+    /**
+     * Set to false when the delegate handler requested the search to stop.
+     */
+    private boolean proceed = true;
+
+    BatchingShadowResultHandler(@NotNull ShadowResultHandler delegate, @NotNull BatchPreprocessor preprocessor, int batchSize) {
+        this.delegate = delegate;
+        this.preprocessor = preprocessor;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public boolean handle(PrismObject<ShadowType> object) {
+        batch.add(object);
+        if (batch.size() >= batchSize) {
+            return flush();
+        } else {
+            return proceed;
+        }
+    }
+
+    /**
+     * Processes collected objects.
+     *
+     * @return false if the delegate handler requested the search to stop
+     */
+    boolean flush() {
+        if (batch.isEmpty() || !proceed) {
+            batch.clear();
+            return proceed;
+        }
+        try {
+            preprocessor.preprocess(batch);
+        } catch (CommonException e) {
+            throw new TunnelException(e);
+        }
+        try {
+            for (PrismObject<ShadowType> object : batch) {
+                if (!delegate.handle(object)) {
+                    proceed = false;
+                    break;
+                }
+            }
+        } finally {
+            batch.clear();
+        }
+        return proceed;
+    }
+}
@@ -55,8 +55,6 @@ public class ConstraintsChecker {
     private static final Trace LOGGER = TraceManager.getTrace(ConstraintsChecker.class);
     private static final Trace PERFORMANCE_ADVISOR = TraceManager.getPerformanceAdvisorTrace();
 
-    private static ConcurrentHashMap<Thread, Cache> cacheInstances = new ConcurrentHashMap<>();
-
     private ProvisioningContext provisioningContext;
     private PrismContext prismContext;
     private RepositoryService repositoryService;
@@ -266,11 +264,11 @@ public class ConstraintsChecker {
     }
 
     public static void enterCache(CacheConfiguration configuration) {
-        Cache.enter(cacheInstances, Cache.class, configuration, LOGGER);
+        Cache.enter(Cache.class, configuration, LOGGER);
     }
 
     public static void exitCache() {
-        Cache.exit(cacheInstances, LOGGER);
+        Cache.exit(Cache.class, LOGGER);
     }
 
     public static <T extends ShadowType> void onShadowAddOperation(T shadow) {
@@ -454,7 +452,7 @@ public class ConstraintsChecker {
         }
 
         private static Cache getCache() {
-            return cacheInstances.get(Thread.currentThread());
+            return getCurrent(Cache.class);
         }
 
         @Override
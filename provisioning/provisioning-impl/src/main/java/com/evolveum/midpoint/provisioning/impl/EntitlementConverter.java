@@ -6,9 +6,8 @@
  */
 package com.evolveum.midpoint.provisioning.impl;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.namespace.QName;
 
@@ -38,6 +37,7 @@ import com.evolveum.midpoint.provisioning.util.ProvisioningUtil;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ResourceTypeUtil;
 import com.evolveum.midpoint.schema.util.ShadowUtil;
+import com.evolveum.midpoint.util.QNameUtil;
 import com.evolveum.midpoint.util.exception.CommunicationException;
 import com.evolveum.midpoint.util.exception.ConfigurationException;
 import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
@@ -56,6 +56,8 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowKindType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 import com.evolveum.midpoint.xml.ns._public.resource.capabilities_3.ReadCapabilityType;
 
+import static com.evolveum.midpoint.util.DebugUtil.lazy;
+
 /**
  * Class that collects the entitlement-related methods used by ResourceObjectConverter
  *
@@ -77,8 +79,17 @@ class EntitlementConverter {
     // GET
     /////////
 
+    /**
+     * Live membership indexes, to be notified about entitlement changes. See {@link EntitlementMembershipIndex}.
+     */
+    private final Set<EntitlementMembershipIndex> membershipIndexes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param membershipIndex Index to be used to resolve entitlement-to-subject associations. Null if there is none.
+     */
     public void postProcessEntitlementsRead(ProvisioningContext subjectCtx,
-            PrismObject<ShadowType> resourceObject, OperationResult parentResult) throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
+            PrismObject<ShadowType> resourceObject, EntitlementMembershipIndex membershipIndex,
+            OperationResult parentResult) throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
         ResourceType resourceType = subjectCtx.getResource();
         LOGGER.trace("Starting postProcessEntitlementRead");
         RefinedObjectClassDefinition objectClassDefinition = subjectCtx.getObjectClassDefinition();
@@ -110,7 +121,8 @@ class EntitlementConverter {
                                 assocDefType.getResourceObjectAssociationType().getShortcutAssociationAttribute(),
                                 assocDefType.getResourceObjectAssociationType().getShortcutValueAttribute(), parentResult);
                     } else {
-                        postProcessEntitlementEntitlementToSubject(subjectCtx, resourceObject, assocDefType, entitlementCtx, attributesContainer, associationContainer, parentResult);
+                        postProcessEntitlementEntitlementToSubject(subjectCtx, resourceObject, assocDefType, entitlementCtx,
+                                attributesContainer, associationContainer, membershipIndex, parentResult);
                     }
                 } else {
                     throw new IllegalArgumentException("Unknown entitlement direction "+direction+" in association "+assocDefType+" in "+resourceType);
@@ -191,6 +203,7 @@ class EntitlementConverter {
     private <S extends ShadowType,T> void postProcessEntitlementEntitlementToSubject(ProvisioningContext subjectCtx, final PrismObject<S> resourceObject,
             RefinedAssociationDefinition assocDefType, final ProvisioningContext entitlementCtx,
             ResourceAttributeContainer attributesContainer, final PrismContainer<ShadowAssociationType> associationContainer,
+            EntitlementMembershipIndex membershipIndex,
             OperationResult parentResult) throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
         ResourceType resourceType = subjectCtx.getResource();
         final QName associationName = assocDefType.getName();
@@ -233,11 +246,8 @@ class EntitlementConverter {
             throw new SchemaException("Value attribute "+valueAttrName+" has no more than one value; attribute defined in entitlement association '"+associationName+"' in "+resourceType);
         }
 
-        ObjectQuery query = createQuery(assocDefType, assocAttrDef, valueAttr);
-
-        AttributesToReturn attributesToReturn = ProvisioningUtil.createAttributesToReturn(entitlementCtx);
-
-        SearchHierarchyConstraints searchHierarchyConstraints = determineSearchHierarchyConstraints(entitlementCtx, parentResult);
+        MatchingRule<Object> matchingRule = getMatchingRule(assocDefType, assocAttrDef);
+        PrismPropertyValue<Object> normalizedValue = normalizeValue(matchingRule, assocAttrDef, valueAttr);
 
         ShadowResultHandler handler = new ShadowResultHandler() {
             @Override
@@ -264,8 +274,25 @@ class EntitlementConverter {
             }
         };
 
-        ConnectorInstance connector = subjectCtx.getConnector(ReadCapabilityType.class, parentResult);
         try {
+            if (membershipIndex != null) {
+                List<PrismObject<ShadowType>> indexedEntitlements = getIndexedEntitlements(membershipIndex, subjectCtx,
+                        entitlementCtx, assocAttrDef, valueAttrName, matchingRule, normalizedValue.getValue(), parentResult);
+                if (indexedEntitlements != null) {
+                    LOGGER.trace("Entitlement-to-subject association {} for account {} resolved by membership index: {}",
+                            associationName, lazy(() -> ShadowUtil.getHumanReadableName(resourceObject)), indexedEntitlements);
+                    for (PrismObject<ShadowType> entitlementShadow : indexedEntitlements) {
+                        // Entitlements in the index are shared by all their members.
+                        handler.handle(entitlementShadow.clone());
+                    }
+                    return;
+                }
+            }
+
+            ObjectQuery query = createQuery(assocAttrDef, normalizedValue);
+            AttributesToReturn attributesToReturn = ProvisioningUtil.createAttributesToReturn(entitlementCtx);
+            SearchHierarchyConstraints searchHierarchyConstraints = determineSearchHierarchyConstraints(entitlementCtx, parentResult);
+            ConnectorInstance connector = subjectCtx.getConnector(ReadCapabilityType.class, parentResult);
             if (LOGGER.isTraceEnabled()) {
                 LOGGER.trace("Processed entitlement-to-subject association for account {}: query {}",
                         ShadowUtil.getHumanReadableName(resourceObject), query);
@@ -282,10 +309,15 @@ class EntitlementConverter {
 
     }
 
-    // precondition: valueAttr has exactly one value
-    private <TV,TA> ObjectQuery createQuery(RefinedAssociationDefinition assocDefType, RefinedAttributeDefinition<TA> assocAttrDef, ResourceAttribute<TV> valueAttr) throws SchemaException{
-        MatchingRule<TA> matchingRule = matchingRuleRegistry.getMatchingRule(assocDefType.getResourceObjectAssociationType().getMatchingRule(),
+    private <TA> MatchingRule<TA> getMatchingRule(RefinedAssociationDefinition assocDefType,
+            RefinedAttributeDefinition<TA> assocAttrDef) throws SchemaException {
+        return matchingRuleRegistry.getMatchingRule(assocDefType.getResourceObjectAssociationType().getMatchingRule(),
                 assocAttrDef.getTypeName());
+    }
+
+    // precondition: valueAttr has exactly one value
+    private <TV,TA> PrismPropertyValue<TA> normalizeValue(MatchingRule<TA> matchingRule,
+            RefinedAttributeDefinition<TA> assocAttrDef, ResourceAttribute<TV> valueAttr) throws SchemaException {
         if (valueAttr.size() > 1) {
             throw new IllegalStateException("Attributes with more than 1 values are not supported here");
         }
@@ -293,6 +325,16 @@ class EntitlementConverter {
         TA normalizedRealValue = matchingRule.normalize(converted.getValue());
         PrismPropertyValue<TA> normalized = prismContext.itemFactory().createPropertyValue(normalizedRealValue);
         LOGGER.trace("Converted entitlement filter value: {} ({}) def={}", normalized, normalized.getValue().getClass(), assocAttrDef);
+        return normalized;
+    }
+
+    // precondition: valueAttr has exactly one value
+    private <TV,TA> ObjectQuery createQuery(RefinedAssociationDefinition assocDefType, RefinedAttributeDefinition<TA> assocAttrDef,
+            ResourceAttribute<TV> valueAttr) throws SchemaException {
+        return createQuery(assocAttrDef, normalizeValue(getMatchingRule(assocDefType, assocAttrDef), assocAttrDef, valueAttr));
+    }
+
+    private <TA> ObjectQuery createQuery(RefinedAttributeDefinition<TA> assocAttrDef, PrismPropertyValue<TA> normalized) {
         ObjectQuery query = prismContext.queryFor(ShadowType.class)
                 .item(ItemPath.create(ShadowType.F_ATTRIBUTES, assocAttrDef.getItemName()), assocAttrDef).eq(normalized)
                 .build();
@@ -300,6 +342,127 @@ class EntitlementConverter {
         return query;
     }
 
+    /**
+     * Returns entitlements having given member, taken from the index. Null if the index cannot tell.
+     * The respective part of the index is read if needed.
+     */
+    private List<PrismObject<ShadowType>> getIndexedEntitlements(EntitlementMembershipIndex membershipIndex,
+            ProvisioningContext subjectCtx, ProvisioningContext entitlementCtx, RefinedAttributeDefinition<?> assocAttrDef,
+            QName valueAttrName, MatchingRule<?> matchingRule, Object normalizedMember, OperationResult parentResult)
+            throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException,
+            SecurityViolationException, ExpressionEvaluationException {
+        RefinedObjectClassDefinition entitlementDef = entitlementCtx.getObjectClassDefinition();
+        EntitlementMembershipIndex.PartKey key = new EntitlementMembershipIndex.PartKey(entitlementDef.getTypeName(),
+                entitlementDef.getKind(), entitlementDef.getIntent(), assocAttrDef.getItemName(), valueAttrName,
+                matchingRule.getName());
+        EntitlementMembershipIndex.Part part = membershipIndex.getOrCreatePart(key, matchingRule);
+        Long generation = part.startReading();
+        if (generation != null) {
+            try {
+                readIndexPart(part, generation, subjectCtx, entitlementCtx, assocAttrDef, parentResult);
+            } catch (Throwable t) {
+                part.readingFailed(generation);
+                throw t;
+            }
+        }
+        return part.getEntitlements(normalizedMember);
+    }
+
+    /**
+     * Reads all entitlements of given kind/intent and puts them into the index part.
+     */
+    private void readIndexPart(EntitlementMembershipIndex.Part part, long generation, ProvisioningContext subjectCtx,
+            ProvisioningContext entitlementCtx, RefinedAttributeDefinition<?> assocAttrDef, OperationResult parentResult)
+            throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException,
+            SecurityViolationException, ExpressionEvaluationException {
+        RefinedObjectClassDefinition entitlementDef = entitlementCtx.getObjectClassDefinition();
+
+        AttributesToReturn attributesToReturn = ProvisioningUtil.createAttributesToReturn(entitlementCtx);
+        boolean addAssociationAttribute = !isReturned(attributesToReturn, assocAttrDef);
+        if (addAssociationAttribute) {
+            if (attributesToReturn == null) {
+                attributesToReturn = new AttributesToReturn();
+            }
+            List<ResourceAttributeDefinition> explicitAttributes = new ArrayList<>();
+            if (attributesToReturn.getAttributesToReturn() != null) {
+                explicitAttributes.addAll(attributesToReturn.getAttributesToReturn());
+            }
+            explicitAttributes.add(assocAttrDef);
+            attributesToReturn.setAttributesToReturn(explicitAttributes);
+        }
+        SearchHierarchyConstraints searchHierarchyConstraints = determineSearchHierarchyConstraints(entitlementCtx, parentResult);
+
+        Map<Object, List<PrismObject<ShadowType>>> content = new HashMap<>();
+        ShadowResultHandler handler = entitlementShadow -> {
+            try {
+                part.addToContent(content, entitlementShadow, addAssociationAttribute);
+            } catch (SchemaException e) {
+                throw new TunnelException(e);
+            }
+            return true;
+        };
+
+        LOGGER.debug("Reading entitlements for membership index part {} on {}", part, subjectCtx.getResource());
+        long started = System.currentTimeMillis();
+        ConnectorInstance connector = subjectCtx.getConnector(ReadCapabilityType.class, parentResult);
+        try {
+            connector.search(entitlementDef, null, handler, attributesToReturn,
+                    entitlementDef.getPagedSearches(entitlementCtx.getResource()), searchHierarchyConstraints,
+                    subjectCtx, parentResult);
+        } catch (GenericFrameworkException e) {
+            throw new GenericConnectorException("Generic error in the connector " + connector + ". Reason: "
+                    + e.getMessage(), e);
+        } catch (TunnelException e) {
+            throw (SchemaException) e.getCause();
+        }
+        part.setContent(generation, content);
+        LOGGER.debug("Membership index part {} was read in {} ms, it contains {} members", part,
+                System.currentTimeMillis() - started, content.size());
+    }
+
+    private boolean isReturned(AttributesToReturn attributesToReturn, ResourceAttributeDefinition<?> attrDef) {
+        if (attributesToReturn == null) {
+            return attrDef.isReturnedByDefault();
+        }
+        Collection<? extends ResourceAttributeDefinition> explicitAttributes = attributesToReturn.getAttributesToReturn();
+        if (explicitAttributes != null) {
+            for (ResourceAttributeDefinition<?> explicitAttribute : explicitAttributes) {
+                if (QNameUtil.match(explicitAttribute.getItemName(), attrDef.getItemName())) {
+                    return true;
+                }
+            }
+        }
+        return attributesToReturn.isReturnDefaultAttributes() && attrDef.isReturnedByDefault();
+    }
+
+    /**
+     * Creates an index that can be used to resolve entitlement-to-subject associations of objects read by a search.
+     * The index must be closed after the search is done.
+     */
+    EntitlementMembershipIndex openMembershipIndex(ProvisioningContext ctx) {
+        EntitlementMembershipIndex membershipIndex = new EntitlementMembershipIndex(ctx.getResourceOid());
+        membershipIndexes.add(membershipIndex);
+        return membershipIndex;
+    }
+
+    void closeMembershipIndex(EntitlementMembershipIndex membershipIndex) {
+        membershipIndexes.remove(membershipIndex);
+        LOGGER.trace("Closed {}", membershipIndex);
+    }
+
+    /**
+     * Notifies live membership indexes about a change of a resource object.
+     *
+     * @param operations Modifications executed; null means that the object was added or deleted.
+     */
+    void recordResourceObjectChange(String resourceOid, QName objectClassName, Collection<Operation> operations) {
+        for (EntitlementMembershipIndex membershipIndex : membershipIndexes) {
+            if (membershipIndex.getResourceOid().equals(resourceOid)) {
+                membershipIndex.recordChange(objectClassName, operations);
+            }
+        }
+    }
+
     //////////
     // ADD
     /////////
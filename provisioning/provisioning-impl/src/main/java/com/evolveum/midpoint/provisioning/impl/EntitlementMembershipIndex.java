@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.namespace.QName;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.PrismPropertyValue;
+import com.evolveum.midpoint.prism.delta.PropertyDelta;
+import com.evolveum.midpoint.prism.match.MatchingRule;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.provisioning.ucf.api.Operation;
+import com.evolveum.midpoint.provisioning.ucf.api.PropertyModificationOperation;
+import com.evolveum.midpoint.schema.processor.ResourceAttribute;
+import com.evolveum.midpoint.schema.util.ShadowUtil;
+import com.evolveum.midpoint.util.QNameUtil;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowKindType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Index of entitlements (e.g. groups) by values of their association attribute (e.g. members), used to resolve
+ * entitlement-to-subject associations of many subjects read by a single search, typically in reconciliation or import.
+ * Instead of searching for entitlements of each subject, all entitlements of given kind and intent are read once,
+ * when they are needed for the first time.
+ *
+ * The index lives as long as the search it was created for. Changes of entitlements executed by provisioning
+ * in the meanwhile (e.g. by worker threads of the task) are reported to the index, see {@link #recordChange(QName, Collection)}:
+ *
+ * - associations of members whose membership was changed are resolved by connector searches, as usual;
+ * - if an entitlement is added or deleted, or the whole association attribute is replaced, the part of the index
+ * is read again.
+ *
+ * Each part is read by one thread only; other threads needing it at the same time wait for the result.
+ *
+ * Used by {@link EntitlementConverter}.
+ */
+class EntitlementMembershipIndex {
+
+    private static final Trace LOGGER = TraceManager.getTrace(EntitlementMembershipIndex.class);
+
+    @NotNull private final String resourceOid;
+
+    @NotNull private final Map<PartKey, Part> parts = new ConcurrentHashMap<>();
+
+    EntitlementMembershipIndex(@NotNull String resourceOid) {
+        this.resourceOid = resourceOid;
+    }
+
+    @NotNull
+    String getResourceOid() {
+        return resourceOid;
+    }
+
+    @NotNull
+    Part getOrCreatePart(@NotNull PartKey key, @NotNull MatchingRule<?> matchingRule) {
+        return parts.computeIfAbsent(key, k -> new Part(k, matchingRule));
+    }
+
+    /**
+     * Records a change of a resource object of given object class.
+     *
+     * @param operations Modifications executed; null means that the object was added or deleted.
+     */
+    void recordChange(@NotNull QName objectClassName, @Nullable Collection<Operation> operations) {
+        for (Part part : parts.values()) {
+            part.recordChange(objectClassName, operations);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EntitlementMembershipIndex{" + resourceOid + ": " + parts.keySet() + "}";
+    }
+
+    static class PartKey {
+        @NotNull private final QName objectClassName;
+        private final ShadowKindType kind;
+        private final String intent;
+        @NotNull private final QName associationAttributeName;
+        @NotNull private final QName valueAttributeName;
+        private final QName matchingRuleName;
+
+        PartKey(@NotNull QName objectClassName, ShadowKindType kind, String intent,
+                @NotNull QName associationAttributeName, @NotNull QName valueAttributeName, QName matchingRuleName) {
+            this.objectClassName = objectClassName;
+            this.kind = kind;
+            this.intent = intent;
+            this.associationAttributeName = associationAttributeName;
+            this.valueAttributeName = valueAttributeName;
+            this.matchingRuleName = matchingRuleName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PartKey)) {
+                return false;
+            }
+            PartKey partKey = (PartKey) o;
+            return objectClassName.equals(partKey.objectClassName)
+                    && kind == partKey.kind
+                    && Objects.equals(intent, partKey.intent)
+                    && associationAttributeName.equals(partKey.associationAttributeName)
+                    && valueAttributeName.equals(partKey.valueAttributeName)
+                    && Objects.equals(matchingRuleName, partKey.matchingRuleName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(objectClassName, kind, intent, associationAttributeName, valueAttributeName, matchingRuleName);
+        }
+
+        @Override
+        public String toString() {
+            return objectClassName.getLocalPart() + "/" + kind + "/" + intent + "/" + associationAttributeName.getLocalPart();
+        }
+    }
+
+    /**
+     * Entitlements of one kind and intent, indexed by normalized values of the association attribute.
+     */
+    static class Part {
+
+        @NotNull private final PartKey key;
+        @NotNull private final MatchingRule<Object> matchingRule;
+
+        /**
+         * Content of the part, being read or already read. Null if the part was not read yet, or if it was
+         * invalidated as a whole. The content is read by the thread that claimed it (see {@link #startReading()}),
+         * other threads wait for it. Completed with null if the content cannot be used. Guarded by this.
+         */
+        private CompletableFuture<Map<Object, List<PrismObject<ShadowType>>>> content;
+
+        /**
+         * Incremented when the part is invalidated, so the content read concurrently with a change is not used.
+         * Guarded by this.
+         */
+        private long generation;
+
+        /**
+         * Normalized values of members whose membership was changed during the life of the index.
+         * Their entitlements are never taken from the index.
+         */
+        @NotNull private final Set<Object> changedMembers = ConcurrentHashMap.newKeySet();
+
+        private Part(@NotNull PartKey key, @NotNull MatchingRule<?> matchingRule) {
+            this.key = key;
+            //noinspection unchecked
+            this.matchingRule = (MatchingRule<Object>) matchingRule;
+        }
+
+        /**
+         * Claims reading of the content, so it is read only once even if needed by many threads at the same time.
+         *
+         * @return Generation to be passed to {@link #setContent(long, Map)} or {@link #readingFailed(long)}
+         * if the caller is to read the content; null if the content is already read or being read by another thread.
+         */
+        synchronized Long startReading() {
+            if (content != null) {
+                return null;
+            }
+            content = new CompletableFuture<>();
+            return generation;
+        }
+
+        /**
+         * Returns entitlements having given (normalized) member. Null if the index cannot tell.
+         * If the content is being read by another thread, waits for it.
+         */
+        List<PrismObject<ShadowType>> getEntitlements(Object normalizedMember) {
+            CompletableFuture<Map<Object, List<PrismObject<ShadowType>>>> currentContent;
+            synchronized (this) {
+                currentContent = content;
+            }
+            if (currentContent == null || changedMembers.contains(normalizedMember)) {
+                return null;
+            }
+            Map<Object, List<PrismObject<ShadowType>>> entitlementsByMember = currentContent.join();
+            if (entitlementsByMember == null || changedMembers.contains(normalizedMember)) {
+                return null;
+            } else {
+                return entitlementsByMember.getOrDefault(normalizedMember, Collections.emptyList());
+            }
+        }
+
+        /**
+         * Adds an entitlement into (not yet finished) content of the part.
+         *
+         * @param removeAssociationAttribute Whether to remove the association attribute from the entitlement
+         * (if it was requested only for the sake of the index).
+         */
+        void addToContent(Map<Object, List<PrismObject<ShadowType>>> newContent, PrismObject<ShadowType> entitlement,
+                boolean removeAssociationAttribute) throws SchemaException {
+            ResourceAttribute<?> attribute = ShadowUtil.getAttribute(entitlement, key.associationAttributeName);
+            if (attribute == null) {
+                return;
+            }
+            Collection<?> members = attribute.getRealValues();
+            if (removeAssociationAttribute) {
+                entitlement.removeProperty(ItemPath.create(ShadowType.F_ATTRIBUTES, key.associationAttributeName));
+            }
+            for (Object member : members) {
+                newContent.computeIfAbsent(normalize(member), k -> new ArrayList<>()).add(entitlement);
+            }
+        }
+
+        /**
+         * Sets the content of the part, unless the part was invalidated while the content was being read.
+         */
+        synchronized void setContent(long expectedGeneration, Map<Object, List<PrismObject<ShadowType>>> readContent) {
+            if (generation == expectedGeneration) {
+                content.complete(readContent);
+            } else {
+                LOGGER.trace("Index part {} was invalidated while being read, not using the content", key);
+            }
+        }
+
+        /**
+         * Releases the claim of reading, so the content can be read again later. Threads waiting for the content
+         * will not use the index.
+         */
+        synchronized void readingFailed(long expectedGeneration) {
+            if (generation == expectedGeneration) {
+                content.complete(null);
+                content = null;
+            }
+        }
+
+        Object normalize(Object value) throws SchemaException {
+            return matchingRule.normalize(value);
+        }
+
+        private synchronized void invalidate() {
+            LOGGER.trace("Invalidating index part {}", key);
+            generation++;
+            if (content != null) {
+                content.complete(null); // no-op if already read
+                content = null;
+            }
+        }
+
+        private void recordChange(QName objectClassName, Collection<Operation> operations) {
+            if (!QNameUtil.match(objectClassName, key.objectClassName)) {
+                // A change of a subject: a rename changes the values stored in its entitlements.
+                if (operations != null && !findDeltas(operations, key.valueAttributeName).isEmpty()) {
+                    invalidate();
+                }
+                return;
+            }
+            if (operations == null) {
+                invalidate();
+                return;
+            }
+            for (PropertyDelta<?> delta : findDeltas(operations, key.associationAttributeName)) {
+                if (delta.isReplace()) {
+                    invalidate();
+                    return;
+                }
+                try {
+                    recordChangedMembers(delta.getValuesToAdd());
+                    recordChangedMembers(delta.getValuesToDelete());
+                } catch (SchemaException e) {
+                    LOGGER.debug("Couldn't normalize changed member in {}, invalidating index part {}: {}", delta, key, e.getMessage(), e);
+                    invalidate();
+                    return;
+                }
+            }
+        }
+
+        private void recordChangedMembers(Collection<? extends PrismPropertyValue<?>> values) throws SchemaException {
+            if (values != null) {
+                for (PrismPropertyValue<?> value : values) {
+                    changedMembers.add(normalize(value.getRealValue()));
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return key.toString();
+        }
+
+        private List<PropertyDelta<?>> findDeltas(Collection<Operation> operations, QName attributeName) {
+            List<PropertyDelta<?>> deltas = new ArrayList<>();
+            for (Operation operation : operations) {
+                if (operation instanceof PropertyModificationOperation) {
+                    PropertyDelta<?> delta = ((PropertyModificationOperation<?>) operation).getPropertyDelta();
+                    if (QNameUtil.match(delta.getElementName(), attributeName)) {
+                        deltas.add(delta);
+                    }
+                }
+            }
+            return deltas;
+        }
+    }
+}
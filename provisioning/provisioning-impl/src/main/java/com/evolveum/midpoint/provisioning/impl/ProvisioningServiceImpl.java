@@ -967,7 +967,7 @@ public class ProvisioningServiceImpl implements ProvisioningService, SystemConfi
         PrismObject<ResourceType> resource;
         try {
 
-            resource = resourceManager.getResource(resourceOid, null, task, result);
+            resource = resourceManager.getResource(resourceOid, GetOperationOptions.createReadOnly(), task, result);
 
         } catch (SchemaException | ObjectNotFoundException | ExpressionEvaluationException ex) {
             ProvisioningUtil.recordFatalError(LOGGER, result, ex.getMessage(), ex);
@@ -7,6 +7,8 @@
 package com.evolveum.midpoint.provisioning.impl;
 
 import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.common.Clock;
+import com.evolveum.midpoint.common.refinery.RefinedResourceSchemaImpl;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.repo.api.Cache;
@@ -21,6 +23,7 @@ import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
+import com.google.common.annotations.VisibleForTesting;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -32,6 +35,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.evolveum.midpoint.util.caching.CacheConfiguration.StatisticsLevel.PER_CACHE;
 
@@ -39,8 +43,23 @@ import static com.evolveum.midpoint.util.caching.CacheConfiguration.StatisticsLe
  * Caches ResourceType instances with a parsed schemas.
  *
  * Resource cache is similar to repository cache. One of the differences is that it does not expire its entries.
- * It relies on versions and on invalidation events instead. So we have to use resource object versions when querying it.
- * (This could be perhaps changed in the future. But not now.)
+ * It relies on invalidation events (coming via {@link CacheRegistry}) and on versions instead.
+ *
+ * An entry is _verified_ if it is known to be the latest version of the resource: it was read from the repository
+ * (or its version was checked against the repository) and no invalidation event came since then. Verified entries
+ * are returned without asking the repository for the current version. Unverified entries (e.g. resources coming from
+ * repository searches that were completed and cached) are returned only if their version matches the one requested,
+ * or the one in the repository.
+ *
+ * Invalidation events are not guaranteed to arrive (e.g. when a cluster node is temporarily unreachable), so
+ * an entry stays verified only for {@link #VERIFICATION_VALIDITY} milliseconds. After that its version is checked
+ * against the repository again.
+ *
+ * Note that this requires all modifications of resources to be done via repository cache, which dispatches the
+ * invalidation events (also to other nodes in the cluster).
+ *
+ * The cache is lock-free: entries are immutable and they are replaced atomically. Resources are stored along with
+ * their parsed (refined) schema, so read-only clients can share the cached instance as it is.
  *
  * @author Radovan Semancik
  */
@@ -54,6 +73,23 @@ public class ResourceCache implements Cache {
     @Autowired private CacheRegistry cacheRegistry;
     @Autowired @Qualifier("cacheRepositoryService")
     private RepositoryService repositoryService;
+    @Autowired private Clock clock;
+
+    /**
+     * How long (in milliseconds) is an entry considered to be the latest version of the resource without checking
+     * its version in the repository.
+     */
+    static final long VERIFICATION_VALIDITY = 60_000L;
+
+    public ResourceCache() {
+    }
+
+    @VisibleForTesting
+    ResourceCache(PrismContext prismContext, RepositoryService repositoryService, Clock clock) {
+        this.prismContext = prismContext;
+        this.repositoryService = repositoryService;
+        this.clock = clock;
+    }
 
     @PostConstruct
     public void register() {
@@ -68,12 +104,47 @@ public class ResourceCache implements Cache {
     /**
      * Note that prism objects in this map are always not null and immutable.
      * And they must remain immutable after getting them from the cache.
-     *
-     * As for ConcurrentHashMap: Although we use synchronization whenever possible, let's be extra cautious here.
      */
-    private final Map<String, PrismObject<ResourceType>> cache = new ConcurrentHashMap<>();
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Number of invalidation events received. It is used to determine whether a resource being put into the cache
+     * could have been changed (in the repository) since it was read.
+     */
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private static class Entry {
+        @NotNull private final PrismObject<ResourceType> resource;
+
+        /** When was the entry verified to be the latest version of the resource. Null if it was not. */
+        private final Long verifiedAt;
+
+        private Entry(@NotNull PrismObject<ResourceType> resource, Long verifiedAt) {
+            this.resource = resource;
+            this.verifiedAt = verifiedAt;
+        }
+
+        private boolean isVerified(long now) {
+            return verifiedAt != null && now - verifiedAt < VERIFICATION_VALIDITY;
+        }
+    }
+
+    /**
+     * Returns the current invalidation count. It should be obtained before the resource is read from the repository,
+     * and then provided to {@link #put(PrismObject, Long)}.
+     */
+    long getInvalidationCount() {
+        return invalidationCount.get();
+    }
 
-    synchronized void put(PrismObject<ResourceType> resource) throws SchemaException {
+    /**
+     * Puts a resource into the cache.
+     *
+     * @param invalidationCountBeforeRead Invalidation count obtained before the resource was read from the repository.
+     * If there were no invalidations since then, the entry is marked as verified. Null means that we do not know
+     * when the resource was read.
+     */
+    void put(PrismObject<ResourceType> resource, Long invalidationCountBeforeRead) throws SchemaException {
         String oid = resource.getOid();
         if (oid == null) {
             throw new SchemaException("Attempt to cache "+resource+" without an OID");
@@ -84,18 +155,44 @@ public class ResourceCache implements Cache {
             throw new SchemaException("Attempt to cache "+resource+" without version");
         }
 
-        PrismObject<ResourceType> cachedResource = cache.get(oid);
-        if (cachedResource == null) {
-            LOGGER.debug("Caching(new): {}", resource);
-            cache.put(oid, resource.createImmutableClone());
-        } else if (compareVersion(resource.getVersion(), cachedResource.getVersion())) {
-            LOGGER.debug("Caching fizzle, resource already cached: {}", resource);
-            // We already have equivalent resource, nothing to do
-            //  TODO is this correct? What if the resource being put here is newer than the existing one (although having the same version)?
-        } else {
-            LOGGER.debug("Caching(replace): {}", resource);
-            cache.put(oid, resource.createImmutableClone());
+        PrismObject<ResourceType> immutableResource = createImmutableCloneWithSchema(resource);
+        if (immutableResource == null) {
+            return;
+        }
+
+        long now = clock.currentTimeMillis();
+        cache.compute(oid, (key, cachedEntry) -> {
+            // Evaluated under the lock for given key, so concurrent invalidation of this resource is either
+            // already reflected in the count, or it will remove the entry afterwards.
+            boolean verified = invalidationCountBeforeRead != null && invalidationCountBeforeRead == invalidationCount.get();
+            Long verifiedAt = verified ? now : null;
+            if (cachedEntry == null) {
+                LOGGER.debug("Caching(new, verified={}): {}", verified, resource);
+                return new Entry(immutableResource, verifiedAt);
+            } else if (compareVersion(version, cachedEntry.resource.getVersion()) && (cachedEntry.isVerified(now) || !verified)) {
+                LOGGER.debug("Caching fizzle, resource already cached: {}", resource);
+                // We already have equivalent resource, nothing to do
+                //  TODO is this correct? What if the resource being put here is newer than the existing one (although having the same version)?
+                return cachedEntry;
+            } else {
+                LOGGER.debug("Caching(replace, verified={}): {}", verified, resource);
+                return new Entry(immutableResource, verifiedAt);
+            }
+        });
+    }
+
+    /**
+     * Creates immutable clone of the resource, with the refined schema parsed, so it can be used by read-only clients
+     * directly. (The schema cannot be parsed on immutable resource later.) Returns null if the schema cannot be parsed.
+     */
+    private PrismObject<ResourceType> createImmutableCloneWithSchema(PrismObject<ResourceType> resource) {
+        try {
+            RefinedResourceSchemaImpl.getRefinedSchema(resource, prismContext);
+        } catch (SchemaException | RuntimeException e) {
+            LOGGER.debug("Not caching {} because its schema couldn't be parsed: {}", resource, e.getMessage(), e);
+            return null;
         }
+        return resource.createImmutableClone();
     }
 
     private boolean compareVersion(String version1, String version2) {
@@ -105,87 +202,115 @@ public class ResourceCache implements Cache {
     /**
      * Gets a resource if it has specified version. If it has not, purges it from the cache (even if it exists there).
      */
-    synchronized PrismObject<ResourceType> get(@NotNull String oid, String requestedVersion, boolean readOnly) {
+    PrismObject<ResourceType> get(@NotNull String oid, String requestedVersion, boolean readOnly) {
         InternalMonitor.getResourceCacheStats().recordRequest();
 
-        PrismObject<ResourceType> resourceToReturn;
-        PrismObject<ResourceType> cachedResource = cache.get(oid);
-        if (cachedResource == null) {
+        Entry cachedEntry = cache.get(oid);
+        if (cachedEntry == null) {
             LOGGER.debug("MISS(not cached) for {} (get)", oid);
-            resourceToReturn = null;
-        } else if (!compareVersion(requestedVersion, cachedResource.getVersion())) {
-            LOGGER.debug("MISS(wrong version) for {} (req={}, actual={})", oid, requestedVersion, cachedResource.getVersion());
+            return recordMiss();
+        } else if (!compareVersion(requestedVersion, cachedEntry.resource.getVersion())) {
+            LOGGER.debug("MISS(wrong version) for {} (req={}, actual={})", oid, requestedVersion, cachedEntry.resource.getVersion());
             LOGGER.trace("Cached resource version {} does not match requested resource version {}, purging from cache",
-                    cachedResource.getVersion(), requestedVersion);
-            cache.remove(oid);
-            resourceToReturn = null;
-        } else if (readOnly) {
-            cachedResource.checkImmutable();
-            LOGGER.trace("HIT(read only) for {} (v{})", cachedResource, cachedResource.getVersion());
-            resourceToReturn = cachedResource;
+                    cachedEntry.resource.getVersion(), requestedVersion);
+            cache.remove(oid, cachedEntry);
+            return recordMiss();
         } else {
-            LOGGER.debug("HIT(returning clone) for {} (v{})", cachedResource, cachedResource.getVersion());
-            resourceToReturn = cachedResource.clone();
-        }
-
-        if (resourceToReturn != null) {
-            CachePerformanceCollector.INSTANCE.registerHit(ResourceCache.class, ResourceType.class, PER_CACHE);
-            InternalMonitor.getResourceCacheStats().recordHit();
-        } else {
-            CachePerformanceCollector.INSTANCE.registerMiss(ResourceCache.class, ResourceType.class, PER_CACHE);
-            InternalMonitor.getResourceCacheStats().recordMiss();
+            return recordHit(cachedEntry, readOnly);
         }
-        return resourceToReturn;
     }
 
     /**
-     * Gets a resource without specifying requested version: returns one only if it has the same version as in the repo.
+     * Gets a resource without specifying requested version: returns one only if it is the latest one.
      *
-     * This requires a cooperation with the repository cache. Therefore this method is NOT synchronized
-     * and has operation result as its parameter.
+     * Verified entries are returned directly. For other ones (including the ones verified too long ago),
+     * the version is checked against the repository (so this method has operation result as its parameter);
+     * if it matches, the entry becomes verified.
      */
-    PrismObject<ResourceType> getIfLatest(@NotNull String oid, boolean readonly, OperationResult parentResult)
+    PrismObject<ResourceType> getIfLatest(@NotNull String oid, boolean readOnly, OperationResult parentResult)
             throws SchemaException, ObjectNotFoundException {
-        // First let's check if the cache contains given resource. If not, we can avoid getting version from the repo.
-        if (contains(oid)) {
+        Entry cachedEntry = cache.get(oid);
+        long now = clock.currentTimeMillis();
+        if (cachedEntry == null) {
+            // We can avoid getting version from the repo.
+            InternalMonitor.getResourceCacheStats().recordRequest();
+            LOGGER.debug("MISS(not cached) for {} (getIfLatest)", oid);
+            return recordMiss();
+        } else if (cachedEntry.isVerified(now)) {
+            InternalMonitor.getResourceCacheStats().recordRequest();
+            return recordHit(cachedEntry, readOnly);
+        } else {
+            long invalidationCountBeforeRead = invalidationCount.get();
             String version = repositoryService.getVersion(ResourceType.class, oid, parentResult);
-            return get(oid, version, readonly);
+            PrismObject<ResourceType> resource = get(oid, version, readOnly);
+            if (resource != null) {
+                markVerified(oid, cachedEntry, invalidationCountBeforeRead, now);
+            }
+            return resource;
+        }
+    }
+
+    private void markVerified(String oid, Entry entry, long invalidationCountBeforeRead, long verifiedAt) {
+        cache.computeIfPresent(oid, (key, cachedEntry) -> {
+            if (cachedEntry == entry && invalidationCountBeforeRead == invalidationCount.get()) {
+                LOGGER.trace("Marking cached {} as verified", entry.resource);
+                return new Entry(entry.resource, verifiedAt);
+            } else {
+                return cachedEntry;
+            }
+        });
+    }
+
+    private PrismObject<ResourceType> recordHit(Entry cachedEntry, boolean readOnly) {
+        PrismObject<ResourceType> cachedResource = cachedEntry.resource;
+        PrismObject<ResourceType> resourceToReturn;
+        if (readOnly) {
+            cachedResource.checkImmutable();
+            LOGGER.trace("HIT(read only) for {} (v{})", cachedResource, cachedResource.getVersion());
+            resourceToReturn = cachedResource;
         } else {
-            LOGGER.debug("MISS(not cached) for {} (getIfLatest)", oid);
-            CachePerformanceCollector.INSTANCE.registerMiss(ResourceCache.class, ResourceType.class, PER_CACHE);
-            InternalMonitor.getResourceCacheStats().recordMiss();
-            return null;
+            // Clients asking for mutable object can modify it (e.g. by applying security constraints), so we have to clone.
+            LOGGER.debug("HIT(returning clone) for {} (v{})", cachedResource, cachedResource.getVersion());
+            resourceToReturn = cachedResource.clone();
         }
+        CachePerformanceCollector.INSTANCE.registerHit(ResourceCache.class, ResourceType.class, PER_CACHE);
+        InternalMonitor.getResourceCacheStats().recordHit();
+        return resourceToReturn;
     }
 
-    private synchronized boolean contains(@NotNull String oid) {
-        return cache.containsKey(oid);
+    private PrismObject<ResourceType> recordMiss() {
+        CachePerformanceCollector.INSTANCE.registerMiss(ResourceCache.class, ResourceType.class, PER_CACHE);
+        InternalMonitor.getResourceCacheStats().recordMiss();
+        return null;
     }
 
     /**
      * Returns currently cached version. FOR DIAGNOSTICS ONLY.
      */
-    synchronized String getVersion(String oid) {
+    String getVersion(String oid) {
         if (oid == null) {
             return null;
         }
-        PrismObject<ResourceType> cachedResource = cache.get(oid);
-        if (cachedResource == null) {
+        Entry cachedEntry = cache.get(oid);
+        if (cachedEntry == null) {
             return null;
         }
-        return cachedResource.getVersion();
+        return cachedEntry.resource.getVersion();
     }
 
-    synchronized void remove(String oid) {
+    void remove(String oid) {
+        invalidationCount.incrementAndGet();
         cache.remove(oid);
     }
 
     @Override
-    public synchronized void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
         if (type == null || type.isAssignableFrom(ResourceType.class)) {
+            // The count must be incremented before the entries are removed, see put(..).
             if (oid != null) {
                 remove(oid);
             } else {
+                invalidationCount.incrementAndGet();
                 cache.clear();
             }
         }
@@ -193,7 +318,7 @@ public class ResourceCache implements Cache {
 
     @NotNull
     @Override
-    public synchronized Collection<SingleCacheStateInformationType> getStateInformation() {
+    public Collection<SingleCacheStateInformationType> getStateInformation() {
         return Collections.singleton(
                 new SingleCacheStateInformationType(prismContext)
                         .name(ResourceCache.class.getName())
@@ -204,8 +329,8 @@ public class ResourceCache implements Cache {
     @Override
     public void dumpContent() {
         if (LOGGER_CONTENT.isInfoEnabled()) {
-            cache.forEach((oid, resource) -> LOGGER_CONTENT.info("Cached resource: {}: {} (version: {})",
-                    oid, resource, resource.getVersion()));
+            cache.forEach((oid, entry) -> LOGGER_CONTENT.info("Cached resource: {}: {} (version: {}, verified at: {})",
+                    oid, entry.resource, entry.resource.getVersion(), entry.verifiedAt));
         }
     }
 }
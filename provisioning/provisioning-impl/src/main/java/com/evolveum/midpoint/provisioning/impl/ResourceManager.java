@@ -101,7 +101,8 @@ public class ResourceManager {
             LOGGER.debug("Storing fetched resource {}, version {} to cache (previously cached version {})",
                     oid, repositoryObject.getVersion(), resourceCache.getVersion(oid));
             PrismObject<ResourceType> mutableRepositoryObject = repositoryObject.cloneIfImmutable();
-            return completeAndCacheResource(mutableRepositoryObject, options, task, parentResult);
+            // We do not know when the object was read, so it will be cached as not verified.
+            return completeAndCacheResource(mutableRepositoryObject, null, options, task, parentResult);
         }
     }
 
@@ -120,9 +121,10 @@ public class ResourceManager {
                 LOGGER.debug("Fetching resource {} and storing to cache (previously cached version {}) (options={})",
                         oid, resourceCache.getVersion(oid), options);
             }
+            long invalidationCountBeforeRead = resourceCache.getInvalidationCount();
             // We must obviously NOT fetch resource from repo as read-only. We are going to modify it.
             PrismObject<ResourceType> repositoryObject = readResourceFromRepository(oid, parentResult);
-            return completeAndCacheResource(repositoryObject, options, task, parentResult);
+            return completeAndCacheResource(repositoryObject, invalidationCountBeforeRead, options, task, parentResult);
         }
     }
 
@@ -136,9 +138,10 @@ public class ResourceManager {
      * Here we complete the resource and cache it.
      *
      * @param repositoryObject Up-to-date repository object. Must be mutable.
+     * @param invalidationCountBeforeRead Resource cache invalidation count before the object was read (if known).
      */
     private PrismObject<ResourceType> completeAndCacheResource(PrismObject<ResourceType> repositoryObject,
-            GetOperationOptions options, Task task, OperationResult parentResult)
+            Long invalidationCountBeforeRead, GetOperationOptions options, Task task, OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException, ExpressionEvaluationException {
 
         checkMutable(repositoryObject);
@@ -159,7 +162,7 @@ public class ResourceManager {
             } else {
                 LOGGER.debug("Putting {} into cache", repositoryObject);
                 // Cache only resources that are completely OK
-                resourceCache.put(completedResource);
+                resourceCache.put(completedResource, invalidationCountBeforeRead);
             }
         }
         return completedResource;
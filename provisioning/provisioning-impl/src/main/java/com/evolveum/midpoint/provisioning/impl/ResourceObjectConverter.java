@@ -260,6 +260,8 @@ public class ResourceObjectConverter {
                 transformActivationAttributesAdd(ctx, shadowType, result);
 
                 connectorAsyncOpRet = connector.addObject(shadowClone, ctx, result);
+                entitlementConverter.recordResourceObjectChange(ctx.getResourceOid(),
+                        ctx.getObjectClassDefinition().getTypeName(), null);
                 resourceAttributesAfterAdd = connectorAsyncOpRet.getReturnValue();
 
                 LOGGER.debug("PROVISIONING ADD successful, returned attributes:\n{}",
@@ -406,6 +408,8 @@ public class ResourceObjectConverter {
             }
 
             connectorAsyncOpRet = connector.deleteObject(ctx.getObjectClassDefinition(), shadow, identifiers, ctx, result);
+            entitlementConverter.recordResourceObjectChange(ctx.getResourceOid(),
+                    ctx.getObjectClassDefinition().getTypeName(), null);
 
         } catch (ObjectNotFoundException ex) {
             result.recordFatalError("Can't delete object " + shadow
@@ -778,6 +782,7 @@ public class ResourceObjectConverter {
             }
 
             LOGGER.debug("PROVISIONING MODIFY successful, inProgress={}, side-effect changes {}", inProgress, DebugUtil.debugDumpLazily(sideEffectChanges));
+            entitlementConverter.recordResourceObjectChange(ctx.getResourceOid(), objectClassDefinition.getTypeName(), operations);
 
             if (inProgress) {
                 result.recordInProgress();
@@ -1264,6 +1269,18 @@ public class ResourceObjectConverter {
             final ResultHandler<ShadowType> resultHandler, ObjectQuery query, final boolean fetchAssociations,
             final OperationResult parentResult) throws SchemaException,
             CommunicationException, ObjectNotFoundException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
+        return searchResourceObjects(ctx, resultHandler, query, fetchAssociations, null, 0, parentResult);
+    }
+
+    /**
+     * @param batchPreprocessor If present, objects returned by the connector are collected into batches of given size,
+     * and each batch is pre-processed by this preprocessor before its objects are passed to the result handler.
+     */
+    public SearchResultMetadata searchResourceObjects(final ProvisioningContext ctx,
+            final ResultHandler<ShadowType> resultHandler, ObjectQuery query, final boolean fetchAssociations,
+            BatchingShadowResultHandler.BatchPreprocessor batchPreprocessor, int batchSize,
+            final OperationResult parentResult) throws SchemaException,
+            CommunicationException, ObjectNotFoundException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
 
         LOGGER.trace("Searching resource objects, query: {}", query);
 
@@ -1279,70 +1296,87 @@ public class ResourceObjectConverter {
 
         AtomicInteger objectCounter = new AtomicInteger(0);
 
-        SearchResultMetadata metadata;
-        try {
+        EntitlementMembershipIndex membershipIndex = fetchAssociations && isMembershipIndexRequested(ctx) ?
+                entitlementConverter.openMembershipIndex(ctx) : null;
 
-            metadata = connector.search(objectClassDef, query,
-                    (shadow) -> {
-                        // in order to utilize the cache right from the beginning...
-                        RepositoryCache.enterLocalCaches(cacheConfigurationManager);
-                        try {
+        ShadowResultHandler objectHandler = (shadow) -> {
+            // in order to utilize the cache right from the beginning...
+            RepositoryCache.enterLocalCaches(cacheConfigurationManager);
+            try {
 
-                            int objectNumber = objectCounter.getAndIncrement();
-
-                            Task task = ctx.getTask();
-                            boolean requestedTracingHere;
-                            requestedTracingHere = task instanceof RunningTask &&
-                                    ((RunningTask) task).requestTracingIfNeeded(
-                                            (RunningTask) task, objectNumber,
-                                            TracingRootType.RETRIEVED_RESOURCE_OBJECT_PROCESSING);
-                            try {
-                                OperationResultBuilder resultBuilder = parentResult
-                                        .subresult(OperationConstants.OPERATION_SEARCH_RESULT)
-                                        .setMinor()
-                                        .addParam("number", objectNumber);
-                                // TODO primary identifier (but it's not computed yet)
-
-                                // Here we request tracing if configured to do so. Note that this is only a partial solution: for multithreaded
-                                // operations we currently do not trace the "worker" part of the processing.
-                                boolean tracingRequested = setTracingInOperationResultIfRequested(resultBuilder,
-                                        TracingRootType.RETRIEVED_RESOURCE_OBJECT_PROCESSING, task, parentResult);
-
-                                OperationResult objResult = resultBuilder.build();
-                                try {
-                                    shadow = postProcessResourceObjectRead(ctx, shadow, fetchAssociations, objResult);
-                                    Validate.notNull(shadow, "null shadow");
-                                    return resultHandler.handle(shadow, objResult);
-                                } catch (Throwable t) {
-                                    objResult.recordFatalError(t);
-                                    throw t;
-                                } finally {
-                                    objResult.computeStatusIfUnknown();
-                                    if (tracingRequested) {
-                                        tracer.storeTrace(task, objResult, parentResult);
-                                    }
-                                    // FIXME: hack. Hardcoded ugly summarization of successes. something like
-                                    //  AbstractSummarizingResultHandler [lazyman]
-                                    if (objResult.isSuccess() && !tracingRequested && !objResult.isTraced()) {
-                                        objResult.getSubresults().clear();
-                                    }
-                                    // TODO Reconsider this. It is quite dubious to touch parentResult from the inside.
-                                    parentResult.summarize();
-                                }
-                            } finally {
-                                RepositoryCache.exitLocalCaches();
-                                if (requestedTracingHere && task instanceof RunningTask) {
-                                    ((RunningTask) task).stopTracing();
-                                }
-                            }
-                        } catch (RuntimeException e) {
-                            throw e;
-                        } catch (Throwable t) {
-                            throw new TunnelException(t);
+                int objectNumber = objectCounter.getAndIncrement();
+
+                Task task = ctx.getTask();
+                boolean requestedTracingHere;
+                requestedTracingHere = task instanceof RunningTask &&
+                        ((RunningTask) task).requestTracingIfNeeded(
+                                (RunningTask) task, objectNumber,
+                                TracingRootType.RETRIEVED_RESOURCE_OBJECT_PROCESSING);
+                try {
+                    OperationResultBuilder resultBuilder = parentResult
+                            .subresult(OperationConstants.OPERATION_SEARCH_RESULT)
+                            .setMinor()
+                            .addParam("number", objectNumber);
+                    // TODO primary identifier (but it's not computed yet)
+
+                    // Here we request tracing if configured to do so. Note that this is only a partial solution: for multithreaded
+                    // operations we currently do not trace the "worker" part of the processing.
+                    boolean tracingRequested = setTracingInOperationResultIfRequested(resultBuilder,
+                            TracingRootType.RETRIEVED_RESOURCE_OBJECT_PROCESSING, task, parentResult);
+
+                    OperationResult objResult = resultBuilder.build();
+                    try {
+                        shadow = postProcessResourceObjectRead(ctx, shadow, fetchAssociations, membershipIndex, objResult);
+                        Validate.notNull(shadow, "null shadow");
+                        return resultHandler.handle(shadow, objResult);
+                    } catch (Throwable t) {
+                        objResult.recordFatalError(t);
+                        throw t;
+                    } finally {
+                        objResult.computeStatusIfUnknown();
+                        if (tracingRequested) {
+                            tracer.storeTrace(task, objResult, parentResult);
+                        }
+                        // FIXME: hack. Hardcoded ugly summarization of successes. something like
+                        //  AbstractSummarizingResultHandler [lazyman]
+                        if (objResult.isSuccess() && !tracingRequested && !objResult.isTraced()) {
+                            objResult.getSubresults().clear();
                         }
-                    },
+                        // TODO Reconsider this. It is quite dubious to touch parentResult from the inside.
+                        parentResult.summarize();
+                    }
+                } finally {
+                    RepositoryCache.exitLocalCaches();
+                    if (requestedTracingHere && task instanceof RunningTask) {
+                        ((RunningTask) task).stopTracing();
+                    }
+                }
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new TunnelException(t);
+            }
+        };
+
+        ShadowResultHandler connectorHandler;
+        BatchingShadowResultHandler batchingHandler;
+        if (batchPreprocessor != null && batchSize > 1) {
+            batchingHandler = new BatchingShadowResultHandler(objectHandler, batchPreprocessor, batchSize);
+            connectorHandler = batchingHandler;
+        } else {
+            batchingHandler = null;
+            connectorHandler = objectHandler;
+        }
+
+        SearchResultMetadata metadata;
+        try {
+
+            metadata = connector.search(objectClassDef, query, connectorHandler,
                     attributesToReturn, objectClassDef.getPagedSearches(ctx.getResource()), searchHierarchyConstraints,
                     ctx, parentResult);
+            if (batchingHandler != null) {
+                batchingHandler.flush();
+            }
 
         } catch (GenericFrameworkException e) {
             parentResult.recordFatalError("Generic error in the connector: " + e.getMessage(), e);
@@ -1377,6 +1411,10 @@ public class ResourceObjectConverter {
             } else {
                 throw new SystemException(cause.getMessage(), cause);
             }
+        } finally {
+            if (membershipIndex != null) {
+                entitlementConverter.closeMembershipIndex(membershipIndex);
+            }
         }
 
         computeResultStatus(parentResult);
@@ -1386,6 +1424,16 @@ public class ResourceObjectConverter {
         return metadata;
     }
 
+    /**
+     * Entitlement membership index is used only if requested by the task, as reading all entitlements
+     * pays off only if there are many subjects to be read.
+     */
+    private boolean isMembershipIndexRequested(ProvisioningContext ctx) {
+        Task task = ctx.getTask();
+        return task != null &&
+                Boolean.TRUE.equals(task.getExtensionPropertyRealValue(SchemaConstants.MODEL_EXTENSION_INDEX_ENTITLEMENT_MEMBERSHIP));
+    }
+
     private boolean setTracingInOperationResultIfRequested(OperationResultBuilder resultBuilder, TracingRootType tracingRoot,
             Task task, OperationResult parentResult) throws SchemaException {
         boolean tracingRequested;
@@ -2083,6 +2131,12 @@ public class ResourceObjectConverter {
     private PrismObject<ShadowType> postProcessResourceObjectRead(ProvisioningContext ctx,
             PrismObject<ShadowType> resourceObject, boolean fetchAssociations,
             OperationResult parentResult) throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
+        return postProcessResourceObjectRead(ctx, resourceObject, fetchAssociations, null, parentResult);
+    }
+
+    private PrismObject<ShadowType> postProcessResourceObjectRead(ProvisioningContext ctx,
+            PrismObject<ShadowType> resourceObject, boolean fetchAssociations, EntitlementMembershipIndex membershipIndex,
+            OperationResult parentResult) throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
         if (resourceObject == null) {
             return null;
         }
@@ -2098,7 +2152,7 @@ public class ResourceObjectConverter {
 
         // Entitlements
         if (fetchAssociations) {
-            entitlementConverter.postProcessEntitlementsRead(ctx, resourceObject, parentResult);
+            entitlementConverter.postProcessEntitlementsRead(ctx, resourceObject, membershipIndex, parentResult);
         }
 
         return resourceObject;
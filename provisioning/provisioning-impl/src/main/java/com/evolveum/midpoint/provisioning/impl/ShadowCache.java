@@ -23,6 +23,7 @@ import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
 import com.evolveum.midpoint.provisioning.api.*;
 import com.evolveum.midpoint.provisioning.impl.errorhandling.ErrorHandler;
 import com.evolveum.midpoint.provisioning.impl.errorhandling.ErrorHandlerLocator;
+import com.evolveum.midpoint.provisioning.impl.shadowmanager.PrefetchedShadows;
 import com.evolveum.midpoint.provisioning.impl.shadowmanager.ShadowManager;
 import com.evolveum.midpoint.provisioning.ucf.api.*;
 import com.evolveum.midpoint.provisioning.util.ProvisioningUtil;
@@ -117,6 +118,8 @@ public class ShadowCache {
 
     private static final Trace LOGGER = TraceManager.getTrace(ShadowCache.class);
 
+    private static final int DEFAULT_SHADOW_LOOKUP_BATCH_SIZE = 50;
+
     public PrismContext getPrismContext() {
         return prismContext;
     }
@@ -1988,7 +1991,7 @@ public class ShadowCache {
         if (resourceOid == null) {
             throw new IllegalArgumentException("No resource OID in " + coords);
         }
-        return resourceManager.getResource(resourceOid, null, task, parentResult).asObjectable();
+        return resourceManager.getResource(resourceOid, GetOperationOptions.createReadOnly(), task, parentResult).asObjectable();
     }
 
     //we need to remove resolved identifiers form the ShadowAssociationType before we save it to the shadow as an unfinished operation.
@@ -2073,6 +2076,12 @@ public class ShadowCache {
 
         ObjectQuery attributeQuery = createAttributeQuery(query);
 
+        // Repository shadows for a batch of resource objects are fetched at once.
+        PrefetchedShadows prefetchedShadows = readFromRepository ? shadowManager.openPrefetchedShadows() : null;
+        BatchingShadowResultHandler.BatchPreprocessor batchPreprocessor = readFromRepository ?
+                batch -> shadowManager.lookupLiveShadowsByPrimaryIdentifierValues(ctx, batch, prefetchedShadows, parentResult) :
+                null;
+
         ResultHandler<ShadowType> resultHandler = (PrismObject<ShadowType> resourceObject, OperationResult objResult) -> {
             LOGGER.trace("Found resource object\n{}", resourceObject.debugDumpLazily(1));
             PrismObject<ShadowType> resultShadow;
@@ -2083,7 +2092,7 @@ public class ShadowCache {
                     // Try to find shadow that corresponds to the resource object.
                     if (readFromRepository) {
                         PrismObject<ShadowType> repoShadow = acquireRepositoryShadow(
-                                estimatedShadowCtx, resourceObject, true, isDoDiscovery, objResult);
+                                estimatedShadowCtx, resourceObject, true, isDoDiscovery, prefetchedShadows, objResult);
 
                         // This determines the definitions exactly. How the repo
                         // shadow should have proper kind/intent
@@ -2143,8 +2152,26 @@ public class ShadowCache {
 
         boolean fetchAssociations = SelectorOptions.hasToLoadPath(ShadowType.F_ASSOCIATION, options);
 
-        return resourceObjectConverter.searchResourceObjects(ctx, resultHandler, attributeQuery,
-                fetchAssociations, parentResult);
+        try {
+            return resourceObjectConverter.searchResourceObjects(ctx, resultHandler, attributeQuery,
+                    fetchAssociations, batchPreprocessor, getShadowLookupBatchSize(ctx), parentResult);
+        } finally {
+            if (prefetchedShadows != null) {
+                shadowManager.closePrefetchedShadows(prefetchedShadows);
+            }
+        }
+
+    }
+
+    /**
+     * Number of resource objects whose repository shadows are looked up using a single repository search.
+     * Can be overridden by the task; values lower than 2 turn the batching off.
+     */
+    private int getShadowLookupBatchSize(ProvisioningContext ctx) {
+        Task task = ctx.getTask();
+        Integer fromTask = task != null ?
+                task.getExtensionPropertyRealValue(SchemaConstants.MODEL_EXTENSION_SHADOW_LOOKUP_BATCH_SIZE) : null;
+        return fromTask != null ? fromTask : DEFAULT_SHADOW_LOOKUP_BATCH_SIZE;
 
     }
 
@@ -2182,8 +2209,24 @@ public class ShadowCache {
             PrismObject<ShadowType> resourceShadow, boolean unknownIntent, boolean isDoDiscovery, OperationResult parentResult)
                     throws SchemaException, ConfigurationException, ObjectNotFoundException,
                     CommunicationException, SecurityViolationException, GenericConnectorException, ExpressionEvaluationException, EncryptionException {
+        return acquireRepositoryShadow(ctx, resourceShadow, unknownIntent, isDoDiscovery, null, parentResult);
+    }
 
-        PrismObject<ShadowType> existingRepoShadow = shadowManager.lookupLiveShadowInRepository(ctx, resourceShadow, parentResult);
+    /**
+     * @param prefetchedShadows Shadows fetched from the repository for a batch of resource objects (if any).
+     * If the shadow is not among them (or it was changed since it was fetched), it is looked up in the repository as usual.
+     */
+    private PrismObject<ShadowType> acquireRepositoryShadow(ProvisioningContext ctx,
+            PrismObject<ShadowType> resourceShadow, boolean unknownIntent, boolean isDoDiscovery,
+            PrefetchedShadows prefetchedShadows, OperationResult parentResult)
+                    throws SchemaException, ConfigurationException, ObjectNotFoundException,
+                    CommunicationException, SecurityViolationException, GenericConnectorException, ExpressionEvaluationException, EncryptionException {
+
+        PrismObject<ShadowType> existingRepoShadow = prefetchedShadows != null ?
+                shadowManager.lookupPrefetchedLiveShadow(ctx, resourceShadow, prefetchedShadows, parentResult) : null;
+        if (existingRepoShadow == null) {
+            existingRepoShadow = shadowManager.lookupLiveShadowInRepository(ctx, resourceShadow, parentResult);
+        }
 
         if (existingRepoShadow != null) {
             if (LOGGER.isTraceEnabled()) {
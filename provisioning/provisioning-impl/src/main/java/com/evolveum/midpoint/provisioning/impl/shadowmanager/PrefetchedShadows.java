@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl.shadowmanager;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Live shadows fetched from the repository for a batch of resource objects, indexed by their primaryIdentifierValue.
+ * See {@link ShadowManager#lookupLiveShadowsByPrimaryIdentifierValues(com.evolveum.midpoint.provisioning.impl.ProvisioningContext,
+ * java.util.Collection, PrefetchedShadows, com.evolveum.midpoint.schema.result.OperationResult)}.
+ *
+ * Objects of the batch are processed one after another, so a shadow can be changed (e.g. marked as dead, or deleted)
+ * after it was fetched. Therefore the shadows changed since the batch was started (as reported by repository cache
+ * invalidations) are never returned; they are looked up in the repository again.
+ *
+ * The shadows are put and taken by the thread processing the search results; invalidations can come from any thread.
+ */
+public class PrefetchedShadows {
+
+    private static final Trace LOGGER = TraceManager.getTrace(PrefetchedShadows.class);
+
+    @NotNull private final Map<String, PrismObject<ShadowType>> shadows = new ConcurrentHashMap<>();
+
+    /** OIDs of shadows changed since the current batch was started. */
+    @NotNull private final Set<String> changedOids = ConcurrentHashMap.newKeySet();
+
+    /** True if all shadows should be considered changed since the current batch was started. */
+    private volatile boolean allChanged;
+
+    /**
+     * Forgets the shadows of the previous batch. Must be called before the shadows of the next batch are fetched,
+     * so changes done while they are being fetched are not missed.
+     */
+    void startBatch() {
+        shadows.clear();
+        changedOids.clear();
+        allChanged = false;
+    }
+
+    void put(@NotNull String primaryIdentifierValue, @NotNull PrismObject<ShadowType> shadow) {
+        shadows.put(primaryIdentifierValue, shadow);
+    }
+
+    boolean isEmpty() {
+        return shadows.isEmpty();
+    }
+
+    /**
+     * Returns the shadow with given primaryIdentifierValue, unless it was changed since it was fetched.
+     * The shadow is removed, so it is never used twice.
+     */
+    PrismObject<ShadowType> remove(@NotNull String primaryIdentifierValue) {
+        PrismObject<ShadowType> shadow = shadows.remove(primaryIdentifierValue);
+        if (shadow != null && (allChanged || changedOids.contains(shadow.getOid()))) {
+            LOGGER.trace("Prefetched shadow {} was changed in the meanwhile, not using it", shadow);
+            return null;
+        } else {
+            return shadow;
+        }
+    }
+
+    /**
+     * Records a change of a shadow.
+     *
+     * @param oid Null means that any shadow could be changed.
+     */
+    void recordChange(String oid) {
+        if (oid != null) {
+            changedOids.add(oid);
+        } else {
+            allChanged = true;
+        }
+    }
+
+    int size() {
+        return shadows.size();
+    }
+
+    @Override
+    public String toString() {
+        return "PrefetchedShadows{" + shadows.size() + " shadows, " + changedOids.size() + " changed"
+                + (allChanged ? ", all changed" : "") + "}";
+    }
+}
@@ -9,6 +9,9 @@ package com.evolveum.midpoint.provisioning.impl.shadowmanager;
 
 import java.util.Objects;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.xml.datatype.Duration;
 import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.namespace.QName;
@@ -19,6 +22,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import com.evolveum.midpoint.CacheInvalidationContext;
 import com.evolveum.midpoint.common.Clock;
 import com.evolveum.midpoint.common.refinery.RefinedAssociationDefinition;
 import com.evolveum.midpoint.common.refinery.RefinedAttributeDefinition;
@@ -35,6 +39,7 @@ import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.query.EqualFilter;
 import com.evolveum.midpoint.prism.query.ObjectFilter;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.prism.query.QueryFactory;
 import com.evolveum.midpoint.prism.query.Visitor;
 import com.evolveum.midpoint.prism.query.builder.S_AtomicFilterEntry;
 import com.evolveum.midpoint.prism.query.builder.S_FilterEntry;
@@ -63,6 +68,7 @@ import com.evolveum.midpoint.schema.util.ShadowUtil;
 import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.util.DebugUtil;
 import com.evolveum.midpoint.util.MiscUtil;
+import com.evolveum.midpoint.util.QNameUtil;
 import com.evolveum.midpoint.util.exception.*;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
@@ -85,7 +91,7 @@ import com.evolveum.prism.xml.ns._public.types_3.ProtectedStringType;
  * @author Radovan Semancik
  */
 @Component
-public class ShadowManager {
+public class ShadowManager implements Cache {
 
     @Autowired
     @Qualifier("cacheRepositoryService")
@@ -97,9 +103,25 @@ public class ShadowManager {
     @Autowired private Protector protector;
     @Autowired private ProvisioningService provisioningService;
     @Autowired private ShadowDeltaComputer shadowDeltaComputer;
+    @Autowired private CacheRegistry cacheRegistry;
 
     private static final Trace LOGGER = TraceManager.getTrace(ShadowManager.class);
 
+    /**
+     * Prefetched shadows of searches in progress, to be notified about shadow changes. See {@link PrefetchedShadows}.
+     */
+    private final Set<PrefetchedShadows> livePrefetchedShadows = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCache(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCache(this);
+    }
+
     public PrismObject<ShadowType> getRepoShadow(String oid, OperationResult result) throws ObjectNotFoundException, SchemaException {
         return repositoryService.getObject(ShadowType.class, oid, null, result);
     }
@@ -143,6 +165,45 @@ public class ShadowManager {
         if (liveShadow == null) {
             return null;
         }
+        return checkLiveShadow(resourceShadow, liveShadow, parentResult);
+    }
+
+    /**
+     * Looks up the shadow corresponding to the provided resource object among shadows prefetched by
+     * {@link #lookupLiveShadowsByPrimaryIdentifierValues(ProvisioningContext, Collection, PrefetchedShadows, OperationResult)}.
+     * The shadow found is removed from the prefetched ones, so it is never used twice. Shadows changed since they were
+     * prefetched, or not matching the resource object, are discarded.
+     *
+     * @return the shadow or null if it was not prefetched (or was discarded). Note that null does not mean that the shadow
+     * does not exist: e.g. shadows created before primaryIdentifierValue was introduced do not have it filled-in.
+     */
+    public PrismObject<ShadowType> lookupPrefetchedLiveShadow(ProvisioningContext ctx, PrismObject<ShadowType> resourceShadow,
+            PrefetchedShadows prefetchedShadows, OperationResult parentResult) throws SchemaException {
+        if (prefetchedShadows.isEmpty()) {
+            return null;
+        }
+        String primaryIdentifierValue = determinePrimaryIdentifierValue(ctx, resourceShadow);
+        if (primaryIdentifierValue == null) {
+            return null;
+        }
+        PrismObject<ShadowType> liveShadow = prefetchedShadows.remove(primaryIdentifierValue);
+        if (liveShadow == null) {
+            return null;
+        }
+        if (!QNameUtil.match(liveShadow.asObjectable().getObjectClass(), resourceShadow.asObjectable().getObjectClass())) {
+            LOGGER.trace("Prefetched shadow {} has different object class than {}, ignoring it", liveShadow, resourceShadow);
+            return null;
+        }
+        if (ShadowUtil.isDead(liveShadow.asObjectable())) {
+            LOGGER.trace("Prefetched shadow {} is dead, ignoring it", liveShadow);
+            return null;
+        }
+        LOGGER.trace("Found prefetched shadow {} for primaryIdentifierValue {}", liveShadow, primaryIdentifierValue);
+        return checkLiveShadow(resourceShadow, liveShadow, parentResult);
+    }
+
+    private PrismObject<ShadowType> checkLiveShadow(PrismObject<ShadowType> resourceShadow, PrismObject<ShadowType> liveShadow,
+            OperationResult parentResult) throws SchemaException {
         ShadowType repoShadowType = liveShadow.asObjectable();
         if (ShadowUtil.isDead(repoShadowType)) {
             // Note: never reset dead shadow flag. Once the shadow's dead, it stays dead.
@@ -196,6 +257,85 @@ public class ShadowManager {
         return foundShadows.get(0);
     }
 
+    /**
+     * Creates a holder of prefetched shadows for a search. It is notified about shadow changes until it is closed.
+     */
+    public PrefetchedShadows openPrefetchedShadows() {
+        PrefetchedShadows prefetchedShadows = new PrefetchedShadows();
+        livePrefetchedShadows.add(prefetchedShadows);
+        return prefetchedShadows;
+    }
+
+    public void closePrefetchedShadows(PrefetchedShadows prefetchedShadows) {
+        livePrefetchedShadows.remove(prefetchedShadows);
+    }
+
+    /**
+     * Fetches shadows for a batch of resource objects using a single repository search
+     * (instead of searching for each object separately). They replace the shadows prefetched for the previous batch.
+     *
+     * Live shadows found are put into prefetchedShadows, indexed by their primaryIdentifierValue. Resource objects
+     * without (determinable) primary identifier value are skipped.
+     */
+    public void lookupLiveShadowsByPrimaryIdentifierValues(ProvisioningContext ctx,
+            Collection<PrismObject<ShadowType>> resourceShadows, PrefetchedShadows prefetchedShadows,
+            OperationResult parentResult) throws SchemaException {
+
+        prefetchedShadows.startBatch();
+
+        QueryFactory queryFactory = prismContext.queryFactory();
+        Set<String> primaryIdentifierValues = new HashSet<>();
+        List<ObjectFilter> valueFilters = new ArrayList<>();
+        for (PrismObject<ShadowType> resourceShadow : resourceShadows) {
+            String primaryIdentifierValue;
+            try {
+                primaryIdentifierValue = determinePrimaryIdentifierValue(ctx, resourceShadow);
+            } catch (SchemaException e) {
+                // The object will be looked up (and the problem reported) when processed individually.
+                LOGGER.trace("Couldn't determine primaryIdentifierValue for {}, skipping it: {}", resourceShadow, e.getMessage(), e);
+                continue;
+            }
+            if (primaryIdentifierValue != null && primaryIdentifierValues.add(primaryIdentifierValue)) {
+                valueFilters.add(prismContext.queryFor(ShadowType.class)
+                        .item(ShadowType.F_PRIMARY_IDENTIFIER_VALUE).eq(primaryIdentifierValue)
+                        .buildFilter());
+            }
+        }
+        if (valueFilters.isEmpty()) {
+            return;
+        }
+
+        ObjectFilter ownerFilter;
+        try {
+            ownerFilter = prismContext.queryFor(ShadowType.class)
+                    .item(ShadowType.F_OBJECT_CLASS).eq(ctx.getObjectClassDefinition().getTypeName())
+                    .and().item(ShadowType.F_RESOURCE_REF).ref(ctx.getResourceOid())
+                    .buildFilter();
+        } catch (ExpressionEvaluationException | CommunicationException | ConfigurationException | ObjectNotFoundException e) {
+            // Should not happen at this stage. And we do not want to pollute throws clauses all the way up.
+            throw new SystemException(e.getMessage(), e);
+        }
+        // The repository does not support multi-valued equality filters, so we use a disjunction here.
+        ObjectQuery query = queryFactory.createQuery(
+                queryFactory.createAnd(queryFactory.createOr(valueFilters), ownerFilter));
+        LOGGER.trace("Searching for shadows by {} primaryIdentifierValue(s) using filter:\n{}",
+                valueFilters.size(), DebugUtil.debugDumpLazily(query, 1));
+
+        // Explicitly avoid all caches. We want to avoid shadow duplication.
+        Collection<SelectorOptions<GetOperationOptions>> options = SelectorOptions.createCollection(GetOperationOptions.createStaleness(0L));
+        List<PrismObject<ShadowType>> foundShadows = repositoryService.searchObjects(ShadowType.class, query, options, parentResult);
+        MiscSchemaUtil.reduceSearchResult(foundShadows);
+
+        for (PrismObject<ShadowType> foundShadow : foundShadows) {
+            String primaryIdentifierValue = foundShadow.asObjectable().getPrimaryIdentifierValue();
+            // Dead shadows have no primaryIdentifierValue, so they should not be here; but let's be careful.
+            if (primaryIdentifierValue != null && !ShadowUtil.isDead(foundShadow)) {
+                prefetchedShadows.put(primaryIdentifierValue, foundShadow);
+            }
+        }
+        LOGGER.trace("Found {} shadow(s) for {} primaryIdentifierValue(s)", prefetchedShadows.size(), valueFilters.size());
+    }
+
     public PrismObject<ShadowType> eliminateDeadShadows(List<PrismObject<ShadowType>> shadows, OperationResult result) {
         if (shadows == null || shadows.isEmpty()) {
             return null;
@@ -2179,4 +2319,30 @@ public class ShadowManager {
         modifyTimestampDelta.setRealValuesToReplace(clock.currentTimeXMLGregorianCalendar());
         shadowChanges.add(modifyTimestampDelta);
     }
+
+    @Override
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (type == null || type.isAssignableFrom(ShadowType.class)) {
+            for (PrefetchedShadows prefetchedShadows : livePrefetchedShadows) {
+                prefetchedShadows.recordChange(oid);
+            }
+        }
+    }
+
+    @NotNull
+    @Override
+    public Collection<SingleCacheStateInformationType> getStateInformation() {
+        return Collections.singleton(
+                new SingleCacheStateInformationType(prismContext)
+                        .name(PrefetchedShadows.class.getName())
+                        .size(livePrefetchedShadows.stream().mapToInt(PrefetchedShadows::size).sum())
+        );
+    }
+
+    @Override
+    public void dumpContent() {
+        if (LOGGER.isInfoEnabled()) {
+            livePrefetchedShadows.forEach(prefetchedShadows -> LOGGER.info("Live prefetched shadows: {}", prefetchedShadows));
+        }
+    }
 }
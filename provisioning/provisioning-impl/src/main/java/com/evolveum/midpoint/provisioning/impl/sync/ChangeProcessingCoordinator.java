@@ -15,6 +15,7 @@ import com.evolveum.midpoint.schema.result.OperationResultStatus;
 import com.evolveum.midpoint.task.api.LightweightTaskHandler;
 import com.evolveum.midpoint.task.api.RunningTask;
 import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.exception.SystemException;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.TaskPartitionDefinitionType;
@@ -38,6 +39,12 @@ public class ChangeProcessingCoordinator {
 
     private static final long WORKER_THREAD_WAIT_FOR_REQUEST = 100L;
 
+    /**
+     * How long we wait for a free place in the requests buffer before giving up the request.
+     * Requests are being processed all the time, so this is reached only if the workers are stuck.
+     */
+    private static final long SUBMIT_TIMEOUT = 600_000L;
+
     private static final String OP_HANDLE_ASYNCHRONOUSLY = ChangeProcessingCoordinator.class.getName() + ".handleAsynchronously";
 
     @NotNull private final Supplier<Boolean> canRunSupplier;
@@ -73,11 +80,21 @@ public class ChangeProcessingCoordinator {
 
     public void submit(ProcessChangeRequest request, OperationResult result) throws InterruptedException {
         if (multithreaded) {
+            long deadline = System.currentTimeMillis() + SUBMIT_TIMEOUT;
+            // Each offer blocks until there is a place in the lane or its (short) timeout expires.
             while (!requestsBuffer.offer(request)) {
                 if (!canRunSupplier.get()) {
                     result.recordStatus(OperationResultStatus.WARNING, "Could not submit request as the processing was interrupted");
                     return;
                 }
+                if (!requestsBuffer.hasLiveWorkers()) {
+                    rejectRequest(request, "there are no worker threads left", result);
+                    return;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    rejectRequest(request, "no free place in the requests buffer in " + SUBMIT_TIMEOUT + " ms", result);
+                    return;
+                }
             }
             // This is perhaps better than IN PROGRESS (e.g. because of tests).
             // The processing will continue in a separate thread.
@@ -87,6 +104,21 @@ public class ChangeProcessingCoordinator {
         }
     }
 
+    /**
+     * The request could not be handed over to workers. We report it as a processing error, so the caller can decide
+     * whether to stop (and not to advance the token) or to continue.
+     */
+    private void rejectRequest(ProcessChangeRequest request, String reason, OperationResult result) {
+        SystemException e = new SystemException("Could not submit change request for processing: " + reason);
+        LOGGER.error("{}: {}", e.getMessage(), request);
+        result.recordFatalError(e);
+        try {
+            request.onProcessingError(e, result);
+        } finally {
+            request.setDone(true);
+        }
+    }
+
     private void createWorkerTasks(int threadsCount) {
 
         RunningTask runningCoordinatorTask = (RunningTask) coordinatorTask;
@@ -101,7 +133,7 @@ public class ChangeProcessingCoordinator {
             workerSpecificResult.addContext("subtaskIndex", i+1);
             workerSpecificResults.add(workerSpecificResult);
 
-            RunningTask subtask = runningCoordinatorTask.createSubtask(new WorkerHandler(workerSpecificResult));
+            RunningTask subtask = runningCoordinatorTask.createSubtask(new WorkerHandler(i, workerSpecificResult));
             subtask.resetIterativeTaskInformation(null);
             subtask.resetSynchronizationInformation(null);
             subtask.resetActionsExecutedInformation(null);
@@ -115,9 +147,11 @@ public class ChangeProcessingCoordinator {
     }
 
     private class WorkerHandler implements LightweightTaskHandler {
+        private final int workerIndex;
         private final OperationResult workerSpecificResult;
 
-        private WorkerHandler(OperationResult workerSpecificResult) {
+        private WorkerHandler(int workerIndex, OperationResult workerSpecificResult) {
+            this.workerIndex = workerIndex;
             this.workerSpecificResult = workerSpecificResult;
         }
 
@@ -127,46 +161,51 @@ public class ChangeProcessingCoordinator {
             assert multithreaded;
             assert requestsBuffer != null;
 
+            try {
+                processRequests(workerTask);
+            } finally {
+                // Whatever the reason of exiting is, the requests in our lane(s) must not be left behind.
+                requestsBuffer.workerExited(workerIndex);
+            }
+        }
+
+        private void processRequests(RunningTask workerTask) {
             // temporary hack: how to see thread name for this task
             workerTask.setName(workerTask.getName().getOrig() + " (" + Thread.currentThread().getName() + ")");
             workerSpecificResult.addArbitraryObjectAsContext("subtaskName", workerTask.getName());
 
-            String taskIdentifier = workerTask.getTaskIdentifier();
-
             while (workerTask.canRun() && canRunSupplier.get()) {
 
                 workerTask.refreshLowLevelStatistics();
-                ProcessChangeRequest request = requestsBuffer.poll(taskIdentifier);
+                ProcessChangeRequest request;
+                try {
+                    request = requestsBuffer.poll(workerIndex, WORKER_THREAD_WAIT_FOR_REQUEST);
+                } catch (InterruptedException e) {
+                    LOGGER.trace("Waiting interrupted, exiting");
+                    break;
+                }
 
                 if (request != null) {
                     try {
                         changeProcessor.execute(request, workerTask, coordinatorTask, taskPartition, workerSpecificResult);
                     } finally {
                         request.setDone(true); // probably set already -- but better twice than not at all
-                        requestsBuffer.markProcessed(request, taskIdentifier);
                         treatOperationResultAfterOperation();
                         workerTask.setProgressTransient(workerTask.getProgress() + 1);
                     }
+                } else if (allItemsSubmitted && requestsBuffer.getDepth(workerIndex) == 0) {
+                    // The lanes have to be re-checked: the last request could come after the (unsuccessful) poll.
+                    LOGGER.trace("Queue is empty and nothing more is expected - exiting");
+                    break;
                 } else {
-                    if (allItemsSubmitted) {
-                        LOGGER.trace("Queue is empty and nothing more is expected - exiting");
-                        break;
-                    } else {
-                        LOGGER.trace("No requests to be processed but expecting some to come. Waiting for {} msec", WORKER_THREAD_WAIT_FOR_REQUEST);
-                        try {
-                            //noinspection BusyWait
-                            Thread.sleep(WORKER_THREAD_WAIT_FOR_REQUEST);
-                        } catch (InterruptedException e) {
-                            LOGGER.trace("Waiting interrupted, exiting");
-                            break;
-                        }
-                    }
+                    LOGGER.trace("No requests to be processed but expecting some to come.");
                 }
             }
 
-            int reservedRequests = requestsBuffer.getReservedRequestsCount(taskIdentifier);
-            if (reservedRequests > 0) {
-                LOGGER.warn("Worker task exiting but it has {} reserved (pre-assigned) change requests", reservedRequests);
+            int remainingRequests = requestsBuffer.getDepth(workerIndex);
+            if (remainingRequests > 0) {
+                LOGGER.debug("Worker task exiting with {} unprocessed change requests in its lane(s); they will be "
+                        + "handed over to other workers (if there are any)", remainingRequests);
             }
             workerTask.refreshLowLevelStatistics();
         }
@@ -203,6 +242,11 @@ public class ChangeProcessingCoordinator {
                 workerSpecificResult.cleanupResultDeeply();
                 opResult.addSubresult(workerSpecificResult);
             }
+            LOGGER.debug("Requests buffer statistics: {}", requestsBuffer);
+            opResult.addReturn("requestsOffered", requestsBuffer.getRequestsOffered());
+            opResult.addReturn("maxQueueDepth", requestsBuffer.getMaxLaneDepth());
+            opResult.addReturn("producerWaitTime", requestsBuffer.getOfferWaitTimeMillis());
+            opResult.addReturn("workersWaitTime", requestsBuffer.getPollWaitTimeMillis());
             // In single-threaded case the status should be already computed
             opResult.computeStatus("Issues during processing");
         }
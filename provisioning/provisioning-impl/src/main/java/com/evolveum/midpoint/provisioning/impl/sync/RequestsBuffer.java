@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2010-2019 Evolveum and contributors
+ * Copyright (c) 2010-2020 Evolveum and contributors
  *
  * This work is dual-licensed under the Apache License 2.0
  * and European Union Public License. See LICENSE file for details.
@@ -10,25 +10,32 @@ package com.evolveum.midpoint.provisioning.impl.sync;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 
-import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Stores requests to be processed.
  *
  * Its primary responsibility is that it has to ensure that changes related to given primary identifier are processed exactly
  * in the order in which they were fetched from the resource (recorded as {@link com.evolveum.midpoint.provisioning.ucf.api.Change#localSequenceNumber}).
- * This responsibility is ensured by the concepts of binding and reservation.
  *
- * Primary identifier I is said to be _bound_ to task T if an object with this identifier it is being currently processed by T
- * or is waiting to be processed by T (reserved for T). See {@link #bind(ProcessChangeRequest, String)} and {@link #unbind(ProcessChangeRequest, String)}
- * methods.
+ * This is ensured by partitioning: there is one queue (lane) for each worker, and each request is put into the lane
+ * determined by the hash of its primary identifier. A worker takes requests only from its own lane. So all changes
+ * of given resource object are processed by a single worker, in the order in which they were offered. There is no
+ * global lock: producer and workers synchronize only on individual lanes.
  *
- * Reservation is represented by a queue of requests waiting to be processed by specified subtask. A request gets
- * onto this queue if it's fetched from the global queue but cannot be processed because it is bound to a subtask different
- * from the current one. So it's put into "owning" task reserved requests queue. See {@link #reserve(ProcessChangeRequest, String)}.
+ * The price is that the load is not balanced dynamically: a worker with a "hot" identifier in its lane cannot hand over
+ * other requests in that lane to idle workers.
+ *
+ * When a worker exits (e.g. because of an unexpected exception), its lanes are reassigned to the remaining workers.
+ * A lane is always served by at most one worker at a time, and it is reassigned only after its previous owner
+ * stopped taking requests from it, so the ordering is kept. If there are no workers left, the requests are refused.
  */
 @SuppressWarnings("JavadocReference")
 class RequestsBuffer {
@@ -38,170 +45,216 @@ class RequestsBuffer {
     private static final long REQUEST_QUEUE_OFFER_TIMEOUT = 1000L;
 
     /**
-     * Global queue of waiting requests.
+     * Capacity of each lane. As the requests are distributed by identifier hash (not by availability of the workers)
+     * the lanes need some slack to accommodate uneven distribution.
      */
-    private final BlockingQueue<ProcessChangeRequest> globalQueue;
+    private static final int LANE_CAPACITY = 20;
+
+    private final List<BlockingQueue<ProcessChangeRequest>> lanes;
 
     /**
-     * Current bindings of resource objects (their identifiers) to subtasks.
-     *
-     * Entry key: primary resource object identifier (~ account ID)
-     * Entry value: task identifier
+     * Index of the worker serving given lane. Initially each worker serves its own lane (the one with the same index).
+     * Replaced as a whole (copy on write) when a worker exits.
      */
-    private final Map<Object, String> bindingsMap = new HashMap<>();
+    private volatile int[] laneOwners;
 
     /**
-     * Change requests reserved to be processed by each subtask.
-     *
-     * Entry key: task identifier.
-     * Entry value: queue of requests. The requests are sorted by change identifier, to ensure processing in the correct order.
+     * Workers that have not exited yet. Guarded by "this".
+     */
+    private final boolean[] liveWorkers;
+
+    private volatile boolean anyLiveWorker = true;
+
+    /**
+     * Used to distribute requests without primary identifier.
+     */
+    private final AtomicInteger roundRobinCounter = new AtomicInteger();
+
+    // Statistics
+
+    /**
+     * Total time (in nanoseconds) the producer spent waiting for a free place in a lane.
+     */
+    private final AtomicLong offerWaitTime = new AtomicLong();
+
+    /**
+     * Total time (in nanoseconds) the workers spent waiting for requests.
      */
-    private final Map<String, PriorityQueue<ProcessChangeRequest>> reservedRequestsQueueMap = new HashMap<>();
+    private final AtomicLong pollWaitTime = new AtomicLong();
+
+    private final AtomicLong requestsOffered = new AtomicLong();
+
+    /**
+     * Maximal observed depth of any lane (measured on offer).
+     */
+    private final AtomicInteger maxLaneDepth = new AtomicInteger();
 
     RequestsBuffer(int threadsCount) {
-        int globalQueueSize = threadsCount*2; // actually, size of threadsCount should be sufficient but it doesn't hurt if queue is larger
-        globalQueue = new ArrayBlockingQueue<>(globalQueueSize);
+        lanes = new ArrayList<>(threadsCount);
+        laneOwners = new int[threadsCount];
+        liveWorkers = new boolean[threadsCount];
+        for (int i = 0; i < threadsCount; i++) {
+            lanes.add(new LinkedBlockingQueue<>(LANE_CAPACITY));
+            laneOwners[i] = i;
+            liveWorkers[i] = true;
+        }
     }
 
     /**
-     * Offers a request for processing.
+     * Offers a request for processing. Waits for a limited time if the respective lane is full.
      *
-     * This method is intentionally NOT synchronized.
+     * @return false if the request could not be placed into the lane within the timeout, or if there are no workers left
      */
     boolean offer(ProcessChangeRequest request) throws InterruptedException {
-        return globalQueue.offer(request, REQUEST_QUEUE_OFFER_TIMEOUT, TimeUnit.MILLISECONDS);
+        if (!anyLiveWorker) {
+            return false;
+        }
+        BlockingQueue<ProcessChangeRequest> lane = lanes.get(getLaneIndex(request));
+        long start = System.nanoTime();
+        boolean offered = lane.offer(request, REQUEST_QUEUE_OFFER_TIMEOUT, TimeUnit.MILLISECONDS);
+        offerWaitTime.addAndGet(System.nanoTime() - start);
+        if (offered) {
+            requestsOffered.incrementAndGet();
+            maxLaneDepth.accumulateAndGet(lane.size(), Math::max);
+        }
+        return offered;
+    }
+
+    private int getLaneIndex(ProcessChangeRequest request) {
+        Object primaryIdentifier = request.getPrimaryIdentifierRealValue();
+        if (primaryIdentifier != null) {
+            return Math.floorMod(primaryIdentifier.hashCode(), lanes.size());
+        } else {
+            LOGGER.warn("Null primaryIdentifier in change {}", request.getChange());
+            return Math.floorMod(roundRobinCounter.getAndIncrement(), lanes.size());
+        }
     }
 
     /**
-     * Tries to obtain a request to be processed by the specified subtask.
-     * Does NOT wait, it just checks reserved requests and global queues.
+     * Obtains a request to be processed by given worker. The worker's own lane is tried first, then the lanes
+     * it has taken over from workers that exited. If there is no request, waits at most the specified time
+     * for the own lane.
      *
-     * Post-conditions:
-     * - Returns null only if there are no reserved nor globally available requests.
-     * - If the request is not null, the primary identifier of the request is (successfully) bound to the specified task.
+     * @return null if there was no request within the timeout
      */
-    synchronized ProcessChangeRequest poll(String taskIdentifier) {
-
-        ProcessChangeRequest reserved = getNextReservedRequest(taskIdentifier);
-        if (reserved != null) {
-            LOGGER.trace("Got reserved (pre-assigned) request: {}", reserved);
-            if (bind(reserved, taskIdentifier)) {
-                return reserved;
-            } else {
-                throw new IllegalStateException("A reserved request couldn't be bound to the current task. Request = " +
-                        reserved + ", task = " + taskIdentifier);
+    ProcessChangeRequest poll(int workerIndex, long timeout) throws InterruptedException {
+        ProcessChangeRequest request = pollOwnedLanes(workerIndex);
+        if (request == null) {
+            long start = System.nanoTime();
+            try {
+                request = lanes.get(workerIndex).poll(timeout, TimeUnit.MILLISECONDS);
+            } finally {
+                pollWaitTime.addAndGet(System.nanoTime() - start);
             }
         }
+        LOGGER.trace("Got request for worker {}: {}", workerIndex, request);
+        return request;
+    }
 
-        for (;;) {
-            ProcessChangeRequest request = globalQueue.poll();
-            LOGGER.trace("Got request from global queue: {}", request);
-
-            if (request == null) {
-                // Nothing in the queue for now. OK, let's try next time.
-                return null;
-            }
-
-            if (bind(request, taskIdentifier)) {
-                return request;
-            } else {
-                // The request couldn't be bound to the specified task. We have to go and try another one.
+    private ProcessChangeRequest pollOwnedLanes(int workerIndex) {
+        int[] owners = laneOwners;
+        for (int i = 0; i < owners.length; i++) {
+            int laneIndex = (workerIndex + i) % owners.length;
+            if (owners[laneIndex] == workerIndex) {
+                ProcessChangeRequest request = lanes.get(laneIndex).poll();
+                if (request != null) {
+                    return request;
+                }
             }
         }
+        return null;
     }
 
     /**
-     * Binds a request identifier to specified subtask, if possible i.e. if the request identifier is not bound to another task.
-     * If the request identifier is bound to another task, the request is assigned to it.
-     *
-     * @return true if the request was successfully bound to the current task;
-     *         false if it was reassigned (so this task has to fetch another request).
+     * Called when a worker stops taking requests (for whatever reason). Its lanes are reassigned to the remaining workers.
      */
-    private boolean bind(ProcessChangeRequest request, String taskIdentifier) {
-        Object primaryIdentifier = request.getPrimaryIdentifierRealValue();
-        if (primaryIdentifier == null) {
-            LOGGER.warn("Null primaryIdentifier in change {}", request.getChange());
-            return true;
+    synchronized void workerExited(int workerIndex) {
+        if (!liveWorkers[workerIndex]) {
+            return;
         }
+        liveWorkers[workerIndex] = false;
 
-        String boundTo = bindingsMap.get(primaryIdentifier);
-        if (boundTo == null) {
-            LOGGER.trace("Binding {} to {}", primaryIdentifier, taskIdentifier);
-            bindingsMap.put(primaryIdentifier, taskIdentifier);
-            return true;
+        int[] newOwners = Arrays.copyOf(laneOwners, laneOwners.length);
+        int candidate = workerIndex;
+        for (int laneIndex = 0; laneIndex < newOwners.length; laneIndex++) {
+            if (newOwners[laneIndex] == workerIndex) {
+                candidate = findLiveWorkerAfter(candidate);
+                if (candidate < 0) {
+                    break;
+                }
+                LOGGER.debug("Lane {} of exited worker {} is reassigned to worker {} ({} requests waiting)",
+                        laneIndex, workerIndex, candidate, lanes.get(laneIndex).size());
+                newOwners[laneIndex] = candidate;
+            }
+        }
+        if (candidate < 0) {
+            anyLiveWorker = false;
+            int remaining = getTotalDepth();
+            if (remaining > 0) {
+                LOGGER.warn("The last worker exited with {} unprocessed change requests in the buffer", remaining);
+            }
+        } else {
+            laneOwners = newOwners;
         }
+    }
 
-        if (boundTo.equals(taskIdentifier)) {
-            LOGGER.trace("Processing {} as it is already bound to current task: {}", primaryIdentifier, taskIdentifier);
-            return true;
+    private int findLiveWorkerAfter(int workerIndex) {
+        for (int i = 1; i <= liveWorkers.length; i++) {
+            int candidate = (workerIndex + i) % liveWorkers.length;
+            if (liveWorkers[candidate]) {
+                return candidate;
+            }
         }
+        return -1;
+    }
 
-        LOGGER.trace("Request {} (ID {}) is already bound to another task {}. Moving it to the reserved"
-                + " requests queue for that task. Current task: {}", request, primaryIdentifier, boundTo, taskIdentifier);
-        reserve(request, boundTo);
-        return false;
+    boolean hasLiveWorkers() {
+        return anyLiveWorker;
     }
 
     /**
-     * Gets a change reserved for given task (if there's any).
-     * REMOVES the reservation.
-     *
-     * @return Change reserved for given task; or null if there's nothing there.
+     * Number of requests waiting in lanes served by given worker.
      */
-    private ProcessChangeRequest getNextReservedRequest(String taskIdentifier) {
-        Queue<ProcessChangeRequest> reservedRequests = reservedRequestsQueueMap.get(taskIdentifier);
-        if (reservedRequests != null) {
-            return reservedRequests.poll();
-        } else {
-            return null;
+    int getDepth(int workerIndex) {
+        int[] owners = laneOwners;
+        int depth = 0;
+        for (int laneIndex = 0; laneIndex < owners.length; laneIndex++) {
+            if (owners[laneIndex] == workerIndex) {
+                depth += lanes.get(laneIndex).size();
+            }
         }
+        return depth;
     }
 
-    private void reserve(ProcessChangeRequest request, String owningTaskIdentifier) {
-        reservedRequestsQueueMap
-                .computeIfAbsent(owningTaskIdentifier, key -> new PriorityQueue<>())
-                .offer(request);
+    int getTotalDepth() {
+        return lanes.stream().mapToInt(BlockingQueue::size).sum();
     }
 
-    /**
-     * Marks specified request as processed: Unbinds its primary identifier from the calling subtask.
-     */
-    synchronized void markProcessed(ProcessChangeRequest request, String taskIdentifier) {
-        unbind(request, taskIdentifier);
+    long getOfferWaitTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(offerWaitTime.get());
     }
 
-    private void unbind(ProcessChangeRequest request, String taskIdentifier) {
-        Object primaryIdentifier = request.getPrimaryIdentifierRealValue();
-        LOGGER.trace("Trying to unbind {} from {}", primaryIdentifier, taskIdentifier);
-        if (primaryIdentifier == null) {
-            LOGGER.trace("primaryIdentifier is null (warning has been already issued): {}", request);
-            return;
-        }
-
-        if (isReserved(primaryIdentifier, taskIdentifier)) {
-            LOGGER.trace("...but it is reserved to its owner (some relevant changes are waiting), so not unbinding now");
-            return;
-        }
+    long getPollWaitTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(pollWaitTime.get());
+    }
 
-        String previousOwner = bindingsMap.remove(primaryIdentifier);
-        LOGGER.trace("Unbound (previous owner was: {})", previousOwner);
-        assert taskIdentifier.equals(previousOwner);
+    long getRequestsOffered() {
+        return requestsOffered.get();
     }
 
-    private boolean isReserved(Object primaryIdentifier, String taskIdentifier) {
-        Queue<ProcessChangeRequest> reservedRequests = reservedRequestsQueueMap.get(taskIdentifier);
-        if (reservedRequests != null) {
-            for (ProcessChangeRequest request : reservedRequests) {
-                if (primaryIdentifier.equals(request.getPrimaryIdentifierRealValue())) {
-                    return true;
-                }
-            }
-        }
-        return false;
+    int getMaxLaneDepth() {
+        return maxLaneDepth.get();
     }
 
-    synchronized int getReservedRequestsCount(String taskIdentifier) {
-        Queue<ProcessChangeRequest> reservedRequests = reservedRequestsQueueMap.get(taskIdentifier);
-        return reservedRequests != null ? reservedRequests.size() : 0;
+    @Override
+    public String toString() {
+        return "RequestsBuffer{" +
+                "lanes=" + lanes.size() +
+                ", requestsOffered=" + getRequestsOffered() +
+                ", currentDepth=" + getTotalDepth() +
+                ", maxLaneDepth=" + getMaxLaneDepth() +
+                ", offerWaitTime=" + getOfferWaitTimeMillis() + " ms" +
+                ", pollWaitTime=" + getPollWaitTimeMillis() + " ms" +
+                '}';
     }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+import static com.evolveum.midpoint.prism.util.PrismTestUtil.getPrismContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.exception.TunnelException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Tests batching of objects returned by the connector in {@link BatchingShadowResultHandler}.
+ */
+public class TestBatchingShadowResultHandler extends AbstractUnitTest {
+
+    private static final int BATCH_SIZE = 3;
+
+    /** Records what happened: "batch:a,b,c" for pre-processing, object name for handling. */
+    private final List<String> events = new ArrayList<>();
+
+    @BeforeClass
+    public void initPrism() throws Exception {
+        PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+    }
+
+    @Test
+    public void test100ObjectsArePreprocessedInBatchesAndHandledInOrder() {
+        given();
+        events.clear();
+        BatchingShadowResultHandler handler = new BatchingShadowResultHandler(
+                object -> events.add(name(object)), this::recordBatch, BATCH_SIZE);
+
+        when();
+        for (int i = 1; i <= 7; i++) {
+            assertThat(handler.handle(object("o" + i))).isTrue();
+        }
+        assertThat(handler.flush()).isTrue();
+
+        then();
+        assertThat(events).containsExactly(
+                "batch:o1,o2,o3", "o1", "o2", "o3",
+                "batch:o4,o5,o6", "o4", "o5", "o6",
+                "batch:o7", "o7");
+    }
+
+    @Test
+    public void test110StopRequestIsPropagated() {
+        given("the delegate stops at o2");
+        events.clear();
+        BatchingShadowResultHandler handler = new BatchingShadowResultHandler(
+                object -> events.add(name(object)) && !"o2".equals(name(object)), this::recordBatch, BATCH_SIZE);
+
+        when();
+        List<Boolean> returned = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            returned.add(handler.handle(object("o" + i)));
+        }
+        boolean flushed = handler.flush();
+
+        then("rest of the batch and further objects are not handled");
+        assertThat(returned).containsExactly(true, true, false, false);
+        assertThat(flushed).isFalse();
+        assertThat(events).containsExactly("batch:o1,o2,o3", "o1", "o2");
+    }
+
+    @Test
+    public void test120EmptyFlush() {
+        given();
+        events.clear();
+        BatchingShadowResultHandler handler = new BatchingShadowResultHandler(
+                object -> events.add(name(object)), this::recordBatch, BATCH_SIZE);
+
+        expect();
+        assertThat(handler.flush()).isTrue();
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    public void test130PreprocessingFailureIsTunneled() {
+        given();
+        events.clear();
+        BatchingShadowResultHandler handler = new BatchingShadowResultHandler(
+                object -> events.add(name(object)),
+                batch -> {
+                    throw new SchemaException("Broken batch");
+                }, BATCH_SIZE);
+        handler.handle(object("o1"));
+
+        when();
+        try {
+            handler.flush();
+            fail("Unexpected success");
+        } catch (TunnelException e) {
+
+            then();
+            displayExpectedException(e);
+            assertThat(e.getCause()).isInstanceOf(SchemaException.class);
+        }
+        assertThat(events).isEmpty();
+    }
+
+    private void recordBatch(List<PrismObject<ShadowType>> batch) {
+        List<String> names = new ArrayList<>();
+        batch.forEach(object -> names.add(name(object)));
+        events.add("batch:" + String.join(",", names));
+    }
+
+    private PrismObject<ShadowType> object(String name) {
+        return new ShadowType(getPrismContext()).name(name).asPrismObject();
+    }
+
+    private String name(PrismObject<ShadowType> object) {
+        return object.asObjectable().getName().getOrig();
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static com.evolveum.midpoint.prism.util.PrismTestUtil.getPrismContext;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.namespace.QName;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.PropertyDelta;
+import com.evolveum.midpoint.prism.impl.match.StringIgnoreCaseMatchingRule;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.provisioning.impl.EntitlementMembershipIndex.Part;
+import com.evolveum.midpoint.provisioning.impl.EntitlementMembershipIndex.PartKey;
+import com.evolveum.midpoint.provisioning.ucf.api.Operation;
+import com.evolveum.midpoint.provisioning.ucf.api.PropertyModificationOperation;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.constants.MidPointConstants;
+import com.evolveum.midpoint.schema.processor.*;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowKindType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Tests reading, use and invalidation of {@link EntitlementMembershipIndex} parts.
+ */
+public class TestEntitlementMembershipIndex extends AbstractUnitTest {
+
+    private static final String RESOURCE_OID = "5d1bb0a1-7b3c-4a44-9d3d-9c2a7f1a6e01";
+    private static final String NS_RI = MidPointConstants.NS_RI;
+
+    private static final QName GROUP_OBJECT_CLASS = new QName(NS_RI, "GroupObjectClass");
+    private static final QName ACCOUNT_OBJECT_CLASS = new QName(NS_RI, "AccountObjectClass");
+    private static final QName MEMBERS = new QName(NS_RI, "members");
+    private static final QName UID = new QName(NS_RI, "uid");
+    private static final QName DESCRIPTION = new QName(NS_RI, "description");
+
+    private ObjectClassComplexTypeDefinition groupDefinition;
+    private ResourceAttributeDefinition<String> membersDefinition;
+    private ResourceAttributeDefinition<String> uidDefinition;
+    private ResourceAttributeDefinition<String> descriptionDefinition;
+
+    private EntitlementMembershipIndex index;
+    private Part part;
+
+    @BeforeClass
+    public void createDefinitions() throws Exception {
+        PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        MutableResourceSchema schema = ObjectFactory.createResourceSchema(NS_RI, getPrismContext());
+        MutableObjectClassComplexTypeDefinition groupDef = schema.createObjectClassDefinition(GROUP_OBJECT_CLASS);
+        ResourceAttributeDefinitionImpl<String> membersDef = groupDef.createAttributeDefinition(MEMBERS, DOMUtil.XSD_STRING);
+        membersDef.setMaxOccurs(-1);
+        descriptionDefinition = groupDef.createAttributeDefinition(DESCRIPTION, DOMUtil.XSD_STRING);
+        MutableObjectClassComplexTypeDefinition accountDef = schema.createObjectClassDefinition(ACCOUNT_OBJECT_CLASS);
+        uidDefinition = accountDef.createAttributeDefinition(UID, DOMUtil.XSD_STRING);
+        groupDefinition = groupDef;
+        membersDefinition = membersDef;
+    }
+
+    @BeforeMethod
+    public void createIndex() {
+        index = new EntitlementMembershipIndex(RESOURCE_OID);
+        part = index.getOrCreatePart(createKey(), new StringIgnoreCaseMatchingRule());
+    }
+
+    @Test
+    public void test100PartIsSharedPerKey() {
+        expect();
+        assertThat(index.getOrCreatePart(createKey(), new StringIgnoreCaseMatchingRule())).isSameAs(part);
+    }
+
+    @Test
+    public void test110EntitlementsAreFoundByNormalizedMember() throws Exception {
+        when();
+        read(group("admins", "Jack", "will"), group("pirates", "jack"));
+
+        then();
+        assertThat(names(part.getEntitlements(part.normalize("JACK")))).containsExactlyInAnyOrder("admins", "pirates");
+        assertThat(names(part.getEntitlements(part.normalize("will")))).containsExactly("admins");
+        assertThat(part.getEntitlements(part.normalize("elaine"))).isEmpty();
+    }
+
+    @Test
+    public void test120UnreadPartCannotTell() throws Exception {
+        expect();
+        assertThat(part.getEntitlements(part.normalize("jack"))).isNull();
+    }
+
+    @Test
+    public void test130PartIsReadOnceByConcurrentThreads() throws Exception {
+        given();
+        int threads = 8;
+        AtomicInteger reads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            when("many threads need the part at the same time");
+            List<Future<List<PrismObject<ShadowType>>>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    Long generation = part.startReading();
+                    if (generation != null) {
+                        reads.incrementAndGet();
+                        Thread.sleep(200); // other threads should wait for this one
+                        Map<Object, List<PrismObject<ShadowType>>> content = new HashMap<>();
+                        part.addToContent(content, group("admins", "jack"), false);
+                        part.setContent(generation, content);
+                    }
+                    return part.getEntitlements(part.normalize("jack"));
+                }));
+            }
+            start.countDown();
+
+            then("the part is read once and all threads get the content");
+            for (Future<List<PrismObject<ShadowType>>> future : futures) {
+                assertThat(names(future.get(10, TimeUnit.SECONDS))).containsExactly("admins");
+            }
+            assertThat(reads.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test140FailedReadingCanBeRepeated() throws Exception {
+        given("reading fails");
+        Long generation = part.startReading();
+        assertThat(generation).isNotNull();
+        part.readingFailed(generation);
+
+        expect("the part cannot tell, but can be read again");
+        assertThat(part.getEntitlements(part.normalize("jack"))).isNull();
+        read(group("admins", "jack"));
+        assertThat(names(part.getEntitlements(part.normalize("jack")))).containsExactly("admins");
+    }
+
+    @Test
+    public void test200MembershipChangeExcludesChangedMembersOnly() throws Exception {
+        given();
+        read(group("admins", "jack", "will"));
+
+        when("jack is added to and elaine removed from a group");
+        index.recordChange(GROUP_OBJECT_CLASS, List.of(
+                modification(PropertyDelta::addRealValuesToAdd, membersDefinition, "JACK"),
+                modification(PropertyDelta::addRealValuesToDelete, membersDefinition, "elaine")));
+
+        then("their entitlements are searched for, the others are still taken from the index");
+        assertThat(part.getEntitlements(part.normalize("jack"))).isNull();
+        assertThat(part.getEntitlements(part.normalize("elaine"))).isNull();
+        assertThat(names(part.getEntitlements(part.normalize("will")))).containsExactly("admins");
+    }
+
+    @Test
+    public void test210ReplaceOfMembersInvalidatesPart() throws Exception {
+        given();
+        read(group("admins", "jack", "will"));
+
+        when();
+        index.recordChange(GROUP_OBJECT_CLASS, List.of(
+                modification(PropertyDelta::setRealValuesToReplace, membersDefinition, "jack")));
+
+        then();
+        assertThat(part.getEntitlements(part.normalize("will"))).isNull();
+        assertThat(part.startReading()).as("part is to be read again").isNotNull();
+    }
+
+    @Test
+    public void test220EntitlementAddOrDeleteInvalidatesPart() throws Exception {
+        given();
+        read(group("admins", "jack"));
+
+        when();
+        index.recordChange(GROUP_OBJECT_CLASS, null);
+
+        then();
+        assertThat(part.getEntitlements(part.normalize("jack"))).isNull();
+    }
+
+    @Test
+    public void test230SubjectRenameInvalidatesPart() throws Exception {
+        given();
+        read(group("admins", "jack"));
+
+        when();
+        index.recordChange(ACCOUNT_OBJECT_CLASS, List.of(
+                modification(PropertyDelta::setRealValuesToReplace, uidDefinition, "jack2")));
+
+        then();
+        assertThat(part.getEntitlements(part.normalize("jack"))).isNull();
+    }
+
+    @Test
+    public void test240UnrelatedChangesKeepPart() throws Exception {
+        given();
+        read(group("admins", "jack"));
+
+        when("other attribute of a group and an account without rename are changed, account is added");
+        index.recordChange(GROUP_OBJECT_CLASS, List.of(
+                modification(PropertyDelta::setRealValuesToReplace, descriptionDefinition, "Administrators")));
+        index.recordChange(ACCOUNT_OBJECT_CLASS, List.of(
+                modification(PropertyDelta::setRealValuesToReplace, descriptionDefinition, "Pirate")));
+        index.recordChange(ACCOUNT_OBJECT_CLASS, null);
+
+        then();
+        assertThat(names(part.getEntitlements(part.normalize("jack")))).containsExactly("admins");
+    }
+
+    @Test
+    public void test250ChangeDuringReadingDiscardsContent() throws Exception {
+        given("the part is being read");
+        Long generation = part.startReading();
+        assertThat(generation).isNotNull();
+        Map<Object, List<PrismObject<ShadowType>>> content = new HashMap<>();
+        part.addToContent(content, group("admins", "jack"), false);
+
+        when("an entitlement is added before the reading is finished");
+        index.recordChange(GROUP_OBJECT_CLASS, null);
+        part.setContent(generation, content);
+
+        then("the content is not used and the part is read again");
+        assertThat(part.getEntitlements(part.normalize("jack"))).isNull();
+        assertThat(part.startReading()).isNotNull();
+    }
+
+    @Test
+    public void test260AssociationAttributeIsRemovedIfNotRequested() throws Exception {
+        given();
+        PrismObject<ShadowType> group = group("admins", "jack");
+
+        when();
+        Map<Object, List<PrismObject<ShadowType>>> content = new HashMap<>();
+        part.addToContent(content, group, true);
+
+        then();
+        assertThat(content).containsOnlyKeys(part.normalize("jack"));
+        assertThat(group.findProperty(ItemPath.create(ShadowType.F_ATTRIBUTES, MEMBERS))).isNull();
+    }
+
+    private PartKey createKey() {
+        return new PartKey(GROUP_OBJECT_CLASS, ShadowKindType.ENTITLEMENT, "group", MEMBERS, UID,
+                new StringIgnoreCaseMatchingRule().getName());
+    }
+
+    @SafeVarargs
+    private void read(PrismObject<ShadowType>... groups) throws Exception {
+        Long generation = part.startReading();
+        assertThat(generation).as("generation").isNotNull();
+        Map<Object, List<PrismObject<ShadowType>>> content = new HashMap<>();
+        for (PrismObject<ShadowType> group : groups) {
+            part.addToContent(content, group, false);
+        }
+        part.setContent(generation, content);
+    }
+
+    private PrismObject<ShadowType> group(String name, String... members) throws Exception {
+        PrismObject<ShadowType> group = new ShadowType(getPrismContext())
+                .name(name)
+                .objectClass(GROUP_OBJECT_CLASS)
+                .asPrismObject();
+        ResourceAttributeContainer attributes = groupDefinition.instantiate(ShadowType.F_ATTRIBUTES);
+        ResourceAttribute<String> membersAttribute = membersDefinition.instantiate();
+        for (String member : members) {
+            membersAttribute.addRealValue(member);
+        }
+        attributes.add(membersAttribute);
+        group.add(attributes);
+        return group;
+    }
+
+    private interface DeltaValuesSetter {
+        void set(PropertyDelta<String> delta, String value);
+    }
+
+    private Operation modification(DeltaValuesSetter setter, ResourceAttributeDefinition<String> definition, String value) {
+        PropertyDelta<String> delta = getPrismContext().deltaFactory().property()
+                .create(ItemPath.create(ShadowType.F_ATTRIBUTES, definition.getItemName()), definition);
+        setter.set(delta, value);
+        return new PropertyModificationOperation<>(delta);
+    }
+
+    private List<String> names(List<PrismObject<ShadowType>> entitlements) {
+        assertThat(entitlements).as("entitlements").isNotNull();
+        List<String> names = new ArrayList<>();
+        for (PrismObject<ShadowType> entitlement : entitlements) {
+            names.add(entitlement.asObjectable().getName().getOrig());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static com.evolveum.midpoint.prism.util.PrismTestUtil.getPrismContext;
+
+import java.lang.reflect.Proxy;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.common.Clock;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Tests when {@link ResourceCache} returns cached resources: invalidations, invalidations coming while
+ * the resource is being read or its version is being checked, and expiration of the verified state.
+ *
+ * The repository is simulated; it only provides the current version of the resource.
+ */
+public class TestResourceCache extends AbstractUnitTest {
+
+    private static final String RESOURCE_OID = "8b6b4c3e-5b0e-4d6a-9e8c-3f0d2c1a7e01";
+
+    private Clock clock;
+    private ResourceCache resourceCache;
+
+    /** Version of the resource in the (simulated) repository. */
+    private String repositoryVersion;
+
+    /** Number of version checks done in the repository. */
+    private int versionChecks;
+
+    /** Executed when the version is being checked in the repository. */
+    private Runnable onVersionCheck;
+
+    @BeforeClass
+    public void initPrism() throws Exception {
+        PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+    }
+
+    @BeforeMethod
+    public void createCache() {
+        clock = new Clock();
+        clock.override(System.currentTimeMillis()); // time moves only when the test says so
+        resourceCache = new ResourceCache(getPrismContext(), createRepository(), clock);
+        repositoryVersion = "1";
+        versionChecks = 0;
+        onVersionCheck = null;
+    }
+
+    @Test
+    public void test100VerifiedResourceIsReturnedWithoutVersionCheck() throws Exception {
+        given("resource read from the repository with no invalidations in the meanwhile");
+        long invalidationCount = resourceCache.getInvalidationCount();
+        resourceCache.put(resource("1"), invalidationCount);
+
+        when();
+        PrismObject<ResourceType> readOnly = resourceCache.getIfLatest(RESOURCE_OID, true, createResult());
+        PrismObject<ResourceType> mutable = resourceCache.getIfLatest(RESOURCE_OID, false, createResult());
+
+        then();
+        assertThat(readOnly).isNotNull();
+        assertThat(readOnly.isImmutable()).isTrue();
+        assertThat(mutable).isNotNull();
+        assertThat(mutable.isImmutable()).isFalse();
+        assertThat(versionChecks).as("version checks").isZero();
+    }
+
+    @Test
+    public void test110InvalidationRemovesResource() throws Exception {
+        given();
+        resourceCache.put(resource("1"), resourceCache.getInvalidationCount());
+
+        when("change of other type of object");
+        resourceCache.invalidate(UserType.class, RESOURCE_OID, null);
+
+        then("the resource is still there");
+        assertThat(resourceCache.getIfLatest(RESOURCE_OID, true, createResult())).isNotNull();
+
+        when("the resource is changed");
+        resourceCache.invalidate(ResourceType.class, RESOURCE_OID, null);
+
+        then();
+        assertThat(resourceCache.getIfLatest(RESOURCE_OID, true, createResult())).isNull();
+        assertThat(resourceCache.getVersion(RESOURCE_OID)).isNull();
+
+        when("all objects are changed");
+        resourceCache.put(resource("1"), resourceCache.getInvalidationCount());
+        resourceCache.invalidate(null, null, null);
+
+        then();
+        assertThat(resourceCache.getIfLatest(RESOURCE_OID, true, createResult())).isNull();
+        assertThat(versionChecks).as("version checks").isZero();
+    }
+
+    @Test
+    public void test120InvalidationWhileReadingIsNotMissed() throws Exception {
+        given("the resource is being read from the repository");
+        long invalidationCount = resourceCache.getInvalidationCount();
+
+        when("the resource is changed before it is put into the cache");
+        resourceCache.invalidate(ResourceType.class, RESOURCE_OID, null);
+        repositoryVersion = "2";
+        resourceCache.put(resource("1"), invalidationCount);
+
+        then("the version is checked and the outdated resource is not returned");
+        assertThat(resourceCache.getIfLatest(RESOURCE_OID, true, createResult())).isNull();
+        assertThat(versionChecks).as("version checks").isEqualTo(1);
+        assertThat(resourceCache.getVersion(RESOURCE_OID)).isNull();
+    }
+
+    @Test
+    public void test130UnverifiedResourceIsVerifiedByVersionCheck() throws Exception {
+        given("resource of unknown origin (e.g. from a search)");
+        resourceCache.put(resource("1"), null);
+
+        when();
+        PrismObject<ResourceType> first = resourceCache.getIfLatest(RESOURCE_OID, true, createResult());
+        PrismObject<ResourceType> second = resourceCache.getIfLatest(RESOURCE_OID, true, createResult());
+
+        then("only the first request checks the version");
+        assertThat(first).isNotNull();
+        assertThat(second).isSameAs(first);
+        assertThat(versionChecks).as("version checks").isEqualTo(1);
+    }
+
+    @Test
+    public void test140InvalidationWhileCheckingVersionIsNotMissed() throws Exception {
+        given();
+        resourceCache.put(resource("1"), null);
+
+        when("the resource is changed (and cached again by someone else) while its version is being checked");
+        onVersionCheck = () -> {
+            resourceCache.invalidate(ResourceType.class, RESOURCE_OID, null);
+            putUnverified(resource("1"));
+        };
+        PrismObject<ResourceType> resource = resourceCache.getIfLatest(RESOURCE_OID, true, createResult());
+
+        then("the resource is returned (its version matches) but it is not marked as verified");
+        onVersionCheck = null;
+        assertThat(resource).isNotNull();
+        assertThat(resourceCache.getIfLatest(RESOURCE_OID, true, createResult())).isNotNull();
+        assertThat(versionChecks).as("version checks").isEqualTo(2);
+    }
+
+    @Test
+    public void test150VerificationExpires() throws Exception {
+        given();
+        resourceCache.put(resource("1"), resourceCache.getInvalidationCount());
+
+        when("almost the whole validity period passes");
+        clock.overrideDuration(ResourceCache.VERIFICATION_VALIDITY - 1);
+
+        then("the resource is still verified");
+        assertThat(resourceCache.getIfLatest(RESOURCE_OID, true, createResult())).isNotNull();
+        assertThat(versionChecks).as("version checks").isZero();
+
+        when("the validity period passes");
+        clock.overrideDuration(1L);
+
+        then("the version is checked and the resource is verified again");
+        assertThat(resourceCache.getIfLatest(RESOURCE_OID, true, createResult())).isNotNull();
+        assertThat(resourceCache.getIfLatest(RESOURCE_OID, true, createResult())).isNotNull();
+        assertThat(versionChecks).as("version checks").isEqualTo(1);
+
+        when("the resource is changed without invalidation (e.g. on unreachable node) and the validity period passes");
+        repositoryVersion = "2";
+        clock.overrideDuration(ResourceCache.VERIFICATION_VALIDITY);
+
+        then("the outdated resource is not returned");
+        assertThat(resourceCache.getIfLatest(RESOURCE_OID, true, createResult())).isNull();
+        assertThat(versionChecks).as("version checks").isEqualTo(2);
+        assertThat(resourceCache.getVersion(RESOURCE_OID)).isNull();
+    }
+
+    private PrismObject<ResourceType> resource(String version) {
+        PrismObject<ResourceType> resource = new ResourceType(getPrismContext())
+                .oid(RESOURCE_OID)
+                .name("resource")
+                .asPrismObject();
+        resource.setVersion(version);
+        return resource;
+    }
+
+    private void putUnverified(PrismObject<ResourceType> resource) {
+        try {
+            resourceCache.put(resource, null);
+        } catch (SchemaException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private OperationResult createResult() {
+        return new OperationResult(TestResourceCache.class.getName() + ".getIfLatest");
+    }
+
+    private RepositoryService createRepository() {
+        return (RepositoryService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { RepositoryService.class },
+                (proxy, method, args) -> {
+                    if (!"getVersion".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    versionChecks++;
+                    if (onVersionCheck != null) {
+                        onVersionCheck.run();
+                    }
+                    return repositoryVersion;
+                });
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl.shadowmanager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static com.evolveum.midpoint.prism.util.PrismTestUtil.getPrismContext;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Tests that prefetched shadows are used at most once and never after they were changed,
+ * as reported by repository cache invalidations delivered to {@link ShadowManager}.
+ */
+public class TestPrefetchedShadows extends AbstractUnitTest {
+
+    private static final String JACK_OID = "2f3a5c8e-8d5e-4a55-b7a4-1f6c0e7b5a01";
+    private static final String WILL_OID = "2f3a5c8e-8d5e-4a55-b7a4-1f6c0e7b5a02";
+
+    /** Spring dependencies are not needed for tracking the prefetched shadows. */
+    private final ShadowManager shadowManager = new ShadowManager();
+
+    @BeforeClass
+    public void initPrism() throws Exception {
+        PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+    }
+
+    @Test
+    public void test100ShadowIsUsedOnce() {
+        given();
+        PrefetchedShadows prefetched = new PrefetchedShadows();
+        prefetched.startBatch();
+        PrismObject<ShadowType> jack = shadow(JACK_OID, "jack");
+        prefetched.put("jack", jack);
+
+        expect();
+        assertThat(prefetched.remove("jack")).isSameAs(jack);
+        assertThat(prefetched.remove("jack")).isNull();
+        assertThat(prefetched.remove("will")).isNull();
+        assertThat(prefetched.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void test110ChangedShadowIsDiscarded() {
+        given();
+        PrefetchedShadows prefetched = shadowManager.openPrefetchedShadows();
+        try {
+            prefetched.startBatch();
+            prefetched.put("jack", shadow(JACK_OID, "jack"));
+            PrismObject<ShadowType> will = shadow(WILL_OID, "will");
+            prefetched.put("will", will);
+
+            when("jack's shadow is changed after it was prefetched");
+            shadowManager.invalidate(ShadowType.class, JACK_OID, null);
+
+            then("it is looked up again, the other shadow is used");
+            assertThat(prefetched.remove("jack")).isNull();
+            assertThat(prefetched.remove("will")).isSameAs(will);
+        } finally {
+            shadowManager.closePrefetchedShadows(prefetched);
+        }
+    }
+
+    @Test
+    public void test120ChangeOfAllShadowsDiscardsEverything() {
+        given();
+        PrefetchedShadows prefetched = shadowManager.openPrefetchedShadows();
+        try {
+            prefetched.startBatch();
+            prefetched.put("jack", shadow(JACK_OID, "jack"));
+            prefetched.put("will", shadow(WILL_OID, "will"));
+
+            when("global invalidation");
+            shadowManager.invalidate(null, null, null);
+
+            then();
+            assertThat(prefetched.remove("jack")).isNull();
+
+            and("next batch is not affected by changes done before it started");
+            prefetched.startBatch();
+            PrismObject<ShadowType> jack = shadow(JACK_OID, "jack");
+            prefetched.put("jack", jack);
+            assertThat(prefetched.remove("jack")).isSameAs(jack);
+
+            when("whole type is invalidated");
+            prefetched.put("will", shadow(WILL_OID, "will"));
+            shadowManager.invalidate(ObjectType.class, null, null);
+
+            then();
+            assertThat(prefetched.remove("will")).isNull();
+        } finally {
+            shadowManager.closePrefetchedShadows(prefetched);
+        }
+    }
+
+    @Test
+    public void test130ChangesOfOtherTypesAndClosedSearchesAreIgnored() {
+        given();
+        PrefetchedShadows prefetched = shadowManager.openPrefetchedShadows();
+        prefetched.startBatch();
+        PrismObject<ShadowType> jack = shadow(JACK_OID, "jack");
+        prefetched.put("jack", jack);
+        PrismObject<ShadowType> will = shadow(WILL_OID, "will");
+        prefetched.put("will", will);
+
+        when("a user with the same OID is changed, and a shadow is changed after the search was closed");
+        shadowManager.invalidate(UserType.class, JACK_OID, null);
+        shadowManager.closePrefetchedShadows(prefetched);
+        shadowManager.invalidate(ShadowType.class, WILL_OID, null);
+
+        then();
+        assertThat(prefetched.remove("jack")).isSameAs(jack);
+        assertThat(prefetched.remove("will")).isSameAs(will);
+    }
+
+    @Test
+    public void test140ChangeDuringFetchingIsNotMissed() {
+        given("the batch is started, i.e. shadows are being fetched");
+        PrefetchedShadows prefetched = shadowManager.openPrefetchedShadows();
+        try {
+            prefetched.startBatch();
+
+            when("the shadow is changed before the fetched shadows are stored");
+            shadowManager.invalidate(ShadowType.class, JACK_OID, null);
+            prefetched.put("jack", shadow(JACK_OID, "jack"));
+
+            then();
+            assertThat(prefetched.remove("jack")).isNull();
+        } finally {
+            shadowManager.closePrefetchedShadows(prefetched);
+        }
+    }
+
+    private PrismObject<ShadowType> shadow(String oid, String name) {
+        return new ShadowType(getPrismContext())
+                .oid(oid)
+                .name(name)
+                .primaryIdentifierValue(name)
+                .asPrismObject();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.provisioning.ucf.api.Change;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+
+/**
+ * Tests the lanes of {@link RequestsBuffer}: routing of requests, full lanes and exiting workers.
+ */
+public class TestRequestsBuffer extends AbstractUnitTest {
+
+    private static final int WORKERS = 2;
+    private static final int LANE_CAPACITY = 20;
+
+    private int sequenceNumber;
+
+    @Test
+    public void test100RequestsForSameObjectGoToSameWorkerInOrder() throws Exception {
+        given();
+        RequestsBuffer buffer = new RequestsBuffer(WORKERS);
+
+        when();
+        for (int i = 0; i < 10; i++) {
+            assertThat(buffer.offer(request("jack"))).isTrue();
+            assertThat(buffer.offer(request("will"))).isTrue();
+        }
+
+        then();
+        int jackWorker = workerOf(WORKERS, "jack");
+        List<ProcessChangeRequest> jackRequests = new ArrayList<>();
+        for (ProcessChangeRequest request; (request = buffer.poll(jackWorker, 0)) != null; ) {
+            if ("jack".equals(request.getPrimaryIdentifierRealValue())) {
+                jackRequests.add(request);
+            }
+        }
+        assertThat(jackRequests).hasSize(10);
+        assertOrdered(jackRequests);
+        assertThat(buffer.getRequestsOffered()).isEqualTo(20);
+    }
+
+    @Test
+    public void test110FullLane() throws Exception {
+        given();
+        RequestsBuffer buffer = new RequestsBuffer(WORKERS);
+        for (int i = 0; i < LANE_CAPACITY; i++) {
+            assertThat(buffer.offer(request("jack"))).isTrue();
+        }
+
+        when("lane is full");
+        long start = System.currentTimeMillis();
+        boolean offered = buffer.offer(request("jack"));
+
+        then("the offer times out");
+        assertThat(offered).isFalse();
+        assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(900);
+        assertThat(buffer.getMaxLaneDepth()).isEqualTo(LANE_CAPACITY);
+
+        when("a request is taken");
+        buffer.poll(workerOf(WORKERS, "jack"), 0);
+
+        then("there is a place again");
+        assertThat(buffer.offer(request("jack"))).isTrue();
+    }
+
+    @Test
+    public void test120ExitedWorkerLaneIsTakenOver() throws Exception {
+        given();
+        RequestsBuffer buffer = new RequestsBuffer(WORKERS);
+        for (int i = 0; i < 5; i++) {
+            buffer.offer(request("jack"));
+        }
+        int jackWorker = workerOf(WORKERS, "jack");
+        int otherWorker = 1 - jackWorker;
+
+        when("the worker of jack's lane exits");
+        buffer.workerExited(jackWorker);
+
+        then("the requests are handed over to the other worker, still in order");
+        assertThat(buffer.hasLiveWorkers()).isTrue();
+        assertThat(buffer.getDepth(otherWorker)).isEqualTo(5);
+        assertThat(buffer.offer(request("jack"))).isTrue();
+        List<ProcessChangeRequest> requests = new ArrayList<>();
+        for (ProcessChangeRequest request; (request = buffer.poll(otherWorker, 0)) != null; ) {
+            requests.add(request);
+        }
+        assertThat(requests).hasSize(6);
+        assertOrdered(requests);
+    }
+
+    @Test
+    public void test130NoWorkersLeft() throws Exception {
+        given();
+        RequestsBuffer buffer = new RequestsBuffer(WORKERS);
+
+        when();
+        buffer.workerExited(0);
+        buffer.workerExited(1);
+
+        then("requests are refused immediately");
+        assertThat(buffer.hasLiveWorkers()).isFalse();
+        long start = System.currentTimeMillis();
+        assertThat(buffer.offer(request("jack"))).isFalse();
+        assertThat(System.currentTimeMillis() - start).isLessThan(500);
+    }
+
+    private ProcessChangeRequest request(String primaryIdentifier) {
+        Change change = new Change(primaryIdentifier, null, null, null, sequenceNumber++);
+        return new ProcessChangeRequest(change, null, false);
+    }
+
+    /**
+     * Worker initially serving the lane for given identifier.
+     */
+    private int workerOf(int workers, String primaryIdentifier) {
+        return Math.floorMod(primaryIdentifier.hashCode(), workers);
+    }
+
+    private void assertOrdered(List<ProcessChangeRequest> requests) {
+        for (int i = 1; i < requests.size(); i++) {
+            assertThat(requests.get(i).compareTo(requests.get(i - 1))).as("order of request #" + i).isPositive();
+        }
+    }
+}
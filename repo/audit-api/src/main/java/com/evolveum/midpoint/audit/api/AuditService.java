@@ -16,6 +16,7 @@ import org.jetbrains.annotations.Nullable;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.SearchResultList;
+import com.evolveum.midpoint.schema.SearchResultMetadata;
 import com.evolveum.midpoint.schema.SelectorOptions;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.task.api.Task;
@@ -103,4 +104,25 @@ public interface AuditService {
             @Nullable Collection<SelectorOptions<GetOperationOptions>> options,
             @NotNull OperationResult parentResult)
             throws SchemaException;
+
+    /**
+     * Searches audit events that match the specified query and passes them to the handler one by one.
+     * Unlike {@link #searchObjects}, the implementation should not load all the matching events into memory,
+     * so this method can be used to process audit trails of any size.
+     * Processing stops when the handler returns false.
+     *
+     * If the query contains no paging, events are provided in chronological order.
+     *
+     * @param query search query
+     * @param handler handler of the found events
+     * @param parentResult parent operation result (in/out)
+     * @return metadata of the search (e.g. number of events provided to the handler)
+     * @throws UnsupportedOperationException if object retrieval is not supported
+     */
+    SearchResultMetadata searchObjectsIterative(
+            @Nullable ObjectQuery query,
+            @NotNull AuditResultHandler handler,
+            @Nullable Collection<SelectorOptions<GetOperationOptions>> options,
+            @NotNull OperationResult parentResult)
+            throws SchemaException;
 }
@@ -48,6 +48,10 @@ public class ModifyObjectResult<T extends ObjectType> {
         return objectAfter;
     }
 
+    public Collection<? extends ItemDelta> getModifications() {
+        return modifications;
+    }
+
     @Override
     public String toString() {
         return "ModifyObjectResult{" +
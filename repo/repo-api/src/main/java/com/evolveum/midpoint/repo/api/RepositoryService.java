@@ -349,7 +349,7 @@ public interface RepositoryService {
      * <p>
      * A note related to iteration method:
      * <p>
-     * There are three iteration methods (see IterationMethodType):
+     * There are the following iteration methods (see IterationMethodType):
      * - SINGLE_TRANSACTION: Fetches objects in single DB transaction. Not supported for all DBMSs.
      * - SIMPLE_PAGING: Uses the "simple paging" method: takes objects (e.g.) numbered 0 to 49, then 50 to 99,
      * then 100 to 149, and so on. The disadvantage is that if the order of objects is changed
@@ -358,14 +358,17 @@ public interface RepositoryService {
      * - STRICTLY_SEQUENTIAL_PAGING: Uses the "strictly sequential paging" method: sorting returned objects by OID. This
      * is (almost) reliable in such a way that no object would be skipped. However, custom
      * paging cannot be used in this mode.
+     * - KEYSET_PAGING: Like STRICTLY_SEQUENTIAL_PAGING but sorting by (ordering item, OID), so a single custom ordering
+     * (and maxSize) can be used. Batch size adapts to the time needed to process the objects.
      * <p>
      * If GetOperationOptions.iterationMethod is specified, it is used without any further considerations.
      * Otherwise, the repository configuration determines whether to use SINGLE_TRANSACTION or a paging. In the latter case,
      * strictlySequential flag determines between SIMPLE_PAGING (if false) and STRICTLY_SEQUENTIAL_PAGING (if true).
      * <p>
      * If explicit GetOperationOptions.iterationMethod is not provided, and paging is prescribed, and strictlySequential flag
-     * is true and client-provided paging conflicts with the paging used by the iteration method, a warning is issued, and
-     * iteration method is switched to SIMPLE_PAGING.
+     * is true and client-provided paging conflicts with the paging used by the iteration method, the iteration method
+     * is switched to FETCH_ALL (for small maxSize), KEYSET_PAGING (if ordered by a single-valued property, if at all)
+     * or - with a warning - to SIMPLE_PAGING.
      * <p>
      * Sources of conflicts:
      * - ordering is specified
@@ -18,6 +18,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInfo
 
 import org.apache.commons.lang3.tuple.MutablePair;
 import org.cache2k.Cache2kBuilder;
+import org.cache2k.event.CacheEntryExpiredListener;
 import org.cache2k.expiry.ExpiryPolicy;
 import org.cache2k.processor.EntryProcessor;
 import org.jetbrains.annotations.NotNull;
@@ -29,6 +30,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
 
 import static com.evolveum.midpoint.repo.cache.handlers.SearchOpHandler.QUERY_RESULT_SIZE_LIMIT;
 
@@ -43,8 +45,21 @@ public class GlobalQueryCache extends AbstractGlobalCache {
 
     private static final String CACHE_NAME = "queryCache";
 
+    /**
+     * How often (in terms of put operations) we check the index for entries that were evicted from the cache.
+     */
+    private static final int INDEX_PURGE_CHECK_INTERVAL = 1000;
+
     private org.cache2k.Cache<QueryKey, GlobalCacheQueryValue> cache;
 
+    /**
+     * Index of cached queries, used to quickly find queries potentially affected by a change.
+     * Its content is updated in entry processors, i.e. under the entry lock.
+     */
+    @NotNull private final GlobalQueryCacheIndex index = new GlobalQueryCacheIndex();
+
+    @NotNull private final AtomicInteger putsSinceLastPurgeCheck = new AtomicInteger();
+
     public void initialize() {
         if (cache != null) {
             LOGGER.warn("Global query cache was already initialized -- ignoring this request.");
@@ -59,6 +74,8 @@ public class GlobalQueryCache extends AbstractGlobalCache {
                     .name(CACHE_NAME)
                     .entryCapacity(capacity)
                     .expiryPolicy(getExpirePolicy())
+                    .addAsyncListener((CacheEntryExpiredListener<QueryKey, GlobalCacheQueryValue>)
+                            (c, entry) -> unindexIfMissing(entry.getKey()))
                     .build();
             LOGGER.info("Created global repository query cache with a capacity of {} queries", capacity);
         }
@@ -74,6 +91,7 @@ public class GlobalQueryCache extends AbstractGlobalCache {
             cache.close();
             cache = null;
         }
+        index.clear();
     }
 
     public boolean isAvailable() {
@@ -92,7 +110,11 @@ public class GlobalQueryCache extends AbstractGlobalCache {
 
     public void remove(QueryKey cacheKey) {
         if (cache != null) {
-            cache.remove(cacheKey);
+            cache.invoke(cacheKey, e -> {
+                e.remove();
+                index.remove(cacheKey);
+                return null;
+            });
         }
     }
 
@@ -103,7 +125,16 @@ public class GlobalQueryCache extends AbstractGlobalCache {
                 throw new IllegalStateException("Trying to cache result list greater than " + QUERY_RESULT_SIZE_LIMIT + ": " + cacheObject.size());
             }
             //noinspection unchecked
-            cache.put(key, new GlobalCacheQueryValue(cacheObject));
+            GlobalCacheQueryValue value = new GlobalCacheQueryValue(cacheObject);
+            cache.invoke(key, e -> {
+                index.add(key, cacheObject);
+                e.setValue(value);
+                return null;
+            });
+            if (putsSinceLastPurgeCheck.incrementAndGet() >= INDEX_PURGE_CHECK_INTERVAL) {
+                putsSinceLastPurgeCheck.set(0);
+                purgeIndexIfNeeded();
+            }
         }
     }
 
@@ -113,6 +144,60 @@ public class GlobalQueryCache extends AbstractGlobalCache {
         }
     }
 
+    /**
+     * Removes those of specified entries that match given predicate. Keys that are no longer in the cache are skipped.
+     *
+     * @return Number of entries removed.
+     */
+    public int removeMatching(Collection<QueryKey> keys, BiPredicate<QueryKey, GlobalCacheQueryValue> predicate) {
+        if (cache == null || keys.isEmpty()) {
+            return 0;
+        }
+        AtomicInteger removed = new AtomicInteger(0);
+        cache.invokeAll(keys, e -> {
+            QueryKey key = e.getKey();
+            if (!e.exists()) {
+                index.remove(key);
+            } else if (predicate.test(key, e.getValue())) {
+                e.remove();
+                index.remove(key);
+                removed.incrementAndGet();
+            }
+            return null;
+        });
+        return removed.get();
+    }
+
+    @NotNull
+    public GlobalQueryCacheIndex getIndex() {
+        return index;
+    }
+
+    private void unindexIfMissing(QueryKey key) {
+        org.cache2k.Cache<QueryKey, GlobalCacheQueryValue> currentCache = cache;
+        if (currentCache != null) {
+            currentCache.invoke(key, e -> {
+                if (!e.exists()) {
+                    index.remove(key);
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Entries evicted because of capacity are not reported by the cache, so we get rid of them in the index
+     * when the index grows noticeably larger than the cache itself.
+     */
+    private void purgeIndexIfNeeded() {
+        int indexSize = index.size();
+        int cacheSize = cache.asMap().size();
+        if (indexSize > 2 * cacheSize + INDEX_PURGE_CHECK_INTERVAL) {
+            LOGGER.trace("Purging query cache index: index size = {}, cache size = {}", indexSize, cacheSize);
+            removeMatching(index.getAllKeys(), (key, value) -> false);
+        }
+    }
+
     @Override
     protected CacheType getCacheType() {
         return CacheType.GLOBAL_REPO_QUERY_CACHE;
@@ -127,6 +212,7 @@ public class GlobalQueryCache extends AbstractGlobalCache {
         if (cache != null) {
             cache.clear();
         }
+        index.clear();
     }
 
     public Collection<SingleCacheStateInformationType> getStateInformation() {
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.cache.global;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.path.ItemName;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.query.*;
+import com.evolveum.midpoint.repo.cache.local.QueryKey;
+import com.evolveum.midpoint.schema.SearchResultList;
+
+/**
+ * Index over the keys of {@link GlobalQueryCache}. It allows the invalidator to visit only those queries
+ * that can be affected by a given change, instead of scanning the whole cache.
+ *
+ * Queries are indexed by:
+ *
+ * 1. their object type,
+ * 2. the (first segments of) item paths their filter refers to,
+ * 3. OIDs of objects in their cached result.
+ *
+ * Queries that cannot be reliably characterized by their item paths (no filter, paging, org or fulltext filters, etc.)
+ * are kept in a special "always visit" set for their type.
+ *
+ * The index is conservative: it may contain keys that are no longer in the cache (these are skipped and purged when visited),
+ * but it must contain all keys that are in the cache. Therefore it is updated from within cache entry processors,
+ * i.e. under the entry lock.
+ */
+public class GlobalQueryCacheIndex {
+
+    /**
+     * Entries for individual object types (i.e. query types, not types of changed objects).
+     */
+    private final Map<Class<?>, TypeEntry> typeEntries = new ConcurrentHashMap<>();
+
+    /**
+     * Query keys by OIDs of objects contained in their result.
+     */
+    private final Map<String, Set<QueryKey>> byOid = new ConcurrentHashMap<>();
+
+    /**
+     * Item names and OIDs the indexed queries were registered under. Needed for removal.
+     */
+    private final Map<QueryKey, IndexedQuery> indexedQueries = new ConcurrentHashMap<>();
+
+    private static class TypeEntry {
+        private final Set<QueryKey> all = ConcurrentHashMap.newKeySet();
+        private final Set<QueryKey> alwaysVisit = ConcurrentHashMap.newKeySet();
+        private final Map<String, Set<QueryKey>> byItemName = new ConcurrentHashMap<>();
+    }
+
+    private static class IndexedQuery {
+        private final Set<String> itemNames; // null means "always visit"
+        private final Set<String> oids;
+
+        private IndexedQuery(Set<String> itemNames, Set<String> oids) {
+            this.itemNames = itemNames;
+            this.oids = oids;
+        }
+    }
+
+    void add(@NotNull QueryKey<?> key, @NotNull SearchResultList<?> result) {
+        remove(key);
+        Set<String> itemNames = getIndexableItemNames(key.getQuery());
+        Set<String> oids = getOids(result);
+        indexedQueries.put(key, new IndexedQuery(itemNames, oids));
+
+        TypeEntry typeEntry = typeEntries.computeIfAbsent(key.getType(), t -> new TypeEntry());
+        typeEntry.all.add(key);
+        if (itemNames == null) {
+            typeEntry.alwaysVisit.add(key);
+        } else {
+            for (String itemName : itemNames) {
+                addToMultimap(typeEntry.byItemName, itemName, key);
+            }
+        }
+        for (String oid : oids) {
+            addToMultimap(byOid, oid, key);
+        }
+    }
+
+    void remove(@NotNull QueryKey<?> key) {
+        IndexedQuery indexedQuery = indexedQueries.remove(key);
+        if (indexedQuery == null) {
+            return;
+        }
+        TypeEntry typeEntry = typeEntries.get(key.getType());
+        if (typeEntry != null) {
+            typeEntry.all.remove(key);
+            if (indexedQuery.itemNames == null) {
+                typeEntry.alwaysVisit.remove(key);
+            } else {
+                for (String itemName : indexedQuery.itemNames) {
+                    removeFromMultimap(typeEntry.byItemName, itemName, key);
+                }
+            }
+        }
+        for (String oid : indexedQuery.oids) {
+            removeFromMultimap(byOid, oid, key);
+        }
+    }
+
+    void clear() {
+        typeEntries.clear();
+        byOid.clear();
+        indexedQueries.clear();
+    }
+
+    int size() {
+        return indexedQueries.size();
+    }
+
+    Set<QueryKey> getAllKeys() {
+        return new HashSet<>(indexedQueries.keySet());
+    }
+
+    /**
+     * All queries that might be affected by a change of an object of given type.
+     */
+    public Set<QueryKey> getKeysForType(@NotNull Class<?> changedType) {
+        Set<QueryKey> rv = new HashSet<>();
+        forMatchingTypes(changedType, entry -> rv.addAll(entry.all));
+        return rv;
+    }
+
+    /**
+     * Queries that might be affected by a change of given object, if the change does not make the object
+     * newly match a query filter: queries without (indexable) filter and queries with the object in their results.
+     */
+    public Set<QueryKey> getKeysForOid(@NotNull Class<?> changedType, @NotNull String oid) {
+        Set<QueryKey> rv = new HashSet<>();
+        forMatchingTypes(changedType, entry -> rv.addAll(entry.alwaysVisit));
+        addKeysForOid(rv, changedType, oid);
+        return rv;
+    }
+
+    /**
+     * Queries that might be affected by a modification of given items (identified by their first path segments)
+     * of given object.
+     */
+    public Set<QueryKey> getKeysForModification(@NotNull Class<?> changedType, @NotNull String oid,
+            @NotNull Collection<String> modifiedItemNames) {
+        Set<QueryKey> rv = new HashSet<>();
+        forMatchingTypes(changedType, entry -> {
+            rv.addAll(entry.alwaysVisit);
+            for (String itemName : modifiedItemNames) {
+                Set<QueryKey> keys = entry.byItemName.get(itemName);
+                if (keys != null) {
+                    rv.addAll(keys);
+                }
+            }
+        });
+        addKeysForOid(rv, changedType, oid);
+        return rv;
+    }
+
+    private void addKeysForOid(Set<QueryKey> rv, Class<?> changedType, String oid) {
+        Set<QueryKey> keys = byOid.get(oid);
+        if (keys != null) {
+            for (QueryKey key : keys) {
+                if (key.getType().isAssignableFrom(changedType)) {
+                    rv.add(key);
+                }
+            }
+        }
+    }
+
+    private void forMatchingTypes(Class<?> changedType, Consumer<TypeEntry> consumer) {
+        typeEntries.forEach((queryType, entry) -> {
+            if (queryType.isAssignableFrom(changedType)) {
+                consumer.accept(entry);
+            }
+        });
+    }
+
+    // Sets are created and removed atomically with respect to their content, so no key can get lost in a discarded set.
+    private static void addToMultimap(Map<String, Set<QueryKey>> map, String mapKey, QueryKey<?> key) {
+        map.compute(mapKey, (k, set) -> {
+            Set<QueryKey> rv = set != null ? set : ConcurrentHashMap.newKeySet();
+            rv.add(key);
+            return rv;
+        });
+    }
+
+    private static void removeFromMultimap(Map<String, Set<QueryKey>> map, String mapKey, QueryKey<?> key) {
+        map.computeIfPresent(mapKey, (k, set) -> {
+            set.remove(key);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static Set<String> getOids(SearchResultList<?> result) {
+        Set<String> oids = new HashSet<>();
+        for (Object o : result) {
+            if (o instanceof PrismObject<?>) {
+                String oid = ((PrismObject<?>) o).getOid();
+                if (oid != null) {
+                    oids.add(oid);
+                }
+            }
+        }
+        return oids;
+    }
+
+    /**
+     * Returns local names of the first segments of all item paths the query depends on;
+     * or null if the query cannot be characterized in this way.
+     *
+     * Paged queries are not indexed by item paths, because a change of any item may move an object into or out of the page.
+     */
+    @Nullable
+    static Set<String> getIndexableItemNames(ObjectQuery query) {
+        if (query == null || query.getFilter() == null || query.getPaging() != null) {
+            return null;
+        }
+        Set<String> names = new HashSet<>();
+        return collectItemNames(query.getFilter(), names) ? names : null;
+    }
+
+    private static boolean collectItemNames(ObjectFilter filter, Set<String> names) {
+        if (filter == null || filter instanceof AllFilter || filter instanceof NoneFilter
+                || filter instanceof UndefinedFilter || filter instanceof InOidFilter) {
+            return true;
+        } else if (filter instanceof ValueFilter) {
+            ValueFilter<?, ?> valueFilter = (ValueFilter<?, ?>) filter;
+            return addFirstName(valueFilter.getFullPath(), names)
+                    && (valueFilter.getRightHandSidePath() == null || addFirstName(valueFilter.getRightHandSidePath(), names));
+        } else if (filter instanceof ExistsFilter) {
+            // The inner filter is relative to the exists path, so the first segment of the exists path is sufficient.
+            return addFirstName(((ExistsFilter) filter).getFullPath(), names);
+        } else if (filter instanceof TypeFilter) {
+            return collectItemNames(((TypeFilter) filter).getFilter(), names);
+        } else if (filter instanceof LogicalFilter) {
+            for (ObjectFilter condition : ((LogicalFilter) filter).getConditions()) {
+                if (!collectItemNames(condition, names)) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            // OrgFilter (depends on the org closure), FullTextFilter, and anything unknown.
+            return false;
+        }
+    }
+
+    private static boolean addFirstName(ItemPath path, Set<String> names) {
+        if (ItemPath.isEmpty(path)) {
+            return false;
+        }
+        ItemName first = path.firstToNameOrNull();
+        if (first == null) {
+            return false;
+        } else {
+            names.add(first.getLocalPart());
+            return true;
+        }
+    }
+}
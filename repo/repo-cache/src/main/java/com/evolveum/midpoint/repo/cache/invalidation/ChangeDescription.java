@@ -7,16 +7,23 @@
 
 package com.evolveum.midpoint.repo.cache.invalidation;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.CacheInvalidationContext;
 import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
 import com.evolveum.midpoint.prism.match.MatchingRuleRegistry;
+import com.evolveum.midpoint.prism.path.ItemName;
 import com.evolveum.midpoint.prism.query.ObjectFilter;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.repo.api.DeleteObjectResult;
 import com.evolveum.midpoint.repo.api.ModifyObjectResult;
+import com.evolveum.midpoint.repo.cache.global.GlobalQueryCacheIndex;
 import com.evolveum.midpoint.repo.cache.handlers.AddObjectResult;
 import com.evolveum.midpoint.repo.cache.local.QueryKey;
 import com.evolveum.midpoint.schema.SearchResultList;
@@ -69,6 +76,12 @@ public abstract class ChangeDescription {
             return filter.match(addInfo.getObject().getValue(), matchingRuleRegistry);
         }
 
+        @Override
+        Set<QueryKey> getPotentiallyAffectedQueries(GlobalQueryCacheIndex index) {
+            // The new object can match any filter.
+            return index.getKeysForType(type);
+        }
+
         @Override
         public String toString() {
             return "Add{" + addInfo + '}';
@@ -98,6 +111,39 @@ public abstract class ChangeDescription {
             }
         }
 
+        /**
+         * If a modification does not touch any item the filter refers to, the object matches the filter after the change
+         * if and only if it matched before. And if it matched before, it is in the result. So we need to check only queries
+         * with modified items in their filters, plus the ones that contain the object.
+         */
+        @Override
+        Set<QueryKey> getPotentiallyAffectedQueries(GlobalQueryCacheIndex index) {
+            Set<String> modifiedItemNames = getModifiedItemNames();
+            if (modifyInfo.getObjectAfter() == null || modifiedItemNames == null) {
+                return index.getKeysForType(type);
+            } else {
+                return index.getKeysForModification(type, oid, modifiedItemNames);
+            }
+        }
+
+        @Nullable
+        private Set<String> getModifiedItemNames() {
+            Collection<? extends ItemDelta> modifications = modifyInfo.getModifications();
+            if (modifications == null || modifications.isEmpty()) {
+                // E.g. when the object is overwritten by "add" operation. We know nothing about the items changed.
+                return null;
+            }
+            Set<String> names = new HashSet<>();
+            for (ItemDelta<?, ?> modification : modifications) {
+                ItemName first = modification.getPath().firstToNameOrNull();
+                if (first == null) {
+                    return null;
+                }
+                names.add(first.getLocalPart());
+            }
+            return names;
+        }
+
         @Override
         public String toString() {
             return "Modify{" +
@@ -122,6 +168,11 @@ public abstract class ChangeDescription {
             return false;
         }
 
+        @Override
+        Set<QueryKey> getPotentiallyAffectedQueries(GlobalQueryCacheIndex index) {
+            return index.getKeysForOid(type, oid);
+        }
+
         @Override
         public String toString() {
             return "Delete{" +
@@ -145,6 +196,11 @@ public abstract class ChangeDescription {
             return safeInvalidation;
         }
 
+        @Override
+        Set<QueryKey> getPotentiallyAffectedQueries(GlobalQueryCacheIndex index) {
+            return safeInvalidation || oid == null ? index.getKeysForType(type) : index.getKeysForOid(type, oid);
+        }
+
         @Override
         public String toString() {
             return "Any{" +
@@ -238,6 +294,12 @@ public abstract class ChangeDescription {
         }
     }
 
+    /**
+     * Returns cached global queries that may be affected by this change, i.e. the ones for which {@link #mayAffect(QueryKey,
+     * SearchResultList, MatchingRuleRegistry)} can return true. It is a (cheap) pre-selection; the precise check is still needed.
+     */
+    abstract Set<QueryKey> getPotentiallyAffectedQueries(GlobalQueryCacheIndex index);
+
     public abstract boolean mayMatchAfterChange(@NotNull ObjectFilter filter, SearchResultList list, MatchingRuleRegistry matchingRuleRegistry)
             throws SchemaException;
 
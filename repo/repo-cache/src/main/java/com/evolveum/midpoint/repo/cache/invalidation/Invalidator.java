@@ -26,8 +26,14 @@ import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AbstractRoleType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ArchetypeType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.FunctionLibraryType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.OrgType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RoleType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ServiceType;
 
 import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemConfigurationType;
 
@@ -37,7 +43,6 @@ import org.springframework.stereotype.Component;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.evolveum.midpoint.repo.cache.RepositoryCache.*;
 import static com.evolveum.midpoint.repo.cache.local.LocalRepoCacheCollection.*;
@@ -50,9 +55,19 @@ public class Invalidator {
 
     public static final Trace LOGGER = TraceManager.getTrace(Invalidator.class);
 
+    /**
+     * Resources are here because provisioning resource cache relies on invalidation events instead of checking
+     * resource versions. The same holds for abstract roles and the role graph cache in model.
+     */
     private static final List<Class<?>> TYPES_ALWAYS_INVALIDATED_CLUSTERWIDE = Arrays.asList(
             SystemConfigurationType.class,
-            FunctionLibraryType.class);
+            FunctionLibraryType.class,
+            ResourceType.class,
+            AbstractRoleType.class,
+            RoleType.class,
+            OrgType.class,
+            ServiceType.class,
+            ArchetypeType.class);
 
     @Autowired private GlobalQueryCache globalQueryCache;
     @Autowired private GlobalObjectCache globalObjectCache;
@@ -147,27 +162,23 @@ public class Invalidator {
     }
 
     private <T extends ObjectType> void clearQueryResultsGlobally(Class<T> type, String oid, CacheInvalidationContext context) {
-        // TODO implement more efficiently
-
         // Safe invalidation means we evict queries without looking at details of the change.
         boolean safeIfUnknown = !context.isFromRemoteNode() || globalQueryCache.shouldDoSafeRemoteInvalidationFor(type);
         ChangeDescription change = ChangeDescription.getFrom(type, oid, context, safeIfUnknown);
 
         long start = System.currentTimeMillis();
-        AtomicInteger all = new AtomicInteger(0);
-        AtomicInteger removed = new AtomicInteger(0);
-
-        globalQueryCache.invokeAll(entry -> {
-            QueryKey queryKey = entry.getKey();
-            all.incrementAndGet();
-            if (change.mayAffect(queryKey, entry.getValue().getResult(), matchingRuleRegistry)) {
+        // Only queries that can be affected by the change are visited; see GlobalQueryCacheIndex.
+        Set<QueryKey> candidates = change.getPotentiallyAffectedQueries(globalQueryCache.getIndex());
+        int removed = globalQueryCache.removeMatching(candidates, (queryKey, value) -> {
+            if (change.mayAffect(queryKey, value.getResult(), matchingRuleRegistry)) {
                 LOGGER.trace("Removing (from global cache) query for type={}, change={}: {}", type, change, queryKey.getQuery());
-                entry.remove();
-                removed.incrementAndGet();
+                return true;
+            } else {
+                return false;
             }
-            return null;
         });
-        LOGGER.trace("Removed (from global cache) {} (of {}) query result entries of type {} in {} ms", removed, all, type, System.currentTimeMillis() - start);
+        LOGGER.trace("Removed (from global cache) {} (of {} candidate(s)) query result entries of type {} in {} ms", removed,
+                candidates.size(), type, System.currentTimeMillis() - start);
     }
 
     public void registerInvalidationEventsListener(InvalidationEventListener listener) {
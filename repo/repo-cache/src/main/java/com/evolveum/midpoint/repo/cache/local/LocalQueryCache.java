@@ -66,9 +66,9 @@ public class LocalQueryCache extends AbstractThreadLocalCache {
     }
 
     @SuppressWarnings("SameParameterValue")
-    static int getTotalCachedObjects(ConcurrentHashMap<Thread, LocalQueryCache> cacheInstances) {
+    static int getTotalCachedObjects(Class<LocalQueryCache> cacheClass) {
         int rv = 0;
-        for (LocalQueryCache cacheInstance : cacheInstances.values()) {
+        for (LocalQueryCache cacheInstance : getAllInstances(cacheClass)) {
             rv += cacheInstance.getCachedObjects();
         }
         return rv;
@@ -18,12 +18,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 
 import static com.evolveum.midpoint.schema.cache.CacheType.*;
 
 /**
  * Set of three thread-local repo caches (object, version, query).
+ *
+ * The caches are held by the {@link com.evolveum.midpoint.util.caching.CacheScope} of the current operation.
  */
 @Component
 public class LocalRepoCacheCollection {
@@ -32,26 +33,22 @@ public class LocalRepoCacheCollection {
 
     @Autowired private PrismContext prismContext;
 
-    private static final ConcurrentHashMap<Thread, LocalObjectCache> LOCAL_OBJECT_CACHE_INSTANCE = new ConcurrentHashMap<>();
-    private static final ConcurrentHashMap<Thread, LocalVersionCache> LOCAL_VERSION_CACHE_INSTANCE = new ConcurrentHashMap<>();
-    private static final ConcurrentHashMap<Thread, LocalQueryCache> LOCAL_QUERY_CACHE_INSTANCE = new ConcurrentHashMap<>();
-
     public static LocalObjectCache getLocalObjectCache() {
-        return LOCAL_OBJECT_CACHE_INSTANCE.get(Thread.currentThread());
+        return LocalObjectCache.getCurrent(LocalObjectCache.class);
     }
 
     public static LocalVersionCache getLocalVersionCache() {
-        return LOCAL_VERSION_CACHE_INSTANCE.get(Thread.currentThread());
+        return LocalVersionCache.getCurrent(LocalVersionCache.class);
     }
 
     public static LocalQueryCache getLocalQueryCache() {
-        return LOCAL_QUERY_CACHE_INSTANCE.get(Thread.currentThread());
+        return LocalQueryCache.getCurrent(LocalQueryCache.class);
     }
 
     public static void destroy() {
-        LocalObjectCache.destroy(LOCAL_OBJECT_CACHE_INSTANCE, LOGGER);
-        LocalVersionCache.destroy(LOCAL_VERSION_CACHE_INSTANCE, LOGGER);
-        LocalQueryCache.destroy(LOCAL_QUERY_CACHE_INSTANCE, LOGGER);
+        LocalObjectCache.destroy(LocalObjectCache.class, LOGGER);
+        LocalVersionCache.destroy(LocalVersionCache.class, LOGGER);
+        LocalQueryCache.destroy(LocalQueryCache.class, LOGGER);
     }
 
     public static void enter(CacheConfigurationManager mgr) {
@@ -61,47 +58,47 @@ public class LocalRepoCacheCollection {
         CacheConfiguration versionCacheConfig = mgr.getConfiguration(LOCAL_REPO_VERSION_CACHE);
         CacheConfiguration queryCacheConfig = mgr.getConfiguration(LOCAL_REPO_QUERY_CACHE);
 
-        LocalObjectCache.enter(LOCAL_OBJECT_CACHE_INSTANCE, LocalObjectCache.class, objectCacheConfig, LOGGER);
-        LocalVersionCache.enter(LOCAL_VERSION_CACHE_INSTANCE, LocalVersionCache.class, versionCacheConfig, LOGGER);
-        LocalQueryCache.enter(LOCAL_QUERY_CACHE_INSTANCE, LocalQueryCache.class, queryCacheConfig, LOGGER);
+        LocalObjectCache.enter(LocalObjectCache.class, objectCacheConfig, LOGGER);
+        LocalVersionCache.enter(LocalVersionCache.class, versionCacheConfig, LOGGER);
+        LocalQueryCache.enter(LocalQueryCache.class, queryCacheConfig, LOGGER);
     }
 
     public static void exit() {
-        LocalObjectCache.exit(LOCAL_OBJECT_CACHE_INSTANCE, LOGGER);
-        LocalVersionCache.exit(LOCAL_VERSION_CACHE_INSTANCE, LOGGER);
-        LocalQueryCache.exit(LOCAL_QUERY_CACHE_INSTANCE, LOGGER);
+        LocalObjectCache.exit(LocalObjectCache.class, LOGGER);
+        LocalVersionCache.exit(LocalVersionCache.class, LOGGER);
+        LocalQueryCache.exit(LocalQueryCache.class, LOGGER);
     }
 
     public static boolean exists() {
-        return LocalObjectCache.exists(LOCAL_OBJECT_CACHE_INSTANCE) ||
-                LocalVersionCache.exists(LOCAL_VERSION_CACHE_INSTANCE) ||
-                LocalQueryCache.exists(LOCAL_QUERY_CACHE_INSTANCE);
+        return LocalObjectCache.exists(LocalObjectCache.class) ||
+                LocalVersionCache.exists(LocalVersionCache.class) ||
+                LocalQueryCache.exists(LocalQueryCache.class);
     }
 
     public static String debugDump() {
         // TODO
-        return LocalObjectCache.debugDump(LOCAL_OBJECT_CACHE_INSTANCE) + "\n" +
-                LocalVersionCache.debugDump(LOCAL_VERSION_CACHE_INSTANCE) + "\n" +
-                LocalQueryCache.debugDump(LOCAL_QUERY_CACHE_INSTANCE);
+        return LocalObjectCache.debugDump(LocalObjectCache.class) + "\n" +
+                LocalVersionCache.debugDump(LocalVersionCache.class) + "\n" +
+                LocalQueryCache.debugDump(LocalQueryCache.class);
     }
 
     public void getStateInformation(List<SingleCacheStateInformationType> rv) {
         rv.add(new SingleCacheStateInformationType(prismContext)
                 .name(LocalObjectCache.class.getName())
-                .size(LocalObjectCache.getTotalSize(LOCAL_OBJECT_CACHE_INSTANCE)));
+                .size(LocalObjectCache.getTotalSize(LocalObjectCache.class)));
         rv.add(new SingleCacheStateInformationType(prismContext)
                 .name(LocalVersionCache.class.getName())
-                .size(LocalVersionCache.getTotalSize(LOCAL_VERSION_CACHE_INSTANCE)));
+                .size(LocalVersionCache.getTotalSize(LocalVersionCache.class)));
         rv.add(new SingleCacheStateInformationType(prismContext)
                 .name(LocalQueryCache.class.getName())
-                .size(LocalQueryCache.getTotalSize(LOCAL_QUERY_CACHE_INSTANCE))
-                .secondarySize(LocalQueryCache.getTotalCachedObjects(LOCAL_QUERY_CACHE_INSTANCE)));
+                .size(LocalQueryCache.getTotalSize(LocalQueryCache.class))
+                .secondarySize(LocalQueryCache.getTotalCachedObjects(LocalQueryCache.class)));
 
     }
 
     public void dumpContent() {
-        LocalObjectCache.dumpContent(LOCAL_OBJECT_CACHE_INSTANCE);
-        LocalVersionCache.dumpContent(LOCAL_VERSION_CACHE_INSTANCE);
-        LocalQueryCache.dumpContent(LOCAL_QUERY_CACHE_INSTANCE);
+        LocalObjectCache.dumpContent(LocalObjectCache.class);
+        LocalVersionCache.dumpContent(LocalVersionCache.class);
+        LocalQueryCache.dumpContent(LocalQueryCache.class);
     }
 }
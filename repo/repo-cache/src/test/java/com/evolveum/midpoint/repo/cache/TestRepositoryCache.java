@@ -298,6 +298,59 @@ public class TestRepositoryCache extends AbstractSpringTest implements InfraTest
         assertThat(data.overSizedQueries.get()).as("over-sized counter").isEqualTo(2); // search + searchIterative
     }
 
+    /**
+     * Modification of an item that is not referenced by cached query filter should not evict the query,
+     * unless the object is in the query result.
+     */
+    @Test
+    public void test340ModifyUnrelatedItem() throws ObjectAlreadyExistsException, SchemaException, ObjectNotFoundException {
+        given();
+        PrismContext prismContext = getPrismContext();
+        OperationResult result = createOperationResult();
+
+        clearStatistics();
+        clearCaches();
+
+        String costCenter = "cc_" + getTestNameShort();
+
+        PrismObject<ArchetypeType> matching = new ArchetypeType(prismContext)
+                .name(getTestNameShort() + ".1")
+                .costCenter(costCenter)
+                .asPrismObject();
+        repositoryCache.addObject(matching, null, result);
+        PrismObject<ArchetypeType> other = new ArchetypeType(prismContext)
+                .name(getTestNameShort() + ".2")
+                .costCenter("other")
+                .asPrismObject();
+        repositoryCache.addObject(other, null, result);
+
+        ObjectQuery query = prismContext.queryFor(ArchetypeType.class)
+                .item(ArchetypeType.F_COST_CENTER).eq(costCenter)
+                .build();
+        repositoryCache.searchObjects(ArchetypeType.class, query, null, result);
+        assertQueryIsCached(ArchetypeType.class, query);
+
+        when("unrelated item is modified");
+        repositoryCache.modifyObject(ArchetypeType.class, other.getOid(),
+                prismContext.deltaFor(ArchetypeType.class)
+                        .item(ArchetypeType.F_DESCRIPTION).replace("changed")
+                        .asItemDeltas(), result);
+
+        then("query is still cached");
+        assertQueryIsCached(ArchetypeType.class, query);
+
+        when("queried item is modified");
+        repositoryCache.modifyObject(ArchetypeType.class, other.getOid(),
+                prismContext.deltaFor(ArchetypeType.class)
+                        .item(ArchetypeType.F_COST_CENTER).replace(costCenter)
+                        .asItemDeltas(), result);
+
+        then("query is evicted");
+        assertQueryIsNotCached(ArchetypeType.class, query);
+        assertThat(repositoryCache.searchObjects(ArchetypeType.class, query, null, result))
+                .as("objects found after").hasSize(2);
+    }
+
     // Must be executed last, because naive deletion such large number of archetypes fails on OOM
     @Test
     public void test900HeapUsage() throws Exception {
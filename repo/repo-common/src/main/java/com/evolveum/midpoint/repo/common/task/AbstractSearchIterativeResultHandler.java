@@ -18,15 +18,22 @@ import com.evolveum.midpoint.schema.result.OperationResultStatus;
 import com.evolveum.midpoint.schema.statistics.StatisticsUtil;
 import com.evolveum.midpoint.schema.util.ExceptionUtil;
 import com.evolveum.midpoint.task.api.*;
+import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
 import com.evolveum.midpoint.util.logging.LevelOverrideTurboFilter;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.TracingAppender;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 import org.apache.commons.lang.StringUtils;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.schema.ResultHandler;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.exception.CommonException;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 
@@ -34,6 +41,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -65,6 +74,28 @@ public abstract class AbstractSearchIterativeResultHandler<O extends ObjectType>
     private boolean enableSynchronizationStatistics = false;        // whether we want to collect sync statistics
     private boolean enableActionsExecutedStatistics = false;        // whether we want to collect repo objects statistics
     private BlockingQueue<ProcessingRequest> requestQueue;
+
+    /**
+     * Worker slots not processing anything at the moment. Used only in shared worker executor mode:
+     * a request is submitted to the executor only after a slot is obtained, so the number of slots limits
+     * the number of items in progress (and ensures that a single task cannot flood the shared executor).
+     */
+    private BlockingQueue<WorkerSlot> idleWorkerSlots;
+
+    /**
+     * Node-wide limiter of items related to the resource this task works on (shared worker executor mode only).
+     */
+    private SharedWorkerExecutor.ResourceLimiter resourceLimiter;
+
+    /**
+     * All worker slots (shared worker executor mode only). Needed to close their tasks when the processing is done.
+     */
+    private List<WorkerSlot> workerSlots;
+
+    /**
+     * Items submitted to the shared executor and not finished yet. The coordinator is registered as well.
+     */
+    private Phaser itemsInProgress;
     private AtomicBoolean stopRequestedByAnyWorker = new AtomicBoolean(false);
     private volatile Throwable exceptionEncountered;
     private final long startTime;
@@ -164,7 +195,16 @@ public abstract class AbstractSearchIterativeResultHandler<O extends ObjectType>
         }
 
         ProcessingRequest request = new ProcessingRequest(object);
-        if (requestQueue != null) {
+        if (idleWorkerSlots != null) {
+            try {
+                if (!submitToExecutor(request, parentResult)) {
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                recordInterrupted(parentResult);
+                return false;
+            }
+        } else if (requestQueue != null) {
             // by not putting anything in the parent result we hope the status will be SUCCESS
             try {
                 while (!requestQueue.offer(request, REQUEST_QUEUE_OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
@@ -183,6 +223,91 @@ public abstract class AbstractSearchIterativeResultHandler<O extends ObjectType>
         return !shouldStop(parentResult);
     }
 
+    /**
+     * Waits for a free worker slot (and resource limiter permit, if applicable) and then submits the request
+     * to the shared executor.
+     *
+     * @return false if the processing should stop
+     */
+    private boolean submitToExecutor(ProcessingRequest request, OperationResult parentResult) throws InterruptedException {
+        WorkerSlot slot;
+        while ((slot = idleWorkerSlots.poll(REQUEST_QUEUE_OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) == null) {
+            if (shouldStop(parentResult)) {
+                return false;
+            }
+        }
+        SharedWorkerExecutor.ResourceLimiter resourceLimiter = this.resourceLimiter;
+        boolean submitted = false;
+        boolean resourcePermitAcquired = false;
+        try {
+            if (resourceLimiter != null) {
+                while (!resourceLimiter.tryAcquire(REQUEST_QUEUE_OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    if (shouldStop(parentResult)) {
+                        return false;
+                    }
+                }
+                resourcePermitAcquired = true;
+            }
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            WorkerSlot finalSlot = slot;
+            itemsInProgress.register();
+            try {
+                SharedWorkerExecutor.get().execute(
+                        () -> processOnExecutor(request, finalSlot, resourceLimiter, authentication));
+                submitted = true;
+            } catch (RejectedExecutionException e) {
+                itemsInProgress.arriveAndDeregister();
+                throw e;
+            }
+        } finally {
+            if (!submitted) {
+                if (resourcePermitAcquired) {
+                    resourceLimiter.release();
+                }
+                idleWorkerSlots.add(slot);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executed in a thread of the shared executor. Sets up the thread in a way similar to what task manager
+     * does for lightweight tasks. Low-level statistics collected by the thread are added to the slot task.
+     */
+    private void processOnExecutor(ProcessingRequest request, WorkerSlot slot,
+            SharedWorkerExecutor.ResourceLimiter resourceLimiter, Authentication authentication) {
+        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        securityContext.setAuthentication(authentication);
+        SecurityContextHolder.setContext(securityContext);
+        CacheConfigurationManager cacheConfigurationManager = taskManager.getCacheConfigurationManager();
+        cacheConfigurationManager.setThreadLocalProfiles(coordinatorTask.getCachingProfiles());
+        OperationResult.setThreadLocalHandlingStrategy(coordinatorTask.getOperationResultHandlingStrategyName());
+        try {
+            // Slot tasks are never started, so the coordinator is the one that gets stopped e.g. on suspension.
+            if (!stopRequestedByAnyWorker.get() && coordinatorTask.canRun()) {
+                slot.task.startCollectingLowLevelStatisticsInCurrentThread();
+                try {
+                    processRequest(request, slot.task, slot.result);
+                } finally {
+                    slot.task.addLowLevelStatisticsFromCurrentThread();
+                }
+            }
+        } catch (Throwable t) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Unexpected exception while processing {} in {}", t,
+                    request.object, slot.task);
+            stopRequestedByAnyWorker.set(true);
+        } finally {
+            cacheConfigurationManager.unsetThreadLocalProfiles();
+            OperationResult.unsetThreadLocalHandlingStrategy();
+            SecurityContextHolder.clearContext();
+            if (resourceLimiter != null) {
+                resourceLimiter.release();
+            }
+            idleWorkerSlots.add(slot);
+            itemsInProgress.arriveAndDeregister();
+        }
+    }
+
     // stop can be requested either internally (by handler or error in any worker thread)
     // or externally (by the task manager)
     private boolean shouldStop(OperationResult parentResult) {
@@ -230,7 +355,32 @@ public abstract class AbstractSearchIterativeResultHandler<O extends ObjectType>
     }
 
     private void waitForCompletion(OperationResult opResult) {
+        if (itemsInProgress != null) {
+            try {
+                itemsInProgress.awaitAdvanceInterruptibly(itemsInProgress.arrive());
+            } catch (InterruptedException e) {
+                LOGGER.warn("Interrupted while waiting for items being processed by shared worker executor", e);
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (workerSlots != null) {
+            closeWorkerSlots(opResult);
+        }
         taskManager.waitForTransientChildren(coordinatorTask, opResult);
+        if (resourceLimiter != null) {
+            SharedWorkerExecutor.releaseResourceLimiter(resourceLimiter);
+            resourceLimiter = null;
+        }
+    }
+
+    private void closeWorkerSlots(OperationResult opResult) {
+        for (WorkerSlot slot : workerSlots) {
+            try {
+                slot.task.close(slot.task.getResult(), false, opResult);
+            } catch (ObjectNotFoundException | SchemaException e) {
+                LoggingUtils.logUnexpectedException(LOGGER, "Couldn't close worker slot task {}", e, slot.task);
+            }
+        }
     }
 
     private void updateOperationResult(OperationResult opResult) {
@@ -378,7 +528,7 @@ public abstract class AbstractSearchIterativeResultHandler<O extends ObjectType>
 
             synchronized (coordinatorTask) {
                 coordinatorTask.setProgress(progress);
-                if (requestQueue != null) {
+                if (workerTask != coordinatorTask) {
                     workerTask.setProgress(workerTask.getProgress()+1);
                 }
                 // todo report current op result?
@@ -514,6 +664,20 @@ public abstract class AbstractSearchIterativeResultHandler<O extends ObjectType>
         }
     }
 
+    /**
+     * Worker slot of the shared executor mode. The slot task is never started: it is only a holder of statistics
+     * (and other task-related state, like tracing) for objects processed by the shared executor in the slot.
+     */
+    private static class WorkerSlot {
+        private final RunningTask task;
+        private final OperationResult result;
+
+        private WorkerSlot(RunningTask task, OperationResult result) {
+            this.task = task;
+            this.result = result;
+        }
+    }
+
     public void createWorkerThreads(RunningTask coordinatorTask) {
         Integer threadsCount = getWorkerThreadsCount(coordinatorTask);
         if (threadsCount == null || threadsCount == 0) {
@@ -523,8 +687,18 @@ public abstract class AbstractSearchIterativeResultHandler<O extends ObjectType>
         // remove subtasks that could have been created during processing of previous buckets
         coordinatorTask.deleteLightweightAsynchronousSubtasks();
 
-        int queueSize = threadsCount*2;                // actually, size of threadsCount should be sufficient but it doesn't hurt if queue is larger
-        requestQueue = new ArrayBlockingQueue<>(queueSize);
+        boolean sharedExecutor = isSharedWorkerExecutor(coordinatorTask);
+        if (sharedExecutor) {
+            idleWorkerSlots = new ArrayBlockingQueue<>(threadsCount);
+            itemsInProgress = new Phaser(1);
+            workerSlots = new ArrayList<>(threadsCount);
+            if (resourceLimiter == null) {
+                resourceLimiter = createResourceLimiter(coordinatorTask);
+            }
+        } else {
+            int queueSize = threadsCount*2;                // actually, size of threadsCount should be sufficient but it doesn't hurt if queue is larger
+            requestQueue = new ArrayBlockingQueue<>(queueSize);
+        }
 
         workerSpecificResults = new ArrayList<>(threadsCount);
 
@@ -535,7 +709,7 @@ public abstract class AbstractSearchIterativeResultHandler<O extends ObjectType>
             workerSpecificResult.addContext("subtaskIndex", i+1);
             workerSpecificResults.add(workerSpecificResult);
 
-            RunningTask subtask = coordinatorTask.createSubtask(new WorkerHandler(workerSpecificResult));
+            RunningTask subtask = coordinatorTask.createSubtask(sharedExecutor ? null : new WorkerHandler(workerSpecificResult));
             if (isEnableIterationStatistics()) {
                 subtask.resetIterativeTaskInformation(null);
             }
@@ -547,13 +721,36 @@ public abstract class AbstractSearchIterativeResultHandler<O extends ObjectType>
             }
             subtask.setCategory(coordinatorTask.getCategory());
             subtask.setResult(new OperationResult(taskOperationPrefix + ".executeWorker", OperationResultStatus.IN_PROGRESS, (String) null));
-            subtask.setName("Worker thread " + (i+1) + " of " + threadsCount);
+            subtask.setName((sharedExecutor ? "Worker slot " : "Worker thread ") + (i+1) + " of " + threadsCount);
             subtask.setExecutionEnvironment(CloneUtil.clone(coordinatorTask.getExecutionEnvironment()));
-            subtask.startLightweightHandler();
+            if (sharedExecutor) {
+                WorkerSlot slot = new WorkerSlot(subtask, workerSpecificResult);
+                workerSlots.add(slot);
+                idleWorkerSlots.add(slot);
+            } else {
+                subtask.startLightweightHandler();
+            }
             LOGGER.trace("Worker subtask {} created", subtask);
         }
     }
 
+    private SharedWorkerExecutor.ResourceLimiter createResourceLimiter(Task coordinatorTask) {
+        PrismProperty<Integer> limitProperty =
+                coordinatorTask.getExtensionPropertyOrClone(SchemaConstants.MODEL_EXTENSION_MAX_CONCURRENT_ITEMS_PER_RESOURCE);
+        Integer limit = limitProperty != null ? limitProperty.getRealValue() : null;
+        String resourceOid = coordinatorTask.getObjectOid();
+        if (limit == null || limit <= 0 || resourceOid == null) {
+            return null;
+        } else {
+            return SharedWorkerExecutor.acquireResourceLimiter(resourceOid, limit);
+        }
+    }
+
+    protected boolean isSharedWorkerExecutor(Task task) {
+        PrismProperty<Boolean> property = task.getExtensionPropertyOrClone(SchemaConstants.MODEL_EXTENSION_SHARED_WORKER_EXECUTOR);
+        return property != null && Boolean.TRUE.equals(property.getRealValue());
+    }
+
     protected Integer getWorkerThreadsCount(Task task) {
         PrismProperty<Integer> workerThreadsPrismProperty = task.getExtensionPropertyOrClone(SchemaConstants.MODEL_EXTENSION_WORKER_THREADS);
         if (workerThreadsPrismProperty != null && workerThreadsPrismProperty.getRealValue() != null) {
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.common.task;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Node-wide executor used by search-iterative handlers running in "shared worker executor" mode
+ * (see {@link AbstractSearchIterativeResultHandler}).
+ *
+ * The executor itself is unbounded: the number of items in progress is limited by the tasks themselves
+ * (each task admits at most workerThreads items at once), which also gives each task its fair share of the node.
+ * Items related to a single resource can be further limited by {@link #acquireResourceLimiter(String, int)}.
+ *
+ * Virtual threads are used if the Java runtime provides them (and they are not disabled by
+ * {@link #PROPERTY_USE_VIRTUAL_THREADS} system property). Otherwise a cached pool of platform threads is used.
+ */
+public class SharedWorkerExecutor {
+
+    private static final Trace LOGGER = TraceManager.getTrace(SharedWorkerExecutor.class);
+
+    public static final String PROPERTY_USE_VIRTUAL_THREADS = "midpoint.sharedWorkerExecutor.virtualThreads";
+
+    private static final String THREAD_NAME_PREFIX = "midpoint-shared-worker-";
+
+    private static volatile ExecutorService executor;
+
+    /**
+     * Limiters currently used by at least one task. Guarded by itself.
+     */
+    private static final Map<String, ResourceLimiter> RESOURCE_LIMITERS = new HashMap<>();
+
+    public static ExecutorService get() {
+        ExecutorService current = executor;
+        if (current == null) {
+            synchronized (SharedWorkerExecutor.class) {
+                current = executor;
+                if (current == null) {
+                    current = createExecutor();
+                    executor = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static ExecutorService createExecutor() {
+        if (!"false".equals(System.getProperty(PROPERTY_USE_VIRTUAL_THREADS))) {
+            ExecutorService virtualThreadsExecutor = createVirtualThreadsExecutor();
+            if (virtualThreadsExecutor != null) {
+                LOGGER.info("Using virtual threads for shared worker executor");
+                return virtualThreadsExecutor;
+            }
+        }
+        LOGGER.info("Using platform threads for shared worker executor");
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, THREAD_NAME_PREFIX + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // We are compiled for Java 11, so virtual threads can be reached only by reflection.
+    private static ExecutorService createVirtualThreadsExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            LOGGER.debug("Virtual threads are not available in this Java runtime");
+            return null;
+        } catch (Throwable t) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't create virtual threads executor", t);
+            return null;
+        }
+    }
+
+    /**
+     * Returns node-wide limiter of concurrently processed items related to given resource, and registers the caller
+     * as its user. If the limiter exists already, its limit is changed to the one provided. The caller has to call
+     * {@link #releaseResourceLimiter(ResourceLimiter)} when it no longer needs the limiter.
+     */
+    public static ResourceLimiter acquireResourceLimiter(String resourceOid, int limit) {
+        synchronized (RESOURCE_LIMITERS) {
+            ResourceLimiter limiter = RESOURCE_LIMITERS.get(resourceOid);
+            if (limiter == null) {
+                LOGGER.debug("Creating concurrency limiter for resource {} with limit of {}", resourceOid, limit);
+                limiter = new ResourceLimiter(resourceOid, limit);
+                RESOURCE_LIMITERS.put(resourceOid, limiter);
+            } else {
+                limiter.setLimit(limit);
+            }
+            limiter.users++;
+            return limiter;
+        }
+    }
+
+    /**
+     * Unregisters the caller as a user of the limiter. The limiter is discarded when there are no users left.
+     */
+    public static void releaseResourceLimiter(ResourceLimiter limiter) {
+        synchronized (RESOURCE_LIMITERS) {
+            if (--limiter.users == 0) {
+                LOGGER.debug("Removing concurrency limiter for resource {}", limiter.resourceOid);
+                RESOURCE_LIMITERS.remove(limiter.resourceOid, limiter);
+            }
+        }
+    }
+
+    /**
+     * Limit of the resource limiter currently in use, or null if there is none. For diagnostics and tests.
+     */
+    public static Integer getResourceLimit(String resourceOid) {
+        synchronized (RESOURCE_LIMITERS) {
+            ResourceLimiter limiter = RESOURCE_LIMITERS.get(resourceOid);
+            return limiter != null ? limiter.limit : null;
+        }
+    }
+
+    /**
+     * Limits the number of items related to a resource being processed at once. The limit can be changed
+     * while the limiter is in use; items already in progress are not affected.
+     */
+    public static class ResourceLimiter {
+
+        private final String resourceOid;
+        private final AdjustableSemaphore semaphore;
+        private int limit;   // guarded by RESOURCE_LIMITERS
+        private int users;   // guarded by RESOURCE_LIMITERS
+
+        private ResourceLimiter(String resourceOid, int limit) {
+            this.resourceOid = resourceOid;
+            this.semaphore = new AdjustableSemaphore(limit);
+            this.limit = limit;
+        }
+
+        private void setLimit(int newLimit) {
+            if (newLimit > limit) {
+                semaphore.release(newLimit - limit);
+            } else if (newLimit < limit) {
+                semaphore.reducePermits(limit - newLimit);
+            }
+            if (newLimit != limit) {
+                LOGGER.debug("Changing concurrency limit for resource {} from {} to {}", resourceOid, limit, newLimit);
+                limit = newLimit;
+            }
+        }
+
+        public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+            return semaphore.tryAcquire(timeout, unit);
+        }
+
+        public void release() {
+            semaphore.release();
+        }
+    }
+
+    private static class AdjustableSemaphore extends Semaphore {
+
+        private AdjustableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
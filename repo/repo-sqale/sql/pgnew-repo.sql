@@ -117,6 +117,8 @@ CREATE TABLE m_object (
     version INTEGER NOT NULL DEFAULT 1,
     -- add GIN index for concrete tables where more than thousands of entries are expected (see m_user)
     ext JSONB,
+    -- target OIDs of parentOrgRef, relation and type are not stored, use GIN index like for ext
+    parentOrgRef_targetOids UUID[],
 
     -- prevents inserts to this table, but not to inherited ones; this makes it "abstract" table
     CHECK (FALSE) NO INHERIT
@@ -169,6 +171,8 @@ CREATE TABLE m_focus (
     timezone VARCHAR(255),
     passwordCreateTimestamp TIMESTAMP,
     passwordModifyTimestamp TIMESTAMP,
+    -- target OIDs of roleMembershipRef, see parentOrgRef_targetOids in m_object
+    roleMembershipRef_targetOids UUID[],
 
     CHECK (FALSE) NO INHERIT
 )
@@ -207,6 +211,8 @@ CREATE TRIGGER m_user_oid_delete_tr AFTER DELETE ON m_user
 CREATE INDEX m_user_name_orig_idx ON m_user (name_orig);
 ALTER TABLE m_user ADD CONSTRAINT m_user_name_norm_key UNIQUE (name_norm);
 CREATE INDEX m_user_ext_idx ON m_user USING gin (ext);
+CREATE INDEX m_user_parentOrgRef_targetOids_idx ON m_user USING gin (parentOrgRef_targetOids);
+CREATE INDEX m_user_roleMembershipRef_targetOids_idx ON m_user USING gin (roleMembershipRef_targetOids);
 
 CREATE TABLE m_shadow (
     oid UUID NOT NULL PRIMARY KEY REFERENCES m_object_oid(oid),
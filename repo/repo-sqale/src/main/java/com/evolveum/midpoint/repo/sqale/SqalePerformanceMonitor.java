@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.evolveum.midpoint.repo.api.perf.OperationPerformanceInformation;
+import com.evolveum.midpoint.repo.api.perf.PerformanceInformation;
+import com.evolveum.midpoint.repo.api.perf.PerformanceMonitor;
+import com.evolveum.midpoint.util.DebugUtil;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositoryPerformanceInformationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositoryStatisticsReportingConfigurationType;
+
+/**
+ * Performance monitor of {@link SqaleRepositoryService}.
+ * Repository operations are not measured yet, so the performance information is always empty;
+ * the configuration is only kept, so it can be applied in the usual way.
+ */
+public class SqalePerformanceMonitor implements PerformanceMonitor {
+
+    private volatile RepositoryStatisticsReportingConfigurationType configuration;
+
+    @Override
+    public void clearGlobalPerformanceInformation() {
+        // nothing is collected
+    }
+
+    @Override
+    public PerformanceInformation getGlobalPerformanceInformation() {
+        return EmptyPerformanceInformation.INSTANCE;
+    }
+
+    @Override
+    public void startThreadLocalPerformanceInformationCollection() {
+        // nothing is collected
+    }
+
+    @Override
+    public void stopThreadLocalPerformanceInformationCollection() {
+        // nothing is collected
+    }
+
+    @Override
+    public PerformanceInformation getThreadLocalPerformanceInformation() {
+        return EmptyPerformanceInformation.INSTANCE;
+    }
+
+    @Override
+    public void setConfiguration(RepositoryStatisticsReportingConfigurationType configuration) {
+        this.configuration = configuration;
+    }
+
+    public RepositoryStatisticsReportingConfigurationType getConfiguration() {
+        return configuration;
+    }
+
+    private static class EmptyPerformanceInformation implements PerformanceInformation {
+
+        private static final EmptyPerformanceInformation INSTANCE = new EmptyPerformanceInformation();
+
+        @Override
+        public void clear() {
+        }
+
+        @Override
+        public Map<String, OperationPerformanceInformation> getAllData() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public RepositoryPerformanceInformationType toRepositoryPerformanceInformationType() {
+            return new RepositoryPerformanceInformationType();
+        }
+
+        @Override
+        public int getInvocationCount(String operation) {
+            return 0;
+        }
+
+        @SuppressWarnings("MethodDoesntCallSuperMethod")
+        @Override
+        public PerformanceInformation clone() {
+            return this; // immutable
+        }
+
+        @Override
+        public String debugDump(int indent) {
+            StringBuilder sb = new StringBuilder();
+            DebugUtil.indentDebugDump(sb, indent);
+            sb.append("No repository performance information collected");
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale;
+
+import org.apache.commons.configuration2.Configuration;
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.repo.api.RepositoryServiceFactoryException;
+
+/**
+ * Configuration of the new repository, read from the "repository" section of config.xml.
+ * Only PostgreSQL is supported, so there is no database/dialect setting.
+ */
+public class SqaleRepositoryConfiguration {
+
+    public static final String PROPERTY_JDBC_URL = "jdbcUrl";
+    public static final String PROPERTY_JDBC_USERNAME = "jdbcUsername";
+    public static final String PROPERTY_JDBC_PASSWORD = "jdbcPassword";
+    public static final String PROPERTY_MIN_POOL_SIZE = "minPoolSize";
+    public static final String PROPERTY_MAX_POOL_SIZE = "maxPoolSize";
+    public static final String PROPERTY_ITERATIVE_SEARCH_BATCH_SIZE = "iterativeSearchByPagingBatchSize";
+
+    private static final int DEFAULT_MIN_POOL_SIZE = 8;
+    private static final int DEFAULT_MAX_POOL_SIZE = 20;
+    private static final int DEFAULT_ITERATIVE_SEARCH_BATCH_SIZE = 100;
+
+    private final String jdbcUrl;
+    private final String jdbcUsername;
+    private final String jdbcPassword;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final int iterativeSearchBatchSize;
+
+    public SqaleRepositoryConfiguration(@NotNull Configuration configuration)
+            throws RepositoryServiceFactoryException {
+        jdbcUrl = configuration.getString(PROPERTY_JDBC_URL);
+        if (jdbcUrl == null) {
+            throw new RepositoryServiceFactoryException(
+                    "Property " + PROPERTY_JDBC_URL + " is required for the new repository");
+        }
+        jdbcUsername = configuration.getString(PROPERTY_JDBC_USERNAME);
+        jdbcPassword = configuration.getString(PROPERTY_JDBC_PASSWORD);
+        minPoolSize = configuration.getInt(PROPERTY_MIN_POOL_SIZE, DEFAULT_MIN_POOL_SIZE);
+        maxPoolSize = configuration.getInt(PROPERTY_MAX_POOL_SIZE, DEFAULT_MAX_POOL_SIZE);
+        iterativeSearchBatchSize = configuration.getInt(
+                PROPERTY_ITERATIVE_SEARCH_BATCH_SIZE, DEFAULT_ITERATIVE_SEARCH_BATCH_SIZE);
+    }
+
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    public String getJdbcUsername() {
+        return jdbcUsername;
+    }
+
+    public String getJdbcPassword() {
+        return jdbcPassword;
+    }
+
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public int getIterativeSearchBatchSize() {
+        return iterativeSearchBatchSize;
+    }
+}
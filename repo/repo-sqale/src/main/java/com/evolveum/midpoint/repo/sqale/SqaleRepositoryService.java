@@ -6,45 +6,253 @@
  */
 package com.evolveum.midpoint.repo.sqale;
 
-import java.util.Collection;
+import static com.evolveum.midpoint.repo.sqlbase.IterativeSearchSupport.isExplicitPaging;
+import static com.evolveum.midpoint.repo.sqlbase.IterativeSearchSupport.searchResultMetadata;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import javax.xml.namespace.QName;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.sql.SQLQuery;
+import com.querydsl.sql.dml.DefaultMapper;
 import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.prism.Containerable;
+import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ItemDeltaCollectionsUtil;
+import com.evolveum.midpoint.prism.delta.builder.S_ItemEntry;
+import com.evolveum.midpoint.prism.match.MatchingRuleRegistry;
+import com.evolveum.midpoint.prism.query.ObjectFilter;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
 import com.evolveum.midpoint.repo.api.*;
 import com.evolveum.midpoint.repo.api.perf.PerformanceMonitor;
 import com.evolveum.midpoint.repo.api.query.ObjectFilterExpressionEvaluator;
+import com.evolveum.midpoint.repo.sqale.mapping.ObjectSqlTransformer;
+import com.evolveum.midpoint.repo.sqale.mapping.QObjectMapping;
+import com.evolveum.midpoint.repo.sqale.qmodel.MObject;
+import com.evolveum.midpoint.repo.sqale.qmodel.QFocus;
+import com.evolveum.midpoint.repo.sqale.qmodel.QObject;
+import com.evolveum.midpoint.repo.sqlbase.ConflictWatcherImpl;
+import com.evolveum.midpoint.repo.sqlbase.PageOf;
+import com.evolveum.midpoint.repo.sqlbase.QueryException;
+import com.evolveum.midpoint.repo.sqlbase.SqlQueryContext;
+import com.evolveum.midpoint.repo.sqlbase.SqlRepoContext;
 import com.evolveum.midpoint.schema.*;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.result.OperationResultStatus;
+import com.evolveum.midpoint.schema.util.FocusTypeUtil;
+import com.evolveum.midpoint.schema.util.ObjectQueryUtil;
+import com.evolveum.midpoint.schema.util.ObjectTypeUtil;
+import com.evolveum.midpoint.util.PrettyPrinter;
 import com.evolveum.midpoint.util.exception.*;
 import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+import com.evolveum.prism.xml.ns._public.query_3.SearchFilterType;
 
 /**
  * Repository implementation based on SQL, JDBC and Querydsl without any ORM.
  * WORK IN PROGRESS:
  * It will be PostgreSQL only or at least PG optimized with generic SQL support for other unsupported DB.
  * Possible Oracle support is in play.
+ * <p>
+ * Objects are stored in the tables inheriting from M_OBJECT, full object (JSON) is the source
+ * of truth, typed columns, ext JSONB and arrays of reference target OIDs are used for searching.
+ * Each operation uses a single JDBC transaction; there is no session or persistence context.
+ * Only object types that have their tables in the new schema are supported so far,
+ * other types fail with {@link SchemaException} (or are not found when accessed by OID).
+ * <p>
+ * Features that need data not stored in the new schema yet (containers, org closure,
+ * shadow owners, sequences, query diagnostics) are not implemented yet.
+ * Object selectors with org specification never match.
  */
 public class SqaleRepositoryService implements RepositoryService {
 
+    private static final Trace LOGGER = TraceManager.getTrace(SqaleRepositoryService.class);
+
+    private static final String IMPLEMENTATION_SHORT_NAME = "SQaLe";
+    private static final String IMPLEMENTATION_DESCRIPTION =
+            "Implementation that stores data in PostgreSQL database using JDBC with Querydsl.";
+    private static final String DETAILS_DATABASE_PRODUCT = "databaseProduct";
+    private static final String DETAILS_TRANSACTION_ISOLATION = "transactionIsolation";
+    private static final String DETAILS_ERROR = "error";
+
+    private static final String OP_REPOSITORY_SELF_TEST =
+            SqaleRepositoryService.class.getName() + ".repositorySelfTest";
+
+    /** Timeout for the connection validity check in self test, in seconds. */
+    private static final int SELF_TEST_CONNECTION_TIMEOUT = 10;
+
+    /** SQL state of unique constraint violation in PostgreSQL. */
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    /** Just a safeguard, watchers per thread should be at most 1-2. */
+    private static final int MAX_CONFLICT_WATCHERS = 10;
+
+    /** Max number of diagnostic information values of given type kept in the object. */
+    private static final Map<String, Integer> DIAG_INFO_CLEANUP_POLICY =
+            Map.of(SchemaConstants.TASK_THREAD_DUMP_URI, 5);
+    private static final int DEFAULT_DIAG_INFO_LIMIT = 2;
+
+    private final DataSource dataSource;
+    private final SqlRepoContext sqlRepoContext;
+    private final PrismContext prismContext;
+    private final MatchingRuleRegistry matchingRuleRegistry;
+    private final RelationRegistry relationRegistry;
+    private final SqaleRepositoryConfiguration repositoryConfiguration;
+
+    private final ThreadLocal<List<ConflictWatcherImpl>> conflictWatchersThreadLocal =
+            ThreadLocal.withInitial(ArrayList::new);
+
+    private volatile FullTextSearchConfigurationType fullTextSearchConfiguration;
+
+    private final SqalePerformanceMonitor performanceMonitor = new SqalePerformanceMonitor();
+
+    public SqaleRepositoryService(
+            DataSource dataSource,
+            SqlRepoContext sqlRepoContext,
+            PrismContext prismContext,
+            MatchingRuleRegistry matchingRuleRegistry,
+            RelationRegistry relationRegistry,
+            SqaleRepositoryConfiguration repositoryConfiguration) {
+        this.dataSource = dataSource;
+        this.sqlRepoContext = sqlRepoContext;
+        this.prismContext = prismContext;
+        this.matchingRuleRegistry = matchingRuleRegistry;
+        this.relationRegistry = relationRegistry;
+        this.repositoryConfiguration = repositoryConfiguration;
+    }
+
     @Override
     public @NotNull <O extends ObjectType> PrismObject<O> getObject(Class<O> type, String oid,
             Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException {
-        return null;
-        // TODO
+        OperationResult result = parentResult.subresult(GET_OBJECT)
+                .addQualifier(type.getSimpleName())
+                .setMinor()
+                .addParam("type", type.getName())
+                .addParam("oid", oid)
+                .build();
+        try {
+            PrismObject<O> object = readObject(type, oid, false).asPrismObject();
+            invokeConflictWatchers(w -> w.afterGetObject(object));
+            return object;
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
+    private <S extends ObjectType, Q extends QObject<R>, R extends MObject> S readObject(
+            Class<S> type, String oid, boolean forUpdate)
+            throws ObjectNotFoundException, SchemaException {
+        R row = readRow(type, oid, forUpdate, null);
+        return toSchemaObject(type, row);
+    }
+
+    private <S extends ObjectType, Q extends QObject<R>, R extends MObject> S toSchemaObject(
+            Class<S> type, MObject row) throws SchemaException {
+        QObjectMapping<S, Q, R> mapping = mapping(type);
+        //noinspection unchecked
+        return mapping.createTransformer(prismContext, sqlRepoContext).toSchemaObject((R) row);
+    }
+
+    /**
+     * Reads the row of the object, optionally locking it.
+     * If connection is null, new one is used and committed right away.
+     */
+    private <S extends ObjectType, Q extends QObject<R>, R extends MObject> @NotNull R readRow(
+            Class<S> type, String oid, boolean forUpdate, Connection connection)
+            throws ObjectNotFoundException {
+        QObjectMapping<S, Q, R> mapping = storedMapping(type, oid);
+        UUID uuid = oidToUuid(type, oid);
+        Q root = mapping.defaultAlias();
+        R row;
+        if (connection != null) {
+            row = selectRow(connection, root, uuid, forUpdate);
+        } else {
+            try (Connection conn = dataSource.getConnection()) {
+                row = selectRow(conn, root, uuid, forUpdate);
+                conn.commit();
+            } catch (SQLException e) {
+                throw new SystemException("Couldn't read object " + oid, e);
+            }
+        }
+        if (row == null) {
+            throw new ObjectNotFoundException("Object of type '" + type.getSimpleName()
+                    + "' with OID '" + oid + "' was not found.", oid);
+        }
+        return row;
+    }
+
+    private <Q extends QObject<R>, R extends MObject> R selectRow(
+            Connection conn, Q root, UUID uuid, boolean forUpdate) {
+        SQLQuery<R> query = sqlRepoContext.newQuery(conn)
+                .select(root)
+                .from(root)
+                .where(root.oid.eq(uuid));
+        if (forUpdate) {
+            query.forUpdate();
+        }
+        return query.fetchOne();
     }
 
     @Override
     public <T extends ObjectType> String getVersion(
             Class<T> type, String oid, OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException {
-        return null;
-        // TODO
+        OperationResult result = parentResult.subresult(GET_VERSION)
+                .addQualifier(type.getSimpleName())
+                .setMinor()
+                .addParam("type", type.getName())
+                .addParam("oid", oid)
+                .build();
+        try {
+            String version = getVersionInternal(type, oid);
+            invokeConflictWatchers(w -> w.afterGetVersion(oid, version));
+            return version;
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
+    private <S extends ObjectType, Q extends QObject<R>, R extends MObject> String getVersionInternal(
+            Class<S> type, String oid) throws ObjectNotFoundException {
+        QObjectMapping<S, Q, R> mapping = storedMapping(type, oid);
+        UUID uuid = oidToUuid(type, oid);
+        Q root = mapping.defaultAlias();
+        Integer version;
+        try (Connection conn = dataSource.getConnection()) {
+            version = sqlRepoContext.newQuery(conn)
+                    .select(root.version)
+                    .from(root)
+                    .where(root.oid.eq(uuid))
+                    .fetchOne();
+            conn.commit();
+        } catch (SQLException e) {
+            throw new SystemException("Couldn't read version of object " + oid, e);
+        }
+        if (version == null) {
+            throw new ObjectNotFoundException("Object of type '" + type.getSimpleName()
+                    + "' with OID '" + oid + "' was not found.", oid);
+        }
+        return String.valueOf(version);
     }
 
     // Add/modify/delete
@@ -53,8 +261,78 @@ public class SqaleRepositoryService implements RepositoryService {
     public <T extends ObjectType> String addObject(
             PrismObject<T> object, RepoAddOptions options, OperationResult parentResult)
             throws ObjectAlreadyExistsException, SchemaException {
-        return null;
-        // TODO
+        OperationResult result = parentResult.subresult(ADD_OBJECT)
+                .addQualifier(object.asObjectable().getClass().getSimpleName())
+                .addParam("object", object)
+                .addParam("options", String.valueOf(options))
+                .build();
+        try {
+            if (object.getOid() == null) {
+                object.setOid(UUID.randomUUID().toString());
+            }
+            String oid = addObjectInternal(object.asObjectable(), RepoAddOptions.isOverwrite(options));
+            invokeConflictWatchers(w -> w.afterAddObject(oid, object));
+            return oid;
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
+    private <S extends ObjectType, Q extends QObject<R>, R extends MObject> String addObjectInternal(
+            S schemaObject, boolean overwrite)
+            throws ObjectAlreadyExistsException, SchemaException {
+        //noinspection unchecked
+        QObjectMapping<S, Q, R> mapping = concreteMapping((Class<S>) schemaObject.getClass());
+        String oid = schemaObject.getOid();
+        Q root = mapping.defaultAlias();
+        try (Connection conn = dataSource.getConnection()) {
+            try {
+                int version = 0;
+                if (overwrite) {
+                    // Overwritten object can be of any type, that's why we search in M_OBJECT.
+                    MObject existing = selectRow(conn,
+                            QObjectMapping.INSTANCE.defaultAlias(), oidToUuid(oid), true);
+                    if (existing != null) {
+                        version = existing.version + 1;
+                        sqlRepoContext.newDelete(conn, QObjectMapping.INSTANCE.defaultAlias())
+                                .where(QObjectMapping.INSTANCE.defaultAlias().oid.eq(existing.oid))
+                                .execute();
+                    }
+                }
+                schemaObject.setVersion(String.valueOf(version));
+                insertRow(conn, mapping, root, schemaObject, version);
+                conn.commit();
+                LOGGER.trace("Added object {} version {}", oid, version);
+                return oid;
+            } catch (RuntimeException | SchemaException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (com.querydsl.core.QueryException e) {
+            if (isUniqueViolation(e)) {
+                throw new ObjectAlreadyExistsException("Conflicting object already exists, OID "
+                        + oid + ": " + e.getCause().getMessage(), e);
+            }
+            throw e;
+        } catch (SQLException e) {
+            throw new SystemException("Couldn't add object " + oid, e);
+        }
+    }
+
+    private <S extends ObjectType, Q extends QObject<R>, R extends MObject> void insertRow(
+            Connection conn, QObjectMapping<S, Q, R> mapping, Q root, S schemaObject, int version)
+            throws SchemaException {
+        ObjectSqlTransformer<S, Q, R> transformer =
+                mapping.createTransformer(prismContext, sqlRepoContext);
+        R row = transformer.toRowObject(schemaObject);
+        row.version = version;
+        row.fullObject = transformer.serializeFullObject(schemaObject);
+        sqlRepoContext.newInsert(conn, root)
+                .populate(row)
+                .execute();
     }
 
     @Override
@@ -62,8 +340,7 @@ public class SqaleRepositoryService implements RepositoryService {
             Class<T> type, String oid,
             Collection<? extends ItemDelta<?, ?>> modifications, OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException {
-        return null;
-        // TODO
+        return modifyObject(type, oid, modifications, null, parentResult);
     }
 
     @Override
@@ -71,8 +348,11 @@ public class SqaleRepositoryService implements RepositoryService {
             Class<T> type, String oid, Collection<? extends ItemDelta<?, ?>> modifications,
             RepoModifyOptions options, OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException {
-        return null;
-        // TODO
+        try {
+            return modifyObject(type, oid, modifications, null, options, parentResult);
+        } catch (PreconditionViolationException e) {
+            throw new AssertionError(e); // with null precondition we couldn't get this exception
+        }
     }
 
     @Override
@@ -85,16 +365,129 @@ public class SqaleRepositoryService implements RepositoryService {
             OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException, PreconditionViolationException {
 
-        return null;
-        // TODO
+        OperationResult result = parentResult.subresult(MODIFY_OBJECT)
+                .addQualifier(type.getSimpleName())
+                .addParam("type", type.getName())
+                .addParam("oid", oid)
+                .addArbitraryObjectCollectionAsParam("modifications", modifications)
+                .build();
+        try {
+            if (modifications.isEmpty() && !RepoModifyOptions.isExecuteIfNoChanges(options)) {
+                LOGGER.debug("Modification list is empty, nothing was modified.");
+                result.recordStatus(OperationResultStatus.SUCCESS,
+                        "Modification list is empty, nothing was modified.");
+                return new ModifyObjectResult<>(modifications);
+            }
+            ModifyObjectResult<T> modifyResult =
+                    modifyObjectInternal(type, oid, modifications, precondition);
+            invokeConflictWatchers(w -> w.afterModifyObject(oid));
+            return modifyResult;
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
+    private <S extends ObjectType, Q extends QObject<R>, R extends MObject>
+    ModifyObjectResult<S> modifyObjectInternal(
+            Class<S> type, String oid, Collection<? extends ItemDelta<?, ?>> modifications,
+            ModificationPrecondition<S> precondition)
+            throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException,
+            PreconditionViolationException {
+        try (Connection conn = dataSource.getConnection()) {
+            try {
+                // Row is locked, concurrent modifications of the same object are serialized.
+                MObject row = readRow(type, oid, true, conn);
+                S schemaObject = toSchemaObject(type, row);
+                PrismObject<S> prismObject = schemaObject.asPrismObject();
+                PrismObject<S> objectBefore = prismObject.clone();
+                invokeConflictWatchers(w -> w.beforeModifyObject(prismObject));
+
+                if (precondition != null && !precondition.holds(prismObject)) {
+                    throw new PreconditionViolationException(
+                            "Modification precondition does not hold for " + prismObject);
+                }
+                ItemDeltaCollectionsUtil.applyTo(modifications, prismObject);
+                int newVersion = row.version + 1;
+                prismObject.setVersion(String.valueOf(newVersion));
+
+                //noinspection unchecked
+                QObjectMapping<S, Q, R> mapping = concreteMapping(
+                        (Class<S>) schemaObject.getClass());
+                Q root = mapping.defaultAlias();
+                ObjectSqlTransformer<S, Q, R> transformer =
+                        mapping.createTransformer(prismContext, sqlRepoContext);
+                R newRow = transformer.toRowObject(schemaObject);
+                newRow.version = newVersion;
+                newRow.fullObject = transformer.serializeFullObject(schemaObject);
+                sqlRepoContext.newUpdate(conn, root)
+                        .populate(newRow, DefaultMapper.WITH_NULL_BINDINGS)
+                        .where(root.oid.eq(row.oid))
+                        .execute();
+                conn.commit();
+                LOGGER.trace("Modified object {} to version {}", oid, newVersion);
+                return new ModifyObjectResult<>(objectBefore, prismObject, modifications);
+            } catch (RuntimeException | SchemaException | ObjectNotFoundException
+                    | PreconditionViolationException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (com.querydsl.core.QueryException e) {
+            if (isUniqueViolation(e)) {
+                throw new ObjectAlreadyExistsException("Conflicting object already exists: "
+                        + e.getCause().getMessage(), e);
+            }
+            throw e;
+        } catch (SQLException e) {
+            throw new SystemException("Couldn't modify object " + oid, e);
+        }
     }
 
     @Override
     public @NotNull <T extends ObjectType> DeleteObjectResult deleteObject(
             Class<T> type, String oid, OperationResult parentResult)
             throws ObjectNotFoundException {
-        return null;
-        // TODO
+        OperationResult result = parentResult.subresult(DELETE_OBJECT)
+                .addQualifier(type.getSimpleName())
+                .addParam("type", type.getName())
+                .addParam("oid", oid)
+                .build();
+        try {
+            DeleteObjectResult deleteResult = deleteObjectInternal(type, oid);
+            invokeConflictWatchers(w -> w.afterDeleteObject(oid));
+            return deleteResult;
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
+    private <S extends ObjectType, Q extends QObject<R>, R extends MObject>
+    DeleteObjectResult deleteObjectInternal(Class<S> type, String oid)
+            throws ObjectNotFoundException {
+        QObjectMapping<S, Q, R> mapping = storedMapping(type, oid);
+        Q root = mapping.defaultAlias();
+        try (Connection conn = dataSource.getConnection()) {
+            try {
+                R row = readRow(type, oid, true, conn);
+                // DELETE on the table deletes rows from inherited tables as well.
+                sqlRepoContext.newDelete(conn, root)
+                        .where(root.oid.eq(row.oid))
+                        .execute();
+                conn.commit();
+                return new DeleteObjectResult(
+                        new String(row.fullObject, StandardCharsets.UTF_8));
+            } catch (RuntimeException | ObjectNotFoundException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new SystemException("Couldn't delete object " + oid, e);
+        }
     }
 
     // Counting/searching
@@ -103,8 +496,35 @@ public class SqaleRepositoryService implements RepositoryService {
     public <T extends ObjectType> int countObjects(Class<T> type, ObjectQuery query,
             Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult)
             throws SchemaException {
-        return 0;
-        // TODO
+        OperationResult result = parentResult.subresult(COUNT_OBJECTS)
+                .addQualifier(type.getSimpleName())
+                .addParam("type", type.getName())
+                .addParam("query", query)
+                .build();
+        try {
+            mapping(type); // fails for unsupported types
+            SqlQueryContext<T, ?, ?> context =
+                    SqlQueryContext.from(type, prismContext, sqlRepoContext);
+            if (query != null) {
+                context.process(query.getFilter());
+            }
+            context.processOptions(options);
+
+            try (Connection conn = dataSource.getConnection()) {
+                int count = context.executeCount(conn);
+                conn.commit();
+                return count;
+            }
+        } catch (QueryException | SQLException e) {
+            result.recordFatalError(e);
+            throw new SystemException("Couldn't count objects of type " + type.getSimpleName()
+                    + ": " + e.getMessage(), e);
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
     }
 
     @Override
@@ -112,23 +532,204 @@ public class SqaleRepositoryService implements RepositoryService {
             Class<T> type, ObjectQuery query,
             Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult)
             throws SchemaException {
-        return null;
-        // TODO
+        OperationResult result = parentResult.subresult(SEARCH_OBJECTS)
+                .addQualifier(type.getSimpleName())
+                .addParam("type", type.getName())
+                .addParam("query", query)
+                .build();
+        try {
+            mapping(type); // fails for unsupported types
+            SqlQueryContext<T, ?, ?> context =
+                    SqlQueryContext.from(type, prismContext, sqlRepoContext);
+            if (query != null) {
+                context.process(query.getFilter());
+                context.processObjectPaging(query.getPaging());
+            }
+            context.processOptions(options);
+            return executeSearch(context);
+        } catch (QueryException e) {
+            result.recordFatalError(e);
+            throw new SystemException("Couldn't search objects of type " + type.getSimpleName()
+                    + ": " + e.getMessage(), e);
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
     }
 
+    private <T extends ObjectType> SearchResultList<PrismObject<T>> executeSearch(
+            SqlQueryContext<T, ?, ?> context) throws QueryException, SchemaException {
+        PageOf<Tuple> rows;
+        try (Connection conn = dataSource.getConnection()) {
+            rows = context.executeQuery(conn);
+            conn.commit();
+        } catch (SQLException e) {
+            throw new SystemException("Couldn't search objects: " + e.getMessage(), e);
+        }
+
+        PageOf<T> objects = context.transformToSchemaType(rows);
+        SearchResultList<PrismObject<T>> list = new SearchResultList<>();
+        for (T object : objects.content()) {
+            list.add(object.asPrismObject());
+        }
+        return list;
+    }
+
+    /**
+     * Iterative search uses keyset pagination on OID: each batch is a separate short query
+     * (and transaction) selecting objects with OID greater than the last OID of the previous batch.
+     * No connection is held while the handler is processing the objects.
+     * If the query contains explicit paging, simple search is used instead.
+     */
     @Override
     public <T extends ObjectType> SearchResultMetadata searchObjectsIterative(
             Class<T> type, ObjectQuery query, ResultHandler<T> handler,
             Collection<SelectorOptions<GetOperationOptions>> options, boolean strictlySequential,
             OperationResult parentResult) throws SchemaException {
-        return null;
-        // TODO
+        OperationResult result = parentResult.subresult(SEARCH_OBJECTS_ITERATIVE)
+                .addQualifier(type.getSimpleName())
+                .addParam("type", type.getName())
+                .addParam("query", query)
+                .build();
+        try {
+            if (query != null && isExplicitPaging(query.getPaging())) {
+                SearchResultList<PrismObject<T>> objects =
+                        searchObjects(type, query, options, result);
+                for (PrismObject<T> object : objects) {
+                    if (!handler.handle(object, result)) {
+                        break;
+                    }
+                }
+                return searchResultMetadata(objects.size());
+            }
+            return searchObjectsIterativeByKeyset(type, query, handler, options, result);
+        } catch (QueryException e) {
+            result.recordFatalError(e);
+            throw new SystemException("Couldn't search objects of type " + type.getSimpleName()
+                    + ": " + e.getMessage(), e);
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
     }
 
+    private <S extends ObjectType, Q extends QObject<R>, R extends MObject>
+    SearchResultMetadata searchObjectsIterativeByKeyset(
+            Class<S> type, ObjectQuery query, ResultHandler<S> handler,
+            Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result)
+            throws QueryException, SchemaException {
+        mapping(type); // fails for unsupported types
+        int batchSize = repositoryConfiguration.getIterativeSearchBatchSize();
+        int handled = 0;
+        UUID lastOid = null;
+        while (true) {
+            SqlQueryContext<S, Q, R> context =
+                    SqlQueryContext.from(type, prismContext, sqlRepoContext);
+            if (query != null) {
+                context.process(query.getFilter());
+            }
+            context.processOptions(options);
+            Q root = context.root();
+            if (lastOid != null) {
+                context.sqlQuery().where(root.oid.gt(lastOid));
+            }
+            context.sqlQuery().orderBy(root.oid.asc()).limit(batchSize);
+
+            PageOf<Tuple> rows;
+            try (Connection conn = dataSource.getConnection()) {
+                rows = context.executeQuery(conn);
+                conn.commit();
+            } catch (SQLException e) {
+                throw new SystemException("Couldn't search objects: " + e.getMessage(), e);
+            }
+            PageOf<S> objects = context.transformToSchemaType(rows);
+            for (S object : objects.content()) {
+                handled++;
+                if (!handler.handle(object.asPrismObject(), result)) {
+                    return searchResultMetadata(handled);
+                }
+            }
+            if (rows.content().size() < batchSize) {
+                return searchResultMetadata(handled);
+            }
+            lastOid = rows.content().get(rows.content().size() - 1).get(root).oid;
+        }
+    }
+
+    /**
+     * Returns mapping for the type or throws {@link SchemaException}
+     * if the type has no table in the new repository yet.
+     */
+    private <S extends ObjectType, Q extends QObject<R>, R extends MObject>
+    QObjectMapping<S, Q, R> mapping(Class<S> type) throws SchemaException {
+        if (!sqlRepoContext.hasMappingForSchemaType(type)) {
+            throw new SchemaException("Object type " + type.getSimpleName()
+                    + " is not supported by the new repository yet");
+        }
+        //noinspection unchecked
+        return (QObjectMapping<S, Q, R>) sqlRepoContext.<S, R, Q>getMappingBySchemaType(type);
+    }
+
+    /**
+     * Returns mapping for the type of an existing object. Objects of types without a table
+     * can't be stored in the repository, so they are reported as not found.
+     */
+    private <S extends ObjectType, Q extends QObject<R>, R extends MObject>
+    QObjectMapping<S, Q, R> storedMapping(Class<S> type, String oid) throws ObjectNotFoundException {
+        if (!sqlRepoContext.hasMappingForSchemaType(type)) {
+            throw new ObjectNotFoundException("Object of type '" + type.getSimpleName()
+                    + "' with OID '" + oid + "' was not found (type is not stored in the new repository yet).", oid);
+        }
+        //noinspection unchecked
+        return (QObjectMapping<S, Q, R>) sqlRepoContext.<S, R, Q>getMappingBySchemaType(type);
+    }
+
+    /**
+     * Returns mapping for the type that can be inserted into (not for an abstract table).
+     * Objects of abstract types (e.g. plain {@link ObjectType}) can't be stored,
+     * which is an error of the object, not a missing feature of the repository.
+     */
+    private <S extends ObjectType, Q extends QObject<R>, R extends MObject>
+    QObjectMapping<S, Q, R> concreteMapping(Class<S> type) throws SchemaException {
+        QObjectMapping<S, Q, R> mapping = mapping(type);
+        if (mapping.tableName().equals(QObject.TABLE_NAME)
+                || mapping.tableName().equals(QFocus.TABLE_NAME)) {
+            throw new SchemaException("Can't store object of abstract type "
+                    + type.getSimpleName());
+        }
+        return mapping;
+    }
+
+    private UUID oidToUuid(Class<?> type, String oid) throws ObjectNotFoundException {
+        try {
+            return oidToUuid(oid);
+        } catch (IllegalArgumentException e) {
+            throw new ObjectNotFoundException("Object of type '" + type.getSimpleName()
+                    + "' with OID '" + oid + "' was not found (OID is not UUID).", oid);
+        }
+    }
+
+    private UUID oidToUuid(String oid) {
+        return UUID.fromString(oid);
+    }
+
+    private boolean isUniqueViolation(com.querydsl.core.QueryException e) {
+        return e.getCause() instanceof SQLException
+                && UNIQUE_VIOLATION.equals(((SQLException) e.getCause()).getSQLState());
+    }
+
+
+    // Containers, org structure, shadow owners and sequences are not stored in the new schema yet.
+
     @Override
     public <T extends Containerable> int countContainers(Class<T> type, ObjectQuery query,
             Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult) {
         return 0;
+        // TODO
     }
 
     @Override
@@ -161,6 +762,12 @@ public class SqaleRepositoryService implements RepositoryService {
         // TODO
     }
 
+    @Override
+    public void testOrgClosureConsistency(boolean repairIfNecessary, OperationResult testResult) {
+
+        // TODO
+    }
+
     @Override
     public <F extends FocusType> PrismObject<F> searchShadowOwner(String shadowOid,
             Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult) {
@@ -184,84 +791,282 @@ public class SqaleRepositoryService implements RepositoryService {
     }
 
     @Override
-    public RepositoryDiag getRepositoryDiag() {
+    public RepositoryQueryDiagResponse executeQueryDiagnostics(
+            RepositoryQueryDiagRequest request, OperationResult result) {
         return null;
         // TODO
     }
 
+    /**
+     * Operations of this repository are not measured yet, the monitor only accepts the configuration.
+     */
     @Override
-    public void repositorySelfTest(OperationResult parentResult) {
-
-        // TODO
+    public PerformanceMonitor getPerformanceMonitor() {
+        return performanceMonitor;
     }
 
+    // Diagnostics
+
     @Override
-    public void testOrgClosureConsistency(boolean repairIfNecessary, OperationResult testResult) {
+    public RepositoryDiag getRepositoryDiag() {
+        LOGGER.debug("Getting repository diagnostics.");
 
-        // TODO
+        RepositoryDiag diag = new RepositoryDiag();
+        diag.setImplementationShortName(IMPLEMENTATION_SHORT_NAME);
+        diag.setImplementationDescription(IMPLEMENTATION_DESCRIPTION);
+        diag.setRepositoryUrl(repositoryConfiguration.getJdbcUrl());
+        diag.setEmbedded(false);
+
+        List<LabeledString> details = new ArrayList<>();
+        diag.setAdditionalDetails(details);
+        try (Connection conn = dataSource.getConnection()) {
+            DatabaseMetaData metaData = conn.getMetaData();
+            diag.setDriverShortName(metaData.getDriverName());
+            diag.setDriverVersion(metaData.getDriverVersion());
+            details.add(new LabeledString(DETAILS_DATABASE_PRODUCT,
+                    metaData.getDatabaseProductName() + " " + metaData.getDatabaseProductVersion()));
+            details.add(new LabeledString(DETAILS_TRANSACTION_ISOLATION,
+                    String.valueOf(conn.getTransactionIsolation())));
+            conn.rollback();
+        } catch (SQLException e) {
+            LOGGER.debug("Couldn't read repository details from the connection", e);
+            details.add(new LabeledString(DETAILS_ERROR, e.getMessage()));
+        }
+        return diag;
     }
 
+    /**
+     * Checks that a valid connection to the database can be obtained.
+     */
     @Override
-    public RepositoryQueryDiagResponse executeQueryDiagnostics(
-            RepositoryQueryDiagRequest request, OperationResult result) {
-        return null;
-        // TODO
+    public void repositorySelfTest(OperationResult parentResult) {
+        OperationResult result = parentResult.createSubresult(OP_REPOSITORY_SELF_TEST);
+        try (Connection conn = dataSource.getConnection()) {
+            if (!conn.isValid(SELF_TEST_CONNECTION_TIMEOUT)) {
+                result.recordFatalError("Connection to the repository database is not valid");
+            }
+        } catch (SQLException e) {
+            result.recordFatalError("Couldn't get connection to the repository database: "
+                    + e.getMessage(), e);
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
+    /**
+     * This is an approximate implementation, not taking care of two clients appending
+     * the diag information concurrently, see the original repository implementation.
+     */
+    @Override
+    public <T extends ObjectType> void addDiagnosticInformation(Class<T> type, String oid,
+            DiagnosticInformationType information, OperationResult parentResult)
+            throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException {
+        OperationResult result = parentResult.subresult(ADD_DIAGNOSTIC_INFORMATION)
+                .addQualifier(type.getSimpleName())
+                .addParam("type", type)
+                .addParam("oid", oid)
+                .build();
+        try {
+            String infoType = information.getType();
+            if (infoType == null) {
+                throw new IllegalArgumentException("Diagnostic information type is not specified");
+            }
+            int limit = DIAG_INFO_CLEANUP_POLICY.getOrDefault(infoType, DEFAULT_DIAG_INFO_LIMIT);
+            PrismObject<T> object = getObject(type, oid, null, result);
+            List<DiagnosticInformationType> oldToPrune =
+                    object.asObjectable().getDiagnosticInformation().stream()
+                            .filter(i -> infoType.equals(i.getType()))
+                            .collect(Collectors.toList());
+            oldToPrune.sort(Comparator.nullsFirst(
+                    Comparator.comparing(i -> XmlTypeConverter.toDate(i.getTimestamp()))));
+            int pruneToSize = limit > 0 ? limit - 1 : 0;
+            List<DiagnosticInformationType> toDelete = oldToPrune.size() > pruneToSize
+                    ? oldToPrune.subList(0, oldToPrune.size() - pruneToSize)
+                    : Collections.emptyList();
+            LOGGER.trace("Limit for diagnostic information of type '{}': {}, deleting {} value(s)",
+                    infoType, limit, toDelete.size());
+
+            S_ItemEntry deltaBuilder = prismContext.deltaFor(type);
+            if (!toDelete.isEmpty()) {
+                deltaBuilder = deltaBuilder.item(ObjectType.F_DIAGNOSTIC_INFORMATION)
+                        .deleteRealValues(toDelete);
+            }
+            if (limit > 0) {
+                deltaBuilder = deltaBuilder.item(ObjectType.F_DIAGNOSTIC_INFORMATION).add(information);
+            }
+            List<ItemDelta<?, ?>> modifications = deltaBuilder.asItemDeltas();
+            if (!modifications.isEmpty()) {
+                modifyObject(type, oid, modifications, result);
+            }
+        } catch (Throwable t) {
+            result.recordFatalError("Couldn't add diagnostic information: " + t.getMessage(), t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
     }
 
+    // Selectors, configuration and conflict watchers
+
+    /**
+     * Org specification in the selector is not supported because there is no org closure yet.
+     */
     @Override
     public <O extends ObjectType> boolean selectorMatches(
             ObjectSelectorType objectSelector, PrismObject<O> object,
             ObjectFilterExpressionEvaluator filterEvaluator, Trace logger, String logMessagePrefix)
             throws SchemaException, ObjectNotFoundException, ExpressionEvaluationException,
             CommunicationException, ConfigurationException, SecurityViolationException {
-        return false;
-        // TODO
+        if (objectSelector == null) {
+            logger.trace("{} null object specification", logMessagePrefix);
+            return false;
+        }
+
+        // Type
+        QName specTypeQName = objectSelector.getType();
+        if (specTypeQName != null && !object.canRepresent(specTypeQName)) {
+            logger.trace("{} type mismatch, expected {}, was {}", logMessagePrefix,
+                    PrettyPrinter.prettyPrint(specTypeQName),
+                    PrettyPrinter.prettyPrint(object.getDefinition().getTypeName()));
+            return false;
+        }
+
+        // Subtype
+        String specSubtype = objectSelector.getSubtype();
+        if (specSubtype != null) {
+            Collection<String> actualSubtypeValues = FocusTypeUtil.determineSubTypes(object);
+            if (!actualSubtypeValues.contains(specSubtype)) {
+                logger.trace("{} subtype mismatch, expected {}, was {}",
+                        logMessagePrefix, specSubtype, actualSubtypeValues);
+                return false;
+            }
+        }
+
+        // Archetype
+        List<ObjectReferenceType> specArchetypeRefs = objectSelector.getArchetypeRef();
+        if (!specArchetypeRefs.isEmpty()) {
+            if (!object.canRepresent(AssignmentHolderType.class)) {
+                logger.trace("{} archetype mismatch, expected {} but object has none"
+                        + " (it is not of AssignmentHolderType)", logMessagePrefix, specArchetypeRefs);
+                return false;
+            }
+            List<ObjectReferenceType> actualArchetypeRefs =
+                    ((AssignmentHolderType) object.asObjectable()).getArchetypeRef();
+            boolean match = specArchetypeRefs.stream().anyMatch(
+                    spec -> actualArchetypeRefs.stream().anyMatch(
+                            actual -> actual.getOid().equals(spec.getOid())));
+            if (!match) {
+                logger.trace("{} archetype mismatch, expected {}, was {}",
+                        logMessagePrefix, specArchetypeRefs, actualArchetypeRefs);
+                return false;
+            }
+        }
+
+        // Filter
+        SearchFilterType specFilterType = objectSelector.getFilter();
+        if (specFilterType != null) {
+            ObjectFilter specFilter = prismContext.getQueryConverter()
+                    .createObjectFilter(object.getCompileTimeClass(), specFilterType);
+            if (filterEvaluator != null) {
+                specFilter = filterEvaluator.evaluate(specFilter);
+            }
+            ObjectTypeUtil.normalizeFilter(specFilter, relationRegistry); // we assume object is already normalized
+            if (specFilter != null) {
+                ObjectQueryUtil.assertPropertyOnly(specFilter,
+                        logMessagePrefix + " filter is not property-only filter");
+            }
+            try {
+                if (!ObjectQuery.match(object, specFilter, matchingRuleRegistry)) {
+                    logger.trace("{} object OID {}", logMessagePrefix, object.getOid());
+                    return false;
+                }
+            } catch (SchemaException ex) {
+                throw new SchemaException(logMessagePrefix + "could not apply for " + object + ": "
+                        + ex.getMessage(), ex);
+            }
+        }
+
+        // Org
+        if (objectSelector.getOrgRef() != null) {
+            // Org closure is not stored in the new schema yet, so the object can't be proven to be in the org.
+            logger.trace("{} org specification is not supported by the new repository yet, not matching",
+                    logMessagePrefix);
+            return false;
+        }
+
+        return true;
     }
 
     @Override
     public void applyFullTextSearchConfiguration(FullTextSearchConfigurationType fullTextSearch) {
-        // TODO
+        // Not used for searching yet, only kept to be returned to the clients.
+        LOGGER.info("Applying full text search configuration ({} entries)",
+                fullTextSearch != null ? fullTextSearch.getIndexed().size() : 0);
+        fullTextSearchConfiguration = fullTextSearch;
     }
 
     @Override
     public FullTextSearchConfigurationType getFullTextSearchConfiguration() {
-        return null;
-        // TODO
+        return fullTextSearchConfiguration;
     }
 
+    /**
+     * Nothing to initialize after the system configuration is available yet.
+     */
     @Override
-    public void postInit(OperationResult result) throws SchemaException {
-        // TODO
+    public void postInit(OperationResult result) {
+        LOGGER.debug("Executing repository postInit method");
     }
 
     @Override
     public ConflictWatcher createAndRegisterConflictWatcher(@NotNull String oid) {
-        return null;
-        // TODO
+        List<ConflictWatcherImpl> watchers = conflictWatchersThreadLocal.get();
+        if (watchers.size() >= MAX_CONFLICT_WATCHERS) {
+            throw new IllegalStateException("Conflicts watchers leaking: reached limit of "
+                    + MAX_CONFLICT_WATCHERS + ": " + watchers);
+        }
+        ConflictWatcherImpl watcher = new ConflictWatcherImpl(oid);
+        watchers.add(watcher);
+        return watcher;
     }
 
     @Override
     public void unregisterConflictWatcher(ConflictWatcher watcher) {
-        // TODO
+        //noinspection SuspiciousMethodCalls
+        if (!conflictWatchersThreadLocal.get().remove(watcher)) {
+            throw new IllegalStateException(
+                    "Tried to unregister conflict watcher " + watcher + " that was not registered");
+        }
     }
 
     @Override
-    public boolean hasConflict(ConflictWatcher watcher, OperationResult result) {
-        return false;
-        // TODO
+    public boolean hasConflict(ConflictWatcher watcher, OperationResult parentResult) {
+        OperationResult result = parentResult.subresult(HAS_CONFLICT)
+                .setMinor()
+                .addParam("oid", watcher.getOid())
+                .addParam("watcherClass", watcher.getClass().getName())
+                .build();
+        try {
+            if (!watcher.hasConflict()) {
+                try {
+                    String version = getVersionInternal(ObjectType.class, watcher.getOid());
+                    invokeConflictWatchers(w -> w.afterGetVersion(watcher.getOid(), version));
+                } catch (ObjectNotFoundException e) {
+                    // just ignore this
+                }
+            }
+            boolean rv = watcher.hasConflict();
+            result.addReturn("hasConflict", rv);
+            return rv;
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
     }
 
-    @Override
-    public <T extends ObjectType> void addDiagnosticInformation(Class<T> type, String oid,
-            DiagnosticInformationType information, OperationResult parentResult)
-            throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException {
-
-        // TODO
-    }
-
-    @Override
-    public PerformanceMonitor getPerformanceMonitor() {
-        return null;
-        // TODO
+    private void invokeConflictWatchers(Consumer<ConflictWatcherImpl> consumer) {
+        conflictWatchersThreadLocal.get().forEach(consumer);
     }
 }
@@ -6,11 +6,24 @@
  */
 package com.evolveum.midpoint.repo.sqale;
 
+import com.querydsl.sql.PostgreSQLTemplates;
+import com.querydsl.sql.types.UtilUUIDType;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import org.apache.commons.configuration2.Configuration;
+import org.springframework.beans.factory.annotation.Autowired;
 
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.match.MatchingRuleRegistry;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.api.RepositoryServiceFactory;
 import com.evolveum.midpoint.repo.api.RepositoryServiceFactoryException;
+import com.evolveum.midpoint.repo.sqale.mapping.SqaleMappingConfig;
+import com.evolveum.midpoint.repo.sqale.querydsl.JsonbType;
+import com.evolveum.midpoint.repo.sqale.querydsl.UuidArrayType;
+import com.evolveum.midpoint.repo.sqlbase.SqlRepoContext;
+import com.evolveum.midpoint.repo.sqlbase.querydsl.InstantType;
+import com.evolveum.midpoint.schema.RelationRegistry;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 
@@ -18,24 +31,68 @@ public class SqaleRepositoryServiceFactory implements RepositoryServiceFactory {
 
     private static final Trace LOGGER = TraceManager.getTrace(SqaleRepositoryServiceFactory.class);
 
+    @Autowired private PrismContext prismContext;
+    @Autowired private MatchingRuleRegistry matchingRuleRegistry;
+    @Autowired private RelationRegistry relationRegistry;
+
+    private SqaleRepositoryConfiguration repositoryConfiguration;
+    private HikariDataSource dataSource;
+    private SqlRepoContext sqlRepoContext;
     private SqaleRepositoryService repositoryService;
 
     @Override
     public void init(Configuration configuration) throws RepositoryServiceFactoryException {
         LOGGER.info("SqaleRepositoryServiceFactory is going to be initialized");
-        // TODO
+        repositoryConfiguration = new SqaleRepositoryConfiguration(configuration);
+        dataSource = createDataSource(repositoryConfiguration);
+        sqlRepoContext = createSqlRepoContext();
+        LOGGER.info("SqaleRepositoryServiceFactory initialized for {}", repositoryConfiguration.getJdbcUrl());
+    }
+
+    static SqlRepoContext createSqlRepoContext() {
+        com.querydsl.sql.Configuration querydslConfig =
+                new com.querydsl.sql.Configuration(PostgreSQLTemplates.DEFAULT);
+        querydslConfig.register(new InstantType());
+        querydslConfig.register(new UtilUUIDType(false));
+        querydslConfig.register(new UuidArrayType());
+        querydslConfig.register(new JsonbType());
+
+        return new SqlRepoContext(querydslConfig, SqaleMappingConfig.SQALE_MAPPING);
+    }
+
+    static HikariDataSource createDataSource(SqaleRepositoryConfiguration configuration)
+            throws RepositoryServiceFactoryException {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(configuration.getJdbcUrl());
+        config.setUsername(configuration.getJdbcUsername());
+        config.setPassword(configuration.getJdbcPassword());
+        config.setMinimumIdle(configuration.getMinPoolSize());
+        config.setMaximumPoolSize(configuration.getMaxPoolSize());
+        config.setAutoCommit(false);
+        config.setIsolateInternalQueries(true);
+        try {
+            return new HikariDataSource(config);
+        } catch (RuntimeException e) {
+            throw new RepositoryServiceFactoryException("Couldn't create data source for "
+                    + configuration.getJdbcUrl() + ": " + e.getMessage(), e);
+        }
     }
 
     @Override
-    public RepositoryService createRepositoryService() {
+    public synchronized RepositoryService createRepositoryService() {
         if (repositoryService == null) {
-            repositoryService = new SqaleRepositoryService();
+            repositoryService = new SqaleRepositoryService(dataSource, sqlRepoContext,
+                    prismContext, matchingRuleRegistry, relationRegistry, repositoryConfiguration);
         }
         return repositoryService;
     }
 
     @Override
     public void destroy() throws RepositoryServiceFactoryException {
-        // TODO destroy perf monitor? SqlBaseService.destroy for inspiration
+        if (dataSource != null) {
+            LOGGER.info("Closing data source of the new repository");
+            dataSource.close();
+            dataSource = null;
+        }
     }
 }
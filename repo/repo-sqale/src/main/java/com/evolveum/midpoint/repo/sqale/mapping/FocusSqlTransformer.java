@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.mapping;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.repo.sqale.qmodel.MFocus;
+import com.evolveum.midpoint.repo.sqale.qmodel.QFocus;
+import com.evolveum.midpoint.repo.sqlbase.SqlRepoContext;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ActivationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.FocusType;
+
+/**
+ * Transformation of focus objects, see {@link ObjectSqlTransformer} for general contract.
+ */
+public class FocusSqlTransformer<S extends FocusType, Q extends QFocus<R>, R extends MFocus>
+        extends ObjectSqlTransformer<S, Q, R> {
+
+    public FocusSqlTransformer(PrismContext prismContext,
+            QFocusMapping<S, Q, R> mapping, SqlRepoContext sqlRepoContext) {
+        super(prismContext, mapping, sqlRepoContext);
+    }
+
+    @Override
+    protected void fillRow(S focus, R row) {
+        super.fillRow(focus, row);
+
+        ActivationType activation = focus.getActivation();
+        if (activation != null) {
+            row.administrativeStatus = ordinal(activation.getAdministrativeStatus());
+            row.effectiveStatus = ordinal(activation.getEffectiveStatus());
+            row.validFrom = toInstant(activation.getValidFrom());
+            row.validTo = toInstant(activation.getValidTo());
+        }
+        row.costCenter = focus.getCostCenter();
+        row.emailAddress = focus.getEmailAddress();
+        row.locale = focus.getLocale();
+        row.preferredLanguage = focus.getPreferredLanguage();
+        row.telephoneNumber = focus.getTelephoneNumber();
+        row.timezone = focus.getTimezone();
+        row.roleMembershipRefTargetOids = toUuidArray(focus.getRoleMembershipRef());
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.mapping;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.namespace.QName;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.querydsl.core.Tuple;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.*;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.repo.sqale.qmodel.MObject;
+import com.evolveum.midpoint.repo.sqale.qmodel.MObjectType;
+import com.evolveum.midpoint.repo.sqale.qmodel.QObject;
+import com.evolveum.midpoint.repo.sqale.querydsl.Jsonb;
+import com.evolveum.midpoint.repo.sqlbase.SqlRepoContext;
+import com.evolveum.midpoint.repo.sqlbase.mapping.SqlTransformer;
+import com.evolveum.midpoint.util.MiscUtil;
+import com.evolveum.midpoint.util.QNameUtil;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.MetadataType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+
+/**
+ * Transformation of objects between repo and Prism world.
+ * Full object (JSON serialized in UTF-8) is the source of truth when reading,
+ * other columns serve only for searching and are filled from the schema object when writing.
+ * <p>
+ * Subclasses for concrete tables override {@link #fillRow} to fill their additional columns.
+ *
+ * @param <S> schema type
+ * @param <Q> type of entity path
+ * @param <R> row type related to the {@link Q}
+ */
+public class ObjectSqlTransformer<S extends ObjectType, Q extends QObject<R>, R extends MObject>
+        implements SqlTransformer<S, Q, R> {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    protected final PrismContext prismContext;
+    protected final QObjectMapping<S, Q, R> mapping;
+    protected final SqlRepoContext sqlRepoContext;
+
+    public ObjectSqlTransformer(PrismContext prismContext,
+            QObjectMapping<S, Q, R> mapping, SqlRepoContext sqlRepoContext) {
+        this.prismContext = prismContext;
+        this.mapping = mapping;
+        this.sqlRepoContext = sqlRepoContext;
+    }
+
+    @Override
+    public S toSchemaObject(R row) throws SchemaException {
+        if (row.fullObject == null) {
+            throw new SchemaException("Missing full object for OID " + row.oid);
+        }
+
+        PrismObject<S> prismObject = prismContext
+                .parserFor(new String(row.fullObject, StandardCharsets.UTF_8))
+                .language(PrismContext.LANG_JSON)
+                .parse();
+        prismObject.setOid(row.oid.toString());
+        prismObject.setVersion(String.valueOf(row.version));
+        return prismObject.asObjectable();
+    }
+
+    @Override
+    public S toSchemaObjectSafe(Tuple row, Q entityPath) {
+        try {
+            return toSchemaObject(row.get(entityPath));
+        } catch (SchemaException e) {
+            throw new SqlTransformationException(e);
+        }
+    }
+
+    /**
+     * Serializes the object to the form stored in fullObject column.
+     * OID and version are stored in their own columns, but it is harmless to have them here too.
+     */
+    public byte[] serializeFullObject(S schemaObject) throws SchemaException {
+        String serialized = prismContext.jsonSerializer()
+                .options(SerializationOptions.createSerializeReferenceNamesForNullOids()
+                        .skipIndexOnly(true)
+                        .skipTransient(true))
+                .serialize(schemaObject.asPrismObject());
+        return serialized.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates row bean with all the columns filled from the schema object except for
+     * full object and version which are managed by the repository service.
+     */
+    public R toRowObject(S schemaObject) {
+        R row = mapping.newRowObject();
+        fillRow(schemaObject, row);
+        return row;
+    }
+
+    protected void fillRow(S schemaObject, R row) {
+        row.oid = toUuid(schemaObject.getOid());
+        row.nameOrig = orig(schemaObject.getName());
+        row.nameNorm = norm(schemaObject.getName());
+        row.lifecycleState = schemaObject.getLifecycleState();
+
+        MetadataType metadata = schemaObject.getMetadata();
+        if (metadata != null) {
+            row.createTimestamp = toInstant(metadata.getCreateTimestamp());
+            row.modifyTimestamp = toInstant(metadata.getModifyTimestamp());
+            ObjectReferenceType creatorRef = metadata.getCreatorRef();
+            if (creatorRef != null) {
+                row.creatorRefRelation = MObjectType.relationToUri(creatorRef.getRelation());
+                row.creatorRefTargetOid = creatorRef.getOid();
+                row.creatorRefTargetType = targetType(creatorRef);
+            }
+            ObjectReferenceType modifierRef = metadata.getModifierRef();
+            if (modifierRef != null) {
+                row.modifierRefRelation = MObjectType.relationToUri(modifierRef.getRelation());
+                row.modifierRefTargetOid = modifierRef.getOid();
+                row.modifierRefTargetType = targetType(modifierRef);
+            }
+        }
+
+        ObjectReferenceType tenantRef = schemaObject.getTenantRef();
+        if (tenantRef != null) {
+            row.tenantRefRelation = MObjectType.relationToUri(tenantRef.getRelation());
+            row.tenantRefTargetOid = tenantRef.getOid();
+            row.tenantRefTargetType = targetType(tenantRef);
+        }
+
+        row.parentOrgRefTargetOids = toUuidArray(schemaObject.getParentOrgRef());
+        row.ext = extensionToJsonb(schemaObject.asPrismObject().getExtension());
+    }
+
+    protected @Nullable UUID toUuid(@Nullable String oid) {
+        return oid != null ? UUID.fromString(oid) : null;
+    }
+
+    /**
+     * Returns array of target OIDs or null if there are no references (references without
+     * OID, e.g. with filter only, are skipped).
+     */
+    protected @Nullable UUID[] toUuidArray(@NotNull List<ObjectReferenceType> refs) {
+        UUID[] oids = refs.stream()
+                .map(ObjectReferenceType::getOid)
+                .filter(oid -> oid != null)
+                .map(UUID::fromString)
+                .distinct()
+                .toArray(UUID[]::new);
+        return oids.length > 0 ? oids : null;
+    }
+
+    protected @Nullable Integer targetType(@NotNull ObjectReferenceType ref) {
+        return MObjectType.ordinalFromTypeName(ref.getType(), prismContext);
+    }
+
+    protected @Nullable Instant toInstant(@Nullable XMLGregorianCalendar timestamp) {
+        return MiscUtil.asInstant(MiscUtil.asLong(timestamp));
+    }
+
+    protected @Nullable String orig(@Nullable PolyStringType poly) {
+        return poly != null ? poly.getOrig() : null;
+    }
+
+    protected @Nullable String norm(@Nullable PolyStringType poly) {
+        if (poly == null) {
+            return null;
+        }
+        return poly.getNorm() != null
+                ? poly.getNorm()
+                : prismContext.getDefaultPolyStringNormalizer().normalize(poly.getOrig());
+    }
+
+    protected @Nullable <E extends Enum<E>> Integer ordinal(@Nullable E value) {
+        return value != null ? value.ordinal() : null;
+    }
+
+    /**
+     * Converts extension properties to JSON object stored in ext JSONB column.
+     * Key is the local name of the item, value is a scalar for single-value property
+     * or an array for multi-value one.
+     * Only values with reasonable JSON representation are stored, references and containers
+     * are not indexed this way; the full object stays the source of truth.
+     */
+    protected @Nullable Jsonb extensionToJsonb(@Nullable PrismContainer<?> extension) {
+        if (extension == null || extension.isEmpty()) {
+            return null;
+        }
+
+        StringWriter writer = new StringWriter();
+        boolean empty = true;
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            for (Item<?, ?> item : extension.getValue().getItems()) {
+                if (!(item instanceof PrismProperty) || item.isEmpty()) {
+                    continue;
+                }
+                Collection<?> realValues = item.getRealValues();
+                generator.writeFieldName(item.getElementName().getLocalPart());
+                if (realValues.size() == 1) {
+                    writeJsonValue(generator, realValues.iterator().next());
+                } else {
+                    generator.writeStartArray();
+                    for (Object realValue : realValues) {
+                        writeJsonValue(generator, realValue);
+                    }
+                    generator.writeEndArray();
+                }
+                empty = false;
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            // writing to StringWriter, this should not happen
+            throw new SystemException("Couldn't create JSON for extension " + extension, e);
+        }
+        return empty ? null : new Jsonb(writer.toString());
+    }
+
+    private void writeJsonValue(JsonGenerator generator, Object value) throws IOException {
+        if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            generator.writeNumber(value.toString());
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof PolyString) {
+            generator.writeString(((PolyString) value).getOrig());
+        } else if (value instanceof PolyStringType) {
+            generator.writeString(((PolyStringType) value).getOrig());
+        } else if (value instanceof XMLGregorianCalendar) {
+            generator.writeString(((XMLGregorianCalendar) value).toXMLFormat());
+        } else if (value instanceof QName) {
+            generator.writeString(QNameUtil.qNameToUri((QName) value));
+        } else if (value instanceof Enum) {
+            generator.writeString(value.toString());
+        } else {
+            generator.writeNull();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.mapping;
+
+import static com.evolveum.midpoint.prism.PrismConstants.*;
+
+import java.util.function.Function;
+import javax.xml.namespace.QName;
+
+import com.querydsl.core.types.*;
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.query.PropertyValueFilter;
+import com.evolveum.midpoint.repo.sqlbase.QueryException;
+import com.evolveum.midpoint.repo.sqlbase.SqlPathContext;
+import com.evolveum.midpoint.repo.sqlbase.filtering.ValueFilterValues;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.ItemFilterProcessor;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.ItemSqlMapper;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+
+/**
+ * Filter processor for a poly-string attribute stored in two columns, orig and norm.
+ * Matching rule decides which column is used: {@code polyStringOrig} uses orig,
+ * {@code polyStringNorm} uses norm, {@code polyStringStrict} uses both.
+ * Without matching rule norm is used, just like in the old repository.
+ */
+public class PolyStringItemFilterProcessor
+        extends ItemFilterProcessor<PropertyValueFilter<?>> {
+
+    private final Path<?> origPath;
+    private final Path<?> normPath;
+
+    /**
+     * Returns the mapper creating the poly-string filter processor from context.
+     * Orig column is used as the primary mapping for ordering.
+     */
+    public static ItemSqlMapper mapper(
+            @NotNull Function<EntityPath<?>, Path<?>> origMapping,
+            @NotNull Function<EntityPath<?>, Path<?>> normMapping) {
+        return new ItemSqlMapper(ctx ->
+                new PolyStringItemFilterProcessor(ctx, origMapping, normMapping), origMapping);
+    }
+
+    private PolyStringItemFilterProcessor(SqlPathContext<?, ?, ?> context,
+            Function<EntityPath<?>, Path<?>> origMapping,
+            Function<EntityPath<?>, Path<?>> normMapping) {
+        super(context);
+        this.origPath = origMapping.apply(context.path());
+        this.normPath = normMapping.apply(context.path());
+    }
+
+    @Override
+    public Predicate process(PropertyValueFilter<?> filter) throws QueryException {
+        //noinspection unchecked
+        PropertyValueFilter<Object> polyFilter = (PropertyValueFilter<Object>) filter;
+        QName matchingRule = filter.getMatchingRule();
+        if (POLY_STRING_ORIG_MATCHING_RULE_NAME.equals(matchingRule)) {
+            return createBinaryCondition(filter, origPath,
+                    new ValueFilterValues<>(polyFilter, this::extractOrig));
+        } else if (POLY_STRING_STRICT_MATCHING_RULE_NAME.equals(matchingRule)) {
+            return ExpressionUtils.and(
+                    createBinaryCondition(filter, origPath,
+                            new ValueFilterValues<>(polyFilter, this::extractOrig)),
+                    createBinaryCondition(filter, normPath,
+                            new ValueFilterValues<>(polyFilter, this::extractNorm)));
+        } else if (matchingRule == null
+                || POLY_STRING_NORM_MATCHING_RULE_NAME.equals(matchingRule)) {
+            return createBinaryCondition(filter, normPath,
+                    new ValueFilterValues<>(polyFilter, this::extractNorm));
+        } else {
+            throw new QueryException("Unknown matching rule '" + matchingRule
+                    + "' for poly-string filter: " + filter);
+        }
+    }
+
+    private String extractOrig(Object value) {
+        if (value instanceof PolyString) {
+            return ((PolyString) value).getOrig();
+        } else if (value instanceof PolyStringType) {
+            return ((PolyStringType) value).getOrig();
+        } else if (value instanceof String) {
+            return (String) value;
+        } else {
+            throw new IllegalArgumentException("Value " + value + " is not poly-string");
+        }
+    }
+
+    private String extractNorm(Object value) {
+        if (value instanceof PolyString) {
+            PolyString poly = (PolyString) value;
+            return poly.getNorm() != null ? poly.getNorm() : normalize(poly.getOrig());
+        } else if (value instanceof PolyStringType) {
+            PolyStringType poly = (PolyStringType) value;
+            return poly.getNorm() != null ? poly.getNorm() : normalize(poly.getOrig());
+        } else if (value instanceof String) {
+            return normalize((String) value);
+        } else {
+            throw new IllegalArgumentException("Value " + value + " is not poly-string");
+        }
+    }
+
+    private String normalize(String orig) {
+        PrismContext prismContext = context.prismContext();
+        return prismContext.getDefaultPolyStringNormalizer().normalize(orig);
+    }
+}
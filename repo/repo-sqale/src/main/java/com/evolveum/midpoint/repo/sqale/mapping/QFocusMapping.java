@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.mapping;
+
+import static com.evolveum.midpoint.xml.ns._public.common.common_3.FocusType.*;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.repo.sqale.qmodel.MFocus;
+import com.evolveum.midpoint.repo.sqale.qmodel.QFocus;
+import com.evolveum.midpoint.repo.sqlbase.SqlRepoContext;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.StringItemFilterProcessor;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.FocusType;
+
+/**
+ * Mapping between {@link QFocus} and {@link FocusType}.
+ * Like M_OBJECT, the M_FOCUS table is abstract, this mapping is used directly only for searches.
+ *
+ * @param <S> schema type
+ * @param <Q> type of entity path
+ * @param <R> row type related to the {@link Q}
+ */
+public class QFocusMapping<S extends FocusType, Q extends QFocus<R>, R extends MFocus>
+        extends QObjectMapping<S, Q, R> {
+
+    public static final String DEFAULT_ALIAS_NAME = "f";
+
+    public static final QFocusMapping<FocusType, QFocus<MFocus>, MFocus> INSTANCE =
+            new QFocusMapping<>(QFocus.TABLE_NAME, DEFAULT_ALIAS_NAME,
+                    FocusType.class, QFocus.CLASS);
+
+    protected QFocusMapping(
+            @NotNull String tableName,
+            @NotNull String defaultAliasName,
+            @NotNull Class<S> schemaType,
+            @NotNull Class<Q> queryType) {
+        super(tableName, defaultAliasName, schemaType, queryType);
+
+        addItemMapping(F_COST_CENTER, StringItemFilterProcessor.mapper(path(q -> q.costCenter)));
+        addItemMapping(F_EMAIL_ADDRESS,
+                StringItemFilterProcessor.mapper(path(q -> q.emailAddress)));
+        addItemMapping(F_LOCALE, StringItemFilterProcessor.mapper(path(q -> q.locale)));
+        addItemMapping(F_PREFERRED_LANGUAGE,
+                StringItemFilterProcessor.mapper(path(q -> q.preferredLanguage)));
+        addItemMapping(F_TELEPHONE_NUMBER,
+                StringItemFilterProcessor.mapper(path(q -> q.telephoneNumber)));
+        addItemMapping(F_TIMEZONE, StringItemFilterProcessor.mapper(path(q -> q.timezone)));
+        addItemMapping(F_ROLE_MEMBERSHIP_REF, UuidArrayRefItemFilterProcessor.mapper(
+                path(q -> q.roleMembershipRefTargetOids)));
+    }
+
+    @Override
+    protected Q newAliasInstance(String alias) {
+        //noinspection unchecked
+        return (Q) new QFocus<>(MFocus.class, alias);
+    }
+
+    @Override
+    public R newRowObject() {
+        //noinspection unchecked
+        return (R) new MFocus();
+    }
+
+    @Override
+    public FocusSqlTransformer<S, Q, R> createTransformer(
+            PrismContext prismContext, SqlRepoContext sqlRepoContext) {
+        return new FocusSqlTransformer<>(prismContext, this, sqlRepoContext);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.mapping;
+
+import static com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType.*;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.repo.sqale.qmodel.MObject;
+import com.evolveum.midpoint.repo.sqale.qmodel.QObject;
+import com.evolveum.midpoint.repo.sqlbase.SqlRepoContext;
+import com.evolveum.midpoint.repo.sqlbase.mapping.QueryModelMapping;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.RefItemFilterProcessor;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.StringItemFilterProcessor;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Mapping between {@link QObject} and {@link ObjectType}.
+ * This mapping is used directly only for searching and counting objects of any type,
+ * because M_OBJECT table is abstract and can't be inserted into.
+ * Subclasses are used for concrete (and some abstract) tables inheriting from M_OBJECT.
+ *
+ * @param <S> schema type
+ * @param <Q> type of entity path
+ * @param <R> row type related to the {@link Q}
+ */
+public class QObjectMapping<S extends ObjectType, Q extends QObject<R>, R extends MObject>
+        extends QueryModelMapping<S, Q, R> {
+
+    public static final String DEFAULT_ALIAS_NAME = "o";
+
+    public static final QObjectMapping<ObjectType, QObject<MObject>, MObject> INSTANCE =
+            new QObjectMapping<>(QObject.TABLE_NAME, DEFAULT_ALIAS_NAME,
+                    ObjectType.class, QObject.CLASS);
+
+    protected QObjectMapping(
+            @NotNull String tableName,
+            @NotNull String defaultAliasName,
+            @NotNull Class<S> schemaType,
+            @NotNull Class<Q> queryType) {
+        super(tableName, defaultAliasName, schemaType, queryType);
+
+        addItemMapping(F_NAME, PolyStringItemFilterProcessor.mapper(
+                path(q -> q.nameOrig), path(q -> q.nameNorm)));
+        addItemMapping(F_LIFECYCLE_STATE,
+                StringItemFilterProcessor.mapper(path(q -> q.lifecycleState)));
+        addItemMapping(F_TENANT_REF,
+                RefItemFilterProcessor.mapper(path(q -> q.tenantRefTargetOid)));
+        addItemMapping(F_PARENT_ORG_REF,
+                UuidArrayRefItemFilterProcessor.mapper(path(q -> q.parentOrgRefTargetOids)));
+    }
+
+    @Override
+    protected Q newAliasInstance(String alias) {
+        //noinspection unchecked
+        return (Q) new QObject<>(MObject.class, alias);
+    }
+
+    /**
+     * Creates new empty row bean of the type related to this mapping.
+     */
+    public R newRowObject() {
+        //noinspection unchecked
+        return (R) new MObject();
+    }
+
+    @Override
+    public ObjectSqlTransformer<S, Q, R> createTransformer(
+            PrismContext prismContext, SqlRepoContext sqlRepoContext) {
+        return new ObjectSqlTransformer<>(prismContext, this, sqlRepoContext);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.mapping;
+
+import static com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType.F_CONNECTOR_REF;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.repo.sqale.qmodel.MResource;
+import com.evolveum.midpoint.repo.sqale.qmodel.QResource;
+import com.evolveum.midpoint.repo.sqlbase.SqlRepoContext;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.RefItemFilterProcessor;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
+
+/**
+ * Mapping between {@link QResource} and {@link ResourceType}.
+ */
+public class QResourceMapping extends QObjectMapping<ResourceType, QResource, MResource> {
+
+    public static final String DEFAULT_ALIAS_NAME = "res";
+
+    public static final QResourceMapping INSTANCE = new QResourceMapping();
+
+    private QResourceMapping() {
+        super(QResource.TABLE_NAME, DEFAULT_ALIAS_NAME, ResourceType.class, QResource.class);
+
+        addItemMapping(F_CONNECTOR_REF,
+                RefItemFilterProcessor.mapper(path(q -> q.connectorRefTargetOid)));
+    }
+
+    @Override
+    protected QResource newAliasInstance(String alias) {
+        return new QResource(alias);
+    }
+
+    @Override
+    public MResource newRowObject() {
+        return new MResource();
+    }
+
+    @Override
+    public ResourceSqlTransformer createTransformer(
+            PrismContext prismContext, SqlRepoContext sqlRepoContext) {
+        return new ResourceSqlTransformer(prismContext, this, sqlRepoContext);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.mapping;
+
+import static com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType.*;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.repo.sqale.qmodel.MShadow;
+import com.evolveum.midpoint.repo.sqale.qmodel.QShadow;
+import com.evolveum.midpoint.repo.sqlbase.SqlRepoContext;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.EnumOrdinalItemFilterProcessor;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.RefItemFilterProcessor;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.StringItemFilterProcessor;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.TimestampItemFilterProcessor;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Mapping between {@link QShadow} and {@link ShadowType}.
+ */
+public class QShadowMapping extends QObjectMapping<ShadowType, QShadow, MShadow> {
+
+    public static final String DEFAULT_ALIAS_NAME = "sh";
+
+    public static final QShadowMapping INSTANCE = new QShadowMapping();
+
+    private QShadowMapping() {
+        super(QShadow.TABLE_NAME, DEFAULT_ALIAS_NAME, ShadowType.class, QShadow.class);
+
+        addItemMapping(F_OBJECT_CLASS,
+                SimpleItemFilterProcessor.qNameMapper(path(q -> q.objectClass)));
+        addItemMapping(F_RESOURCE_REF,
+                RefItemFilterProcessor.mapper(path(q -> q.resourceRefTargetOid)));
+        addItemMapping(F_INTENT, StringItemFilterProcessor.mapper(path(q -> q.intent)));
+        addItemMapping(F_KIND, EnumOrdinalItemFilterProcessor.mapper(path(q -> q.kind)));
+        addItemMapping(F_DEAD, SimpleItemFilterProcessor.mapper(path(q -> q.dead)));
+        addItemMapping(F_EXISTS, SimpleItemFilterProcessor.mapper(path(q -> q.exist)));
+        addItemMapping(F_FULL_SYNCHRONIZATION_TIMESTAMP,
+                TimestampItemFilterProcessor.mapper(path(q -> q.fullSynchronizationTimestamp)));
+        addItemMapping(F_PRIMARY_IDENTIFIER_VALUE,
+                StringItemFilterProcessor.mapper(path(q -> q.primaryIdentifierValue)));
+        addItemMapping(F_SYNCHRONIZATION_SITUATION,
+                EnumOrdinalItemFilterProcessor.mapper(path(q -> q.synchronizationSituation)));
+        addItemMapping(F_SYNCHRONIZATION_TIMESTAMP,
+                TimestampItemFilterProcessor.mapper(path(q -> q.synchronizationTimestamp)));
+    }
+
+    @Override
+    protected QShadow newAliasInstance(String alias) {
+        return new QShadow(alias);
+    }
+
+    @Override
+    public MShadow newRowObject() {
+        return new MShadow();
+    }
+
+    @Override
+    public ShadowSqlTransformer createTransformer(
+            PrismContext prismContext, SqlRepoContext sqlRepoContext) {
+        return new ShadowSqlTransformer(prismContext, this, sqlRepoContext);
+    }
+}
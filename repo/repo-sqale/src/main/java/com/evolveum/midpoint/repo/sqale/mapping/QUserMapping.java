@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.mapping;
+
+import static com.evolveum.midpoint.xml.ns._public.common.common_3.UserType.*;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.repo.sqale.qmodel.MUser;
+import com.evolveum.midpoint.repo.sqale.qmodel.QUser;
+import com.evolveum.midpoint.repo.sqlbase.SqlRepoContext;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.StringItemFilterProcessor;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Mapping between {@link QUser} and {@link UserType}.
+ */
+public class QUserMapping extends QFocusMapping<UserType, QUser, MUser> {
+
+    public static final String DEFAULT_ALIAS_NAME = "u";
+
+    public static final QUserMapping INSTANCE = new QUserMapping();
+
+    private QUserMapping() {
+        super(QUser.TABLE_NAME, DEFAULT_ALIAS_NAME, UserType.class, QUser.class);
+
+        addItemMapping(F_ADDITIONAL_NAME, PolyStringItemFilterProcessor.mapper(
+                path(q -> q.additionalNameOrig), path(q -> q.additionalNameNorm)));
+        addItemMapping(F_EMPLOYEE_NUMBER,
+                StringItemFilterProcessor.mapper(path(q -> q.employeeNumber)));
+        addItemMapping(F_FAMILY_NAME, PolyStringItemFilterProcessor.mapper(
+                path(q -> q.familyNameOrig), path(q -> q.familyNameNorm)));
+        addItemMapping(F_FULL_NAME, PolyStringItemFilterProcessor.mapper(
+                path(q -> q.fullNameOrig), path(q -> q.fullNameNorm)));
+        addItemMapping(F_GIVEN_NAME, PolyStringItemFilterProcessor.mapper(
+                path(q -> q.givenNameOrig), path(q -> q.givenNameNorm)));
+        addItemMapping(F_NICK_NAME, PolyStringItemFilterProcessor.mapper(
+                path(q -> q.nickNameOrig), path(q -> q.nickNameNorm)));
+        addItemMapping(F_TITLE, PolyStringItemFilterProcessor.mapper(
+                path(q -> q.titleOrig), path(q -> q.titleNorm)));
+    }
+
+    @Override
+    protected QUser newAliasInstance(String alias) {
+        return new QUser(alias);
+    }
+
+    @Override
+    public MUser newRowObject() {
+        return new MUser();
+    }
+
+    @Override
+    public UserSqlTransformer createTransformer(
+            PrismContext prismContext, SqlRepoContext sqlRepoContext) {
+        return new UserSqlTransformer(prismContext, this, sqlRepoContext);
+    }
+}
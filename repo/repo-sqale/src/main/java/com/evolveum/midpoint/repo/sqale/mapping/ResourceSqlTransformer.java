@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.mapping;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.repo.sqale.qmodel.MObjectType;
+import com.evolveum.midpoint.repo.sqale.qmodel.MResource;
+import com.evolveum.midpoint.repo.sqale.qmodel.QResource;
+import com.evolveum.midpoint.repo.sqlbase.SqlRepoContext;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceBusinessConfigurationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
+
+/**
+ * Transformation of resources, see {@link ObjectSqlTransformer} for general contract.
+ */
+public class ResourceSqlTransformer
+        extends ObjectSqlTransformer<ResourceType, QResource, MResource> {
+
+    public ResourceSqlTransformer(PrismContext prismContext,
+            QResourceMapping mapping, SqlRepoContext sqlRepoContext) {
+        super(prismContext, mapping, sqlRepoContext);
+    }
+
+    @Override
+    protected void fillRow(ResourceType resource, MResource row) {
+        super.fillRow(resource, row);
+
+        ResourceBusinessConfigurationType business = resource.getBusiness();
+        if (business != null) {
+            row.administrativeState = ordinal(business.getAdministrativeState());
+        }
+        ObjectReferenceType connectorRef = resource.getConnectorRef();
+        if (connectorRef != null) {
+            row.connectorRefRelation = MObjectType.relationToUri(connectorRef.getRelation());
+            row.connectorRefTargetOid = connectorRef.getOid();
+            row.connectorRefTargetType = targetType(connectorRef);
+        }
+    }
+}
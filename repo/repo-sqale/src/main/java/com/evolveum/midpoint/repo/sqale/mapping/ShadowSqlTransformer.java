@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.mapping;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.repo.sqale.qmodel.MObjectType;
+import com.evolveum.midpoint.repo.sqale.qmodel.MShadow;
+import com.evolveum.midpoint.repo.sqale.qmodel.QShadow;
+import com.evolveum.midpoint.repo.sqlbase.SqlRepoContext;
+import com.evolveum.midpoint.util.QNameUtil;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Transformation of shadows, see {@link ObjectSqlTransformer} for general contract.
+ */
+public class ShadowSqlTransformer extends ObjectSqlTransformer<ShadowType, QShadow, MShadow> {
+
+    public ShadowSqlTransformer(PrismContext prismContext,
+            QShadowMapping mapping, SqlRepoContext sqlRepoContext) {
+        super(prismContext, mapping, sqlRepoContext);
+    }
+
+    @Override
+    protected void fillRow(ShadowType shadow, MShadow row) {
+        super.fillRow(shadow, row);
+
+        row.objectClass = shadow.getObjectClass() != null
+                ? QNameUtil.qNameToUri(shadow.getObjectClass())
+                : null;
+        ObjectReferenceType resourceRef = shadow.getResourceRef();
+        if (resourceRef != null) {
+            row.resourceRefRelation = MObjectType.relationToUri(resourceRef.getRelation());
+            row.resourceRefTargetOid = resourceRef.getOid();
+            row.resourceRefTargetType = targetType(resourceRef);
+        }
+        row.intent = shadow.getIntent();
+        row.kind = ordinal(shadow.getKind());
+        row.dead = shadow.isDead();
+        row.exist = shadow.isExists();
+        row.fullSynchronizationTimestamp = toInstant(shadow.getFullSynchronizationTimestamp());
+        row.pendingOperationCount = shadow.getPendingOperation().size();
+        row.primaryIdentifierValue = shadow.getPrimaryIdentifierValue();
+        row.synchronizationSituation = ordinal(shadow.getSynchronizationSituation());
+        row.synchronizationTimestamp = toInstant(shadow.getSynchronizationTimestamp());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.mapping;
+
+import java.util.function.Function;
+import javax.xml.namespace.QName;
+
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.query.PropertyValueFilter;
+import com.evolveum.midpoint.repo.sqlbase.QueryException;
+import com.evolveum.midpoint.repo.sqlbase.SqlPathContext;
+import com.evolveum.midpoint.repo.sqlbase.filtering.ValueFilterValues;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.ItemSqlMapper;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.SinglePathItemFilterProcessor;
+import com.evolveum.midpoint.util.QNameUtil;
+
+/**
+ * Filter processor for a single-column attribute with value used directly (e.g. boolean)
+ * or converted by the provided function (e.g. Q-name stored as URI).
+ *
+ * @param <T> type of the value in the filter
+ */
+public class SimpleItemFilterProcessor<T>
+        extends SinglePathItemFilterProcessor<PropertyValueFilter<T>> {
+
+    @Nullable private final Function<T, ?> conversionFunction;
+
+    /**
+     * Returns the mapper creating the filter processor using filter values as they are.
+     */
+    public static ItemSqlMapper mapper(Function<EntityPath<?>, Path<?>> rootToQueryItem) {
+        return new ItemSqlMapper(ctx ->
+                new SimpleItemFilterProcessor<>(ctx, rootToQueryItem, null), rootToQueryItem);
+    }
+
+    /**
+     * Returns the mapper creating the filter processor for Q-name values stored as URI.
+     */
+    public static ItemSqlMapper qNameMapper(Function<EntityPath<?>, Path<?>> rootToQueryItem) {
+        return new ItemSqlMapper(ctx ->
+                new SimpleItemFilterProcessor<QName>(ctx, rootToQueryItem, QNameUtil::qNameToUri),
+                rootToQueryItem);
+    }
+
+    private SimpleItemFilterProcessor(SqlPathContext<?, ?, ?> context,
+            Function<EntityPath<?>, Path<?>> rootToQueryItem,
+            @Nullable Function<T, ?> conversionFunction) {
+        super(context, rootToQueryItem);
+        this.conversionFunction = conversionFunction;
+    }
+
+    @Override
+    public Predicate process(PropertyValueFilter<T> filter) throws QueryException {
+        return createBinaryCondition(filter, path,
+                new ValueFilterValues<>(filter, conversionFunction));
+    }
+}
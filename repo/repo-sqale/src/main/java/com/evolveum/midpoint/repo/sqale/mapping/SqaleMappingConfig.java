@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.mapping;
+
+import com.evolveum.midpoint.repo.sqlbase.mapping.QueryModelMapping;
+import com.evolveum.midpoint.repo.sqlbase.mapping.QueryModelMappingRegistry;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Holds {@link QueryModelMapping} instances for the new repository.
+ * Only object types with tables in the new schema are supported so far.
+ */
+public class SqaleMappingConfig {
+
+    public static final QueryModelMappingRegistry SQALE_MAPPING = new QueryModelMappingRegistry()
+            .register(ObjectType.COMPLEX_TYPE, QObjectMapping.INSTANCE)
+            .register(FocusType.COMPLEX_TYPE, QFocusMapping.INSTANCE)
+            .register(UserType.COMPLEX_TYPE, QUserMapping.INSTANCE)
+            .register(ShadowType.COMPLEX_TYPE, QShadowMapping.INSTANCE)
+            .register(ResourceType.COMPLEX_TYPE, QResourceMapping.INSTANCE)
+            .seal();
+}
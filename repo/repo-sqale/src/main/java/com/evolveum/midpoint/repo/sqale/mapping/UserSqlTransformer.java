@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.mapping;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.repo.sqale.qmodel.MUser;
+import com.evolveum.midpoint.repo.sqale.qmodel.QUser;
+import com.evolveum.midpoint.repo.sqlbase.SqlRepoContext;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Transformation of users, see {@link ObjectSqlTransformer} for general contract.
+ */
+public class UserSqlTransformer extends FocusSqlTransformer<UserType, QUser, MUser> {
+
+    public UserSqlTransformer(PrismContext prismContext,
+            QUserMapping mapping, SqlRepoContext sqlRepoContext) {
+        super(prismContext, mapping, sqlRepoContext);
+    }
+
+    @Override
+    protected void fillRow(UserType user, MUser row) {
+        super.fillRow(user, row);
+
+        row.additionalNameOrig = orig(user.getAdditionalName());
+        row.additionalNameNorm = norm(user.getAdditionalName());
+        row.employeeNumber = user.getEmployeeNumber();
+        row.familyNameOrig = orig(user.getFamilyName());
+        row.familyNameNorm = norm(user.getFamilyName());
+        row.fullNameOrig = orig(user.getFullName());
+        row.fullNameNorm = norm(user.getFullName());
+        row.givenNameOrig = orig(user.getGivenName());
+        row.givenNameNorm = norm(user.getGivenName());
+        row.nickNameOrig = orig(user.getNickName());
+        row.nickNameNorm = norm(user.getNickName());
+        row.titleOrig = orig(user.getTitle());
+        row.titleNorm = norm(user.getTitle());
+    }
+}
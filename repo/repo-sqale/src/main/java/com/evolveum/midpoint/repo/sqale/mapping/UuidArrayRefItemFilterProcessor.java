@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.mapping;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import com.querydsl.core.types.*;
+import com.querydsl.core.types.dsl.Expressions;
+
+import com.evolveum.midpoint.prism.PrismReferenceValue;
+import com.evolveum.midpoint.prism.query.RefFilter;
+import com.evolveum.midpoint.repo.sqlbase.QueryException;
+import com.evolveum.midpoint.repo.sqlbase.SqlPathContext;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.ItemSqlMapper;
+import com.evolveum.midpoint.repo.sqlbase.mapping.item.SinglePathItemFilterProcessor;
+
+/**
+ * Filter processor for a multi-value reference stored as an array of target OIDs
+ * (e.g. parentOrgRef or roleMembershipRef).
+ * Condition uses containment operator {@code @>} which can be supported by GIN index.
+ * Relation and target type are not stored in the array and are ignored.
+ */
+public class UuidArrayRefItemFilterProcessor extends SinglePathItemFilterProcessor<RefFilter> {
+
+    /**
+     * Returns the mapper creating the array reference filter processor from context.
+     * Array columns are not usable for ordering.
+     */
+    public static ItemSqlMapper mapper(Function<EntityPath<?>, Path<?>> rootToQueryItem) {
+        return new ItemSqlMapper(ctx -> new UuidArrayRefItemFilterProcessor(ctx, rootToQueryItem));
+    }
+
+    private UuidArrayRefItemFilterProcessor(
+            SqlPathContext<?, ?, ?> context, Function<EntityPath<?>, Path<?>> rootToQueryItem) {
+        super(context, rootToQueryItem);
+    }
+
+    @Override
+    public Predicate process(RefFilter filter) throws QueryException {
+        List<PrismReferenceValue> values = filter.getValues();
+        if (values == null || values.isEmpty()) {
+            return Expressions.booleanTemplate("cardinality({0}) = 0", path)
+                    .or(ExpressionUtils.predicate(Ops.IS_NULL, path));
+        }
+
+        List<Predicate> predicates = new ArrayList<>();
+        for (PrismReferenceValue value : values) {
+            if (value.getOid() == null) {
+                throw new QueryException("Reference value without OID is not supported"
+                        + " for array reference filter: " + filter);
+            }
+            try {
+                predicates.add(Expressions.booleanTemplate("{0} @> ARRAY[{1}]",
+                        path, ConstantImpl.create(UUID.fromString(value.getOid()))));
+            } catch (IllegalArgumentException e) {
+                throw new QueryException(e);
+            }
+        }
+        return ExpressionUtils.anyOf(predicates);
+    }
+}
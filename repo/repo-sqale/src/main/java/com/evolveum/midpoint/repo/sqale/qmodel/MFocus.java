@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.qmodel;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Querydsl "row bean" type related to {@link QFocus}.
+ */
+public class MFocus extends MObject {
+
+    public Integer administrativeStatus;
+    public Integer effectiveStatus;
+    public Instant validFrom;
+    public Instant validTo;
+    public String costCenter;
+    public String emailAddress;
+    public String locale;
+    public String preferredLanguage;
+    public String telephoneNumber;
+    public String timezone;
+    public UUID[] roleMembershipRefTargetOids;
+}
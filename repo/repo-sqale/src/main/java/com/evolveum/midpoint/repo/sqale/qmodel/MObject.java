@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.qmodel;
+
+import static com.evolveum.midpoint.util.MiscUtil.binaryToHexPreview;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+import com.evolveum.midpoint.repo.sqale.querydsl.Jsonb;
+
+/**
+ * Querydsl "row bean" type related to {@link QObject}.
+ * Field names must match the property names of the paths in the Q-class,
+ * because rows are written using Querydsl {@code populate()}.
+ */
+public class MObject {
+
+    public UUID oid;
+    public String nameNorm;
+    public String nameOrig;
+    public byte[] fullObject;
+    public Instant createTimestamp;
+    public String creatorRefRelation;
+    public String creatorRefTargetOid;
+    public Integer creatorRefTargetType;
+    public String lifecycleState;
+    public String modifierRefRelation;
+    public String modifierRefTargetOid;
+    public Integer modifierRefTargetType;
+    public Instant modifyTimestamp;
+    public String tenantRefRelation;
+    public String tenantRefTargetOid;
+    public Integer tenantRefTargetType;
+    public Integer version;
+    public Jsonb ext;
+    public UUID[] parentOrgRefTargetOids;
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+                "oid=" + oid +
+                ", nameOrig='" + nameOrig + '\'' +
+                ", version=" + version +
+                ", fullObject=" + binaryToHexPreview(fullObject) +
+                ", ext=" + ext +
+                ", parentOrgRefTargetOids=" + Arrays.toString(parentOrgRefTargetOids) +
+                '}';
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.qmodel;
+
+import javax.xml.namespace.QName;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.util.QNameUtil;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Object types as stored in the repository, e.g. in objectTypeClass and *_targetType columns.
+ * Ordinal numbers are persisted and must match the values in the SQL schema,
+ * so new values can be added only at the end and existing values must not be reordered.
+ * The order is the same as in the old repository.
+ */
+public enum MObjectType {
+
+    CONNECTOR(ConnectorType.class),
+    CONNECTOR_HOST(ConnectorHostType.class),
+    GENERIC_OBJECT(GenericObjectType.class),
+    OBJECT(ObjectType.class),
+    VALUE_POLICY(ValuePolicyType.class),
+    RESOURCE(ResourceType.class),
+    SHADOW(ShadowType.class),
+    ROLE(RoleType.class),
+    SYSTEM_CONFIGURATION(SystemConfigurationType.class),
+    TASK(TaskType.class),
+    USER(UserType.class),
+    REPORT(ReportType.class),
+    REPORT_DATA(ReportDataType.class),
+    OBJECT_TEMPLATE(ObjectTemplateType.class),
+    NODE(NodeType.class),
+    ORG(OrgType.class),
+    ABSTRACT_ROLE(AbstractRoleType.class),
+    FOCUS(FocusType.class),
+    ASSIGNMENT_HOLDER(AssignmentHolderType.class),
+    SECURITY_POLICY(SecurityPolicyType.class),
+    LOOKUP_TABLE(LookupTableType.class),
+    ACCESS_CERTIFICATION_DEFINITION(AccessCertificationDefinitionType.class),
+    ACCESS_CERTIFICATION_CAMPAIGN(AccessCertificationCampaignType.class),
+    SEQUENCE(SequenceType.class),
+    SERVICE(ServiceType.class),
+    FORM(FormType.class),
+    CASE(CaseType.class),
+    FUNCTION_LIBRARY(FunctionLibraryType.class),
+    OBJECT_COLLECTION(ObjectCollectionType.class),
+    ARCHETYPE(ArchetypeType.class),
+    DASHBOARD(DashboardType.class);
+
+    private final Class<? extends ObjectType> schemaType;
+
+    MObjectType(Class<? extends ObjectType> schemaType) {
+        this.schemaType = schemaType;
+    }
+
+    public Class<? extends ObjectType> getSchemaType() {
+        return schemaType;
+    }
+
+    public static @NotNull MObjectType fromSchemaType(@NotNull Class<?> schemaType) {
+        for (MObjectType value : values()) {
+            if (value.schemaType.equals(schemaType)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported object type " + schemaType);
+    }
+
+    /**
+     * Returns ordinal for the object type Q-name or null if the Q-name is null.
+     */
+    public static @Nullable Integer ordinalFromTypeName(
+            @Nullable QName typeName, @NotNull PrismContext prismContext) {
+        if (typeName == null) {
+            return null;
+        }
+        Class<?> schemaType = prismContext.getSchemaRegistry().determineCompileTimeClass(typeName);
+        if (schemaType == null) {
+            throw new IllegalArgumentException("Unknown object type name " + typeName);
+        }
+        return fromSchemaType(schemaType).ordinal();
+    }
+
+    /**
+     * Returns object type Q-name for the ordinal or null if the ordinal is null.
+     */
+    public static @Nullable QName typeNameFromOrdinal(
+            @Nullable Integer ordinal, @NotNull PrismContext prismContext) {
+        if (ordinal == null) {
+            return null;
+        }
+        return prismContext.getSchemaRegistry().determineTypeForClass(
+                values()[ordinal].schemaType);
+    }
+
+    /**
+     * Returns URI for relation Q-name, unqualified relation is left as is.
+     */
+    public static @Nullable String relationToUri(@Nullable QName relation) {
+        return relation != null ? QNameUtil.qNameToUri(relation) : null;
+    }
+}
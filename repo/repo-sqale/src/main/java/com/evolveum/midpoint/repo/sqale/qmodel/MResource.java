@@ -0,0 +1,18 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.qmodel;
+
+/**
+ * Querydsl "row bean" type related to {@link QResource}.
+ */
+public class MResource extends MObject {
+
+    public Integer administrativeState;
+    public String connectorRefRelation;
+    public String connectorRefTargetOid;
+    public Integer connectorRefTargetType;
+}
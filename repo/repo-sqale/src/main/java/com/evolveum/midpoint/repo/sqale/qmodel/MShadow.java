@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.qmodel;
+
+import java.time.Instant;
+
+/**
+ * Querydsl "row bean" type related to {@link QShadow}.
+ */
+public class MShadow extends MObject {
+
+    public String objectClass;
+    public String resourceRefRelation;
+    public String resourceRefTargetOid;
+    public Integer resourceRefTargetType;
+    public String intent;
+    public Integer kind;
+    public Boolean dead;
+    public Boolean exist;
+    public Instant fullSynchronizationTimestamp;
+    public Integer pendingOperationCount;
+    public String primaryIdentifierValue;
+    public Integer synchronizationSituation;
+    public Instant synchronizationTimestamp;
+}
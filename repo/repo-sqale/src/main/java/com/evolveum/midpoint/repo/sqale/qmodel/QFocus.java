@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.qmodel;
+
+import java.sql.Types;
+import java.time.Instant;
+import java.util.UUID;
+
+import com.querydsl.core.types.dsl.ArrayPath;
+import com.querydsl.core.types.dsl.DateTimePath;
+import com.querydsl.core.types.dsl.NumberPath;
+import com.querydsl.core.types.dsl.StringPath;
+import com.querydsl.sql.ColumnMetadata;
+
+/**
+ * Querydsl query type for M_FOCUS table, abstract just like M_OBJECT.
+ *
+ * @param <R> type of the row bean
+ */
+@SuppressWarnings("unused")
+public class QFocus<R extends MFocus> extends QObject<R> {
+
+    private static final long serialVersionUID = 6934178123046591472L;
+
+    /**
+     * Alias for {@code QFocus<MFocus>.class} which is not expressible in Java otherwise.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static final Class<QFocus<MFocus>> CLASS = (Class) QFocus.class;
+
+    public static final String TABLE_NAME = "m_focus";
+
+    public static final ColumnMetadata ADMINISTRATIVE_STATUS =
+            ColumnMetadata.named("administrativeStatus").ofType(Types.INTEGER);
+    public static final ColumnMetadata EFFECTIVE_STATUS =
+            ColumnMetadata.named("effectiveStatus").ofType(Types.INTEGER);
+    public static final ColumnMetadata VALID_FROM =
+            ColumnMetadata.named("validFrom").ofType(Types.TIMESTAMP);
+    public static final ColumnMetadata VALID_TO =
+            ColumnMetadata.named("validTo").ofType(Types.TIMESTAMP);
+    public static final ColumnMetadata COST_CENTER =
+            ColumnMetadata.named("costCenter").ofType(Types.VARCHAR).withSize(255);
+    public static final ColumnMetadata EMAIL_ADDRESS =
+            ColumnMetadata.named("emailAddress").ofType(Types.VARCHAR).withSize(255);
+    public static final ColumnMetadata LOCALE =
+            ColumnMetadata.named("locale").ofType(Types.VARCHAR).withSize(255);
+    public static final ColumnMetadata PREFERRED_LANGUAGE =
+            ColumnMetadata.named("preferredLanguage").ofType(Types.VARCHAR).withSize(255);
+    public static final ColumnMetadata TELEPHONE_NUMBER =
+            ColumnMetadata.named("telephoneNumber").ofType(Types.VARCHAR).withSize(255);
+    public static final ColumnMetadata TIMEZONE =
+            ColumnMetadata.named("timezone").ofType(Types.VARCHAR).withSize(255);
+    public static final ColumnMetadata ROLE_MEMBERSHIP_REF_TARGET_OIDS =
+            ColumnMetadata.named("roleMembershipRef_targetOids").ofType(Types.ARRAY);
+
+    public final NumberPath<Integer> administrativeStatus =
+            createInteger("administrativeStatus", ADMINISTRATIVE_STATUS);
+    public final NumberPath<Integer> effectiveStatus =
+            createInteger("effectiveStatus", EFFECTIVE_STATUS);
+    public final DateTimePath<Instant> validFrom = createInstant("validFrom", VALID_FROM);
+    public final DateTimePath<Instant> validTo = createInstant("validTo", VALID_TO);
+    public final StringPath costCenter = createString("costCenter", COST_CENTER);
+    public final StringPath emailAddress = createString("emailAddress", EMAIL_ADDRESS);
+    public final StringPath locale = createString("locale", LOCALE);
+    public final StringPath preferredLanguage =
+            createString("preferredLanguage", PREFERRED_LANGUAGE);
+    public final StringPath telephoneNumber = createString("telephoneNumber", TELEPHONE_NUMBER);
+    public final StringPath timezone = createString("timezone", TIMEZONE);
+    public final ArrayPath<UUID[], UUID> roleMembershipRefTargetOids =
+            createUuidArray("roleMembershipRefTargetOids", ROLE_MEMBERSHIP_REF_TARGET_OIDS);
+
+    public QFocus(Class<R> type, String variable) {
+        this(type, variable, DEFAULT_SCHEMA_NAME, TABLE_NAME);
+    }
+
+    public QFocus(Class<? extends R> type, String variable, String schema, String table) {
+        super(type, variable, schema, table);
+    }
+}
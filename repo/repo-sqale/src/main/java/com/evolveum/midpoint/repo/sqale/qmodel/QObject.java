@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.qmodel;
+
+import static com.querydsl.core.types.PathMetadataFactory.forVariable;
+
+import java.sql.Types;
+import java.time.Instant;
+import java.util.UUID;
+
+import com.querydsl.core.types.dsl.*;
+import com.querydsl.sql.ColumnMetadata;
+import com.querydsl.sql.PrimaryKey;
+
+import com.evolveum.midpoint.repo.sqale.querydsl.Jsonb;
+import com.evolveum.midpoint.repo.sqlbase.querydsl.FlexibleRelationalPathBase;
+
+/**
+ * Querydsl query type for M_OBJECT table.
+ * The table is "abstract" (no rows can be inserted into it directly), but it can be queried,
+ * because PostgreSQL returns rows of all the inherited (concrete) tables as well.
+ * Subclasses represent the tables inheriting from M_OBJECT.
+ * <p>
+ * Column objectTypeClass is not mapped, it is generated by the DB in concrete tables.
+ *
+ * @param <R> type of the row bean
+ */
+@SuppressWarnings("unused")
+public class QObject<R extends MObject> extends FlexibleRelationalPathBase<R> {
+
+    private static final long serialVersionUID = -4174420892574422778L;
+
+    /**
+     * Alias for {@code QObject<MObject>.class} which is not expressible in Java otherwise.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static final Class<QObject<MObject>> CLASS = (Class) QObject.class;
+
+    public static final String TABLE_NAME = "m_object";
+
+    public static final ColumnMetadata OID =
+            ColumnMetadata.named("oid").ofType(Types.OTHER).notNull();
+    public static final ColumnMetadata NAME_NORM =
+            ColumnMetadata.named("name_norm").ofType(Types.VARCHAR).withSize(255).notNull();
+    public static final ColumnMetadata NAME_ORIG =
+            ColumnMetadata.named("name_orig").ofType(Types.VARCHAR).withSize(255).notNull();
+    public static final ColumnMetadata FULL_OBJECT =
+            ColumnMetadata.named("fullObject").ofType(Types.BINARY);
+    public static final ColumnMetadata CREATE_TIMESTAMP =
+            ColumnMetadata.named("createTimestamp").ofType(Types.TIMESTAMP);
+    public static final ColumnMetadata CREATOR_REF_RELATION =
+            ColumnMetadata.named("creatorRef_relation").ofType(Types.VARCHAR).withSize(157);
+    public static final ColumnMetadata CREATOR_REF_TARGET_OID =
+            ColumnMetadata.named("creatorRef_targetOid").ofType(Types.VARCHAR).withSize(36);
+    public static final ColumnMetadata CREATOR_REF_TARGET_TYPE =
+            ColumnMetadata.named("creatorRef_targetType").ofType(Types.INTEGER);
+    public static final ColumnMetadata LIFECYCLE_STATE =
+            ColumnMetadata.named("lifecycleState").ofType(Types.VARCHAR).withSize(255);
+    public static final ColumnMetadata MODIFIER_REF_RELATION =
+            ColumnMetadata.named("modifierRef_relation").ofType(Types.VARCHAR).withSize(157);
+    public static final ColumnMetadata MODIFIER_REF_TARGET_OID =
+            ColumnMetadata.named("modifierRef_targetOid").ofType(Types.VARCHAR).withSize(36);
+    public static final ColumnMetadata MODIFIER_REF_TARGET_TYPE =
+            ColumnMetadata.named("modifierRef_targetType").ofType(Types.INTEGER);
+    public static final ColumnMetadata MODIFY_TIMESTAMP =
+            ColumnMetadata.named("modifyTimestamp").ofType(Types.TIMESTAMP);
+    public static final ColumnMetadata TENANT_REF_RELATION =
+            ColumnMetadata.named("tenantRef_relation").ofType(Types.VARCHAR).withSize(157);
+    public static final ColumnMetadata TENANT_REF_TARGET_OID =
+            ColumnMetadata.named("tenantRef_targetOid").ofType(Types.VARCHAR).withSize(36);
+    public static final ColumnMetadata TENANT_REF_TARGET_TYPE =
+            ColumnMetadata.named("tenantRef_targetType").ofType(Types.INTEGER);
+    public static final ColumnMetadata VERSION =
+            ColumnMetadata.named("version").ofType(Types.INTEGER).notNull();
+    public static final ColumnMetadata EXT =
+            ColumnMetadata.named("ext").ofType(Types.OTHER);
+    public static final ColumnMetadata PARENT_ORG_REF_TARGET_OIDS =
+            ColumnMetadata.named("parentOrgRef_targetOids").ofType(Types.ARRAY);
+
+    // columns and relations
+    public final ComparablePath<UUID> oid = createUuid("oid", OID);
+    public final StringPath nameNorm = createString("nameNorm", NAME_NORM);
+    public final StringPath nameOrig = createString("nameOrig", NAME_ORIG);
+    public final ArrayPath<byte[], Byte> fullObject = createBlob("fullObject", FULL_OBJECT);
+    public final DateTimePath<Instant> createTimestamp =
+            createInstant("createTimestamp", CREATE_TIMESTAMP);
+    public final StringPath creatorRefRelation =
+            createString("creatorRefRelation", CREATOR_REF_RELATION);
+    public final StringPath creatorRefTargetOid =
+            createString("creatorRefTargetOid", CREATOR_REF_TARGET_OID);
+    public final NumberPath<Integer> creatorRefTargetType =
+            createInteger("creatorRefTargetType", CREATOR_REF_TARGET_TYPE);
+    public final StringPath lifecycleState = createString("lifecycleState", LIFECYCLE_STATE);
+    public final StringPath modifierRefRelation =
+            createString("modifierRefRelation", MODIFIER_REF_RELATION);
+    public final StringPath modifierRefTargetOid =
+            createString("modifierRefTargetOid", MODIFIER_REF_TARGET_OID);
+    public final NumberPath<Integer> modifierRefTargetType =
+            createInteger("modifierRefTargetType", MODIFIER_REF_TARGET_TYPE);
+    public final DateTimePath<Instant> modifyTimestamp =
+            createInstant("modifyTimestamp", MODIFY_TIMESTAMP);
+    public final StringPath tenantRefRelation =
+            createString("tenantRefRelation", TENANT_REF_RELATION);
+    public final StringPath tenantRefTargetOid =
+            createString("tenantRefTargetOid", TENANT_REF_TARGET_OID);
+    public final NumberPath<Integer> tenantRefTargetType =
+            createInteger("tenantRefTargetType", TENANT_REF_TARGET_TYPE);
+    public final NumberPath<Integer> version = createInteger("version", VERSION);
+    public final SimplePath<Jsonb> ext = addMetadata(createSimple("ext", Jsonb.class), EXT);
+    public final ArrayPath<UUID[], UUID> parentOrgRefTargetOids =
+            createUuidArray("parentOrgRefTargetOids", PARENT_ORG_REF_TARGET_OIDS);
+
+    public final PrimaryKey<R> pk = createPrimaryKey(oid);
+
+    public QObject(Class<R> type, String variable) {
+        this(type, variable, DEFAULT_SCHEMA_NAME, TABLE_NAME);
+    }
+
+    public QObject(Class<? extends R> type, String variable, String schema, String table) {
+        super(type, forVariable(variable), schema, table);
+    }
+
+    /**
+     * Creates {@link ComparablePath} for an UUID property and registers column metadata for it.
+     */
+    protected ComparablePath<UUID> createUuid(String property, ColumnMetadata columnMetadata) {
+        return addMetadata(createComparable(property, UUID.class), columnMetadata);
+    }
+
+    /**
+     * Creates {@link ArrayPath} for an UUID[] property and registers column metadata for it.
+     */
+    protected ArrayPath<UUID[], UUID> createUuidArray(
+            String property, ColumnMetadata columnMetadata) {
+        return addMetadata(createArray(property, UUID[].class), columnMetadata);
+    }
+}
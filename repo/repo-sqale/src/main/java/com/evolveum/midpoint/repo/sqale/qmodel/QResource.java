@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.qmodel;
+
+import java.sql.Types;
+
+import com.querydsl.core.types.dsl.NumberPath;
+import com.querydsl.core.types.dsl.StringPath;
+import com.querydsl.sql.ColumnMetadata;
+
+/**
+ * Querydsl query type for M_RESOURCE table.
+ */
+@SuppressWarnings("unused")
+public class QResource extends QObject<MResource> {
+
+    private static final long serialVersionUID = 3265219361744937066L;
+
+    public static final String TABLE_NAME = "m_resource";
+
+    public static final ColumnMetadata ADMINISTRATIVE_STATE =
+            ColumnMetadata.named("administrativeState").ofType(Types.INTEGER);
+    public static final ColumnMetadata CONNECTOR_REF_RELATION =
+            ColumnMetadata.named("connectorRef_relation").ofType(Types.VARCHAR).withSize(157);
+    public static final ColumnMetadata CONNECTOR_REF_TARGET_OID =
+            ColumnMetadata.named("connectorRef_targetOid").ofType(Types.VARCHAR).withSize(36);
+    public static final ColumnMetadata CONNECTOR_REF_TARGET_TYPE =
+            ColumnMetadata.named("connectorRef_targetType").ofType(Types.INTEGER);
+
+    public final NumberPath<Integer> administrativeState =
+            createInteger("administrativeState", ADMINISTRATIVE_STATE);
+    public final StringPath connectorRefRelation =
+            createString("connectorRefRelation", CONNECTOR_REF_RELATION);
+    public final StringPath connectorRefTargetOid =
+            createString("connectorRefTargetOid", CONNECTOR_REF_TARGET_OID);
+    public final NumberPath<Integer> connectorRefTargetType =
+            createInteger("connectorRefTargetType", CONNECTOR_REF_TARGET_TYPE);
+
+    public QResource(String variable) {
+        this(variable, DEFAULT_SCHEMA_NAME, TABLE_NAME);
+    }
+
+    public QResource(String variable, String schema, String table) {
+        super(MResource.class, variable, schema, table);
+    }
+}
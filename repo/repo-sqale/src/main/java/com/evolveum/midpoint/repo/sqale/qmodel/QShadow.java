@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.qmodel;
+
+import java.sql.Types;
+import java.time.Instant;
+
+import com.querydsl.core.types.dsl.BooleanPath;
+import com.querydsl.core.types.dsl.DateTimePath;
+import com.querydsl.core.types.dsl.NumberPath;
+import com.querydsl.core.types.dsl.StringPath;
+import com.querydsl.sql.ColumnMetadata;
+
+/**
+ * Querydsl query type for M_SHADOW table.
+ */
+@SuppressWarnings("unused")
+public class QShadow extends QObject<MShadow> {
+
+    private static final long serialVersionUID = -8704333735247282997L;
+
+    public static final String TABLE_NAME = "m_shadow";
+
+    public static final ColumnMetadata OBJECT_CLASS =
+            ColumnMetadata.named("objectClass").ofType(Types.VARCHAR).withSize(157).notNull();
+    public static final ColumnMetadata RESOURCE_REF_RELATION =
+            ColumnMetadata.named("resourceRef_relation").ofType(Types.VARCHAR).withSize(157);
+    public static final ColumnMetadata RESOURCE_REF_TARGET_OID =
+            ColumnMetadata.named("resourceRef_targetOid").ofType(Types.VARCHAR).withSize(36);
+    public static final ColumnMetadata RESOURCE_REF_TARGET_TYPE =
+            ColumnMetadata.named("resourceRef_targetType").ofType(Types.INTEGER);
+    public static final ColumnMetadata INTENT =
+            ColumnMetadata.named("intent").ofType(Types.VARCHAR).withSize(255);
+    public static final ColumnMetadata KIND =
+            ColumnMetadata.named("kind").ofType(Types.INTEGER);
+    public static final ColumnMetadata DEAD =
+            ColumnMetadata.named("dead").ofType(Types.BOOLEAN);
+    public static final ColumnMetadata EXIST =
+            ColumnMetadata.named("exist").ofType(Types.BOOLEAN);
+    public static final ColumnMetadata FULL_SYNCHRONIZATION_TIMESTAMP =
+            ColumnMetadata.named("fullSynchronizationTimestamp").ofType(Types.TIMESTAMP);
+    public static final ColumnMetadata PENDING_OPERATION_COUNT =
+            ColumnMetadata.named("pendingOperationCount").ofType(Types.INTEGER);
+    public static final ColumnMetadata PRIMARY_IDENTIFIER_VALUE =
+            ColumnMetadata.named("primaryIdentifierValue").ofType(Types.VARCHAR).withSize(255);
+    public static final ColumnMetadata SYNCHRONIZATION_SITUATION =
+            ColumnMetadata.named("synchronizationSituation").ofType(Types.INTEGER);
+    public static final ColumnMetadata SYNCHRONIZATION_TIMESTAMP =
+            ColumnMetadata.named("synchronizationTimestamp").ofType(Types.TIMESTAMP);
+
+    public final StringPath objectClass = createString("objectClass", OBJECT_CLASS);
+    public final StringPath resourceRefRelation =
+            createString("resourceRefRelation", RESOURCE_REF_RELATION);
+    public final StringPath resourceRefTargetOid =
+            createString("resourceRefTargetOid", RESOURCE_REF_TARGET_OID);
+    public final NumberPath<Integer> resourceRefTargetType =
+            createInteger("resourceRefTargetType", RESOURCE_REF_TARGET_TYPE);
+    public final StringPath intent = createString("intent", INTENT);
+    public final NumberPath<Integer> kind = createInteger("kind", KIND);
+    public final BooleanPath dead = addMetadata(createBoolean("dead"), DEAD);
+    public final BooleanPath exist = addMetadata(createBoolean("exist"), EXIST);
+    public final DateTimePath<Instant> fullSynchronizationTimestamp =
+            createInstant("fullSynchronizationTimestamp", FULL_SYNCHRONIZATION_TIMESTAMP);
+    public final NumberPath<Integer> pendingOperationCount =
+            createInteger("pendingOperationCount", PENDING_OPERATION_COUNT);
+    public final StringPath primaryIdentifierValue =
+            createString("primaryIdentifierValue", PRIMARY_IDENTIFIER_VALUE);
+    public final NumberPath<Integer> synchronizationSituation =
+            createInteger("synchronizationSituation", SYNCHRONIZATION_SITUATION);
+    public final DateTimePath<Instant> synchronizationTimestamp =
+            createInstant("synchronizationTimestamp", SYNCHRONIZATION_TIMESTAMP);
+
+    public QShadow(String variable) {
+        this(variable, DEFAULT_SCHEMA_NAME, TABLE_NAME);
+    }
+
+    public QShadow(String variable, String schema, String table) {
+        super(MShadow.class, variable, schema, table);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.querydsl;
+
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Value of PostgreSQL JSONB column, represented by its JSON text.
+ * Separate type is needed so that Querydsl can bind it properly, see {@link JsonbType}.
+ */
+public class Jsonb {
+
+    public final String value;
+
+    public Jsonb(@NotNull String value) {
+        this.value = Objects.requireNonNull(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o
+                || o instanceof Jsonb && value.equals(((Jsonb) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Jsonb{" + value + '}';
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.querydsl;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import com.querydsl.sql.types.AbstractType;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Querydsl type for {@link Jsonb} values.
+ * JSON text is sent with {@link Types#OTHER} type, so PostgreSQL casts it to JSONB
+ * (plain string parameter would be rejected for JSONB column).
+ */
+public class JsonbType extends AbstractType<Jsonb> {
+
+    public JsonbType() {
+        super(Types.OTHER);
+    }
+
+    @Override
+    public Class<Jsonb> getReturnedClass() {
+        return Jsonb.class;
+    }
+
+    @Nullable
+    @Override
+    public Jsonb getValue(ResultSet rs, int startIndex) throws SQLException {
+        String value = rs.getString(startIndex);
+        return value != null ? new Jsonb(value) : null;
+    }
+
+    @Override
+    public void setValue(PreparedStatement st, int startIndex, Jsonb value) throws SQLException {
+        st.setObject(startIndex, value.value, Types.OTHER);
+    }
+}
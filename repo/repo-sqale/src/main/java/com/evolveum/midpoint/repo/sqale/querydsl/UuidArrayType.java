@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.querydsl;
+
+import java.sql.*;
+import java.util.UUID;
+
+import com.querydsl.sql.types.AbstractType;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Querydsl type for PostgreSQL {@code UUID[]} columns (array-valued references).
+ */
+public class UuidArrayType extends AbstractType<UUID[]> {
+
+    public UuidArrayType() {
+        super(Types.ARRAY);
+    }
+
+    @Override
+    public Class<UUID[]> getReturnedClass() {
+        return UUID[].class;
+    }
+
+    @Nullable
+    @Override
+    public UUID[] getValue(ResultSet rs, int startIndex) throws SQLException {
+        Array array = rs.getArray(startIndex);
+        return array != null ? (UUID[]) array.getArray() : null;
+    }
+
+    @Override
+    public void setValue(PreparedStatement st, int startIndex, UUID[] value) throws SQLException {
+        st.setArray(startIndex, st.getConnection().createArrayOf("uuid", value));
+    }
+}
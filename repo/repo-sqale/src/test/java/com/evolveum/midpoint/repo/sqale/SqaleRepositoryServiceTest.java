@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.commons.configuration2.BaseConfiguration;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.impl.match.MatchingRuleRegistryFactory;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.repo.api.ConflictWatcher;
+import com.evolveum.midpoint.repo.api.PreconditionViolationException;
+import com.evolveum.midpoint.repo.api.RepoAddOptions;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.SearchResultList;
+import com.evolveum.midpoint.schema.relation.RelationRegistryImpl;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Tests of {@link SqaleRepositoryService} against PostgreSQL database with the schema
+ * created by {@code sql/pgnew-repo.sql}.
+ * JDBC URL of the database is taken from system property {@value #PROPERTY_JDBC_URL},
+ * the tests are skipped if it is not set; credentials are taken from properties
+ * {@value #PROPERTY_JDBC_USERNAME} and {@value #PROPERTY_JDBC_PASSWORD}.
+ * All objects are deleted from the database before the tests.
+ */
+public class SqaleRepositoryServiceTest extends AbstractUnitTest {
+
+    private static final String PROPERTY_JDBC_URL = "midpoint.sqale.test.jdbcUrl";
+    private static final String PROPERTY_JDBC_USERNAME = "midpoint.sqale.test.jdbcUsername";
+    private static final String PROPERTY_JDBC_PASSWORD = "midpoint.sqale.test.jdbcPassword";
+
+    /** Small batch, so iterative search needs more batches. */
+    private static final int ITERATIVE_SEARCH_BATCH_SIZE = 2;
+
+    private static final String EMPLOYEE_NUMBER_BATCH = "batch";
+    private static final int BATCH_USERS = 5;
+
+    private PrismContext prismContext;
+    private HikariDataSource dataSource;
+    private SqaleRepositoryService repositoryService;
+
+    private String userOid;
+
+    @BeforeClass
+    public void initRepositoryService() throws Exception {
+        String jdbcUrl = System.getProperty(PROPERTY_JDBC_URL);
+        if (jdbcUrl == null) {
+            throw new SkipException("Property " + PROPERTY_JDBC_URL + " is not set, skipping tests");
+        }
+        PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        prismContext = PrismTestUtil.getPrismContext();
+
+        BaseConfiguration configuration = new BaseConfiguration();
+        configuration.setProperty(SqaleRepositoryConfiguration.PROPERTY_JDBC_URL, jdbcUrl);
+        configuration.setProperty(SqaleRepositoryConfiguration.PROPERTY_JDBC_USERNAME,
+                System.getProperty(PROPERTY_JDBC_USERNAME));
+        configuration.setProperty(SqaleRepositoryConfiguration.PROPERTY_JDBC_PASSWORD,
+                System.getProperty(PROPERTY_JDBC_PASSWORD));
+        configuration.setProperty(SqaleRepositoryConfiguration.PROPERTY_MIN_POOL_SIZE, 1);
+        configuration.setProperty(SqaleRepositoryConfiguration.PROPERTY_MAX_POOL_SIZE, 4);
+        configuration.setProperty(SqaleRepositoryConfiguration.PROPERTY_ITERATIVE_SEARCH_BATCH_SIZE,
+                ITERATIVE_SEARCH_BATCH_SIZE);
+        SqaleRepositoryConfiguration repositoryConfiguration =
+                new SqaleRepositoryConfiguration(configuration);
+
+        dataSource = SqaleRepositoryServiceFactory.createDataSource(repositoryConfiguration);
+        repositoryService = new SqaleRepositoryService(dataSource,
+                SqaleRepositoryServiceFactory.createSqlRepoContext(), prismContext,
+                MatchingRuleRegistryFactory.createRegistry(), new RelationRegistryImpl(),
+                repositoryConfiguration);
+
+        try (Connection conn = dataSource.getConnection();
+                Statement statement = conn.createStatement()) {
+            // Deletes rows from all the inherited tables as well.
+            statement.execute("DELETE FROM m_object");
+            conn.commit();
+        }
+    }
+
+    @AfterClass
+    public void destroyDataSource() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void test100AddAndGetObject() throws Exception {
+        given();
+        OperationResult result = new OperationResult(getTestNameShort());
+        UserType user = new UserType(prismContext)
+                .name("user-100")
+                .employeeNumber("100");
+
+        when();
+        userOid = repositoryService.addObject(user.asPrismObject(), null, result);
+
+        then();
+        assertThat(userOid).isNotNull();
+        PrismObject<UserType> userFromRepo =
+                repositoryService.getObject(UserType.class, userOid, null, result);
+        assertThat(userFromRepo.asObjectable().getName().getOrig()).isEqualTo("user-100");
+        assertThat(userFromRepo.asObjectable().getEmployeeNumber()).isEqualTo("100");
+        assertThat(userFromRepo.getVersion()).isEqualTo("0");
+        assertThat(repositoryService.getVersion(UserType.class, userOid, result)).isEqualTo("0");
+
+        and("object can be read as its supertype");
+        assertThat(repositoryService.getObject(ObjectType.class, userOid, null, result).getOid())
+                .isEqualTo(userOid);
+
+        result.computeStatus();
+        assertThat(result.isSuccess()).isTrue();
+    }
+
+    @Test
+    public void test110AddObjectWithExistingOidFails() {
+        given();
+        OperationResult result = new OperationResult(getTestNameShort());
+        UserType user = new UserType(prismContext)
+                .oid(userOid)
+                .name("user-110");
+
+        expect();
+        assertThatThrownBy(() -> repositoryService.addObject(user.asPrismObject(), null, result))
+                .isInstanceOf(ObjectAlreadyExistsException.class);
+    }
+
+    @Test
+    public void test120AddObjectWithOverwrite() throws Exception {
+        given();
+        OperationResult result = new OperationResult(getTestNameShort());
+        UserType user = new UserType(prismContext)
+                .oid(userOid)
+                .name("user-120");
+
+        when();
+        repositoryService.addObject(user.asPrismObject(),
+                RepoAddOptions.createOverwrite(), result);
+
+        then("object is replaced and its version is increased");
+        PrismObject<UserType> userFromRepo =
+                repositoryService.getObject(UserType.class, userOid, null, result);
+        assertThat(userFromRepo.asObjectable().getName().getOrig()).isEqualTo("user-120");
+        assertThat(userFromRepo.getVersion()).isEqualTo("1");
+    }
+
+    @Test
+    public void test200ModifyObject() throws Exception {
+        given();
+        OperationResult result = new OperationResult(getTestNameShort());
+        List<ItemDelta<?, ?>> modifications = prismContext.deltaFor(UserType.class)
+                .item(UserType.F_EMPLOYEE_NUMBER).replace("200")
+                .asItemDeltas();
+
+        when();
+        repositoryService.modifyObject(UserType.class, userOid, modifications, result);
+
+        then();
+        PrismObject<UserType> userFromRepo =
+                repositoryService.getObject(UserType.class, userOid, null, result);
+        assertThat(userFromRepo.asObjectable().getEmployeeNumber()).isEqualTo("200");
+        assertThat(userFromRepo.getVersion()).isEqualTo("2");
+
+        and("modified column is used for search");
+        assertThat(repositoryService.countObjects(UserType.class,
+                employeeNumberQuery("200"), null, result)).isEqualTo(1);
+    }
+
+    @Test
+    public void test210ModifyObjectWithViolatedPrecondition() throws Exception {
+        given();
+        OperationResult result = new OperationResult(getTestNameShort());
+        List<ItemDelta<?, ?>> modifications = prismContext.deltaFor(UserType.class)
+                .item(UserType.F_EMPLOYEE_NUMBER).replace("210")
+                .asItemDeltas();
+
+        expect("modification is refused");
+        assertThatThrownBy(() -> repositoryService.modifyObject(UserType.class, userOid,
+                modifications, object -> false, null, result))
+                .isInstanceOf(PreconditionViolationException.class);
+
+        and("object is not changed");
+        PrismObject<UserType> userFromRepo =
+                repositoryService.getObject(UserType.class, userOid, null, result);
+        assertThat(userFromRepo.asObjectable().getEmployeeNumber()).isEqualTo("200");
+        assertThat(userFromRepo.getVersion()).isEqualTo("2");
+    }
+
+    @Test
+    public void test220ConflictWatcherDetectsConcurrentModification() throws Exception {
+        given();
+        OperationResult result = new OperationResult(getTestNameShort());
+        ConflictWatcher watcher = repositoryService.createAndRegisterConflictWatcher(userOid);
+        try {
+            repositoryService.getObject(UserType.class, userOid, null, result);
+
+            when("object is modified by another thread");
+            CompletableFuture.runAsync(() -> {
+                try {
+                    repositoryService.modifyObject(UserType.class, userOid,
+                            prismContext.deltaFor(UserType.class)
+                                    .item(UserType.F_EMPLOYEE_NUMBER).replace("220")
+                                    .asItemDeltas(),
+                            new OperationResult("concurrentModify"));
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }).get();
+
+            then();
+            assertThat(repositoryService.hasConflict(watcher, result)).isTrue();
+        } finally {
+            repositoryService.unregisterConflictWatcher(watcher);
+        }
+    }
+
+    @Test
+    public void test300CountAndSearchObjects() throws Exception {
+        given();
+        OperationResult result = new OperationResult(getTestNameShort());
+        for (int i = 0; i < BATCH_USERS; i++) {
+            repositoryService.addObject(new UserType(prismContext)
+                    .name("user-300-" + i)
+                    .employeeNumber(EMPLOYEE_NUMBER_BATCH)
+                    .asPrismObject(), null, result);
+        }
+
+        when();
+        int count = repositoryService.countObjects(
+                UserType.class, employeeNumberQuery(EMPLOYEE_NUMBER_BATCH), null, result);
+        SearchResultList<PrismObject<UserType>> users = repositoryService.searchObjects(
+                UserType.class, employeeNumberQuery(EMPLOYEE_NUMBER_BATCH), null, result);
+
+        then();
+        assertThat(count).isEqualTo(BATCH_USERS);
+        assertThat(users).hasSize(BATCH_USERS);
+        assertThat(users).allMatch(
+                u -> EMPLOYEE_NUMBER_BATCH.equals(u.asObjectable().getEmployeeNumber()));
+        assertThat(repositoryService.countObjects(UserType.class, null, null, result))
+                .isEqualTo(BATCH_USERS + 1);
+    }
+
+    @Test
+    public void test310SearchObjectsIterativeInBatches() throws Exception {
+        given();
+        OperationResult result = new OperationResult(getTestNameShort());
+        List<String> oids = new ArrayList<>();
+
+        when("there are more objects than the batch size");
+        repositoryService.searchObjectsIterative(UserType.class,
+                employeeNumberQuery(EMPLOYEE_NUMBER_BATCH),
+                (object, parentResult) -> oids.add(object.getOid()),
+                null, true, result);
+
+        then("all objects are handled exactly once, ordered by OID");
+        assertThat(oids).hasSize(BATCH_USERS).doesNotHaveDuplicates();
+        List<UUID> uuids = new ArrayList<>();
+        oids.forEach(oid -> uuids.add(UUID.fromString(oid)));
+        assertThat(uuids).isSorted();
+    }
+
+    @Test
+    public void test320SearchObjectsIterativeStoppedByHandler() throws Exception {
+        given();
+        OperationResult result = new OperationResult(getTestNameShort());
+        List<String> oids = new ArrayList<>();
+
+        when("handler stops after the first batch");
+        repositoryService.searchObjectsIterative(UserType.class,
+                employeeNumberQuery(EMPLOYEE_NUMBER_BATCH),
+                (object, parentResult) -> oids.add(object.getOid())
+                        && oids.size() < ITERATIVE_SEARCH_BATCH_SIZE + 1,
+                null, true, result);
+
+        then();
+        assertThat(oids).hasSize(ITERATIVE_SEARCH_BATCH_SIZE + 1);
+    }
+
+    @Test
+    public void test400DeleteObject() throws Exception {
+        given();
+        OperationResult result = new OperationResult(getTestNameShort());
+
+        when();
+        repositoryService.deleteObject(UserType.class, userOid, result);
+
+        then();
+        assertThatThrownBy(() -> repositoryService.getObject(UserType.class, userOid, null, result))
+                .isInstanceOf(ObjectNotFoundException.class);
+        assertThatThrownBy(() -> repositoryService.deleteObject(UserType.class, userOid, result))
+                .isInstanceOf(ObjectNotFoundException.class);
+    }
+
+    private ObjectQuery employeeNumberQuery(String employeeNumber) {
+        return prismContext.queryFor(UserType.class)
+                .item(UserType.F_EMPLOYEE_NUMBER).eq(employeeNumber)
+                .build();
+    }
+}
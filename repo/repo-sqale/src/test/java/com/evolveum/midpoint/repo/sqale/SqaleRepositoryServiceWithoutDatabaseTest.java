@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.UUID;
+
+import org.apache.commons.configuration2.BaseConfiguration;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.impl.match.MatchingRuleRegistryFactory;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.repo.api.ConflictWatcher;
+import com.evolveum.midpoint.repo.api.perf.PerformanceMonitor;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.relation.RelationRegistryImpl;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests of {@link SqaleRepositoryService} that do not need the database:
+ * unsupported types are reported without touching the database, in-memory operations must work.
+ * Operations with the database are tested in {@link SqaleRepositoryServiceTest}.
+ */
+public class SqaleRepositoryServiceWithoutDatabaseTest extends AbstractUnitTest {
+
+    private static final Trace LOGGER = TraceManager.getTrace(SqaleRepositoryServiceWithoutDatabaseTest.class);
+
+    private static final String ARCHETYPE_OID = "c3f1e8a0-5c1b-4b7e-9f0a-3d6a2f3b1e01";
+
+    private PrismContext prismContext;
+    private SqaleRepositoryService repositoryService;
+
+    @BeforeClass
+    public void initRepositoryService() throws Exception {
+        PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+        prismContext = PrismTestUtil.getPrismContext();
+
+        BaseConfiguration configuration = new BaseConfiguration();
+        configuration.setProperty(SqaleRepositoryConfiguration.PROPERTY_JDBC_URL,
+                "jdbc:postgresql://localhost/not-used");
+        // No data source, none of the tested operations may touch the database.
+        repositoryService = new SqaleRepositoryService(null,
+                SqaleRepositoryServiceFactory.createSqlRepoContext(), prismContext,
+                MatchingRuleRegistryFactory.createRegistry(), new RelationRegistryImpl(),
+                new SqaleRepositoryConfiguration(configuration));
+    }
+
+    @Test
+    public void test100UnsupportedTypes() {
+        given();
+        OperationResult result = new OperationResult(getTestNameShort());
+
+        expect("object of type without a table can't be found");
+        assertThatThrownBy(() -> repositoryService.getObject(
+                RoleType.class, UUID.randomUUID().toString(), null, result))
+                .isInstanceOf(ObjectNotFoundException.class)
+                .hasMessageContaining("RoleType");
+
+        and("search for such objects is reported as a schema problem, not a missing mapping");
+        assertThatThrownBy(() -> repositoryService.countObjects(RoleType.class, null, null, result))
+                .isInstanceOf(SchemaException.class)
+                .hasMessageContaining("RoleType");
+
+        and("the failures are recorded in the operation result");
+        result.computeStatus();
+        assertThat(result.isFatalError()).isTrue();
+    }
+
+    @Test
+    public void test110PerformanceMonitor() {
+        given();
+        PerformanceMonitor performanceMonitor = repositoryService.getPerformanceMonitor();
+        RepositoryStatisticsReportingConfigurationType configuration =
+                new RepositoryStatisticsReportingConfigurationType();
+
+        when("configuration is applied, as done for the system configuration");
+        performanceMonitor.setConfiguration(configuration);
+        performanceMonitor.startThreadLocalPerformanceInformationCollection();
+
+        then("nothing is measured yet, but the information is available");
+        assertThat(performanceMonitor.getGlobalPerformanceInformation().getAllData()).isEmpty();
+        assertThat(performanceMonitor.getThreadLocalPerformanceInformation().getInvocationCount("any")).isZero();
+        performanceMonitor.stopThreadLocalPerformanceInformationCollection();
+    }
+
+    @Test
+    public void test200SelectorMatches() throws Exception {
+        given();
+        PrismObject<UserType> user = new UserType(prismContext)
+                .name("user")
+                .archetypeRef(ARCHETYPE_OID, ArchetypeType.COMPLEX_TYPE)
+                .asPrismObject();
+
+        expect("type and archetype are matched");
+        assertThat(repositoryService.selectorMatches(new ObjectSelectorType()
+                        .type(UserType.COMPLEX_TYPE)
+                        .archetypeRef(ARCHETYPE_OID, ArchetypeType.COMPLEX_TYPE),
+                user, null, LOGGER, "test")).isTrue();
+        assertThat(repositoryService.selectorMatches(new ObjectSelectorType()
+                        .type(RoleType.COMPLEX_TYPE),
+                user, null, LOGGER, "test")).isFalse();
+        assertThat(repositoryService.selectorMatches(new ObjectSelectorType()
+                        .archetypeRef(UUID.randomUUID().toString(), ArchetypeType.COMPLEX_TYPE),
+                user, null, LOGGER, "test")).isFalse();
+
+        and("org specification needs org closure, which is not stored yet, so it never matches");
+        assertThat(repositoryService.selectorMatches(new ObjectSelectorType()
+                        .orgRef(UUID.randomUUID().toString(), OrgType.COMPLEX_TYPE),
+                user, null, LOGGER, "test")).isFalse();
+    }
+
+    @Test
+    public void test300ConflictWatcherRegistration() {
+        given();
+        String oid = UUID.randomUUID().toString();
+
+        when();
+        ConflictWatcher watcher = repositoryService.createAndRegisterConflictWatcher(oid);
+        repositoryService.unregisterConflictWatcher(watcher);
+
+        then();
+        assertThat(watcher.getOid()).isEqualTo(oid);
+        assertThat(watcher.hasConflict()).isFalse();
+        assertThatThrownBy(() -> repositoryService.unregisterConflictWatcher(watcher))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void test310FullTextSearchConfigurationIsKept() {
+        given();
+        FullTextSearchConfigurationType configuration = new FullTextSearchConfigurationType();
+
+        when();
+        repositoryService.applyFullTextSearchConfiguration(configuration);
+
+        then();
+        assertThat(repositoryService.getFullTextSearchConfiguration()).isSameAs(configuration);
+    }
+}
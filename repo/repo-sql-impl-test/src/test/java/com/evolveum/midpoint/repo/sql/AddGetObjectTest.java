@@ -37,6 +37,7 @@ import com.evolveum.midpoint.repo.sql.data.common.RTask;
 import com.evolveum.midpoint.repo.sql.data.common.enums.ROperationResultStatus;
 import com.evolveum.midpoint.repo.sql.type.XMLGregorianCalendarType;
 import com.evolveum.midpoint.repo.sql.util.RUtil;
+import com.evolveum.midpoint.repo.sqlbase.ConflictWatcherImpl;
 import com.evolveum.midpoint.schema.GetOperationOptionsBuilder;
 import com.evolveum.midpoint.schema.ResultHandler;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
@@ -325,6 +326,35 @@ public class AddGetObjectTest extends BaseSQLRepoTest {
         AssertJUnit.assertEquals("syncChannel", repoShadow.getSynchronizationSituationDescription().get(0).getChannel());
     }
 
+    @Test
+    public void addGetFullAccountBinaryFormat() throws Exception {
+        PrismObject<ShadowType> fileAccount = prismContext.parseObject(new File(FOLDER_BASIC, "account-full.xml"));
+        fileAccount.asObjectable().setName(new PolyStringType("account-binary"));
+
+        PrismObject<ResourceType> resource = prismContext.parseObject(new File(FOLDER_BASIC, "resource-opendj.xml"));
+        ResourceSchema resourceSchema = RefinedResourceSchemaImpl.getResourceSchema(resource, prismContext);
+        ShadowUtil.applyResourceSchema(fileAccount, resourceSchema);
+
+        OperationResult result = new OperationResult("addGetFullAccountBinaryFormat");
+        String originalFormat = sqlRepositoryService.sqlConfiguration().getFullObjectFormat();
+        sqlRepositoryService.sqlConfiguration().setFullObjectFormat(SqlRepositoryConfiguration.FULL_OBJECT_FORMAT_BINARY);
+        String oid;
+        try {
+            oid = repositoryService.addObject(fileAccount, null, result);
+        } finally {
+            sqlRepositoryService.sqlConfiguration().setFullObjectFormat(originalFormat);
+        }
+
+        // stored in binary form, read back with the original format configured
+        PrismObject<ShadowType> repoAccount = repositoryService.getObject(ShadowType.class, oid, null, result);
+
+        ObjectDelta<ShadowType> delta = fileAccount.diff(repoAccount);
+        logger.info("delta\n{}", delta.debugDump(3));
+        if (!delta.isEmpty()) {
+            fail("delta is not empty: " + delta.debugDump());
+        }
+    }
+
     @Test
     public void testAddGetSystemConfigFile() throws Exception {
         PrismObject<SecurityPolicyType> securityPolicy = prismContext.parseObject(new File(FOLDER_BASIC, "security-policy-special.xml"));
@@ -11,6 +11,7 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import static com.evolveum.midpoint.schema.constants.SchemaConstants.CHANNEL_REST_URI;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
@@ -23,6 +24,7 @@ import org.testng.annotations.Test;
 import com.evolveum.midpoint.audit.api.AuditEventRecord;
 import com.evolveum.midpoint.audit.api.AuditEventStage;
 import com.evolveum.midpoint.audit.api.AuditEventType;
+import com.evolveum.midpoint.audit.api.AuditResultHandler;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.polystring.PolyString;
@@ -1285,6 +1287,64 @@ public class AuditSearchTest extends BaseSQLRepoTest {
         assertThat(result.get(0).getParameter()).isEqualTo("2");
     }
 
+    @Test
+    public void test870SearchIterativeInBatches() throws SchemaException {
+        given("iterative search batch smaller than the number of audit events");
+        int originalBatchSize = baseHelper.getConfiguration().getIterativeSearchByPagingBatchSize();
+        baseHelper.getConfiguration().setIterativeSearchByPagingBatchSize(2);
+        try {
+            when("searching audit iteratively without paging");
+            OperationResult operationResult = createOperationResult();
+            List<AuditEventRecordType> records = new ArrayList<>();
+            auditService.searchObjectsIterative(prismContext
+                            .queryFor(AuditEventRecordType.class)
+                            .build(),
+                    createHandler(records, Integer.MAX_VALUE), null, operationResult);
+
+            then("all audit events are provided in chronological order");
+            assertThat(records)
+                    .extracting(AuditEventRecordType::getParameter)
+                    .containsExactly("1", "2", "3");
+
+            and("operation result is success");
+            assertThat(operationResult.getLastSubresult().getStatus())
+                    .isEqualTo(OperationResultStatus.SUCCESS);
+        } finally {
+            baseHelper.getConfiguration().setIterativeSearchByPagingBatchSize(originalBatchSize);
+        }
+    }
+
+    @Test
+    public void test871SearchIterativeWithFilterStoppedByHandler() throws SchemaException {
+        when("searching audit iteratively with handler stopping after the first event");
+        List<AuditEventRecordType> records = new ArrayList<>();
+        auditService.searchObjectsIterative(prismContext
+                        .queryFor(AuditEventRecordType.class)
+                        .item(AuditEventRecordType.F_EVENT_TYPE).eq(AuditEventTypeType.MODIFY_OBJECT)
+                        .build(),
+                createHandler(records, 1), null, createOperationResult());
+
+        then("only the first matching audit event is provided");
+        assertThat(records)
+                .extracting(AuditEventRecordType::getParameter)
+                .containsExactly("2");
+    }
+
+    private AuditResultHandler createHandler(List<AuditEventRecordType> records, int limit) {
+        return new AuditResultHandler() {
+            @Override
+            public boolean handle(AuditEventRecordType auditRecord) {
+                records.add(auditRecord);
+                return records.size() < limit;
+            }
+
+            @Override
+            public int getProgress() {
+                return records.size();
+            }
+        };
+    }
+
     @Test
     public void test900CountWithAllFilter() throws SchemaException {
         when("counting audit objects using ALL filter");
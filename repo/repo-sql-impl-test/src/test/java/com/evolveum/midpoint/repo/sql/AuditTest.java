@@ -8,6 +8,17 @@ package com.evolveum.midpoint.repo.sql;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.testng.annotations.Test;
@@ -17,6 +28,7 @@ import com.evolveum.midpoint.audit.api.AuditEventStage;
 import com.evolveum.midpoint.audit.api.AuditEventType;
 import com.evolveum.midpoint.audit.api.AuditReferenceValue;
 import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.repo.sql.audit.AuditWriteBehindBuffer;
 import com.evolveum.midpoint.repo.sql.helpers.JdbcSession;
 import com.evolveum.midpoint.repo.sqlbase.PageOf;
 import com.evolveum.midpoint.repo.sqlbase.SqlQueryContext;
@@ -124,6 +136,158 @@ public class AuditTest extends BaseSQLRepoTest {
         auditService.audit(record, new NullTaskImpl());
     }
 
+    @Test
+    public void test300AuditWriteBehind() throws QueryException {
+        given("audit service with write-behind buffer");
+        SqlAuditServiceImpl bufferedAuditService = new SqlAuditServiceImpl(baseHelper, prismContext);
+        bufferedAuditService.startWriteBehind(new AuditWriteBehindBuffer.Configuration(
+                10, 5, 100, AuditWriteBehindBuffer.OverflowPolicy.BLOCK, null));
+        AuditWriteBehindBuffer buffer = bufferedAuditService.getWriteBehindBuffer();
+
+        when("records are audited and the service is destroyed");
+        for (int i = 0; i < 12; i++) {
+            AuditEventRecord record = new AuditEventRecord();
+            record.addPropertyValue("buffered", "val" + i);
+            record.addReferenceValue("ref", new AuditReferenceValue("oid" + i, UserType.COMPLEX_TYPE, poly("user" + i)));
+            bufferedAuditService.audit(record, new NullTaskImpl());
+        }
+        bufferedAuditService.destroy();
+
+        then("all records are written in batches");
+        assertThat(buffer.getEnqueued()).isEqualTo(12);
+        assertThat(buffer.getWritten()).isEqualTo(12);
+        assertThat(buffer.getFailed()).isZero();
+        assertThat(buffer.getQueueDepth()).isZero();
+        assertThat(buffer.getBatches()).isBetween(3L, 12L);
+
+        MAuditEventRecord loaded = getAuditEventRecord(15, 14);
+        assertThat(loaded.properties.get("buffered")).containsExactly("val11");
+        assertThat(loaded.refValues.get("ref")).hasSize(1);
+    }
+
+    @Test
+    public void test310WriteSamePreparedRecordAgain() throws QueryException {
+        given("prepared audit record that was already written (like in a rolled back attempt or a spilled batch)");
+        SqlAuditServiceImpl sqlAuditService = new SqlAuditServiceImpl(baseHelper, prismContext);
+        AuditEventRecord record = new AuditEventRecord();
+        record.addPropertyValue("rewritten", "val");
+        MAuditEventRecord prepared = sqlAuditService.prepareAuditRecord(record);
+        sqlAuditService.writeAuditRecords(List.of(prepared));
+        Long firstId = prepared.id;
+        assertThat(firstId).isNotNull();
+
+        when("the same prepared record is written again");
+        sqlAuditService.writeAuditRecords(List.of(prepared));
+
+        then("the record gets a new generated ID");
+        assertThat(prepared.id).isNotNull().isNotEqualTo(firstId);
+        MAuditEventRecord loaded = getAuditEventRecord(17, 16);
+        assertThat(loaded.id).isEqualTo(prepared.id);
+        assertThat(loaded.properties.get("rewritten")).containsExactly("val");
+    }
+
+    @Test
+    public void test320WriteBehindShutdownWhileEnqueuing() throws Exception {
+        given("write-behind buffer with a small queue and callers enqueuing concurrently");
+        AtomicInteger writtenRecords = new AtomicInteger();
+        AuditWriteBehindBuffer buffer = new AuditWriteBehindBuffer(
+                new AuditWriteBehindBuffer.Configuration(5, 3, 10, AuditWriteBehindBuffer.OverflowPolicy.BLOCK, null),
+                records -> writtenRecords.addAndGet(records.size()));
+        buffer.start();
+
+        int threads = 4;
+        int recordsPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch started = new CountDownLatch(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                started.countDown();
+                for (int j = 0; j < recordsPerThread; j++) {
+                    buffer.enqueue(new MAuditEventRecord());
+                }
+            }));
+        }
+
+        when("the buffer is shut down while records are being enqueued");
+        started.await();
+        buffer.shutdown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        then("no record is lost, the ones after the shutdown are written synchronously");
+        assertThat(writtenRecords.get()).isEqualTo(threads * recordsPerThread);
+        assertThat(buffer.getWritten()).isEqualTo(threads * recordsPerThread);
+        assertThat(buffer.getQueueDepth()).isZero();
+    }
+
+    @Test
+    public void test330WriteBehindFailedBatchIsSpilledAndWrittenLater() throws Exception {
+        given("write-behind buffer with spill directory and a writer failing for the first batch");
+        Path spillDirectory = Files.createTempDirectory("audit-spill");
+        List<MAuditEventRecord> writtenRecords = new CopyOnWriteArrayList<>();
+        AtomicBoolean failNext = new AtomicBoolean(true);
+        AuditWriteBehindBuffer buffer = new AuditWriteBehindBuffer(
+                new AuditWriteBehindBuffer.Configuration(5, 5, 10, AuditWriteBehindBuffer.OverflowPolicy.BLOCK, spillDirectory),
+                records -> {
+                    if (failNext.getAndSet(false)) {
+                        throw new IllegalStateException("simulated failure");
+                    }
+                    writtenRecords.addAll(records);
+                });
+        buffer.start();
+
+        when("a record is enqueued");
+        MAuditEventRecord record = new MAuditEventRecord();
+        record.eventIdentifier = "spilled-1";
+        record.timestamp = Instant.now();
+        record.properties = new HashMap<>();
+        record.properties.put("prop", List.of("val"));
+        buffer.enqueue(record);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (buffer.getWritten() == 0 && System.currentTimeMillis() < deadline) {
+            //noinspection BusyWait
+            Thread.sleep(10);
+        }
+        buffer.shutdown();
+
+        then("the failed batch is spilled and written from the spill file");
+        assertThat(buffer.getSpilled()).isEqualTo(1);
+        assertThat(buffer.getFailed()).isZero();
+        assertThat(writtenRecords).hasSize(1);
+        MAuditEventRecord written = writtenRecords.get(0);
+        assertThat(written.eventIdentifier).isEqualTo("spilled-1");
+        assertThat(written.timestamp).isEqualTo(record.timestamp);
+        assertThat(written.properties.get("prop")).containsExactly("val");
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    public void test340WriteBehindFailedSpillIsCounted() throws Exception {
+        given("write-behind buffer with a spill directory that disappears and a failing writer");
+        Path spillDirectory = Files.createTempDirectory("audit-spill");
+        AuditWriteBehindBuffer buffer = new AuditWriteBehindBuffer(
+                new AuditWriteBehindBuffer.Configuration(5, 5, 10, AuditWriteBehindBuffer.OverflowPolicy.BLOCK, spillDirectory),
+                records -> {
+                    throw new IllegalStateException("simulated failure");
+                });
+        buffer.start();
+        Files.delete(spillDirectory);
+
+        when("records are enqueued");
+        buffer.enqueue(new MAuditEventRecord());
+        buffer.enqueue(new MAuditEventRecord());
+        buffer.shutdown();
+
+        then("records that could not be spilled are counted as failed");
+        assertThat(buffer.getSpilled()).isZero();
+        assertThat(buffer.getFailed()).isEqualTo(2);
+    }
+
     private PolyString poly(String orig) {
         return new PolyString(orig, prismContext.getDefaultPolyStringNormalizer().normalize(orig));
     }
@@ -8,6 +8,7 @@ package com.evolveum.midpoint.repo.sql;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
 import org.apache.commons.io.IOUtils;
@@ -16,7 +17,10 @@ import org.springframework.test.context.ContextConfiguration;
 import org.testng.AssertJUnit;
 import org.testng.annotations.Test;
 
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.repo.sql.util.RUtil;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
 
 @ContextConfiguration(locations = { "../../../../../ctx-test.xml" })
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
@@ -66,6 +70,57 @@ public class RUtilTest extends BaseSQLRepoTest {
         AssertJUnit.assertEquals(xml, xmlNew);
     }
 
+    @Test
+    public void test300JsonToBinaryForm() throws Exception {
+        PrismObject<UserType> user = prismContext.parseObject(new File(BaseSQLRepoTest.FOLDER_BASIC, USER_BIG));
+        String json = prismContext.serializerFor(PrismContext.LANG_JSON).serialize(user);
+
+        byte[] binary = RUtil.getBinaryFromSerializedForm(json);
+        byte[] gzipped = RUtil.getBytesFromSerializedForm(json, true);
+        logger.info("Compression ratio: binary {}, gzip {}",
+                getCompressRatio(json.getBytes(StandardCharsets.UTF_8).length, binary.length),
+                getCompressRatio(json.getBytes(StandardCharsets.UTF_8).length, gzipped.length));
+
+        AssertJUnit.assertEquals(json, RUtil.getSerializedFormFromBytes(binary));
+    }
+
+    @Test
+    public void test310ParseAllStoredForms() throws Exception {
+        PrismObject<UserType> user = prismContext.parseObject(new File(BaseSQLRepoTest.FOLDER_BASIC, USER_BIG));
+        String xml = prismContext.xmlSerializer().serialize(user);
+        String json = prismContext.serializerFor(PrismContext.LANG_JSON).serialize(user);
+
+        byte[][] forms = {
+                RUtil.getBytesFromSerializedForm(xml, false),
+                RUtil.getBytesFromSerializedForm(xml, true),
+                RUtil.getBytesFromSerializedForm(json, false),
+                RUtil.getBytesFromSerializedForm(json, true),
+                RUtil.getBinaryFromSerializedForm(json)
+        };
+        for (byte[] form : forms) {
+            PrismObject<UserType> parsed = RUtil.parserForSerializedForm(prismContext, form).parse();
+            AssertJUnit.assertTrue("Parsed object differs from the original", user.equivalent(parsed));
+        }
+    }
+
+    /**
+     * Uncompressed data from older SQL Server deployments can be in UTF-16.
+     */
+    @Test
+    public void test320ParseUncompressedUtf16() throws Exception {
+        PrismObject<UserType> user = prismContext.parseObject(new File(BaseSQLRepoTest.FOLDER_BASIC, USER_BIG));
+        String xml = prismContext.xmlSerializer().serialize(user);
+
+        for (Charset charset : new Charset[] { StandardCharsets.UTF_16LE, StandardCharsets.UTF_16BE }) {
+            byte[] form = xml.getBytes(charset);
+
+            AssertJUnit.assertEquals("Wrong serialized form read from " + charset,
+                    xml, RUtil.getSerializedFormFromBytes(form, true));
+            PrismObject<UserType> parsed = RUtil.parserForSerializedForm(prismContext, form, true).parse();
+            AssertJUnit.assertTrue("Object parsed from " + charset + " differs from the original", user.equivalent(parsed));
+        }
+    }
+
     public double getCompressRatio(double xmlSize, double byteSize) {
         return 100 - (byteSize * 100 / xmlSize);
     }
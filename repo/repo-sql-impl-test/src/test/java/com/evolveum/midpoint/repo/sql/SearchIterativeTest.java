@@ -14,6 +14,7 @@ import static com.evolveum.midpoint.repo.api.RepositoryService.OP_SEARCH_OBJECTS
 import java.util.ArrayList;
 import java.util.List;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.testng.annotations.Test;
@@ -22,13 +23,18 @@ import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.repo.sql.helpers.ObjectRetriever;
 import com.evolveum.midpoint.repo.sql.perf.SqlPerformanceMonitorImpl;
+import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.ResultHandler;
+import com.evolveum.midpoint.schema.SelectorOptions;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
 import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AssignmentType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.IterationMethodType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
 import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
 
@@ -40,6 +46,8 @@ public class SearchIterativeTest extends BaseSQLRepoTest {
     private static final int COUNT = 500;       // should be divisible by BATCH
     private static final int BATCH = 50;        // should be synchronized with repo setting
 
+    @Autowired private ObjectRetriever objectRetriever;
+
     @Override
     public void initSystem() throws Exception {
         createObjects();
@@ -201,6 +209,101 @@ public class SearchIterativeTest extends BaseSQLRepoTest {
         assertObjects(objects, COUNT);
     }
 
+    @Test
+    public void test106KeysetIterationWithOrdering() throws Exception {
+        OperationResult result = new OperationResult("test106KeysetIterationWithOrdering");
+
+        final List<PrismObject<UserType>> objects = new ArrayList<>();
+
+        ResultHandler<UserType> handler = (object, parentResult) -> {
+            objects.add(object);
+            return true;
+        };
+
+        ObjectQuery query = prismContext.queryFor(UserType.class)
+                .desc(UserType.F_NAME)
+                .build();
+        repositoryService.searchObjectsIterative(UserType.class, query, handler,
+                SelectorOptions.createCollection(GetOperationOptions.createIterationMethod(IterationMethodType.KEYSET_PAGING)),
+                true, result);
+        result.recomputeStatus();
+
+        assertTrue(result.isSuccess());
+        assertObjects(objects, COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals("Wrong object #" + i, "user-" + (BASE + COUNT - 1 - i), objects.get(i).getName().getOrig());
+        }
+    }
+
+    @Test
+    public void test107KeysetIterationWithNullOrderingValues() throws Exception {
+        OperationResult result = new OperationResult("test107KeysetIterationWithNullOrderingValues");
+
+        final List<PrismObject<UserType>> objects = new ArrayList<>();
+
+        ResultHandler<UserType> handler = (object, parentResult) -> {
+            objects.add(object);
+            return true;
+        };
+
+        // employee number is not set for any of the users
+        ObjectQuery query = prismContext.queryFor(UserType.class)
+                .asc(UserType.F_EMPLOYEE_NUMBER)
+                .build();
+        repositoryService.searchObjectsIterative(UserType.class, query, handler,
+                SelectorOptions.createCollection(GetOperationOptions.createIterationMethod(IterationMethodType.KEYSET_PAGING)),
+                true, result);
+        result.recomputeStatus();
+
+        assertTrue(result.isSuccess());
+        assertObjects(objects, COUNT);
+    }
+
+    @Test
+    public void test108ImplicitKeysetIterationWithOrdering() throws Exception {
+        OperationResult result = new OperationResult("test108ImplicitKeysetIterationWithOrdering");
+
+        final List<PrismObject<UserType>> objects = new ArrayList<>();
+
+        ResultHandler<UserType> handler = (object, parentResult) -> {
+            objects.add(object);
+            return true;
+        };
+
+        OpAsserter countOpAsserter = new OpAsserter(RepositoryService.OP_COUNT_OBJECTS);
+
+        // no maxSize (so no FETCH_ALL), so keyset paging should be chosen instead of simple paging
+        ObjectQuery query = prismContext.queryFor(UserType.class)
+                .asc(UserType.F_COST_CENTER)
+                .build();
+        repositoryService.searchObjectsIterative(UserType.class, query, handler, null, true, result);
+        result.recomputeStatus();
+
+        countOpAsserter.assertIncrement(0);
+
+        assertTrue(result.isSuccess());
+        assertObjects(objects, COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals("Wrong object #" + i, String.valueOf(BASE + i), objects.get(i).asObjectable().getCostCenter());
+        }
+    }
+
+    @Test
+    public void test109KeysetIterationOrderingCheck() {
+        expect("ordering by single-valued properties is supported by keyset iteration");
+        assertTrue(objectRetriever.isOrderingOkWithKeysetIteration(UserType.class, null));
+        assertTrue(objectRetriever.isOrderingOkWithKeysetIteration(UserType.class,
+                prismContext.queryFor(UserType.class).asc(UserType.F_NAME).build()));
+        assertTrue(objectRetriever.isOrderingOkWithKeysetIteration(UserType.class,
+                prismContext.queryFor(UserType.class).asc(UserType.F_COST_CENTER).build()));
+
+        and("ordering by multi-valued items is not, so the implicit fallback does not switch to keyset iteration");
+        assertFalse(objectRetriever.isOrderingOkWithKeysetIteration(UserType.class,
+                prismContext.queryFor(UserType.class).asc(UserType.F_ORGANIZATION).build()));
+        assertFalse(objectRetriever.isOrderingOkWithKeysetIteration(UserType.class,
+                prismContext.queryFor(UserType.class).asc(UserType.F_ASSIGNMENT, AssignmentType.F_DESCRIPTION).build()));
+    }
+
     private boolean[] assertObjects(List<PrismObject<UserType>> objects, Integer count) {
         if (count != null) {
             assertEquals("Wrong # of objects", count.intValue(), objects.size());
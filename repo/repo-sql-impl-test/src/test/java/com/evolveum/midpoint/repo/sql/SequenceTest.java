@@ -185,6 +185,51 @@ public class SequenceTest extends BaseSQLRepoTest {
         concurrencyUniversal("Test033", "sequence-unbound.xml", 10000L, mts, true);
     }
 
+    @Test
+    public void test040_BlockAllocation() throws Exception {
+        OperationResult result = new OperationResult("test040_BlockAllocation");
+        PrismObject<SequenceType> sequence = prismContext.parseObject(new File(TEST_DIR + "sequence-unbound.xml"));
+        String oid = repositoryService.addObject(sequence, null, result);
+
+        sqlRepositoryService.sqlConfiguration().setSequenceAllocationBlockSize(5);
+        try {
+            for (long i = 0; i < 7; i++) {
+                assertEquals(i, repositoryService.advanceSequence(oid, result));
+            }
+            SequenceType stored = repositoryService.getObject(SequenceType.class, oid, null, result).asObjectable();
+            assertEquals("Wrong counter after two blocks", Long.valueOf(10L), stored.getCounter());
+
+            sqlRepositoryService.returnAllocatedSequenceValues(result);
+            stored = repositoryService.getObject(SequenceType.class, oid, null, result).asObjectable();
+            assertEquals("Wrong unused values", Arrays.asList(7L, 8L, 9L), stored.getUnusedValues());
+
+            for (long i = 7; i < 12; i++) {
+                assertEquals(i, repositoryService.advanceSequence(oid, result));
+            }
+        } finally {
+            sqlRepositoryService.returnAllocatedSequenceValues(result);
+            sqlRepositoryService.sqlConfiguration().setSequenceAllocationBlockSize(1);
+        }
+    }
+
+    @Test
+    public void test041_BlockAllocationWrapAround() throws Exception {
+        OperationResult result = new OperationResult("test041_BlockAllocationWrapAround");
+        PrismObject<SequenceType> sequence = prismContext.parseObject(new File(TEST_DIR + "sequence-bound-returned-wrapped.xml"));
+        String oid = repositoryService.addObject(sequence, null, result);
+
+        sqlRepositoryService.sqlConfiguration().setSequenceAllocationBlockSize(15);
+        try {
+            // block is cut at the wrap-around point, the values must not repeat within the block
+            for (long i = 0; i < 10; i++) {
+                assertEquals(i, repositoryService.advanceSequence(oid, result));
+            }
+            assertEquals(0L, repositoryService.advanceSequence(oid, result));
+        } finally {
+            sqlRepositoryService.returnAllocatedSequenceValues(result);
+            sqlRepositoryService.sqlConfiguration().setSequenceAllocationBlockSize(1);
+        }
+    }
 
     private void concurrencyUniversal(String name, String sequenceFileName, long duration, WorkerThread[] workerThreads, boolean alwaysOrder) throws Exception {
 
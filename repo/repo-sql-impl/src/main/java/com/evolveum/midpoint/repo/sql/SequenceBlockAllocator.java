@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.evolveum.midpoint.repo.sql.SqlRepositoryServiceImpl.ResultSupplier;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Node-local allocator of sequence values. Values are reserved from the repository in blocks
+ * (one transaction per block) and then handed out from memory.
+ *
+ * Consequences: values are no longer strictly ordered across nodes, values returned to the sequence
+ * are used only after the local block is exhausted, and values of a block that is not returned
+ * (node crash, sequence modification) are lost, i.e. the sequence has gaps.
+ * Remaining values are returned to the sequence on repository shutdown, see {@link #drainAll()}.
+ */
+class SequenceBlockAllocator {
+
+    private static final Trace LOGGER = TraceManager.getTrace(SequenceBlockAllocator.class);
+
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+    private static class Block {
+        private final Deque<Long> values = new ArrayDeque<>();
+        private boolean discarded;
+    }
+
+    /**
+     * Returns the next value of the sequence, fetching a new block by the fetcher if needed.
+     * Threads asking for values of the same sequence are serialized only on the block, not on the DB row.
+     */
+    long nextValue(String oid, ResultSupplier<List<Long>> blockFetcher) throws ObjectNotFoundException, SchemaException {
+        while (true) {
+            Block block = blocks.computeIfAbsent(oid, k -> new Block());
+            synchronized (block) {
+                if (block.discarded) {
+                    continue; // sequence was changed in the meantime, let's take the new block
+                }
+                if (block.values.isEmpty()) {
+                    List<Long> fetched = blockFetcher.get();
+                    LOGGER.trace("Fetched block of values for sequence {}: {}", oid, fetched);
+                    block.values.addAll(fetched);
+                }
+                return block.values.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Forgets the locally allocated values (e.g. because the sequence was modified or deleted).
+     */
+    void discard(String oid) {
+        Block block = blocks.remove(oid);
+        if (block != null) {
+            synchronized (block) {
+                if (!block.values.isEmpty()) {
+                    LOGGER.debug("Discarding {} locally allocated value(s) of sequence {}", block.values.size(), oid);
+                }
+                block.values.clear();
+                block.discarded = true;
+            }
+        }
+    }
+
+    /**
+     * Removes all the blocks, returning their unused values (by sequence OID).
+     */
+    Map<String, List<Long>> drainAll() {
+        Map<String, List<Long>> rv = new HashMap<>();
+        for (String oid : new ArrayList<>(blocks.keySet())) {
+            Block block = blocks.remove(oid);
+            if (block != null) {
+                synchronized (block) {
+                    if (!block.values.isEmpty()) {
+                        rv.put(oid, new ArrayList<>(block.values));
+                    }
+                    block.values.clear();
+                    block.discarded = true;
+                }
+            }
+        }
+        return rv;
+    }
+}
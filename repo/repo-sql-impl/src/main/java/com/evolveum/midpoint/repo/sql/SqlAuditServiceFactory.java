@@ -31,6 +31,7 @@ import com.evolveum.midpoint.audit.api.AuditServiceFactory;
 import com.evolveum.midpoint.audit.api.AuditServiceFactoryException;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.repo.api.RepositoryServiceFactoryException;
+import com.evolveum.midpoint.repo.sql.audit.AuditWriteBehindBuffer;
 import com.evolveum.midpoint.repo.sql.helpers.BaseHelper;
 import com.evolveum.midpoint.repo.sql.helpers.JdbcSession;
 import com.evolveum.midpoint.repo.sqlbase.SqlTableMetadata;
@@ -70,6 +71,12 @@ public class SqlAuditServiceFactory implements AuditServiceFactory {
 
             auditService = new SqlAuditServiceImpl(baseHelper, prismContext);
             initCustomColumns(configuration, baseHelper);
+
+            AuditWriteBehindBuffer.Configuration writeBehindConfiguration =
+                    AuditWriteBehindBuffer.Configuration.fromConfig(configuration);
+            if (writeBehindConfiguration != null) {
+                auditService.startWriteBehind(writeBehindConfiguration);
+            }
         } catch (RepositoryServiceFactoryException ex) {
             throw new AuditServiceFactoryException(ex.getMessage(), ex);
         }
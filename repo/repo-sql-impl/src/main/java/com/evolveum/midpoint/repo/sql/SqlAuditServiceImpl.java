@@ -7,6 +7,8 @@
 package com.evolveum.midpoint.repo.sql;
 
 import static com.evolveum.midpoint.repo.sql.audit.querymodel.QAuditEventRecord.*;
+import static com.evolveum.midpoint.repo.sqlbase.IterativeSearchSupport.isExplicitPaging;
+import static com.evolveum.midpoint.repo.sqlbase.IterativeSearchSupport.searchResultMetadata;
 import static com.evolveum.midpoint.schema.util.SystemConfigurationAuditUtil.isEscapingInvalidCharacters;
 
 import java.sql.*;
@@ -17,6 +19,7 @@ import java.util.Map.Entry;
 import java.util.function.BiFunction;
 import javax.xml.datatype.Duration;
 
+import com.querydsl.core.Tuple;
 import com.querydsl.sql.ColumnMetadata;
 import com.querydsl.sql.SQLQuery;
 import com.querydsl.sql.dml.DefaultMapper;
@@ -36,9 +39,11 @@ import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.prism.util.CloneUtil;
+import com.evolveum.midpoint.repo.sql.audit.AuditWriteBehindBuffer;
 import com.evolveum.midpoint.repo.sql.audit.SqlQueryExecutor;
 import com.evolveum.midpoint.repo.sql.audit.beans.MAuditDelta;
 import com.evolveum.midpoint.repo.sql.audit.beans.MAuditEventRecord;
+import com.evolveum.midpoint.repo.sql.audit.beans.MAuditRefValue;
 import com.evolveum.midpoint.repo.sql.audit.mapping.*;
 import com.evolveum.midpoint.repo.sql.audit.querymodel.*;
 import com.evolveum.midpoint.repo.sql.data.SelectQueryBuilder;
@@ -53,7 +58,9 @@ import com.evolveum.midpoint.repo.sql.perf.SqlPerformanceMonitorImpl;
 import com.evolveum.midpoint.repo.sql.util.DtoTranslationException;
 import com.evolveum.midpoint.repo.sql.util.RUtil;
 import com.evolveum.midpoint.repo.sql.util.TemporaryTableDialect;
+import com.evolveum.midpoint.repo.sqlbase.PageOf;
 import com.evolveum.midpoint.repo.sqlbase.QueryException;
+import com.evolveum.midpoint.repo.sqlbase.SqlQueryContext;
 import com.evolveum.midpoint.schema.*;
 import com.evolveum.midpoint.schema.internals.InternalsConfig;
 import com.evolveum.midpoint.schema.result.OperationResult;
@@ -105,6 +112,12 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
 
     private volatile SystemConfigurationAuditType auditConfiguration;
 
+    /**
+     * If not null, audit records are written asynchronously in batches by the buffer's writer thread.
+     * Note that in this mode the records are not visible to search immediately after {@link #audit} returns.
+     */
+    private volatile AuditWriteBehindBuffer writeBehindBuffer;
+
     public SqlAuditServiceImpl(
             BaseHelper baseHelper,
             PrismContext prismContext) {
@@ -113,6 +126,31 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         this.sqlQueryExecutor = new SqlQueryExecutor(baseHelper, prismContext);
     }
 
+    /**
+     * Switches the service to asynchronous write-behind mode, see {@link AuditWriteBehindBuffer}.
+     */
+    public void startWriteBehind(@NotNull AuditWriteBehindBuffer.Configuration configuration) {
+        AuditWriteBehindBuffer buffer = new AuditWriteBehindBuffer(configuration, this::writeAuditRecords);
+        buffer.start();
+        writeBehindBuffer = buffer;
+    }
+
+    @Nullable
+    public AuditWriteBehindBuffer getWriteBehindBuffer() {
+        return writeBehindBuffer;
+    }
+
+    @Override
+    public void destroy() {
+        AuditWriteBehindBuffer buffer = writeBehindBuffer;
+        if (buffer != null) {
+            // flushes the remaining records, so it must be done before the performance monitor is gone
+            buffer.shutdown();
+            writeBehindBuffer = null;
+        }
+        super.destroy();
+    }
+
     @Override
     public SqlRepositoryConfiguration sqlConfiguration() {
         return baseHelper.getConfiguration();
@@ -123,14 +161,29 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         Objects.requireNonNull(record, "Audit event record must not be null.");
         Objects.requireNonNull(task, "Task must not be null.");
 
-        final String operation = "audit";
+        // Conversion (including delta serialization) happens in the caller thread in both modes.
+        MAuditEventRecord preparedRecord = prepareAuditRecord(record);
+        AuditWriteBehindBuffer buffer = writeBehindBuffer;
+        if (buffer != null) {
+            buffer.enqueue(preparedRecord);
+        } else {
+            writeAuditRecords(Collections.singletonList(preparedRecord));
+        }
+    }
+
+    /**
+     * Writes prepared audit records in a single transaction, retrying the whole batch if needed.
+     * Used directly for synchronous audit and by the {@link AuditWriteBehindBuffer} writer thread.
+     */
+    void writeAuditRecords(List<MAuditEventRecord> records) {
+        final String operation = records.size() == 1 ? "audit" : "auditBatch";
         SqlPerformanceMonitorImpl pm = getPerformanceMonitor();
         long opHandle = pm.registerOperationStart(operation, AuditEventRecord.class);
         int attempt = 1;
 
         while (true) {
             try {
-                auditAttempt(record);
+                auditAttempt(records);
                 return;
             } catch (RuntimeException ex) {
                 attempt = baseHelper.logOperationAttempt(null, operation, attempt, ex, null);
@@ -141,40 +194,105 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         }
     }
 
-    private void auditAttempt(AuditEventRecord record) {
+    private void auditAttempt(List<MAuditEventRecord> records) {
         try (JdbcSession jdbcSession = baseHelper.newJdbcSession().startTransaction()) {
             try {
-                long recordId = insertAuditEventRecord(jdbcSession, record);
+                // IDs generated in a previous (rolled back) attempt - or before the batch was spilled - are not valid
+                // anymore. They must not be inserted explicitly, the record would get a new ID anyway.
+                for (MAuditEventRecord record : records) {
+                    resetGeneratedIds(record);
+                }
 
-                Collection<MAuditDelta> deltas =
-                        insertAuditDeltas(jdbcSession, recordId, record.getDeltas());
-                insertChangedItemPaths(jdbcSession, recordId, deltas);
+                // Main rows one by one, we need their generated IDs...
+                for (MAuditEventRecord record : records) {
+                    long recordId = insertAuditEventRecord(jdbcSession, record);
+                    record.id = recordId;
+                    for (MAuditDelta delta : record.deltas) {
+                        delta.recordId = recordId;
+                    }
+                }
 
-                insertProperties(jdbcSession, recordId, record.getProperties());
-                insertReferences(jdbcSession, recordId, record.getReferences());
-                insertResourceOids(jdbcSession, recordId, record.getResourceOids());
+                // ...but all the subentities can be inserted in one batch per table.
+                insertAuditDeltas(jdbcSession, records);
+                insertChangedItemPaths(jdbcSession, records);
+                insertProperties(jdbcSession, records);
+                insertReferences(jdbcSession, records);
+                insertResourceOids(jdbcSession, records);
             } catch (RuntimeException ex) {
                 jdbcSession.handleGeneralException(ex, null);
             }
         }
     }
 
+    private void resetGeneratedIds(MAuditEventRecord record) {
+        record.id = null;
+        for (MAuditDelta delta : record.deltas) {
+            delta.recordId = null;
+        }
+    }
+
+    /**
+     * Converts audit event record to the bean with all subentities prepared in its "transient" fields.
+     * Record ID is not known at this point, it is set (also for the deltas) during the insert.
+     * Package-private for tests.
+     */
+    MAuditEventRecord prepareAuditRecord(AuditEventRecord record) {
+        MAuditEventRecord aerBean = QAuditEventRecordMapping.INSTANCE
+                .createTransformer(prismContext, baseHelper.sqlRepoContext())
+                .from(record);
+
+        // we want to keep only unique deltas, checksum is also part of PK
+        Map<String, MAuditDelta> deltasByChecksum = new HashMap<>();
+        for (ObjectDeltaOperation<?> deltaOperation : record.getDeltas()) {
+            if (deltaOperation == null) {
+                continue;
+            }
+
+            MAuditDelta mAuditDelta = convertDelta(deltaOperation);
+            deltasByChecksum.put(mAuditDelta.checksum, mAuditDelta);
+        }
+        aerBean.deltas = new ArrayList<>(deltasByChecksum.values());
+        aerBean.changedItemPaths = new ArrayList<>(collectChangedItemPaths(aerBean.deltas));
+
+        aerBean.properties = new HashMap<>();
+        for (Entry<String, Set<String>> property : record.getProperties().entrySet()) {
+            aerBean.properties.put(property.getKey(), new ArrayList<>(property.getValue()));
+        }
+
+        aerBean.refValues = new HashMap<>();
+        for (Entry<String, Set<AuditReferenceValue>> reference : record.getReferences().entrySet()) {
+            List<MAuditRefValue> refValues = new ArrayList<>();
+            for (AuditReferenceValue refValue : reference.getValue()) {
+                MAuditRefValue mRefValue = new MAuditRefValue();
+                PolyString targetName = refValue.getTargetName();
+                mRefValue.name = reference.getKey();
+                mRefValue.oid = refValue.getOid();
+                mRefValue.type = RUtil.qnameToString(refValue.getType());
+                mRefValue.targetNameOrig = targetName != null ? targetName.getOrig() : null;
+                mRefValue.targetNameNorm = targetName != null ? targetName.getNorm() : null;
+                refValues.add(mRefValue);
+            }
+            aerBean.refValues.put(reference.getKey(), refValues);
+        }
+
+        aerBean.resourceOids = new ArrayList<>(record.getResourceOids());
+        aerBean.customColumns = new HashMap<>(record.getCustomColumnProperty());
+        return aerBean;
+    }
+
     /**
      * Inserts audit event record aggregate root without any subentities.
      *
      * @return ID of created audit event record
      */
     private Long insertAuditEventRecord(
-            JdbcSession jdbcSession, AuditEventRecord record) {
+            JdbcSession jdbcSession, MAuditEventRecord aerBean) {
         QAuditEventRecordMapping aerMapping = QAuditEventRecordMapping.INSTANCE;
         QAuditEventRecord aer = aerMapping.defaultAlias();
-        MAuditEventRecord aerBean = aerMapping
-                .createTransformer(prismContext, baseHelper.sqlRepoContext())
-                .from(record);
         SQLInsertClause insert = jdbcSession.insert(aer).populate(aerBean);
 
         Map<String, ColumnMetadata> customColumns = aerMapping.getExtensionColumns();
-        for (Entry<String, String> property : record.getCustomColumnProperty().entrySet()) {
+        for (Entry<String, String> property : aerBean.customColumns.entrySet()) {
             String propertyName = property.getKey();
             if (!customColumns.containsKey(propertyName)) {
                 throw new IllegalArgumentException("Audit event record table doesn't"
@@ -187,35 +305,21 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         return insert.executeWithKey(aer.id);
     }
 
-    private Collection<MAuditDelta> insertAuditDeltas(
-            JdbcSession jdbcSession, long recordId, Collection<ObjectDeltaOperation<?>> deltas) {
-        // we want to keep only unique deltas, checksum is also part of PK
-        Map<String, MAuditDelta> deltasByChecksum = new HashMap<>();
-        for (ObjectDeltaOperation<?> deltaOperation : deltas) {
-            if (deltaOperation == null) {
-                continue;
-            }
-
-            MAuditDelta mAuditDelta = convertDelta(deltaOperation, recordId);
-            deltasByChecksum.put(mAuditDelta.checksum, mAuditDelta);
-        }
-
-        if (!deltasByChecksum.isEmpty()) {
-            SQLInsertClause insertBatch = jdbcSession.insert(
-                    QAuditDeltaMapping.INSTANCE.defaultAlias());
-            for (MAuditDelta value : deltasByChecksum.values()) {
+    private void insertAuditDeltas(
+            JdbcSession jdbcSession, List<MAuditEventRecord> records) {
+        SQLInsertClause insertBatch = jdbcSession.insert(
+                QAuditDeltaMapping.INSTANCE.defaultAlias());
+        for (MAuditEventRecord record : records) {
+            for (MAuditDelta value : record.deltas) {
                 // NULLs are important to keep the value count consistent during the batch
                 insertBatch.populate(value, DefaultMapper.WITH_NULL_BINDINGS).addBatch();
             }
-            insertBatch.setBatchToBulk(true);
-            insertBatch.execute();
         }
-        return deltasByChecksum.values();
+        executeBatch(insertBatch);
     }
 
-    private MAuditDelta convertDelta(ObjectDeltaOperation<?> deltaOperation, long recordId) {
+    private MAuditDelta convertDelta(ObjectDeltaOperation<?> deltaOperation) {
         MAuditDelta mAuditDelta = new MAuditDelta();
-        mAuditDelta.recordId = recordId;
 
         try {
             ObjectDelta<? extends ObjectType> delta = deltaOperation.getObjectDelta();
@@ -263,10 +367,12 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         return mAuditDelta;
     }
 
-    private void insertChangedItemPaths(
-            JdbcSession jdbcSession, long recordId, Collection<MAuditDelta> deltas) {
+    private Set<String> collectChangedItemPaths(Collection<MAuditDelta> deltas) {
         Set<String> changedItemPaths = new HashSet<>();
         for (MAuditDelta delta : deltas) {
+            if (delta.serializedDelta == null) {
+                continue;
+            }
             try {
                 ObjectDeltaType deltaBean =
                         prismContext.parserFor(delta.serializedDelta)
@@ -284,92 +390,84 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
                 if (InternalsConfig.isConsistencyChecks()) {
                     throw new SystemException("Problem during audit delta parse", e);
                 }
-                LOGGER.warn("Serialized audit delta for recordId={} cannot be parsed."
+                LOGGER.warn("Serialized audit delta with checksum={} cannot be parsed."
                         + " No changed items were created. This may cause problem later, but is not"
-                        + " critical for storing the audit record.", recordId, e);
+                        + " critical for storing the audit record.", delta.checksum, e);
             }
         }
-        if (!changedItemPaths.isEmpty()) {
-            QAuditItem qAuditItem = QAuditItemMapping.INSTANCE.defaultAlias();
-            SQLInsertClause insertBatch = jdbcSession.insert(qAuditItem);
-            for (String changedItemPath : changedItemPaths) {
-                insertBatch.set(qAuditItem.recordId, recordId)
+        return changedItemPaths;
+    }
+
+    private void insertChangedItemPaths(
+            JdbcSession jdbcSession, List<MAuditEventRecord> records) {
+        QAuditItem qAuditItem = QAuditItemMapping.INSTANCE.defaultAlias();
+        SQLInsertClause insertBatch = jdbcSession.insert(qAuditItem);
+        for (MAuditEventRecord record : records) {
+            for (String changedItemPath : record.changedItemPaths) {
+                insertBatch.set(qAuditItem.recordId, record.id)
                         .set(qAuditItem.changedItemPath, changedItemPath)
                         .addBatch();
             }
-            insertBatch.setBatchToBulk(true);
-            insertBatch.execute();
         }
+        executeBatch(insertBatch);
     }
 
     private void insertProperties(
-            JdbcSession jdbcSession, long recordId, Map<String, Set<String>> properties) {
-        if (properties.isEmpty()) {
-            return;
-        }
-
+            JdbcSession jdbcSession, List<MAuditEventRecord> records) {
         QAuditPropertyValue qAuditPropertyValue = QAuditPropertyValueMapping.INSTANCE.defaultAlias();
         SQLInsertClause insertBatch = jdbcSession.insert(qAuditPropertyValue);
-        for (String propertyName : properties.keySet()) {
-            for (String propertyValue : properties.get(propertyName)) {
-                // id will be generated, but we're not interested in those here
-                insertBatch.set(qAuditPropertyValue.recordId, recordId)
-                        .set(qAuditPropertyValue.name, propertyName)
-                        .set(qAuditPropertyValue.value, propertyValue)
-                        .addBatch();
+        for (MAuditEventRecord record : records) {
+            for (Entry<String, List<String>> property : record.properties.entrySet()) {
+                for (String propertyValue : property.getValue()) {
+                    // id will be generated, but we're not interested in those here
+                    insertBatch.set(qAuditPropertyValue.recordId, record.id)
+                            .set(qAuditPropertyValue.name, property.getKey())
+                            .set(qAuditPropertyValue.value, propertyValue)
+                            .addBatch();
+                }
             }
         }
-        if (insertBatch.getBatchCount() == 0) {
-            return; // strange, no values anywhere?
-        }
-
-        insertBatch.setBatchToBulk(true);
-        insertBatch.execute();
+        executeBatch(insertBatch);
     }
 
-    private void insertReferences(JdbcSession jdbcSession,
-            long recordId, Map<String, Set<AuditReferenceValue>> references) {
-        if (references.isEmpty()) {
-            return;
-        }
-
+    private void insertReferences(
+            JdbcSession jdbcSession, List<MAuditEventRecord> records) {
         QAuditRefValue qAuditRefValue = QAuditRefValueMapping.INSTANCE.defaultAlias();
         SQLInsertClause insertBatch = jdbcSession.insert(qAuditRefValue);
-        for (String refName : references.keySet()) {
-            for (AuditReferenceValue refValue : references.get(refName)) {
-                // id will be generated, but we're not interested in those here
-                PolyString targetName = refValue.getTargetName();
-                insertBatch.set(qAuditRefValue.recordId, recordId)
-                        .set(qAuditRefValue.name, refName)
-                        .set(qAuditRefValue.oid, refValue.getOid())
-                        .set(qAuditRefValue.type, RUtil.qnameToString(refValue.getType()))
-                        .set(qAuditRefValue.targetNameOrig,
-                                targetName != null ? targetName.getOrig() : null)
-                        .set(qAuditRefValue.targetNameNorm,
-                                targetName != null ? targetName.getNorm() : null)
-                        .addBatch();
+        for (MAuditEventRecord record : records) {
+            for (List<MAuditRefValue> refValues : record.refValues.values()) {
+                for (MAuditRefValue refValue : refValues) {
+                    // id will be generated, but we're not interested in those here
+                    insertBatch.set(qAuditRefValue.recordId, record.id)
+                            .set(qAuditRefValue.name, refValue.name)
+                            .set(qAuditRefValue.oid, refValue.oid)
+                            .set(qAuditRefValue.type, refValue.type)
+                            .set(qAuditRefValue.targetNameOrig, refValue.targetNameOrig)
+                            .set(qAuditRefValue.targetNameNorm, refValue.targetNameNorm)
+                            .addBatch();
+                }
             }
         }
-        if (insertBatch.getBatchCount() == 0) {
-            return; // strange, no values anywhere?
-        }
-
-        insertBatch.setBatchToBulk(true);
-        insertBatch.execute();
+        executeBatch(insertBatch);
     }
 
     private void insertResourceOids(
-            JdbcSession jdbcSession, long recordId, Set<String> resourceOids) {
-        if (resourceOids.isEmpty()) {
-            return;
-        }
-
+            JdbcSession jdbcSession, List<MAuditEventRecord> records) {
         QAuditResource qAuditResource = QAuditResourceMapping.INSTANCE.defaultAlias();
         SQLInsertClause insertBatch = jdbcSession.insert(qAuditResource);
-        for (String resourceOid : resourceOids) {
-            insertBatch.set(qAuditResource.recordId, recordId)
-                    .set(qAuditResource.resourceOid, resourceOid)
-                    .addBatch();
+        for (MAuditEventRecord record : records) {
+            for (String resourceOid : record.resourceOids) {
+                insertBatch.set(qAuditResource.recordId, record.id)
+                        .set(qAuditResource.resourceOid, resourceOid)
+                        .addBatch();
+            }
+        }
+        executeBatch(insertBatch);
+    }
+
+    private void executeBatch(SQLInsertClause insertBatch) {
+        if (insertBatch.getBatchCount() == 0) {
+            return; // nothing to insert for any of the records
         }
 
         insertBatch.setBatchToBulk(true);
@@ -1142,6 +1240,87 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         }
     }
 
+    /**
+     * Iterative search uses keyset pagination on timestamp and ID of the audit event: each batch
+     * is a separate short query (and transaction) selecting events following the last event
+     * of the previous batch. No connection is held while the handler is processing the events.
+     * If the query contains explicit paging, simple search is used instead.
+     */
+    @Override
+    public SearchResultMetadata searchObjectsIterative(
+            @Nullable ObjectQuery query,
+            @NotNull AuditResultHandler handler,
+            @Nullable Collection<SelectorOptions<GetOperationOptions>> options,
+            @NotNull OperationResult parentResult)
+            throws SchemaException {
+        OperationResult operationResult = parentResult.subresult(OP_NAME_PREFIX + "searchObjectsIterative")
+                .addParam("query", query)
+                .build();
+
+        try {
+            if (query != null && isExplicitPaging(query.getPaging())) {
+                SearchResultList<AuditEventRecordType> records =
+                        sqlQueryExecutor.list(AuditEventRecordType.class, query, options);
+                int handled = 0;
+                for (AuditEventRecordType record : records) {
+                    handled++;
+                    if (!handler.handle(record)) {
+                        break;
+                    }
+                }
+                return searchResultMetadata(handled);
+            }
+            return searchObjectsIterativeByKeyset(query, handler, options);
+        } catch (QueryException e) {
+            baseHelper.handleGeneralException(e, operationResult);
+            throw new SystemException(e);
+        } catch (RuntimeException e) {
+            operationResult.recordFatalError(e);
+            throw e;
+        } finally {
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    private SearchResultMetadata searchObjectsIterativeByKeyset(
+            ObjectQuery query, AuditResultHandler handler,
+            Collection<SelectorOptions<GetOperationOptions>> options)
+            throws QueryException, SchemaException {
+        int batchSize = sqlConfiguration().getIterativeSearchByPagingBatchSize();
+        int handled = 0;
+        MAuditEventRecord lastRow = null;
+        while (true) {
+            SqlQueryContext<AuditEventRecordType, QAuditEventRecord, MAuditEventRecord> context =
+                    SqlQueryContext.from(AuditEventRecordType.class, prismContext, baseHelper.sqlRepoContext());
+            if (query != null) {
+                context.process(query.getFilter());
+            }
+            context.processOptions(options);
+            QAuditEventRecord root = context.root();
+            if (lastRow != null) {
+                context.sqlQuery().where(root.timestamp.gt(lastRow.timestamp)
+                        .or(root.timestamp.eq(lastRow.timestamp).and(root.id.gt(lastRow.id))));
+            }
+            context.sqlQuery().orderBy(root.timestamp.asc(), root.id.asc()).limit(batchSize);
+
+            PageOf<Tuple> rows;
+            try (JdbcSession jdbcSession = baseHelper.newJdbcSession().startReadOnlyTransaction()) {
+                rows = context.executeQuery(jdbcSession.connection());
+            }
+            PageOf<AuditEventRecordType> records = context.transformToSchemaType(rows);
+            for (AuditEventRecordType record : records.content()) {
+                handled++;
+                if (!handler.handle(record)) {
+                    return searchResultMetadata(handled);
+                }
+            }
+            if (rows.content().size() < batchSize) {
+                return searchResultMetadata(handled);
+            }
+            lastRow = rows.content().get(rows.content().size() - 1).get(root);
+        }
+    }
+
     /**
      * This enriches collection of returned values with parent container so that
      * {@link PrismContainer#getDefinition()} is not null.
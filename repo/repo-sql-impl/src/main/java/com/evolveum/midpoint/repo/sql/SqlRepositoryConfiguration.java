@@ -172,6 +172,7 @@ public class SqlRepositoryConfiguration extends SqlRepositoryBaseConfiguration {
     private static final int DEFAULT_MIN_POOL_SIZE = 8;
     private static final int DEFAULT_MAX_POOL_SIZE = 20;
     private static final int DEFAULT_MAX_OBJECTS_FOR_IMPLICIT_FETCH_ALL_ITERATION_METHOD = 500;
+    private static final long DEFAULT_ITERATIVE_SEARCH_BY_KEYSET_TARGET_BATCH_DURATION = 2000L;
 
     public static final String PROPERTY_DATABASE = "database";
     public static final String PROPERTY_BASE_DIR = "baseDir";
@@ -195,9 +196,18 @@ public class SqlRepositoryConfiguration extends SqlRepositoryBaseConfiguration {
 
     /**
      * Specifies language used for writing fullObject attribute.
-     * See LANG constants in {@link com.evolveum.midpoint.prism.PrismContext} for supported values.
+     * See LANG constants in {@link com.evolveum.midpoint.prism.PrismContext} for supported values,
+     * plus {@link #FULL_OBJECT_FORMAT_BINARY}.
      */
     public static final String PROPERTY_FULL_OBJECT_FORMAT = "fullObjectFormat";
+
+    /**
+     * Compact binary format of fullObject: JSON compressed with a preset dictionary, see
+     * {@link com.evolveum.midpoint.repo.sql.util.RUtil#getBinaryFromSerializedForm(String)}.
+     * Objects stored in other formats are still readable; they are converted on their next modification
+     * (or reindex).
+     */
+    public static final String FULL_OBJECT_FORMAT_BINARY = "binary";
     public static final String PROPERTY_MIN_POOL_SIZE = "minPoolSize";
     public static final String PROPERTY_MAX_POOL_SIZE = "maxPoolSize";
     public static final String PROPERTY_MAX_LIFETIME = "maxLifetime";
@@ -215,6 +225,7 @@ public class SqlRepositoryConfiguration extends SqlRepositoryBaseConfiguration {
     public static final String PROPERTY_ITERATIVE_SEARCH_BY_PAGING = "iterativeSearchByPaging";
     public static final String PROPERTY_ITERATIVE_SEARCH_BY_PAGING_BATCH_SIZE = "iterativeSearchByPagingBatchSize";
     public static final String PROPERTY_MAX_OBJECTS_FOR_IMPLICIT_FETCH_ALL_ITERATION_METHOD = "maxObjectsForImplicitFetchAllIterationMethod";
+    public static final String PROPERTY_ITERATIVE_SEARCH_BY_KEYSET_TARGET_BATCH_DURATION = "iterativeSearchByKeysetTargetBatchDuration";
 
     //closure
     public static final String PROPERTY_IGNORE_ORG_CLOSURE = "ignoreOrgClosure";
@@ -238,6 +249,8 @@ public class SqlRepositoryConfiguration extends SqlRepositoryBaseConfiguration {
 
     public static final String PROPERTY_TEXT_INFO_COLUMN_SIZE = "textInfoColumnSize";
 
+    public static final String PROPERTY_SEQUENCE_ALLOCATION_BLOCK_SIZE = "sequenceAllocationBlockSize";
+
     private static final String UTF8MB4 = "utf8mb4";
 
     /*
@@ -294,6 +307,7 @@ public class SqlRepositoryConfiguration extends SqlRepositoryBaseConfiguration {
 
     private final boolean iterativeSearchByPaging;
     private int iterativeSearchByPagingBatchSize; // not final only because of testing
+    private long iterativeSearchByKeysetTargetBatchDuration; // not final only because of testing
 
     private final boolean ignoreOrgClosure;
     private final OrgClosureManager.StartupAction orgClosureStartupAction;
@@ -318,6 +332,8 @@ public class SqlRepositoryConfiguration extends SqlRepositoryBaseConfiguration {
 
     private final int textInfoColumnSize;
 
+    private int sequenceAllocationBlockSize; // not final only because of testing
+
     /*
      * Notes:
      * - In testing mode, the configuration is already updated from .properties file.
@@ -420,6 +436,8 @@ public class SqlRepositoryConfiguration extends SqlRepositoryBaseConfiguration {
         iterativeSearchByPagingBatchSize = configuration.getInt(PROPERTY_ITERATIVE_SEARCH_BY_PAGING_BATCH_SIZE, defaultIterativeSearchByPagingBatchSize);
         maxObjectsForImplicitFetchAllIterationMethod = configuration.getInt(PROPERTY_MAX_OBJECTS_FOR_IMPLICIT_FETCH_ALL_ITERATION_METHOD,
                 DEFAULT_MAX_OBJECTS_FOR_IMPLICIT_FETCH_ALL_ITERATION_METHOD);
+        iterativeSearchByKeysetTargetBatchDuration = configuration.getLong(PROPERTY_ITERATIVE_SEARCH_BY_KEYSET_TARGET_BATCH_DURATION,
+                DEFAULT_ITERATIVE_SEARCH_BY_KEYSET_TARGET_BATCH_DURATION);
 
         ignoreOrgClosure = configuration.getBoolean(PROPERTY_IGNORE_ORG_CLOSURE, false);
         orgClosureStartupAction = OrgClosureManager.StartupAction.fromValue(
@@ -450,6 +468,8 @@ public class SqlRepositoryConfiguration extends SqlRepositoryBaseConfiguration {
 
         int maxTextSize = (database == MYSQL || database == MARIADB) && UTF8MB4.equalsIgnoreCase(schemaVariant) ? 191 : 255;
         textInfoColumnSize = configuration.getInt(PROPERTY_TEXT_INFO_COLUMN_SIZE, maxTextSize);
+
+        sequenceAllocationBlockSize = configuration.getInt(PROPERTY_SEQUENCE_ALLOCATION_BLOCK_SIZE, 1);
     }
 
     private boolean isAutoUpdate(String hbm2ddl) {
@@ -801,6 +821,33 @@ public class SqlRepositoryConfiguration extends SqlRepositoryBaseConfiguration {
         this.iterativeSearchByPagingBatchSize = iterativeSearchByPagingBatchSize;
     }
 
+    /**
+     * Desired time (in milliseconds) of processing one batch of objects in keyset iterative search.
+     * The batch size is adapted to reach it, starting at {@link #getIterativeSearchByPagingBatchSize()}.
+     * Zero or negative value means fixed batch size.
+     */
+    public long getIterativeSearchByKeysetTargetBatchDuration() {
+        return iterativeSearchByKeysetTargetBatchDuration;
+    }
+
+    // exists because of testing
+    public void setIterativeSearchByKeysetTargetBatchDuration(long iterativeSearchByKeysetTargetBatchDuration) {
+        this.iterativeSearchByKeysetTargetBatchDuration = iterativeSearchByKeysetTargetBatchDuration;
+    }
+
+    /**
+     * Number of sequence values reserved by one repository round trip; values greater than 1 turn on
+     * node-local block allocation of sequence values (see {@link SequenceBlockAllocator}).
+     */
+    public int getSequenceAllocationBlockSize() {
+        return sequenceAllocationBlockSize;
+    }
+
+    // exists because of testing
+    public void setSequenceAllocationBlockSize(int sequenceAllocationBlockSize) {
+        this.sequenceAllocationBlockSize = sequenceAllocationBlockSize;
+    }
+
     public int getMaxObjectsForImplicitFetchAllIterationMethod() {
         return maxObjectsForImplicitFetchAllIterationMethod;
     }
@@ -848,6 +895,18 @@ public class SqlRepositoryConfiguration extends SqlRepositoryBaseConfiguration {
         return fullObjectFormat;
     }
 
+    public boolean isFullObjectFormatBinary() {
+        return FULL_OBJECT_FORMAT_BINARY.equals(fullObjectFormat);
+    }
+
+    /**
+     * Returns serialization language (for prism serializer) for writing fullObject.
+     * Binary format is based on JSON.
+     */
+    public String getFullObjectLanguage() {
+        return isFullObjectFormatBinary() ? PrismContext.LANG_JSON : fullObjectFormat;
+    }
+
     public boolean isIgnoreOrgClosure() {
         return ignoreOrgClosure;
     }
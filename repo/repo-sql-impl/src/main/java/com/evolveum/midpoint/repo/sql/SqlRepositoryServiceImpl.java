@@ -40,6 +40,7 @@ import com.evolveum.midpoint.repo.api.*;
 import com.evolveum.midpoint.repo.api.query.ObjectFilterExpressionEvaluator;
 import com.evolveum.midpoint.repo.sql.helpers.*;
 import com.evolveum.midpoint.repo.sql.perf.SqlPerformanceMonitorImpl;
+import com.evolveum.midpoint.repo.sqlbase.ConflictWatcherImpl;
 import com.evolveum.midpoint.schema.*;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.internals.InternalMonitor;
@@ -52,6 +53,7 @@ import com.evolveum.midpoint.schema.util.ObjectTypeUtil;
 import com.evolveum.midpoint.util.DebugUtil;
 import com.evolveum.midpoint.util.PrettyPrinter;
 import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
@@ -96,6 +98,8 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
 
     private final ThreadLocal<List<ConflictWatcherImpl>> conflictWatchersThreadLocal = new ThreadLocal<>();
 
+    private final SequenceBlockAllocator sequenceBlockAllocator = new SequenceBlockAllocator();
+
     private FullTextSearchConfigurationType fullTextSearchConfiguration;
 
     @Override
@@ -448,6 +452,7 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
                     subResult, () -> objectUpdater.deleteObjectAttempt(type, oid, subResult)
             );
             invokeConflictWatchers((w) -> w.afterDeleteObject(oid));
+            discardAllocatedSequenceValues(type, oid);
             return rv;
 
         } finally {
@@ -565,6 +570,7 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
                     ModifyObjectResult<T> rv = objectUpdater.modifyObjectAttempt(type, oid, modifications, precondition, options,
                             attempt, subResult, this, noFetchExtensionValueInsertionForbidden);
                     invokeConflictWatchers((w) -> w.afterModifyObject(oid));
+                    discardAllocatedSequenceValues(type, oid);
                     return rv;
                 } catch (RestartOperationRequestedException ex) {
                     // special case: we want to restart but we do not want to count these
@@ -799,6 +805,12 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
                                 + "was requested. However, a custom paging precludes its application. Therefore switching to "
                                 + "'fetch all' iteration method. Paging requested: " + query.getPaging());
                         iterationMethod = IterationMethodType.FETCH_ALL;
+                    } else if (isCustomPagingOkWithKeysetIteration(query)
+                            && objectRetriever.isOrderingOkWithKeysetIteration(type, query)) {
+                        LOGGER.debug("Iterative search by paging was defined in the repository configuration, and strict sequentiality "
+                                + "was requested. However, a custom paging precludes its application. Therefore switching to "
+                                + "'keyset paging' iteration method. Paging requested: " + query.getPaging());
+                        iterationMethod = IterationMethodType.KEYSET_PAGING;
                     } else {
                         LOGGER.warn("Iterative search by paging was defined in the repository configuration, and strict sequentiality "
                                 + "was requested. However, a custom paging precludes its application and maxSize is either "
@@ -840,6 +852,9 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
             case FETCH_ALL:
                 objectRetriever.searchObjectsIterativeByFetchAll(type, query, handler, options, subResult);
                 break;
+            case KEYSET_PAGING:
+                objectRetriever.searchObjectsIterativeByKeyset(type, query, handler, options, subResult);
+                break;
             default:
                 throw new AssertionError("iterationMethod: " + iterationMethod);
         }
@@ -861,6 +876,15 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
         return !paging.hasOrdering() && !paging.hasGrouping() && paging.getOffset() == null;
     }
 
+    public static boolean isCustomPagingOkWithKeysetIteration(ObjectQuery query) {
+        if (query == null || query.getPaging() == null) {
+            return true;
+        }
+        ObjectPaging paging = query.getPaging();
+        return paging.getOrderingInstructions().size() <= 1 && !paging.hasGrouping() && paging.getOffset() == null
+                && !paging.hasCookie();
+    }
+
     @Nullable
     private <T extends ObjectType> SearchResultMetadata searchObjectsIterativeBySingleTransaction(
             Class<T> type,
@@ -939,6 +963,20 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
 
         if (LOGGER.isTraceEnabled()) { LOGGER.trace("Advancing sequence {}", oid); }
 
+        int blockSize = sqlConfiguration().getSequenceAllocationBlockSize();
+        if (blockSize > 1) {
+            try {
+                long value = sequenceBlockAllocator.nextValue(oid,
+                        () -> executeAttempts(oid, OP_ADVANCE_SEQUENCE, SequenceType.class, "advanceSequence", result,
+                                () -> sequenceHelper.advanceSequenceAttempt(oid, blockSize, result)));
+                result.computeStatusIfUnknown();
+                return value;
+            } catch (ObjectNotFoundException | SchemaException | RuntimeException e) {
+                result.recordFatalError(e);
+                throw e;
+            }
+        }
+
         // TODO executeAttempts
         int attempt = 1;
 
@@ -958,6 +996,36 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
         }
     }
 
+    /**
+     * Values allocated before an explicit change of the sequence (e.g. counter reset) must not be handed out.
+     */
+    private void discardAllocatedSequenceValues(Class<?> type, String oid) {
+        if (SequenceType.class.equals(type)) {
+            sequenceBlockAllocator.discard(oid);
+        }
+    }
+
+    /**
+     * Returns sequence values allocated in blocks but not handed out yet back to their sequences.
+     * Called on shutdown; public because of testing.
+     */
+    public void returnAllocatedSequenceValues(OperationResult result) {
+        for (Map.Entry<String, List<Long>> entry : sequenceBlockAllocator.drainAll().entrySet()) {
+            try {
+                returnUnusedValuesToSequence(entry.getKey(), entry.getValue(), result);
+            } catch (ObjectNotFoundException | SchemaException | RuntimeException e) {
+                LoggingUtils.logUnexpectedException(LOGGER, "Couldn't return unused values {} to sequence {}", e,
+                        entry.getValue(), entry.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        returnAllocatedSequenceValues(new OperationResult(RETURN_UNUSED_VALUES_TO_SEQUENCE));
+        super.destroy();
+    }
+
     @Override
     public void returnUnusedValuesToSequence(String oid, Collection<Long> unusedValues, OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException {
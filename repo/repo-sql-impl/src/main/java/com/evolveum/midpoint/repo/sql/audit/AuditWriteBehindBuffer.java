@@ -0,0 +1,413 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sql.audit;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.repo.sql.audit.beans.MAuditEventRecord;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Asynchronous write-behind buffer for audit records.
+ * <p>
+ * Callers only enqueue prepared (fully converted) audit records, a single writer thread drains
+ * the queue and writes the records in batches - one transaction per batch.
+ * A batch is written when {@link Configuration#batchSize} records are collected
+ * or when {@link Configuration#flushInterval} elapses, whichever comes first.
+ * <p>
+ * When the queue is full, the caller either waits ({@link OverflowPolicy#BLOCK})
+ * or the record is serialized to the spill directory ({@link OverflowPolicy#SPILL}).
+ * Spilled records are written by the writer thread when the queue is drained.
+ * A batch that cannot be written is spilled too, if the spill directory is configured, and so it is written again
+ * together with other spilled records. Otherwise (or if it cannot be spilled) it is logged and counted as failed.
+ * A spill file that cannot be written stays in place and is tried again the next time the queue is drained.
+ * <p>
+ * On {@link #shutdown()} all the queued records are flushed.
+ * Records that are still in the spill directory are written after the next start.
+ */
+public class AuditWriteBehindBuffer {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AuditWriteBehindBuffer.class);
+
+    private static final String SPILL_FILE_PREFIX = "audit-spill-";
+    private static final String SPILL_FILE_SUFFIX = ".ser";
+
+    private static final long SHUTDOWN_TIMEOUT = 60_000;
+
+    /**
+     * Spill files contain only audit beans, so we don't want to deserialize anything else from the spill directory.
+     */
+    private static final ObjectInputFilter SPILL_FILE_FILTER = ObjectInputFilter.Config.createFilter(
+            "java.lang.*;java.util.*;java.time.*;com.evolveum.midpoint.repo.sql.audit.beans.*;!*");
+
+    public enum OverflowPolicy {
+        BLOCK, SPILL
+    }
+
+    private final Configuration configuration;
+    private final Consumer<List<MAuditEventRecord>> batchWriter;
+    private final BlockingQueue<MAuditEventRecord> queue;
+    private final Thread writerThread;
+
+    private volatile boolean running;
+
+    /**
+     * Enqueuing callers hold the read lock, {@link #shutdown()} takes the write lock to stop accepting records.
+     * So when the writer thread sees that the buffer is not running, no record can be added to the queue anymore
+     * and the writer can safely finish after the queue is drained.
+     */
+    private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+
+    // statistics
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private final AtomicLong spillSequence = new AtomicLong();
+
+    public AuditWriteBehindBuffer(
+            @NotNull Configuration configuration,
+            @NotNull Consumer<List<MAuditEventRecord>> batchWriter) {
+        this.configuration = configuration;
+        this.batchWriter = batchWriter;
+        this.queue = new ArrayBlockingQueue<>(configuration.bufferSize);
+        this.writerThread = new Thread(this::writerLoop, "audit-write-behind");
+        this.writerThread.setDaemon(true);
+    }
+
+    public void start() {
+        if (configuration.spillDirectory != null) {
+            try {
+                Files.createDirectories(configuration.spillDirectory);
+            } catch (IOException e) {
+                throw new SystemException("Couldn't create audit spill directory "
+                        + configuration.spillDirectory + ": " + e.getMessage(), e);
+            }
+        }
+        running = true;
+        writerThread.start();
+        LOGGER.info("Audit write-behind buffer started: {}", configuration);
+    }
+
+    /**
+     * Enqueues the record for writing, blocks or spills the record if the buffer is full.
+     */
+    public void enqueue(@NotNull MAuditEventRecord record) {
+        runningLock.readLock().lock();
+        try {
+            if (running) {
+                enqueueWhileRunning(record);
+                return;
+            }
+        } finally {
+            runningLock.readLock().unlock();
+        }
+
+        // after shutdown (or before start) we just write it synchronously
+        batchWriter.accept(List.of(record));
+        written.incrementAndGet();
+    }
+
+    private void enqueueWhileRunning(MAuditEventRecord record) {
+        enqueued.incrementAndGet();
+        if (queue.offer(record)) {
+            return;
+        }
+
+        if (configuration.overflowPolicy == OverflowPolicy.SPILL) {
+            spill(List.of(record));
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            // Timed wait, so we notice the stop of the writer (and release the read lock) if the queue is not drained anymore.
+            while (!queue.offer(record, configuration.flushInterval, TimeUnit.MILLISECONDS)) {
+                if (!running) {
+                    batchWriter.accept(List.of(record));
+                    written.incrementAndGet();
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SystemException("Interrupted while waiting for free space in audit buffer", e);
+        } finally {
+            blockedNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Stops the writer thread after all the queued records are written.
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        // No interrupt here, we don't want to break JDBC operation in progress.
+        // The writer notices the flag after the current poll timeout at the latest.
+        stopAccepting();
+        try {
+            writerThread.join(SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            LOGGER.warn("Audit writer thread did not finish in {} ms, {} record(s) may not be written",
+                    SHUTDOWN_TIMEOUT, queue.size());
+        }
+        LOGGER.info("Audit write-behind buffer stopped: {}", this);
+    }
+
+    /**
+     * After this method returns, no more records are added to the queue.
+     * Callers waiting for free space in the queue hold the read lock; they either get the space as the writer drains
+     * the queue, or they notice the stop and write their record synchronously.
+     */
+    private void stopAccepting() {
+        runningLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+    }
+
+    private void writerLoop() {
+        List<MAuditEventRecord> batch = new ArrayList<>(configuration.batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                MAuditEventRecord first = running
+                        ? queue.poll(configuration.flushInterval, TimeUnit.MILLISECONDS)
+                        : queue.poll();
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, configuration.batchSize - 1);
+                    writeBatch(batch);
+                    batch.clear();
+                }
+                if (queue.isEmpty() && running) {
+                    processSpilledRecords();
+                }
+            } catch (InterruptedException e) {
+                LOGGER.warn("Audit writer thread was interrupted, writing {} queued record(s),"
+                        + " further records will be written synchronously", queue.size());
+                stopAccepting();
+            } catch (Throwable t) {
+                LoggingUtils.logUnexpectedException(LOGGER, "Unexpected problem in audit writer thread", t);
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<MAuditEventRecord> batch) {
+        try {
+            batchWriter.accept(batch);
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+        } catch (RuntimeException e) {
+            if (configuration.spillDirectory != null) {
+                LoggingUtils.logUnexpectedException(LOGGER,
+                        "Couldn't write {} audit record(s), spilling them to {}", e,
+                        batch.size(), configuration.spillDirectory);
+                try {
+                    spill(batch);
+                } catch (RuntimeException spillException) {
+                    failed.addAndGet(batch.size());
+                    LoggingUtils.logUnexpectedException(LOGGER,
+                            "Couldn't spill {} audit record(s), the records are lost", spillException, batch.size());
+                }
+            } else {
+                failed.addAndGet(batch.size());
+                LoggingUtils.logUnexpectedException(LOGGER,
+                        "Couldn't write {} audit record(s), the records are lost", e, batch.size());
+            }
+        }
+    }
+
+    private void spill(List<MAuditEventRecord> records) {
+        if (configuration.spillDirectory == null) {
+            throw new SystemException("Audit buffer is full and no spill directory is configured");
+        }
+        Path file = configuration.spillDirectory.resolve(SPILL_FILE_PREFIX
+                + System.currentTimeMillis() + "-" + spillSequence.incrementAndGet() + SPILL_FILE_SUFFIX);
+        try (ObjectOutputStream out = new ObjectOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeObject(new ArrayList<>(records));
+        } catch (IOException e) {
+            throw new SystemException("Couldn't spill audit records to " + file + ": " + e.getMessage(), e);
+        }
+        spilled.addAndGet(records.size());
+    }
+
+    private void processSpilledRecords() throws IOException {
+        if (configuration.spillDirectory == null) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(configuration.spillDirectory)) {
+            files = stream
+                    .filter(p -> p.getFileName().toString().startsWith(SPILL_FILE_PREFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            if (!queue.isEmpty()) {
+                return; // current records take precedence, we will continue when the queue is drained again
+            }
+            List<MAuditEventRecord> records = readSpillFile(file);
+            if (records != null) {
+                // If this fails, the exception leaves the file in place, we will try again later.
+                batchWriter.accept(records);
+                written.addAndGet(records.size());
+                batches.incrementAndGet();
+            }
+            Files.delete(file);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<MAuditEventRecord> readSpillFile(Path file) {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            in.setObjectInputFilter(SPILL_FILE_FILTER);
+            return (List<MAuditEventRecord>) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't read spilled audit records from {}, ignoring the file", e, file);
+            return null;
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getEnqueued() {
+        return enqueued.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    /**
+     * Total time callers spent waiting for free space in the buffer (in milliseconds).
+     */
+    public long getBlockedTime() {
+        return TimeUnit.NANOSECONDS.toMillis(blockedNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return "AuditWriteBehindBuffer{" +
+                "queueDepth=" + queue.size() +
+                ", enqueued=" + enqueued +
+                ", written=" + written +
+                ", batches=" + batches +
+                ", failed=" + failed +
+                ", spilled=" + spilled +
+                ", blockedTime=" + getBlockedTime() + " ms" +
+                '}';
+    }
+
+    /**
+     * Configuration of the write-behind buffer, read from the audit service configuration.
+     */
+    public static class Configuration {
+
+        public static final String CONF_BUFFER_SIZE = "writeBehindBufferSize";
+        public static final String CONF_BATCH_SIZE = "writeBehindBatchSize";
+        public static final String CONF_FLUSH_INTERVAL = "writeBehindFlushInterval";
+        public static final String CONF_OVERFLOW_POLICY = "writeBehindOverflowPolicy";
+        public static final String CONF_SPILL_DIRECTORY = "writeBehindSpillDirectory";
+
+        public static final int DEFAULT_BATCH_SIZE = 100;
+        public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+        final int bufferSize;
+        final int batchSize;
+        final long flushInterval;
+        final OverflowPolicy overflowPolicy;
+        final Path spillDirectory;
+
+        public Configuration(int bufferSize, int batchSize, long flushInterval,
+                @NotNull OverflowPolicy overflowPolicy, Path spillDirectory) {
+            if (bufferSize <= 0 || batchSize <= 0 || flushInterval <= 0) {
+                throw new IllegalArgumentException("Audit buffer size, batch size and flush interval must be positive");
+            }
+            if (overflowPolicy == OverflowPolicy.SPILL && spillDirectory == null) {
+                throw new IllegalArgumentException("Audit buffer overflow policy SPILL requires spill directory");
+            }
+            this.bufferSize = bufferSize;
+            this.batchSize = batchSize;
+            this.flushInterval = flushInterval;
+            this.overflowPolicy = overflowPolicy;
+            this.spillDirectory = spillDirectory;
+        }
+
+        /**
+         * Returns null if write-behind is not enabled, that is if the buffer size is not set or is zero.
+         */
+        public static Configuration fromConfig(org.apache.commons.configuration2.Configuration config) {
+            int bufferSize = config.getInt(CONF_BUFFER_SIZE, 0);
+            if (bufferSize <= 0) {
+                return null;
+            }
+            String spillDirectory = config.getString(CONF_SPILL_DIRECTORY);
+            return new Configuration(bufferSize,
+                    config.getInt(CONF_BATCH_SIZE, DEFAULT_BATCH_SIZE),
+                    config.getLong(CONF_FLUSH_INTERVAL, DEFAULT_FLUSH_INTERVAL),
+                    OverflowPolicy.valueOf(config.getString(CONF_OVERFLOW_POLICY, OverflowPolicy.BLOCK.name())
+                            .toUpperCase()),
+                    spillDirectory != null ? Paths.get(spillDirectory) : null);
+        }
+
+        @Override
+        public String toString() {
+            return "Configuration{" +
+                    "bufferSize=" + bufferSize +
+                    ", batchSize=" + batchSize +
+                    ", flushInterval=" + flushInterval +
+                    ", overflowPolicy=" + overflowPolicy +
+                    ", spillDirectory=" + spillDirectory +
+                    '}';
+        }
+    }
+}
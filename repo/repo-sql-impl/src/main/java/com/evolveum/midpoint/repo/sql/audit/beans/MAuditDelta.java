@@ -8,6 +8,8 @@ package com.evolveum.midpoint.repo.sql.audit.beans;
 
 import static com.evolveum.midpoint.util.MiscUtil.binaryToHexPreview;
 
+import java.io.Serializable;
+
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.repo.sql.audit.querymodel.QAuditDelta;
 
@@ -15,7 +17,7 @@ import com.evolveum.midpoint.repo.sql.audit.querymodel.QAuditDelta;
  * Querydsl "row bean" type related to {@link QAuditDelta}.
  */
 @SuppressWarnings("unused")
-public class MAuditDelta {
+public class MAuditDelta implements Serializable {
 
     // TODO why is checksum part of PK? why not (recordId, deltaNumber) or even totally unique single ID?
     public Long recordId;
@@ -6,6 +6,7 @@
  */
 package com.evolveum.midpoint.repo.sql.audit.beans;
 
+import java.io.Serializable;
 import java.time.Instant;
 import java.util.*;
 
@@ -26,7 +27,7 @@ import com.evolveum.midpoint.repo.sql.audit.querymodel.QAuditEventRecord;
  * to make it easy to call them in M-beans? Or should we use RUtil?
  */
 @SuppressWarnings("unused")
-public class MAuditEventRecord {
+public class MAuditEventRecord implements Serializable {
 
     public Long id;
     public String eventIdentifier;
@@ -63,6 +64,7 @@ public class MAuditEventRecord {
     public Map<String, List<MAuditRefValue>> refValues;
     public Map<String, List<String>> properties;
     public List<String> resourceOids;
+    public Map<String, String> customColumns;
 
     public void addDelta(MAuditDelta mAuditDelta) {
         if (deltas == null) {
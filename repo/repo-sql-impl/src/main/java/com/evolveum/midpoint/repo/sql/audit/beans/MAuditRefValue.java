@@ -6,13 +6,15 @@
  */
 package com.evolveum.midpoint.repo.sql.audit.beans;
 
+import java.io.Serializable;
+
 import com.evolveum.midpoint.repo.sql.audit.querymodel.QAuditRefValue;
 
 /**
  * Querydsl "row bean" type related to {@link QAuditRefValue}.
  */
 @SuppressWarnings("unused")
-public class MAuditRefValue {
+public class MAuditRefValue implements Serializable {
 
     public Long id;
     public Long recordId;
@@ -9,6 +9,7 @@ package com.evolveum.midpoint.repo.sql.data.common.container;
 
 import static com.evolveum.midpoint.schema.util.CertCampaignTypeUtil.norm;
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
@@ -33,6 +34,7 @@ import com.evolveum.midpoint.repo.sql.util.MidPointSingleTablePersister;
 import com.evolveum.midpoint.repo.sql.util.RUtil;
 import com.evolveum.midpoint.schema.SchemaConstantsGenerated;
 import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.exception.SystemException;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.AccessCertificationCaseType;
@@ -365,13 +367,15 @@ public class RAccessCertificationCase implements Container<RAccessCertificationC
         String serializedForm;
         try {
             serializedForm = context.prismContext
-                    .serializerFor(context.configuration.getFullObjectFormat())
+                    .serializerFor(context.configuration.getFullObjectLanguage())
                     .serialize(cvalue, SchemaConstantsGenerated.C_VALUE);
         } catch (SchemaException e) {
             throw new IllegalStateException("Couldn't serialize certification case to string", e);
         }
         LOGGER.trace("RAccessCertificationCase full object\n{}", serializedForm);
-        byte[] fullObject = RUtil.getBytesFromSerializedForm(serializedForm, false);
+        byte[] fullObject = context.configuration.isFullObjectFormatBinary()
+                ? RUtil.getBinaryFromSerializedForm(serializedForm)
+                : RUtil.getBytesFromSerializedForm(serializedForm, false);
         rCase.setFullObject(fullObject);
 
         return rCase;
@@ -383,16 +387,21 @@ public class RAccessCertificationCase implements Container<RAccessCertificationC
 
     public static AccessCertificationCaseType createJaxb(
             byte[] fullObject, PrismContext prismContext) throws SchemaException {
-        String serializedFrom = RUtil.getSerializedFormFromBytes(fullObject);
-        LOGGER.trace("RAccessCertificationCase full object to be parsed\n{}", serializedFrom);
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("RAccessCertificationCase full object to be parsed\n{}", RUtil.getSerializedFormFromBytes(fullObject));
+        }
         try {
-            return prismContext.parserFor(serializedFrom)
+            return RUtil.parserForSerializedForm(prismContext, fullObject)
                     .compat().parseRealValue(AccessCertificationCaseType.class);
         } catch (SchemaException e) {
-            LOGGER.debug("Couldn't parse certification case because of schema exception ({}):\nData: {}", e, serializedFrom);
+            LOGGER.debug("Couldn't parse certification case because of schema exception ({}):\nData: {}", e,
+                    RUtil.getSerializedFormFromBytes(fullObject));
             throw e;
+        } catch (IOException e) {
+            throw new SystemException("Couldn't read certification case: " + e.getMessage(), e);
         } catch (RuntimeException e) {
-            LOGGER.debug("Couldn't parse certification case because of unexpected exception ({}):\nData: {}", e, serializedFrom);
+            LOGGER.debug("Couldn't parse certification case because of unexpected exception ({}):\nData: {}", e,
+                    RUtil.getSerializedFormFromBytes(fullObject));
             throw e;
         }
     }
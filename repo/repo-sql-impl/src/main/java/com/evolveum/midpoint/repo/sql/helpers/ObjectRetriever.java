@@ -10,6 +10,7 @@ package com.evolveum.midpoint.repo.sql.helpers;
 import static org.apache.commons.lang3.ArrayUtils.getLength;
 import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 import javax.persistence.criteria.CriteriaBuilder;
@@ -28,8 +29,14 @@ import com.evolveum.midpoint.common.crypto.CryptoUtil;
 import com.evolveum.midpoint.prism.*;
 import com.evolveum.midpoint.prism.path.ItemName;
 import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.query.ObjectFilter;
+import com.evolveum.midpoint.prism.query.ObjectOrdering;
 import com.evolveum.midpoint.prism.query.ObjectPaging;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.prism.query.OrderDirection;
+import com.evolveum.midpoint.prism.query.builder.S_AtomicFilterExit;
+import com.evolveum.midpoint.prism.query.builder.S_MatchingRuleEntry;
 import com.evolveum.midpoint.repo.api.RepositoryObjectDiagnosticData;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.sql.SqlRepositoryConfiguration;
@@ -48,6 +55,7 @@ import com.evolveum.midpoint.repo.sql.util.*;
 import com.evolveum.midpoint.schema.*;
 import com.evolveum.midpoint.schema.internals.InternalsConfig;
 import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.ObjectQueryUtil;
 import com.evolveum.midpoint.schema.util.ObjectTypeUtil;
 import com.evolveum.midpoint.util.Holder;
 import com.evolveum.midpoint.util.QNameUtil;
@@ -73,6 +81,12 @@ public class ObjectRetriever {
 
     public static final String NULL_OID_MARKER = "###null-oid###";     // brutal hack (TODO)
 
+    /**
+     * Limits for adaptive batch size in keyset iterative search.
+     */
+    private static final int KEYSET_MIN_BATCH_SIZE = 10;
+    private static final int KEYSET_MAX_BATCH_SIZE = 1000;
+
     @Autowired private LookupTableHelper lookupTableHelper;
     @Autowired private CertificationCaseHelper caseHelper;
     @Autowired private CaseManagementHelper caseManagementHelper;
@@ -517,12 +531,12 @@ public class ObjectRetriever {
         boolean raw = GetOperationOptions.isRaw(rootOptions);
 
         byte[] fullObject = result.getFullObject();
-        String serializedForm = RUtil.getSerializedFormFromBytes(fullObject);
         PrismObject<T> prismObject;
         try {
             // "Postel mode": be tolerant what you read. We need this to tolerate (custom) schema changes
             ParsingContext parsingContext = prismContext.createParsingContextForCompatibilityMode();
-            prismObject = prismContext.parserFor(serializedForm)
+            // Parsing directly from the (decompressing) stream, not creating intermediate string
+            prismObject = RUtil.parserForSerializedForm(prismContext, fullObject)
                     .context(parsingContext).parse();
             if (parsingContext.hasWarnings()) {
                 LOGGER.warn("Object {} parsed with {} warnings", ObjectTypeUtil.toShortString(prismObject), parsingContext.getWarnings().size());
@@ -530,9 +544,11 @@ public class ObjectRetriever {
         } catch (SchemaException | RuntimeException | Error e) {
             // This is a serious thing. We have corrupted XML in the repo. This may happen even
             // during system init. We want really loud and detailed error here.
-            LOGGER.error("Couldn't parse object {} {}: {}: {}\n{}",
-                    type.getSimpleName(), oid, e.getClass().getName(), e.getMessage(), serializedForm, e);
+            logParsingError(type, oid, fullObject, e);
             throw e;
+        } catch (IOException e) {
+            logParsingError(type, oid, fullObject, e);
+            throw new SystemException("Couldn't read object " + oid + ": " + e.getMessage(), e);
         }
         attachDiagDataIfRequested(prismObject, fullObject, options);
         if (prismObject.getCompileTimeClass() != null && FocusType.class.isAssignableFrom(prismObject.getCompileTimeClass())) {
@@ -573,9 +589,13 @@ public class ObjectRetriever {
                 query.setParameter("oid", prismObject.getOid());
                 byte[] opResult = (byte[]) query.uniqueResult();
                 if (opResult != null) {
-                    String serializedResult = RUtil.getSerializedFormFromBytes(opResult);
-                    OperationResultType resultType = prismContext.parserFor(serializedResult)
-                            .parseRealValue(OperationResultType.class);
+                    OperationResultType resultType;
+                    try {
+                        resultType = RUtil.parserForSerializedForm(prismContext, opResult)
+                                .parseRealValue(OperationResultType.class);
+                    } catch (IOException e) {
+                        throw new SystemException("Couldn't read task result: " + e.getMessage(), e);
+                    }
 
                     PrismProperty<OperationResultType> resultProperty =
                             prismObject.findOrCreateProperty(TaskType.F_RESULT);
@@ -1011,6 +1031,190 @@ public class ObjectRetriever {
         }
     }
 
+    /**
+     * Keyset ("seek") variant of strictly sequential paging.
+     * <p>
+     * Objects are ordered by (orderKey, oid), where orderKey is the single ordering item of the client-supplied paging
+     * (if present). Each batch starts right after the (orderKey, oid) pair of the last object processed, so the database
+     * does not have to skip rows (as with OFFSET) and the cost of fetching a batch does not grow during the iteration.
+     * No object is present in output more than once, and no object is skipped - provided its orderKey and oid are not
+     * changed during the iteration.
+     * <p>
+     * Objects with null orderKey are processed after all the others (ordered by oid), because databases differ in
+     * placing nulls into the ordering.
+     * <p>
+     * The batch size starts at configured iterativeSearchByPagingBatchSize and is adapted according to the measured
+     * processing time, so that one batch is processed approximately in iterativeSearchByKeysetTargetBatchDuration.
+     */
+    public <T extends ObjectType> void searchObjectsIterativeByKeyset(
+            Class<T> type, ObjectQuery query, ResultHandler<T> handler,
+            Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result)
+            throws SchemaException {
+
+        try {
+            if (!SqlRepositoryServiceImpl.isCustomPagingOkWithKeysetIteration(query)) {
+                throw new IllegalArgumentException("Only a single ordering and maxSize are supported in the paging of "
+                        + "keyset iterative search. Query = " + query);
+            }
+            if (!isOrderingOkWithKeysetIteration(type, query)) {
+                throw new IllegalArgumentException("Keyset iterative search can be ordered only by a single-valued property. "
+                        + "Query = " + query);
+            }
+            ObjectFilter filter = query != null ? query.getFilter() : null;
+            ObjectPaging customPaging = query != null ? query.getPaging() : null;
+            Integer maxSize = customPaging != null ? customPaging.getMaxSize() : null;
+            ObjectOrdering ordering = customPaging != null ? customPaging.getPrimaryOrdering() : null;
+            ItemPath orderBy = ordering != null ? ordering.getOrderBy() : null;
+            boolean descending = ordering != null && ordering.getDirection() == OrderDirection.DESCENDING;
+
+            int initialBatchSize = getConfiguration().getIterativeSearchByPagingBatchSize();
+            long targetBatchDuration = getConfiguration().getIterativeSearchByKeysetTargetBatchDuration();
+            int batchSize = initialBatchSize;
+
+            boolean nullKeysPhase = orderBy == null;
+            Object lastKey = null;
+            String lastOid = null;
+            main:
+            for (; ; ) {
+                ObjectFilter keysetFilter = createKeysetFilter(type, orderBy, descending, nullKeysPhase, lastKey, lastOid);
+                ObjectPaging paging = prismContext.queryFactory().createPaging();
+                if (!nullKeysPhase) {
+                    paging.addOrderingInstruction(orderBy, descending ? OrderDirection.DESCENDING : OrderDirection.ASCENDING);
+                }
+                paging.addOrderingInstruction(PrismConstants.T_ID, OrderDirection.ASCENDING);
+                paging.setMaxSize(Math.min(batchSize, defaultIfNull(maxSize, Integer.MAX_VALUE)));
+                ObjectQuery pagedQuery = prismContext.queryFactory().createQuery(
+                        ObjectQueryUtil.filterAnd(filter != null ? filter.clone() : null, keysetFilter, prismContext),
+                        paging);
+
+                List<PrismObject<T>> objects = repositoryService.searchObjects(type, pagedQuery, options, result);
+
+                long start = System.nanoTime();
+                for (PrismObject<T> object : objects) {
+                    lastOid = object.getOid();
+                    if (!nullKeysPhase) {
+                        lastKey = getOrderingValue(object, orderBy);
+                    }
+                    if (!handler.handle(object, result)) {
+                        break main;
+                    }
+                }
+                if (targetBatchDuration > 0) {
+                    batchSize = adaptBatchSize(batchSize, Math.min(KEYSET_MIN_BATCH_SIZE, initialBatchSize),
+                            objects.size(), System.nanoTime() - start, targetBatchDuration);
+                }
+
+                if (maxSize != null) {
+                    maxSize -= objects.size();
+                    if (maxSize <= 0) {
+                        break;
+                    }
+                }
+                if (objects.size() < paging.getMaxSize()) {
+                    if (nullKeysPhase) {
+                        break;
+                    }
+                    LOGGER.trace("Objects with non-null {} processed, continuing with the ones with null value", orderBy);
+                    nullKeysPhase = true;
+                    lastKey = null;
+                    lastOid = null;
+                }
+            }
+        } finally {
+            if (result.isUnknown()) {
+                result.computeStatus();
+            }
+        }
+    }
+
+    /**
+     * Keyset iteration needs the ordering value of each object processed. So the ordering (if any) must be by a property
+     * with known definition, reachable through single-valued items only and single-valued itself.
+     */
+    public boolean isOrderingOkWithKeysetIteration(Class<? extends ObjectType> type, ObjectQuery query) {
+        ObjectOrdering ordering = query != null && query.getPaging() != null ? query.getPaging().getPrimaryOrdering() : null;
+        ItemPath orderBy = ordering != null ? ordering.getOrderBy() : null;
+        if (orderBy == null) {
+            return true;
+        }
+        PrismObjectDefinition<?> objectDefinition = prismContext.getSchemaRegistry().findObjectDefinitionByCompileTimeClass(type);
+        if (objectDefinition == null) {
+            return false;
+        }
+        ItemDefinition<?> itemDefinition = null;
+        for (int i = 0; i < orderBy.size(); i++) {
+            if (!ItemPath.isName(orderBy.getSegment(i))) {
+                return false;
+            }
+            itemDefinition = objectDefinition.findItemDefinition(orderBy.allUpToIncluding(i));
+            if (itemDefinition == null || !itemDefinition.isSingleValue()) {
+                return false;
+            }
+        }
+        return itemDefinition instanceof PrismPropertyDefinition;
+    }
+
+    /**
+     * Creates condition selecting objects after the specified (key, oid) position.
+     * Returns null if there's no such condition (i.e. at the start of the iteration without ordering).
+     */
+    private ObjectFilter createKeysetFilter(Class<? extends ObjectType> type, ItemPath orderBy, boolean descending,
+            boolean nullKeysPhase, Object lastKey, String lastOid) {
+        if (nullKeysPhase) {
+            if (orderBy == null && lastOid == null) {
+                return null;
+            }
+            ObjectFilter nullKeys = orderBy != null ? prismContext.queryFor(type).item(orderBy).isNull().buildFilter() : null;
+            ObjectFilter afterOid = lastOid != null ? prismContext.queryFor(type).item(PrismConstants.T_ID).gt(lastOid).buildFilter() : null;
+            return ObjectQueryUtil.filterAnd(nullKeys, afterOid, prismContext);
+        } else if (lastOid == null) {
+            return prismContext.queryFor(type).not().item(orderBy).isNull().buildFilter();
+        } else {
+            // (key > lastKey) OR (key = lastKey AND oid > lastOid); null keys are excluded by both comparisons
+            S_MatchingRuleEntry afterKey = descending ?
+                    prismContext.queryFor(type).item(orderBy).lt(lastKey) :
+                    prismContext.queryFor(type).item(orderBy).gt(lastKey);
+            S_MatchingRuleEntry sameKey = matchingForKey(afterKey, lastKey).or().block().item(orderBy).eq(lastKey);
+            return matchingForKey(sameKey, lastKey)
+                    .and().item(PrismConstants.T_ID).gt(lastOid)
+                    .endBlock()
+                    .buildFilter();
+        }
+    }
+
+    // Polystrings are ordered by their orig value, so they have to be compared in the same way.
+    private S_AtomicFilterExit matchingForKey(S_MatchingRuleEntry entry, Object key) {
+        return key instanceof PolyString ? entry.matchingOrig() : entry;
+    }
+
+    private Object getOrderingValue(PrismObject<?> object, ItemPath orderBy) {
+        PrismProperty<?> property = object.findProperty(orderBy);
+        Object value = property != null ? property.getRealValue() : null;
+        if (value == null) {
+            throw new IllegalStateException("No value of " + orderBy + " in " + object + " although it was selected "
+                    + "as having non-null value");
+        }
+        return value;
+    }
+
+    /**
+     * Moves the batch size (half way) towards the value that would need targetDuration to process,
+     * considering the time spent by processing the last batch.
+     */
+    private int adaptBatchSize(int current, int min, int processed, long durationNanos, long targetDuration) {
+        if (processed == 0) {
+            return current;
+        }
+        double millisPerObject = (double) durationNanos / processed / 1_000_000;
+        double ideal = millisPerObject > 0 ? targetDuration / millisPerObject : KEYSET_MAX_BATCH_SIZE;
+        int next = (int) Math.min(KEYSET_MAX_BATCH_SIZE, (current + Math.min(ideal, KEYSET_MAX_BATCH_SIZE)) / 2);
+        next = Math.max(min, next);
+        if (next != current) {
+            LOGGER.trace("Keyset iteration batch size changed from {} to {} ({} ms per object)", current, next, millisPerObject);
+        }
+        return next;
+    }
+
     public <T extends ObjectType> void searchObjectsIterativeByFetchAll(Class<T> type, ObjectQuery query,
             ResultHandler<T> handler, Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result)
             throws SchemaException {
@@ -1110,6 +1314,19 @@ public class ObjectRetriever {
         }
     }
 
+    private void logParsingError(Class<?> type, String oid, byte[] fullObject, Throwable e) {
+        LOGGER.error("Couldn't parse object {} {}: {}: {}\n{}",
+                type.getSimpleName(), oid, e.getClass().getName(), e.getMessage(), getSerializedFormSafely(fullObject), e);
+    }
+
+    private String getSerializedFormSafely(byte[] fullObject) {
+        try {
+            return RUtil.getSerializedFormFromBytes(fullObject);
+        } catch (RuntimeException e) {
+            return "(unreadable: " + e.getMessage() + ")";
+        }
+    }
+
     private void attachDiagDataIfRequested(Item<?, ?> item, byte[] fullObject, Collection<SelectorOptions<GetOperationOptions>> options) {
         if (GetOperationOptions.isAttachDiagData(SelectorOptions.findRootOptions(options))) {
             item.setUserData(RepositoryService.KEY_DIAG_DATA, new RepositoryObjectDiagnosticData(getLength(fullObject)));
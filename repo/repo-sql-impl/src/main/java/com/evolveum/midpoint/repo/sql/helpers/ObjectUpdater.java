@@ -240,14 +240,16 @@ public class ObjectUpdater {
             itemsToSkip.add(TaskType.F_RESULT);
         }
 
-        String xml = prismContext.serializerFor(getConfiguration().getFullObjectFormat())
+        String xml = prismContext.serializerFor(getConfiguration().getFullObjectLanguage())
                 .itemsToSkip(itemsToSkip)
                 .options(SerializationOptions
                         .createSerializeReferenceNamesForNullOids()
                         .skipIndexOnly(true)
                         .skipTransient(true))
                 .serialize(savedObject);
-        byte[] fullObject = RUtil.getBytesFromSerializedForm(xml, getConfiguration().isUseZip());
+        byte[] fullObject = getConfiguration().isFullObjectFormatBinary()
+                ? RUtil.getBinaryFromSerializedForm(xml)
+                : RUtil.getBytesFromSerializedForm(xml, getConfiguration().isUseZip());
 
         object.setFullObject(fullObject);
 
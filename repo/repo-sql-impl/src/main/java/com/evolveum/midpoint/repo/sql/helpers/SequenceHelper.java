@@ -7,8 +7,10 @@
 
 package com.evolveum.midpoint.repo.sql.helpers;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,11 +50,21 @@ public class SequenceHelper {
 
     public long advanceSequenceAttempt(String oid, OperationResult result) throws ObjectNotFoundException,
             SchemaException, SerializationRelatedException {
+        return advanceSequenceAttempt(oid, 1, result).get(0);
+    }
+
+    /**
+     * Allocates up to `count` values from the sequence in a single transaction.
+     * Fewer values are returned if the sequence is exhausted (or wraps around) in the meantime,
+     * but at least one value is always returned (or an exception is thrown).
+     */
+    public List<Long> advanceSequenceAttempt(String oid, int count, OperationResult result) throws ObjectNotFoundException,
+            SchemaException, SerializationRelatedException {
 
-        long returnValue;
+        List<Long> returnValues = new ArrayList<>(count);
 
-        LOGGER.debug("Advancing sequence with oid '{}'.", oid);
-        LOGGER_PERFORMANCE.debug("> advance sequence, oid={}", oid);
+        LOGGER.debug("Advancing sequence with oid '{}' by {} value(s).", oid, count);
+        LOGGER_PERFORMANCE.debug("> advance sequence, oid={}, count={}", oid, count);
 
         Session session = null;
         try {
@@ -64,37 +76,25 @@ public class SequenceHelper {
             }
             SequenceType sequence = prismObject.asObjectable();
 
-            if (!sequence.getUnusedValues().isEmpty()) {
-                returnValue = sequence.getUnusedValues().remove(0);
-            } else {
-                long counter = sequence.getCounter() != null ? sequence.getCounter() : 0L;
-                long maxCounter = sequence.getMaxCounter() != null ? sequence.getMaxCounter() : Long.MAX_VALUE;
-                boolean allowRewind = Boolean.TRUE.equals(sequence.isAllowRewind());
-
-                if (counter < maxCounter) {
-                    returnValue = counter;
-                    sequence.setCounter(counter + 1);
-                } else if (counter == maxCounter) {
-                    returnValue = counter;
-                    if (allowRewind) {
-                        sequence.setCounter(0L);
-                    } else {
-                        sequence.setCounter(counter + 1);       // will produce exception during next run
-                    }
-                } else {        // i.e. counter > maxCounter
-                    if (allowRewind) {          // shouldn't occur but...
-                        LOGGER.warn("Sequence {} overflown with allowRewind set to true. Rewinding.", oid);
-                        returnValue = 0;
-                        sequence.setCounter(1L);
-                    } else {
-                        // TODO some better exception...
-                        throw new SystemException("No (next) value available from sequence " + oid + ". Current counter = " + sequence.getCounter() + ", max value = " + sequence.getMaxCounter());
-                    }
+            while (returnValues.size() < count) {
+                Long counterBefore = sequence.getCounter();
+                List<Long> unusedValuesBefore = new ArrayList<>(sequence.getUnusedValues());
+                Long value = nextValue(oid, sequence, returnValues.isEmpty());
+                if (value == null) {
+                    break;      // exhausted
                 }
+                if (returnValues.contains(value)) {
+                    // wrapped around within this block, the value must stay in the sequence
+                    sequence.setCounter(counterBefore);
+                    sequence.getUnusedValues().clear();
+                    sequence.getUnusedValues().addAll(unusedValuesBefore);
+                    break;
+                }
+                returnValues.add(value);
             }
 
             if (LOGGER.isTraceEnabled()) {
-                LOGGER.trace("Return value = {}, OBJECT after:\n{}", returnValue, prismObject.debugDump());
+                LOGGER.trace("Return values = {}, OBJECT after:\n{}", returnValues, prismObject.debugDump());
             }
 
             // merge and update object
@@ -110,7 +110,7 @@ public class SequenceHelper {
             session.getTransaction().commit();
             LOGGER.trace("Committed!");
 
-            return returnValue;
+            return returnValues;
         } catch (ObjectNotFoundException | SchemaException ex) {
             baseHelper.rollbackTransaction(session, ex, result, true);
             throw ex;
@@ -123,6 +123,44 @@ public class SequenceHelper {
         }
     }
 
+    /**
+     * Takes the next value from the sequence (unused values first) and updates the sequence accordingly.
+     * Returns null if there is no next value, unless it is the first value requested in the transaction
+     * (then the exception is thrown).
+     */
+    private Long nextValue(String oid, SequenceType sequence, boolean first) {
+        if (!sequence.getUnusedValues().isEmpty()) {
+            return sequence.getUnusedValues().remove(0);
+        }
+
+        long counter = sequence.getCounter() != null ? sequence.getCounter() : 0L;
+        long maxCounter = sequence.getMaxCounter() != null ? sequence.getMaxCounter() : Long.MAX_VALUE;
+        boolean allowRewind = Boolean.TRUE.equals(sequence.isAllowRewind());
+
+        if (counter < maxCounter) {
+            sequence.setCounter(counter + 1);
+            return counter;
+        } else if (counter == maxCounter) {
+            if (allowRewind) {
+                sequence.setCounter(0L);
+            } else {
+                sequence.setCounter(counter + 1);       // will produce exception during next run
+            }
+            return counter;
+        } else {        // i.e. counter > maxCounter
+            if (allowRewind) {          // shouldn't occur but...
+                LOGGER.warn("Sequence {} overflown with allowRewind set to true. Rewinding.", oid);
+                sequence.setCounter(1L);
+                return 0L;
+            } else if (first) {
+                // TODO some better exception...
+                throw new SystemException("No (next) value available from sequence " + oid + ". Current counter = " + sequence.getCounter() + ", max value = " + sequence.getMaxCounter());
+            } else {
+                return null;
+            }
+        }
+    }
+
     public void returnUnusedValuesToSequenceAttempt(String oid, Collection<Long> unusedValues, OperationResult result) throws ObjectNotFoundException,
             SchemaException, SerializationRelatedException {
 
@@ -15,14 +15,14 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.*;
 import javax.xml.namespace.QName;
 
 import com.google.common.base.Strings;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.ReaderInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.hibernate.Session;
@@ -39,6 +39,7 @@ import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.prism.Objectable;
 import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismParser;
 import com.evolveum.midpoint.prism.path.ItemName;
 import com.evolveum.midpoint.repo.sql.data.audit.RObjectDeltaOperation;
 import com.evolveum.midpoint.repo.sql.data.common.*;
@@ -358,6 +359,43 @@ public final class RUtil {
         throw new SystemException("Couldn't get table name for class " + hqlType.getName());
     }
 
+    /**
+     * Header of the "binary" serialized form: a byte that cannot start textual (XML, JSON, YAML) nor gzipped
+     * serialized form, then "MP" and the version of the compression dictionary.
+     */
+    private static final byte[] BINARY_FORM_HEADER = { 0x7f, 'M', 'P' };
+    private static final byte BINARY_FORM_VERSION = 1;
+
+    private static final int LANGUAGE_DETECTION_LIMIT = 64;
+
+    /**
+     * Preset dictionary for deflating the "binary" serialized form (version 1). It contains strings that are frequent
+     * in JSON-serialized objects, the most frequent ones at the end. It helps mainly with small objects, where
+     * the compression could not learn these strings by itself.
+     *
+     * NEVER CHANGE this dictionary as it is needed to read stored data. Create a new version instead.
+     */
+    private static final byte[] BINARY_FORM_DICTIONARY_V1 = String.join("",
+            "\"http://midpoint.evolveum.com/xml/ns/public/connector/icf-1/resource-schema-3\"",
+            "\"http://midpoint.evolveum.com/xml/ns/public/resource/instance-3\"",
+            "\"http://midpoint.evolveum.com/xml/ns/public/common/channels-3#",
+            "\"description\" : \"", "\"documentation\" : \"", "\"emailAddress\" : \"",
+            "\"givenName\" : \"", "\"familyName\" : \"", "\"fullName\" : \"",
+            "\"inducement\" : [ {", "\"extension\" : {", "\"credentials\" : {", "\"password\" : {",
+            "\"operationExecution\" : [ {", "\"timestamp\" : \"", "\"status\" : \"success\"",
+            "\"resourceRef\" : {", "\"objectClass\" : \"ri:", "\"kind\" : \"account\"", "\"intent\" : \"default\"",
+            "\"attributes\" : {", "\"primaryIdentifierValue\" : \"", "\"iteration\" : 0", "\"iterationToken\" : \"\"",
+            "\"linkRef\" : [ {", "\"archetypeRef\" : {", "\"roleMembershipRef\" : [ {",
+            "\"lifecycleState\" : \"active\"", "\"enableTimestamp\" : \"",
+            "\"effectiveStatus\" : \"enabled\"", "\"administrativeStatus\" : \"enabled\"", "\"activation\" : {",
+            "\"relation\" : \"org:default\"", "\"type\" : \"c:", "\"targetRef\" : {", "\"assignment\" : [ {",
+            "\"createChannel\" : \"", "\"modifierRef\" : {", "\"creatorRef\" : {",
+            "\"modifyTimestamp\" : \"", "\"createTimestamp\" : \"", "\"metadata\" : {",
+            "\"orig\" : \"", "\"norm\" : \"", "\"name\" : ", "\"version\" : \"", "\"oid\" : \"", "\"id\" : ",
+            "\"@type\" : \"", "\"@ns\" : \"http://prism.evolveum.com/xml/ns/public/types-3\"",
+            "\"@ns\" : \"http://midpoint.evolveum.com/xml/ns/public/common/common-3\",\n")
+            .getBytes(StandardCharsets.UTF_8);
+
     public static byte[] getBytesFromSerializedForm(String serializedForm, boolean compress) {
         if (serializedForm == null) {
             return null;
@@ -368,14 +406,41 @@ public final class RUtil {
                 return serializedForm.getBytes(StandardCharsets.UTF_8);
             }
 
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
-                gzip.write(serializedForm.getBytes(StandardCharsets.UTF_8));
-                gzip.close(); // explicit close writes any remaining data
-                return out.toByteArray();
+            // Characters are encoded directly into the compressing stream, without intermediate byte array.
+            ByteArrayOutputStream out = new ByteArrayOutputStream(serializedForm.length() / 4 + 32);
+            try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(out), StandardCharsets.UTF_8)) {
+                writer.write(serializedForm);
+            }
+            return out.toByteArray();
+        } catch (Exception ex) {
+            throw new SystemException("Couldn't save full object, reason: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Creates compact "binary" form of serialized data: header + raw deflate stream using preset dictionary
+     * of strings frequent in JSON-serialized objects. (Intended to be used for JSON; it works for other
+     * formats as well, although the dictionary does not help there.)
+     */
+    public static byte[] getBinaryFromSerializedForm(String serializedForm) {
+        if (serializedForm == null) {
+            return null;
+        }
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setDictionary(BINARY_FORM_DICTIONARY_V1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(serializedForm.length() / 4 + 32);
+            out.write(BINARY_FORM_HEADER);
+            out.write(BINARY_FORM_VERSION);
+            try (Writer writer = new OutputStreamWriter(new DeflaterOutputStream(out, deflater), StandardCharsets.UTF_8)) {
+                writer.write(serializedForm);
             }
+            return out.toByteArray();
         } catch (Exception ex) {
             throw new SystemException("Couldn't save full object, reason: " + ex.getMessage(), ex);
+        } finally {
+            deflater.end();
         }
     }
 
@@ -388,9 +453,51 @@ public final class RUtil {
             return null;
         }
 
-        // auto-detecting gzipped array (starts with 1f 8b)
-        final int head = (array[0] & 0xff) | ((array[1] << 8) & 0xff00);
-        if (GZIPInputStream.GZIP_MAGIC != head) {
+        try (InputStream in = getSerializedFormStream(array, useUtf16)) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        } catch (Exception ex) {
+            throw new SystemException("Couldn't read data from full object column, reason: " + ex.getMessage(), ex);
+        }
+    }
+
+    public static InputStream getSerializedFormStream(@NotNull byte[] array) {
+        return getSerializedFormStream(array, false);
+    }
+
+    /**
+     * Returns (UTF-8) stream of the serialized form stored in the array. Compressed forms (gzip, binary)
+     * are decompressed on the fly, so the decompressed data are never held in memory as a whole.
+     *
+     * @param useUtf16 Whether uncompressed data can be in UTF-16 (detected by zero bytes or BOM at the beginning).
+     * Such data are converted to UTF-8 on the fly.
+     */
+    public static InputStream getSerializedFormStream(@NotNull byte[] array, boolean useUtf16) {
+        if (isBinary(array)) {
+            byte version = array[BINARY_FORM_HEADER.length];
+            if (version != BINARY_FORM_VERSION) {
+                throw new SystemException("Unsupported version of binary full object format: " + version);
+            }
+            int headerLength = BINARY_FORM_HEADER.length + 1;
+            Inflater inflater = new Inflater(true);
+            inflater.setDictionary(BINARY_FORM_DICTIONARY_V1);
+            return new InflaterInputStream(
+                    new ByteArrayInputStream(array, headerLength, array.length - headerLength), inflater) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        } else if (isGzipped(array)) {
+            try {
+                return new GZIPInputStream(new ByteArrayInputStream(array));
+            } catch (IOException ex) {
+                throw new SystemException("Couldn't read data from full object column, reason: " + ex.getMessage(), ex);
+            }
+        } else {
             /*
              * UTF-16 is relevant only for older SQL Server deployments.
              * If we are trying to read audit delta or fullResult which aren't compressed,
@@ -398,19 +505,76 @@ public final class RUtil {
              * These data couldn't be migrated from nvarchar(max) to varbinary(max) without breaking
              * encoding as SQL Server doesn't support UTF8 and uses UCS-2 (UTF-16) encoding.
              */
-            Charset ch = useUtf16 ? detectCharsetIfUtf16Suggested(array) : StandardCharsets.UTF_8;
-            return new String(array, ch);
+            Charset charset = useUtf16 ? detectCharsetIfUtf16Suggested(array) : StandardCharsets.UTF_8;
+            if (charset == StandardCharsets.UTF_8) {
+                return new ByteArrayInputStream(array);
+            } else {
+                return new ReaderInputStream(
+                        new InputStreamReader(new ByteArrayInputStream(array), charset), StandardCharsets.UTF_8);
+            }
         }
+    }
 
-        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(array))) {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            IOUtils.copy(gzip, out);
-            return new String(out.toByteArray(), StandardCharsets.UTF_8);
-        } catch (Exception ex) {
+    /**
+     * Creates a parser for the serialized form stored in the array. The data are parsed directly
+     * from the (decompressing) stream. The language is detected from the first character.
+     */
+    public static PrismParser parserForSerializedForm(@NotNull PrismContext prismContext, @NotNull byte[] array) {
+        return parserForSerializedForm(prismContext, array, false);
+    }
+
+    /**
+     * Creates a parser for the serialized form stored in the array, see {@link #getSerializedFormStream(byte[], boolean)}
+     * for the meaning of `useUtf16`.
+     */
+    public static PrismParser parserForSerializedForm(@NotNull PrismContext prismContext, @NotNull byte[] array,
+            boolean useUtf16) {
+        BufferedInputStream stream = new BufferedInputStream(getSerializedFormStream(array, useUtf16));
+        return prismContext.parserFor(stream)
+                .language(detectLanguage(stream));
+    }
+
+    private static String detectLanguage(BufferedInputStream stream) {
+        try {
+            stream.mark(LANGUAGE_DETECTION_LIMIT);
+            try {
+                for (int i = 0; i < LANGUAGE_DETECTION_LIMIT; i++) {
+                    int c = stream.read();
+                    if (c == '<') {
+                        return PrismContext.LANG_XML;
+                    } else if (c == '{' || c == '[') {
+                        return PrismContext.LANG_JSON;
+                    } else if (c == -1 || !Character.isWhitespace(c) && c != 0xef && c != 0xbb && c != 0xbf) { // skipping BOM
+                        break;
+                    }
+                }
+                return PrismContext.LANG_YAML;
+            } finally {
+                stream.reset();
+            }
+        } catch (IOException ex) {
             throw new SystemException("Couldn't read data from full object column, reason: " + ex.getMessage(), ex);
         }
     }
 
+    private static boolean isGzipped(byte[] array) {
+        // auto-detecting gzipped array (starts with 1f 8b)
+        return array.length >= 2
+                && GZIPInputStream.GZIP_MAGIC == ((array[0] & 0xff) | ((array[1] << 8) & 0xff00));
+    }
+
+    private static boolean isBinary(byte[] array) {
+        if (array.length <= BINARY_FORM_HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < BINARY_FORM_HEADER.length; i++) {
+            if (array[i] != BINARY_FORM_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static Charset detectCharsetIfUtf16Suggested(byte[] bytes) {
         if (bytes != null && bytes.length > 2) {
             // UTF 16 has either 0 bytes or BOM (0xfeff or 0xfffe depending on endianness)
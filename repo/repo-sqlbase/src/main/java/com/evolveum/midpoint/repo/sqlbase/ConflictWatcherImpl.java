@@ -5,9 +5,8 @@
  * and European Union Public License. See LICENSE file for details.
  */
 
-package com.evolveum.midpoint.repo.sql;
+package com.evolveum.midpoint.repo.sqlbase;
 
-import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.prism.PrismObject;
@@ -15,6 +14,9 @@ import com.evolveum.midpoint.repo.api.ConflictWatcher;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 
 /**
+ * Conflict watcher shared by SQL repository implementations.
+ * Repository service calls the after/before methods for watchers registered in the current thread.
+ *
  * @author mederly
  */
 public class ConflictWatcherImpl implements ConflictWatcher {
@@ -25,11 +27,11 @@ public class ConflictWatcherImpl implements ConflictWatcher {
     private int expectedVersion;
     private boolean objectDeleted;              // skip all future checks
 
-    ConflictWatcherImpl(@NotNull String oid) {
+    public ConflictWatcherImpl(@NotNull String oid) {
         this.oid = oid;
     }
 
-    <T extends ObjectType> void afterAddObject(@NotNull String oid, @NotNull PrismObject<T> object) {
+    public <T extends ObjectType> void afterAddObject(@NotNull String oid, @NotNull PrismObject<T> object) {
         if (notRelevant(oid)) {
             return;
         }
@@ -42,7 +44,7 @@ public class ConflictWatcherImpl implements ConflictWatcher {
         //System.out.println(Thread.currentThread().getName() + ": afterAddObject: " + this);
     }
 
-    void afterDeleteObject(String oid) {
+    public void afterDeleteObject(String oid) {
         if (this.oid.equals(oid)) {
             objectDeleted = true;
         }
@@ -55,7 +57,7 @@ public class ConflictWatcherImpl implements ConflictWatcher {
         checkExpectedVersion(object.getVersion());
     }
 
-    void afterModifyObject(String oid) {
+    public void afterModifyObject(String oid) {
         if (notRelevant(oid)) {
             return;
         }
@@ -63,14 +65,14 @@ public class ConflictWatcherImpl implements ConflictWatcher {
         //System.out.println(Thread.currentThread().getName() + ": afterModifyObject: " + this);
     }
 
-    void afterGetVersion(String oid, String currentRepoVersion) {
+    public void afterGetVersion(String oid, String currentRepoVersion) {
         if (notRelevant(oid)) {
             return;
         }
         checkExpectedVersion(currentRepoVersion);
     }
 
-    <T extends ObjectType> void afterGetObject(PrismObject<T> object) {
+    public <T extends ObjectType> void afterGetObject(PrismObject<T> object) {
         if (notRelevant(object.getOid())) {
             return;
         }
@@ -126,7 +128,7 @@ public class ConflictWatcherImpl implements ConflictWatcher {
         if (initialized) {
             throw new IllegalStateException("Already initialized: " + this);
         }
-        if (StringUtils.isNotEmpty(version)) {
+        if (version != null && !version.isEmpty()) {
             initialized = true;
             expectedVersion = Integer.parseInt(version);
         }
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqlbase;
+
+import com.evolveum.midpoint.prism.query.ObjectPaging;
+import com.evolveum.midpoint.schema.SearchResultMetadata;
+
+/**
+ * Helper methods shared by keyset (seek) based iterative searches of the repository and audit services.
+ */
+public final class IterativeSearchSupport {
+
+    private IterativeSearchSupport() {
+    }
+
+    /**
+     * Returns true if the caller specified offset, size or ordering of the results.
+     * Such queries cannot be executed by keyset iteration which uses its own ordering and batches.
+     */
+    public static boolean isExplicitPaging(ObjectPaging paging) {
+        return paging != null
+                && (paging.getOffset() != null || paging.getMaxSize() != null
+                || !paging.getOrderingInstructions().isEmpty());
+    }
+
+    /**
+     * Creates metadata of an iterative search that passed given number of results to the handler.
+     */
+    public static SearchResultMetadata searchResultMetadata(int count) {
+        SearchResultMetadata metadata = new SearchResultMetadata();
+        metadata.setApproxNumberOfAllResults(count);
+        return metadata;
+    }
+}
@@ -8,6 +8,7 @@ import com.querydsl.sql.SQLQuery;
 import com.querydsl.sql.SQLTemplates;
 import com.querydsl.sql.dml.SQLDeleteClause;
 import com.querydsl.sql.dml.SQLInsertClause;
+import com.querydsl.sql.dml.SQLUpdateClause;
 
 import com.evolveum.midpoint.repo.sqlbase.mapping.QueryModelMapping;
 import com.evolveum.midpoint.repo.sqlbase.mapping.QueryModelMappingRegistry;
@@ -42,6 +43,10 @@ public class SqlRepoContext {
         return mappingRegistry.getByQueryType(queryType);
     }
 
+    public boolean hasMappingForSchemaType(Class<?> schemaType) {
+        return mappingRegistry.hasSchemaType(schemaType);
+    }
+
     public <S, R, Q extends FlexibleRelationalPathBase<R>> QueryModelMapping<S, Q, R>
     getMappingBySchemaType(Class<S> schemaType) {
         return mappingRegistry.getBySchemaType(schemaType);
@@ -55,6 +60,10 @@ public class SqlRepoContext {
         return new SQLInsertClause(connection, querydslConfig, entity);
     }
 
+    public SQLUpdateClause newUpdate(Connection connection, RelationalPath<?> entity) {
+        return new SQLUpdateClause(connection, querydslConfig, entity);
+    }
+
     public SQLDeleteClause newDelete(Connection connection, RelationalPath<?> entity) {
         return new SQLDeleteClause(connection, querydslConfig, entity);
     }
@@ -103,6 +103,15 @@ public class QueryModelMappingRegistry {
         return this;
     }
 
+    /**
+     * Returns true if there is a mapping registered for the schema type.
+     * Useful for clients that support only a subset of schema types and want to report
+     * the unsupported ones instead of failing on missing mapping in {@link #getBySchemaType}.
+     */
+    public boolean hasSchemaType(Class<?> schemaType) {
+        return mappingBySchemaType.containsKey(schemaType);
+    }
+
     public <S, Q extends FlexibleRelationalPathBase<R>, R>
     QueryModelMapping<S, Q, R> getBySchemaType(Class<S> schemaType) {
         //noinspection unchecked
@@ -10,6 +10,8 @@ package com.evolveum.midpoint.init;
 import static com.evolveum.midpoint.schema.util.ObjectDeltaSchemaLevelUtil.resolveNames;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.Validate;
 import org.jetbrains.annotations.NotNull;
@@ -18,6 +20,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 import com.evolveum.midpoint.audit.api.AuditEventRecord;
+import com.evolveum.midpoint.audit.api.AuditResultHandler;
 import com.evolveum.midpoint.audit.api.AuditService;
 import com.evolveum.midpoint.audit.spi.AuditServiceRegistry;
 import com.evolveum.midpoint.prism.PrismContext;
@@ -284,4 +287,43 @@ public class AuditServiceProxy implements AuditService, AuditServiceRegistry {
         }
         return result;
     }
+
+    @Override
+    public SearchResultMetadata searchObjectsIterative(
+            @Nullable ObjectQuery query,
+            @NotNull AuditResultHandler handler,
+            @Nullable Collection<SelectorOptions<GetOperationOptions>> options,
+            @NotNull OperationResult parentResult)
+            throws SchemaException {
+        // Services are searched one after another; processing stops as soon as the handler says so.
+        AtomicBoolean stopped = new AtomicBoolean();
+        AtomicInteger handled = new AtomicInteger();
+        AuditResultHandler proxyHandler = new AuditResultHandler() {
+            @Override
+            public boolean handle(AuditEventRecordType auditRecord) {
+                handled.incrementAndGet();
+                if (!handler.handle(auditRecord)) {
+                    stopped.set(true);
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public int getProgress() {
+                return handler.getProgress();
+            }
+        };
+        for (AuditService service : services) {
+            if (service.supportsRetrieval()) {
+                service.searchObjectsIterative(query, proxyHandler, options, parentResult);
+                if (stopped.get()) {
+                    break;
+                }
+            }
+        }
+        SearchResultMetadata metadata = new SearchResultMetadata();
+        metadata.setApproxNumberOfAllResults(handled.get());
+        return metadata;
+    }
 }
@@ -31,6 +31,7 @@ public class ConfigurablePrismContextFactory extends MidPointPrismContextFactory
 
     private static final Trace LOGGER = TraceManager.getTrace(ConfigurablePrismContextFactory.class);
     private static final String EXTENSION_DIR = "extensionDir";
+    private static final String SCHEMA_SNAPSHOT_FILE = "schemaSnapshotFile";
     private MidpointConfiguration configuration;
 
     /**
@@ -66,6 +67,24 @@ public class ConfigurablePrismContextFactory extends MidPointPrismContextFactory
         this.configuration = configuration;
     }
 
+    /**
+     * Schema snapshot is used only if configured. Relative path is resolved against midpoint.home.
+     */
+    @Override
+    protected File getSchemaSnapshotFile() {
+        Configuration config = configuration.getConfiguration(MidpointConfiguration.GLOBAL_CONFIGURATION);
+        String snapshotFile = config != null ? config.getString(SCHEMA_SNAPSHOT_FILE) : null;
+        if (StringUtils.isEmpty(snapshotFile)) {
+            return null;
+        }
+        File file = new File(snapshotFile);
+        if (!file.isAbsolute() && StringUtils.isNotEmpty(configuration.getMidpointHome())) {
+            file = Paths.get(configuration.getMidpointHome(), snapshotFile).toFile();
+        }
+        LOGGER.info("Using schema snapshot file '{}'.", file);
+        return file;
+    }
+
     @Override
     protected void registerExtensionSchemas(SchemaRegistryImpl schemaRegistry) throws SchemaException {
         Configuration config = configuration.getConfiguration(MidpointConfiguration.GLOBAL_CONFIGURATION);
@@ -79,6 +79,19 @@ public interface RunningTask extends Task {
      */
     void refreshLowLevelStatistics();
 
+    /**
+     * Starts collecting low-level statistics in the current thread that does not execute this task
+     * but does a piece of work for it (e.g. a thread of a shared executor). Must be followed by
+     * {@link #addLowLevelStatisticsFromCurrentThread()} called from the same thread.
+     */
+    void startCollectingLowLevelStatisticsInCurrentThread();
+
+    /**
+     * Adds low-level statistics collected in the current thread since {@link #startCollectingLowLevelStatisticsInCurrentThread()}
+     * to the statistics of this task.
+     */
+    void addLowLevelStatisticsFromCurrentThread();
+
     // CALL ONLY FROM THE THREAD EXECUTING THE TASK!
     // stores operation statistics if the time has come
     void storeOperationStats();
@@ -234,6 +234,16 @@ public class RunningTaskQuartzImpl extends TaskQuartzImpl implements RunningTask
         }
     }
 
+    @Override
+    public void startCollectingLowLevelStatisticsInCurrentThread() {
+        startCollectingLowLevelStatistics();
+    }
+
+    @Override
+    public void addLowLevelStatisticsFromCurrentThread() {
+        statistics.addLowLevelStatisticsFromCurrentThread(taskManager);
+    }
+
     @Override
     public void storeOperationStats() {
         try {
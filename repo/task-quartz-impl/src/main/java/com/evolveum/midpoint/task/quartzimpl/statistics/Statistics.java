@@ -459,6 +459,52 @@ public class Statistics implements WorkBucketStatisticsCollector {
         refreshCacheConfigurationInformation(taskManager.getCacheConfigurationManager());
     }
 
+    /**
+     * Adds low-level statistics collected in the current thread to the values kept here. Unlike
+     * {@link #refreshLowLevelStatistics(TaskManagerQuartzImpl)} this is meant for threads that only do a piece of work
+     * for the task (e.g. threads of a shared executor): the collection must be started in the thread before the work
+     * begins, and the collected values are added to the current ones instead of replacing them.
+     */
+    public synchronized void addLowLevelStatisticsFromCurrentThread(TaskManagerQuartzImpl taskManager) {
+        SqlPerformanceMonitorsCollection monitors = taskManager.getSqlPerformanceMonitorsCollection();
+        PerformanceInformation sqlPerformanceInformation = monitors != null ? monitors.getThreadLocalPerformanceInformation() : null;
+        if (sqlPerformanceInformation != null) {
+            RepositoryPerformanceInformationType increment = sqlPerformanceInformation.toRepositoryPerformanceInformationType();
+            if (repositoryPerformanceInformation != null) {
+                RepositoryPerformanceInformationType sum = repositoryPerformanceInformation.clone();
+                RepositoryPerformanceInformationUtil.addTo(sum, increment);
+                repositoryPerformanceInformation = sum;
+            } else {
+                repositoryPerformanceInformation = increment;
+            }
+        }
+        Map<String, CachePerformanceCollector.CacheData> performanceMap = CachePerformanceCollector.INSTANCE
+                .getThreadLocalPerformanceMap();
+        if (performanceMap != null) {
+            CachesPerformanceInformationType increment = CachePerformanceInformationUtil.toCachesPerformanceInformationType(performanceMap);
+            if (cachesPerformanceInformation != null) {
+                CachesPerformanceInformationType sum = cachesPerformanceInformation.clone();
+                CachePerformanceInformationUtil.addTo(sum, increment);
+                cachesPerformanceInformation = sum;
+            } else {
+                cachesPerformanceInformation = increment;
+            }
+        }
+        OperationsPerformanceInformation performanceInformation = OperationsPerformanceMonitor.INSTANCE.getThreadLocalPerformanceInformation();
+        if (performanceInformation != null) {
+            OperationsPerformanceInformationType increment =
+                    OperationsPerformanceInformationUtil.toOperationsPerformanceInformationType(performanceInformation);
+            if (operationsPerformanceInformation != null) {
+                OperationsPerformanceInformationType sum = operationsPerformanceInformation.clone();
+                OperationsPerformanceInformationUtil.addTo(sum, increment);
+                operationsPerformanceInformation = sum;
+            } else {
+                operationsPerformanceInformation = increment;
+            }
+        }
+        refreshCacheConfigurationInformation(taskManager.getCacheConfigurationManager());
+    }
+
     private void refreshCacheConfigurationInformation(CacheConfigurationManager cacheConfigurationManager) {
         XMLGregorianCalendar now = createXMLGregorianCalendar(System.currentTimeMillis());
         String dump = "Caching configuration for thread " + Thread.currentThread().getName() + " on " + now + ":\n\n";
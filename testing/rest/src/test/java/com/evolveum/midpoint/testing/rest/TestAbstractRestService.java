@@ -29,6 +29,7 @@ import com.evolveum.midpoint.prism.crypto.EncryptionException;
 import com.evolveum.midpoint.prism.delta.ChangeType;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
+import com.evolveum.midpoint.schema.DeltaConvertor;
 import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.SelectorOptions;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
@@ -40,6 +41,8 @@ import com.evolveum.midpoint.util.QNameUtil;
 import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.xml.ns._public.common.api_types_3.ExecuteScriptResponseType;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.ObjectDeltaListType;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.ObjectDeltaOperationListType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 import com.evolveum.midpoint.xml.ns._public.model.scripting_3.PipelineItemType;
 import com.evolveum.prism.xml.ns._public.query_3.QueryType;
@@ -1645,6 +1648,94 @@ public abstract class TestAbstractRestService extends RestServiceInitializer {
         assertEquals("Expected 400 but got " + response.getStatus(), 400, response.getStatus());
     }
 
+    /**
+     * Deltas of bulk requests are executed by a shared executor with bounded number of threads.
+     * Each delta is executed separately: a failing one does not stop the others, results are in request order.
+     */
+    @Test
+    public void test700ExecuteBulk() throws Exception {
+        given();
+        int users = 10;
+        ObjectDeltaListType deltaList = new ObjectDeltaListType();
+        for (int i = 0; i < users; i++) {
+            PrismObject<UserType> user = new UserType(getPrismContext())
+                    .name("bulk-" + i)
+                    .asPrismObject();
+            deltaList.getDelta().add(DeltaConvertor.toObjectDeltaType(user.createAddDelta()));
+        }
+        deltaList.getDelta().add(DeltaConvertor.toObjectDeltaType(
+                getPrismContext().deltaFor(UserType.class)
+                        .item(UserType.F_FULL_NAME).replace(PolyString.fromOrig("Nobody"))
+                        .asObjectDelta("c4ab1e0c-6f5e-4f60-bb5e-59e5a8d3f700")));
+
+        when("two bulk requests are executed");
+        ObjectDeltaOperationListType firstResponse = executeBulk(deltaList, 4);
+        ObjectDeltaOperationListType secondResponse = executeBulk(new ObjectDeltaListType(), 16);
+
+        then();
+        List<ObjectDeltaOperationType> operations = firstResponse.getDeltaOperation();
+        assertEquals("Wrong # of delta operations", users + 1, operations.size());
+        for (int i = 0; i < users; i++) {
+            ObjectDeltaOperationType operation = operations.get(i);
+            assertEquals("Wrong status of delta " + i, OperationResultStatusType.SUCCESS,
+                    operation.getExecutionResult().getStatus());
+            String oid = operation.getObjectDelta().getOid();
+            assertNotNull("No OID of added user " + i, oid);
+            assertEquals("Wrong user for delta " + i, "bulk-" + i,
+                    getObjectRepo(UserType.class, oid).asObjectable().getName().getOrig());
+        }
+        assertEquals("Wrong status of failing delta", OperationResultStatusType.FATAL_ERROR,
+                operations.get(users).getExecutionResult().getStatus());
+        assertEquals("Unexpected delta operations", 0, secondResponse.getDeltaOperation().size());
+
+        and("bulk threads are shared and bounded");
+        long bulkThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("midpoint-rest-bulk-"))
+                .count();
+        assertTrue("Too many bulk threads: " + bulkThreads, bulkThreads <= 16);
+    }
+
+    /**
+     * Search accepting newline-delimited JSON streams the objects, one object per line.
+     */
+    @Test
+    public void test710SearchAllUsersStreaming() throws Exception {
+        given();
+        WebClient client = prepareClient();
+        client.path("/users/search");
+        client.replaceHeader("Accept", "application/x-ndjson");
+        int expectedUsers = repositoryService.countObjects(UserType.class, null, null, new OperationResult("count"));
+
+        when();
+        Response response = client.post(new QueryType());
+
+        then();
+        displayResponse(response);
+        assertStatus(response, 200);
+        assertTrue("Wrong content type: " + response.getMediaType(),
+                response.getMediaType().toString().startsWith("application/x-ndjson"));
+
+        String[] lines = response.readEntity(String.class).split("\n");
+        assertEquals("Wrong # of lines", expectedUsers, lines.length);
+        List<String> names = new ArrayList<>();
+        for (String line : lines) {
+            PrismObject<UserType> user = getPrismContext().parserFor(line).json().parse();
+            names.add(user.asObjectable().getName().getOrig());
+        }
+        assertTrue("Administrator not found in " + names, names.contains(USER_ADMINISTRATOR_USERNAME));
+    }
+
+    private ObjectDeltaOperationListType executeBulk(ObjectDeltaListType deltaList, int concurrency) {
+        WebClient client = prepareClient();
+        client.path("/rpc/bulk");
+        client.query("concurrency", concurrency);
+
+        Response response = client.post(deltaList);
+        displayResponse(response);
+        assertStatus(response, 200);
+        return response.readEntity(ObjectDeltaOperationListType.class);
+    }
+
     private WebClient prepareClient() {
         return prepareClient(USER_ADMINISTRATOR_USERNAME, USER_ADMINISTRATOR_PASSWORD);
     }
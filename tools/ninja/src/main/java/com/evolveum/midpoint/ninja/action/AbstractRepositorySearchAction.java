@@ -44,6 +44,10 @@ public abstract class AbstractRepositorySearchAction<OP extends ExportOptions> e
     private static final int QUEUE_CAPACITY_PER_THREAD = 100;
     private static final long CONSUMERS_WAIT_FOR_START = 2000L;
 
+    private static final String[] OID_SEGMENT_PREFIXES = {
+            "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f"
+    };
+
     protected abstract String getOperationShortName();
 
     protected abstract Runnable createConsumer(BlockingQueue<PrismObject> queue, OperationStatus operation);
@@ -120,14 +124,13 @@ public abstract class AbstractRepositorySearchAction<OP extends ExportOptions> e
         List<ObjectTypes> types = NinjaUtils.getTypes(options.getType());
         for (ObjectTypes type : types) {
             ObjectFilter filter = NinjaUtils.createObjectFilter(options.getFilter(), context, type.getClassDefinition());
-            ObjectQuery query = queryFactory.createQuery(filter);
             if (ObjectTypes.SHADOW.equals(type)) {
                 List<SearchProducerWorker> shadowProducers = createProducersForShadows(context, queue, operation, producers, filter);
                 producers.addAll(shadowProducers);
                 continue;
             }
 
-            producers.add(new SearchProducerWorker(context, options, queue, operation, producers, type, query));
+            producers.addAll(createSegmentedProducers(queue, operation, producers, type, filter));
         }
 
         return producers;
@@ -157,7 +160,7 @@ public abstract class AbstractRepositorySearchAction<OP extends ExportOptions> e
 
             List<PrismObject<ResourceType>> list = resultList.getList();
             if (list == null || list.isEmpty()) {
-                shadowProducers.add(createProducer(queue, operation, producers, ObjectTypes.SHADOW, filter));
+                shadowProducers.addAll(createSegmentedProducers(queue, operation, producers, ObjectTypes.SHADOW, filter));
                 return shadowProducers;
             }
 
@@ -171,7 +174,7 @@ public abstract class AbstractRepositorySearchAction<OP extends ExportOptions> e
                     fullFilter = queryFactory.createAnd(fullFilter, filter);
                 }
 
-                shadowProducers.add(createProducer(queue, operation, producers, ObjectTypes.SHADOW, fullFilter));
+                shadowProducers.addAll(createSegmentedProducers(queue, operation, producers, ObjectTypes.SHADOW, fullFilter));
             }
 
             // all other shadows (no resourceRef or non existing resourceRef)
@@ -186,11 +189,11 @@ public abstract class AbstractRepositorySearchAction<OP extends ExportOptions> e
                 fullFilter = queryFactory.createAnd(fullFilter, filter);
             }
 
-            shadowProducers.add(createProducer(queue, operation, producers, ObjectTypes.SHADOW, fullFilter));
+            shadowProducers.addAll(createSegmentedProducers(queue, operation, producers, ObjectTypes.SHADOW, fullFilter));
         } catch (Exception ex) {
             shadowProducers.clear();
 
-            shadowProducers.add(createProducer(queue, operation, producers, ObjectTypes.SHADOW, filter));
+            shadowProducers.addAll(createSegmentedProducers(queue, operation, producers, ObjectTypes.SHADOW, filter));
         }
 
         return shadowProducers;
@@ -210,6 +213,46 @@ public abstract class AbstractRepositorySearchAction<OP extends ExportOptions> e
         return prismContext.queryFactory().createReferenceEqual(ShadowType.F_RESOURCE_REF, def, values);
     }
 
+    /**
+     * If segmentation by OID is enabled, the search is split to segments by the first character of OID
+     * (plus one segment for all other OIDs), so that one big search can run in more threads.
+     * Otherwise single producer is created.
+     */
+    private List<SearchProducerWorker> createSegmentedProducers(BlockingQueue<PrismObject> queue, OperationStatus operation,
+            List<SearchProducerWorker> producers, ObjectTypes type, ObjectFilter filter) {
+
+        if (!options.isSegmentByOid()) {
+            return Collections.singletonList(createProducer(queue, operation, producers, type, filter));
+        }
+
+        PrismContext prismContext = context.getPrismContext();
+        QueryFactory queryFactory = prismContext.queryFactory();
+
+        List<SearchProducerWorker> segmentProducers = new ArrayList<>();
+        List<ObjectFilter> prefixFilters = new ArrayList<>();
+        for (String prefix : OID_SEGMENT_PREFIXES) {
+            ObjectFilter prefixFilter = prismContext.queryFor(type.getClassDefinition())
+                    .item(PrismConstants.T_ID).startsWith(prefix)
+                    .buildFilter();
+            prefixFilters.add(prefixFilter.clone());
+
+            segmentProducers.add(createProducer(queue, operation, producers, type, andFilter(prefixFilter, filter)));
+        }
+
+        // OIDs that are not lowercase hex (e.g. custom OIDs)
+        ObjectFilter restFilter = queryFactory.createNot(queryFactory.createOr(prefixFilters));
+        segmentProducers.add(createProducer(queue, operation, producers, type, andFilter(restFilter, filter)));
+
+        return segmentProducers;
+    }
+
+    private ObjectFilter andFilter(ObjectFilter segmentFilter, ObjectFilter filter) {
+        if (filter == null) {
+            return segmentFilter;
+        }
+        return context.getPrismContext().queryFactory().createAnd(segmentFilter, filter.clone());
+    }
+
     private SearchProducerWorker createProducer(BlockingQueue<PrismObject> queue, OperationStatus operation,
                                                 List<SearchProducerWorker> producers, ObjectTypes type, ObjectFilter filter) {
         ObjectQuery query = context.getPrismContext().queryFactory().createQuery(filter);
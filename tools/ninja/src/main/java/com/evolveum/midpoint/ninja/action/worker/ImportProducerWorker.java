@@ -14,6 +14,7 @@ import com.evolveum.midpoint.ninja.impl.NinjaContext;
 import com.evolveum.midpoint.ninja.impl.NinjaException;
 import com.evolveum.midpoint.ninja.opts.ImportOptions;
 import com.evolveum.midpoint.ninja.util.Log;
+import com.evolveum.midpoint.ninja.util.NinjaUtils;
 import com.evolveum.midpoint.ninja.util.OperationStatus;
 import com.evolveum.midpoint.prism.Objectable;
 import com.evolveum.midpoint.prism.PrismContext;
@@ -22,24 +23,55 @@ import com.evolveum.midpoint.prism.match.MatchingRuleRegistry;
 import com.evolveum.midpoint.prism.query.ObjectFilter;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.schema.constants.ObjectTypes;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.QNameUtil;
 import org.apache.commons.io.input.ReaderInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.context.ApplicationContext;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.stax.StAXSource;
 import java.io.*;
 import java.nio.charset.Charset;
-import java.util.concurrent.BlockingQueue;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 /**
+ * Producer worker for import. If more parsing threads are configured, the input is only split into object
+ * elements in this thread and the elements are parsed in parallel by parser threads. Both stages are connected
+ * by a bounded queue, so the splitting is throttled by parsing and parsing by the import consumers.
+ *
  * Created by Viliam Repan (lazyman).
  */
 public class ImportProducerWorker extends BaseWorker<ImportOptions, PrismObject> {
 
+    private static final String DOT_CLASS = ImportProducerWorker.class.getName() + ".";
+
+    private static final String OPERATION_PARSE = DOT_CLASS + "parse";
+    private static final String OPERATION_PARSE_OBJECT = DOT_CLASS + "parseObject";
+
+    // the same context names as used by LegacyValidator
+    private static final String START_LINE_NUMBER = "startLineNumber";
+    private static final String END_LINE_NUMBER = "endLineNumber";
+
+    private static final int ELEMENT_QUEUE_CAPACITY_PER_THREAD = 50;
+
     private ObjectFilter filter;
     private boolean stopAfterFound;
 
@@ -110,11 +142,257 @@ public class ImportProducerWorker extends BaseWorker<ImportOptions, PrismObject>
     }
 
     private void processStream(InputStream input) throws IOException {
+        if (options.getParseThreads() > 1) {
+            processStreamParallel(input);
+            return;
+        }
+
+        LegacyValidator validator = createValidator();
+
+        OperationResult result = operation.getResult();
+
+        Charset charset = context.getCharset();
+        Reader reader = new InputStreamReader(input, charset);
+        validator.validate(new ReaderInputStream(reader, charset), result, result.getOperation());
+    }
+
+    private LegacyValidator createValidator() {
+        PrismContext prismContext = context.getApplicationContext().getBean(PrismContext.class);
+
+        // FIXME: MID-5151: If validateSchema is false we are not validating unknown attributes on import
+        LegacyValidator validator = new LegacyValidator(prismContext, createEventHandler());
+        validator.setValidateSchema(false);
+        return validator;
+    }
+
+    /**
+     * Splits the stream into object elements (in the same way as {@link LegacyValidator} does) and hands them
+     * over to parser threads. Line numbers, progress, stop requests and the limit of errors
+     * ({@link LegacyValidator#getStopAfterErrors()}) are handled in the same way as in {@link LegacyValidator#validate}.
+     */
+    private void processStreamParallel(InputStream input) throws IOException {
+        int threads = options.getParseThreads();
+        BlockingQueue<ObjectElement> elements = new ArrayBlockingQueue<>(ELEMENT_QUEUE_CAPACITY_PER_THREAD * threads);
+        ParsingState state = new ParsingState(createValidator().getStopAfterErrors());
+        ParserWorker[] parsers = new ParserWorker[threads];
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            parsers[i] = new ParserWorker(elements, state);
+            executor.execute(parsers[i]);
+        }
+
+        try {
+            splitToElements(new InputStreamReader(input, context.getCharset()), elements, state);
+        } catch (XMLStreamException | TransformerException ex) {
+            throw new NinjaException("Couldn't read objects from input, reason: " + ex.getMessage(), ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new NinjaException("Interrupted while reading objects from input", ex);
+        } finally {
+            for (ParserWorker parser : parsers) {
+                parser.splitterDone = true;
+            }
+            executor.shutdown();
+            try {
+                executor.awaitTermination(NinjaUtils.WAIT_FOR_EXECUTOR_FINISH, TimeUnit.DAYS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+
+            OperationResult result = operation.getResult();
+            synchronized (result) {
+                for (ParserWorker parser : parsers) {
+                    parser.result.computeStatusIfUnknown();
+                    result.addSubresult(parser.result);
+                }
+                if (state.stopMessage != null) {
+                    result.recordFatalError(state.stopMessage);
+                }
+            }
+        }
+    }
+
+    private void splitToElements(Reader reader, BlockingQueue<ObjectElement> elements, ParsingState state)
+            throws XMLStreamException, TransformerException, InterruptedException {
+
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        // We do not want DTDs or external entities, e.g. to avoid XXE vulnerabilities.
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader stream = xmlInputFactory.createXMLStreamReader(reader);
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+
+        if (stream.nextTag() != XMLStreamConstants.START_ELEMENT) {
+            throw new NinjaException("No root element in input");
+        }
+        if (!QNameUtil.match(stream.getName(), SchemaConstants.C_OBJECTS)) {
+            // single object file
+            putElement(elements, readElement(stream, transformer, null, state), state);
+            return;
+        }
+
+        Map<String, String> rootNamespaceDeclarations = new HashMap<>();
+        for (int i = 0; i < stream.getNamespaceCount(); i++) {
+            rootNamespaceDeclarations.put(stream.getNamespacePrefix(i), stream.getNamespaceURI(i));
+        }
+        while (stream.hasNext() && !state.isStopped()) {
+            if (stream.next() == XMLStreamConstants.START_ELEMENT) {
+                if (!putElement(elements, readElement(stream, transformer, rootNamespaceDeclarations, state), state)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for free space in the queue; returns false if the operation was finished (e.g. by an error)
+     * or the processing was stopped meanwhile.
+     */
+    private boolean putElement(BlockingQueue<ObjectElement> elements, ObjectElement element, ParsingState state)
+            throws InterruptedException {
+        while (!elements.offer(element, CONSUMER_POLL_TIMEOUT, TimeUnit.SECONDS)) {
+            if (operation.isFinished() || state.isStopped()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the element the stream is positioned at (including its subtree) to a stand-alone DOM element.
+     */
+    private ObjectElement readElement(XMLStreamReader stream, Transformer transformer,
+            Map<String, String> rootNamespaceDeclarations, ParsingState state) throws TransformerException {
+        int startLineNumber = stream.getLocation().getLineNumber();
+        Document document = DOMUtil.getDocument();
+        transformer.transform(new StAXSource(stream), new DOMResult(document));
+        Element element = DOMUtil.getFirstChildElement(document);
+        if (rootNamespaceDeclarations != null) {
+            // The element may not have complete namespace definitions for stand-alone processing.
+            DOMUtil.setNamespaceDeclarations(element, rootNamespaceDeclarations);
+        }
+        return new ObjectElement(element, state.progress.incrementAndGet(), startLineNumber,
+                stream.getLocation().getLineNumber());
+    }
+
+    /**
+     * Object element with its position in the input, used for the context of object results.
+     */
+    private static class ObjectElement {
+
+        private final Element element;
+        private final long progress;
+        private final int startLineNumber;
+        private final int endLineNumber;
+
+        private ObjectElement(Element element, long progress, int startLineNumber, int endLineNumber) {
+            this.element = element;
+            this.progress = progress;
+            this.startLineNumber = startLineNumber;
+            this.endLineNumber = endLineNumber;
+        }
+    }
+
+    /**
+     * Progress, error count and stop request shared by the splitter and all parsers of one input stream.
+     */
+    private static class ParsingState {
+
+        private final long stopAfterErrors;
+        private final AtomicLong progress = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+
+        private volatile String stopMessage;
+
+        private ParsingState(long stopAfterErrors) {
+            this.stopAfterErrors = stopAfterErrors;
+        }
+
+        private boolean isStopped() {
+            return stopMessage != null;
+        }
+
+        private synchronized void stop(String message) {
+            if (stopMessage == null) {
+                stopMessage = message;
+            }
+        }
+
+        /**
+         * Records the outcome of an object, stopping the processing in the same cases as {@link LegacyValidator} does.
+         */
+        private void processed(OperationResult objectResult, EventResult cont) {
+            long currentErrors = objectResult.isError() ? errors.incrementAndGet() : errors.get();
+            if (cont.isStop()) {
+                stop(cont.getReason() != null ? "Processing has been stopped: " + cont.getReason() : "Processing has been stopped");
+            } else if (!cont.isCont() && stopAfterErrors > 0 && currentErrors >= stopAfterErrors) {
+                long passed = progress.get() - currentErrors;
+                stop(currentErrors == 1 ? "Stopping on error; " + passed + " passed"
+                        : "Too many errors (" + currentErrors + "); " + passed + " passed");
+            }
+        }
+    }
+
+    /**
+     * Parses object elements from the queue; each parser has its own validator and operation result.
+     */
+    private class ParserWorker implements Runnable {
+
+        private final BlockingQueue<ObjectElement> elements;
+        private final ParsingState state;
+        private final OperationResult result = new OperationResult(OPERATION_PARSE);
+
+        private volatile boolean splitterDone;
+
+        private ParserWorker(BlockingQueue<ObjectElement> elements, ParsingState state) {
+            this.elements = elements;
+            this.state = state;
+        }
+
+        @Override
+        public void run() {
+            LegacyValidator validator = createValidator();
+
+            try {
+                while (!operation.isFinished() && !state.isStopped() && !(splitterDone && elements.isEmpty())) {
+                    ObjectElement element = elements.poll(CONSUMER_POLL_TIMEOUT, TimeUnit.SECONDS);
+                    if (element == null) {
+                        continue;
+                    }
+
+                    OperationResult objectResult = result.createSubresult(OPERATION_PARSE_OBJECT);
+                    objectResult.addContext(OperationResult.CONTEXT_PROGRESS, element.progress);
+                    objectResult.addContext(START_LINE_NUMBER, element.startLineNumber);
+                    objectResult.addContext(END_LINE_NUMBER, element.endLineNumber);
+
+                    EventResult cont;
+                    try {
+                        cont = validator.validateObject(element.element, objectResult);
+                    } catch (RuntimeException ex) {
+                        if (objectResult.isUnknown()) {
+                            objectResult.recordFatalError(ex);
+                        }
+                        context.getLog().error("Couldn't parse object on lines {}-{}, reason: {}", ex,
+                                element.startLineNumber, element.endLineNumber, ex.getMessage());
+                        cont = EventResult.skipObject(ex.getMessage());
+                    }
+                    objectResult.computeStatusIfUnknown();
+                    state.processed(objectResult, cont);
+                    objectResult.cleanupResult();
+                    result.summarize();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private EventHandler createEventHandler() {
         ApplicationContext appContext = context.getApplicationContext();
-        PrismContext prismContext = appContext.getBean(PrismContext.class);
         MatchingRuleRegistry matchingRuleRegistry = appContext.getBean(MatchingRuleRegistry.class);
 
-        EventHandler handler = new EventHandler() {
+        return new EventHandler() {
 
             @Override
             public EventResult preMarshall(Element objectElement, Node postValidationTree,
@@ -156,16 +434,6 @@ public class ImportProducerWorker extends BaseWorker<ImportOptions, PrismObject>
                 operation.finish();
             }
         };
-
-        // FIXME: MID-5151: If validateSchema is false we are not validating unknown attributes on import
-        LegacyValidator validator = new LegacyValidator(prismContext, handler);
-        validator.setValidateSchema(false);
-
-        OperationResult result = operation.getResult();
-
-        Charset charset = context.getCharset();
-        Reader reader = new InputStreamReader(input, charset);
-        validator.validate(new ReaderInputStream(reader, charset), result, result.getOperation());
     }
 
     private boolean matchSelectedType(Class clazz) {
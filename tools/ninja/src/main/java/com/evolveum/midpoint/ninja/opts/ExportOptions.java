@@ -26,12 +26,18 @@ public class ExportOptions extends BaseImportExportOptions {
     public static final String P_SPLIT = "-n";
     public static final String P_SPLIT_LONG = "-split";
 
+    public static final String P_SEGMENT_BY_OID = "-so";
+    public static final String P_SEGMENT_BY_OID_LONG = "--segment-by-oid";
+
     @Parameter(names = {P_OUTPUT, P_OUTPUT_LONG}, descriptionKey = "export.output")
     private File output;
 
     @Parameter(names = {P_OVERWRITE, P_OVERWRITE_LONG}, descriptionKey = "export.overwrite")
     private boolean overwrite;
 
+    @Parameter(names = {P_SEGMENT_BY_OID, P_SEGMENT_BY_OID_LONG}, descriptionKey = "export.segmentByOid")
+    private boolean segmentByOid;
+
 //    @Parameter(names = {P_SPLIT, P_SPLIT_LONG}, descriptionKey = "export.split")
 //    private boolean split;
 
@@ -43,6 +49,10 @@ public class ExportOptions extends BaseImportExportOptions {
         return overwrite;
     }
 
+    public boolean isSegmentByOid() {
+        return segmentByOid;
+    }
+
 //    public boolean isSplit() {
 //        return split;
 //    }
@@ -96,6 +96,53 @@ public class ImportRepositoryTest extends BaseTest {
         AssertJUnit.assertTrue(getSystemErr().isEmpty());
     }
 
+    @Test
+    public void test115ImportByFilterParallelParsing() throws Exception {
+        String[] input = new String[]{"-m", getMidpointHome(), "import", "-f", "<equal><path>name</path><value>F0002</value></equal>",
+                "-i", RESOURCES_FOLDER + "/org-monkey-island-simple.xml.zip", "-z", "-pt", "4"};
+
+        executeTest(null,
+                context -> {
+                    RepositoryService repo = context.getRepository();
+
+                    OperationResult result = new OperationResult("count objects");
+                    int count = repo.countObjects(ObjectType.class, null, null, result);
+
+                    AssertJUnit.assertEquals(0, count);
+                },
+                context -> {
+                    RepositoryService repo = context.getRepository();
+
+                    OperationResult result = new OperationResult("count objects");
+                    int count = repo.countObjects(ObjectType.class, null, null, result);
+
+                    AssertJUnit.assertEquals(1, count);
+                },
+                true, true, input);
+
+        List<String> out = getSystemOut();
+        AssertJUnit.assertEquals(out.toString(), 5, out.size());
+        AssertJUnit.assertTrue(getSystemErr().isEmpty());
+    }
+
+    @Test
+    public void test117ImportInvalidObjectParallelParsing() throws Exception {
+        String[] input = new String[]{"-m", getMidpointHome(), "import",
+                "-i", RESOURCES_FOLDER + "/org-invalid.xml", "-pt", "2"};
+
+        executeTest(null,
+                null,
+                context -> {
+                    RepositoryService repo = context.getRepository();
+
+                    OperationResult result = new OperationResult("count objects");
+                    int count = repo.countObjects(ObjectType.class, null, null, result);
+
+                    AssertJUnit.assertEquals(0, count);
+                },
+                true, true, input);
+    }
+
     @Test
     public void test120ImportByFilterAsFile() throws Exception {
         String[] input = new String[]{"-m", getMidpointHome(), "import", "-f", "@src/test/resources/filter.xml",